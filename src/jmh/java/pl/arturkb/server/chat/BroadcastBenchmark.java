@@ -0,0 +1,83 @@
+package pl.arturkb.server.chat;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of one broadcast to all members of the room, by room size. Recipients queue the message the way
+ * sessions do, the queues are drained after every broadcast.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BroadcastBenchmark {
+
+    @Param({"10", "1000", "100000"})
+    private int roomSize;
+
+    private ClientRegistry registry;
+
+    private QueueingSession[] members;
+
+    @Setup
+    public void setUp() {
+        registry = new ClientRegistry(roomSize + 1);
+        members = new QueueingSession[roomSize];
+        for (int i = 0; i < roomSize; i++) {
+            members[i] = new QueueingSession("user-" + i);
+            registry.claimName(members[i].getClientName(), members[i]);
+        }
+    }
+
+    @Benchmark
+    public void broadcastMessage() {
+        registry.broadcastMessage(ClientThread.joinUserWithMessage("user-0", "hello everybody in the chat room"), members[0]);
+        for (QueueingSession member : members) {
+            member.outbound.poll();
+        }
+    }
+
+    /**
+     * The session that only queues messages.
+     */
+    static class QueueingSession implements ChatSession {
+
+        private final String userName;
+
+        final OutboundQueue<OutboundMessage> outbound = new OutboundQueue<>(ServerConstants.DEFAULT_OUTBOUND_QUEUE_SIZE, OverflowPolicy.DROP_OLDEST);
+
+        QueueingSession(String userName) {
+            this.userName = userName;
+        }
+
+        @Override
+        public String getUserName() {
+            return userName;
+        }
+
+        @Override
+        public String getClientName() {
+            return ServerConstants.CHAR_THAT_NAME_CAN_NOT_CONTAIN + userName;
+        }
+
+        @Override
+        public void sendMessage(OutboundMessage message) {
+            outbound.offer(message);
+        }
+    }
+
+}
@@ -0,0 +1,99 @@
+package pl.arturkb.server.chat;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link CommandParser} with the map and regular expression based parseLine it replaced.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CommandParserBenchmark {
+
+    @Param({"/all hello everybody in the chat room", "@Carol are you there?", "/who"})
+    private String line;
+
+    private byte[] bytes;
+
+    private final CommandParser parser = new CommandParser();
+
+    @Setup
+    public void setUp() {
+        bytes = line.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public void parseLine(Blackhole blackhole) {
+        Map<String, String> mapLine = legacyParseLine(line);
+        blackhole.consume(mapLine.get("command"));
+        blackhole.consume(mapLine.get("user"));
+        blackhole.consume(mapLine.get("msg"));
+    }
+
+    @Benchmark
+    public void commandParserChars(Blackhole blackhole) {
+        CommandParser result = parser.parse(line);
+        blackhole.consume(result.getCommand());
+        blackhole.consume(result.getClientName());
+        blackhole.consume(result.getMsg());
+    }
+
+    @Benchmark
+    public void commandParserBytes(Blackhole blackhole) {
+        CommandParser result = parser.parse(bytes, 0, bytes.length, StandardCharsets.UTF_8);
+        blackhole.consume(result.getCommand());
+        blackhole.consume(result.getClientName());
+        blackhole.consume(result.getMsg());
+    }
+
+    @Benchmark
+    public Command commandParserCommandOnly() {
+        return parser.parse(bytes, 0, bytes.length, StandardCharsets.UTF_8).getCommand();
+    }
+
+    /**
+     * The parseLine of ClientThread before {@link CommandParser}, kept as the baseline.
+     */
+    private static Map<String, String> legacyParseLine(String line) {
+        Map<String, String> result = new HashMap<>(3);
+
+        if (line.startsWith(String.valueOf(ServerConstants.CHAR_THAT_NAME_CAN_NOT_CONTAIN))) {
+            String[] words = line.split("\\s", 2);
+            if (words.length > 1 && words[1] != null && words[0] != null) {
+                result.put("command", "private");
+                result.put("msg", words[1]);
+                result.put("user", words[0]);
+            }
+
+        } else {
+            String[] words = line.split("\\s", 2);
+            if (words.length == 2) {
+                result.put("command", words[0]);
+                result.put("msg", words[1]);
+            } else if (words.length == 1) {
+                result.put("command", words[0]);
+            }
+        }
+        return result;
+    }
+
+}
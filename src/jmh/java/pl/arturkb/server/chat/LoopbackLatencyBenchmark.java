@@ -0,0 +1,109 @@
+package pl.arturkb.server.chat;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end latency of a message from one client to another through a real server on loopback.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LoopbackLatencyBenchmark {
+
+    @Param({ServerConstants.BLOCKING_MODE, ServerConstants.NIO_MODE})
+    private String mode;
+
+    private ChatServer server;
+
+    private Socket sender;
+
+    private PrintStream senderOutput;
+
+    private BufferedReader senderInput;
+
+    private Socket recipient;
+
+    private BufferedReader recipientInput;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty(ServerConstants.MODE_PROPERTY, mode);
+        properties.setProperty(ServerConstants.REACTORS_PROPERTY, "2");
+        ServerContext context = new ServerContext(new ServerSettings(properties));
+        server = context.getSettings().isNioMode() ? new NioChatServer(0, context) : new MultiThreadChatServerSync(0, context);
+        server.bind();
+        Thread acceptor = new Thread(server::serve, "acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+
+        recipient = connect();
+        recipientInput = new BufferedReader(new InputStreamReader(recipient.getInputStream()));
+        login(recipientInput, new PrintStream(recipient.getOutputStream(), true), "recipient");
+
+        sender = connect();
+        senderInput = new BufferedReader(new InputStreamReader(sender.getInputStream()));
+        senderOutput = new PrintStream(sender.getOutputStream(), true);
+        login(senderInput, senderOutput, "sender");
+        recipientInput.readLine();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        sender.close();
+        recipient.close();
+        server.close();
+    }
+
+    @Benchmark
+    public String broadcastRoundTrip() throws IOException {
+        senderOutput.println("/all ping");
+        return recipientInput.readLine();
+    }
+
+    @Benchmark
+    public String privateRoundTrip() throws IOException {
+        senderOutput.println("@recipient ping");
+        String delivered = recipientInput.readLine();
+        senderInput.readLine();
+        return delivered;
+    }
+
+    private Socket connect() throws IOException {
+        Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getLocalPort());
+        socket.setTcpNoDelay(true);
+        return socket;
+    }
+
+    private static void login(BufferedReader input, PrintStream output, String userName) throws IOException {
+        input.readLine();
+        output.println(userName);
+        input.readLine();
+        input.readLine();
+    }
+
+}
@@ -0,0 +1,58 @@
+package pl.arturkb.server.chat;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of rendering and encoding the protocol responses of {@link OutputTexts}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class OutputTextsBenchmark {
+
+    private String userName = "Artur";
+
+    @Benchmark
+    public String welcomeMessageForGivenUser() {
+        return OutputTexts.welcomeMessageForGivenUser(userName);
+    }
+
+    @Benchmark
+    public String newUserEnteredChatMessage() {
+        return OutputTexts.newUserEnteredChatMessage(userName);
+    }
+
+    @Benchmark
+    public String userIsLeavingTheChat() {
+        return OutputTexts.userIsLeavingTheChat(userName);
+    }
+
+    @Benchmark
+    public String printUsage() {
+        return OutputTexts.printUsage();
+    }
+
+    @Benchmark
+    public OutboundMessage encodedUserMessage() {
+        return OutboundMessage.of(ClientThread.joinUserWithMessage(userName, "hello everybody in the chat room"));
+    }
+
+    @Benchmark
+    public OutboundMessage encodedUsage() {
+        return OutboundMessage.of(OutputTexts.printUsage());
+    }
+
+}
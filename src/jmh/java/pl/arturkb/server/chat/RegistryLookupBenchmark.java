@@ -0,0 +1,63 @@
+package pl.arturkb.server.chat;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the name lookups of {@link ClientRegistry}, by number of registered users.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RegistryLookupBenchmark {
+
+    @Param({"10", "1000", "100000"})
+    private int userCount;
+
+    private ClientRegistry registry;
+
+    private String registeredName;
+
+    private String unknownName;
+
+    @Setup
+    public void setUp() {
+        registry = new ClientRegistry(userCount);
+        for (int i = 0; i < userCount; i++) {
+            BroadcastBenchmark.QueueingSession session = new BroadcastBenchmark.QueueingSession("user-" + i);
+            registry.claimName(session.getClientName(), session);
+        }
+        registeredName = ServerConstants.CHAR_THAT_NAME_CAN_NOT_CONTAIN + "user-" + (userCount - 1);
+        unknownName = ServerConstants.CHAR_THAT_NAME_CAN_NOT_CONTAIN + "nobody";
+    }
+
+    @Benchmark
+    public boolean isClientNameRegistered() {
+        return registry.isClientNameRegistered(registeredName);
+    }
+
+    @Benchmark
+    public boolean isClientNameRegisteredMiss() {
+        return registry.isClientNameRegistered(unknownName);
+    }
+
+    @Benchmark
+    public ChatSession findRecipient() {
+        return registry.find(registeredName);
+    }
+
+}
@@ -0,0 +1,68 @@
+package pl.arturkb.server.chat;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of one message to a room of fixed size, by the number of users on the server. The cost should depend on
+ * the room size only.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RoomBroadcastBenchmark {
+
+    private static final String ROOM = "#room";
+
+    @Param({"1000", "100000"})
+    private int userCount;
+
+    @Param({"10", "100"})
+    private int roomSize;
+
+    private ClientRegistry registry;
+
+    private BroadcastBenchmark.QueueingSession[] members;
+
+    @Setup
+    public void setUp() {
+        registry = new ClientRegistry(userCount);
+        members = new BroadcastBenchmark.QueueingSession[roomSize];
+        for (int i = 0; i < userCount; i++) {
+            BroadcastBenchmark.QueueingSession session = new BroadcastBenchmark.QueueingSession("user-" + i);
+            registry.claimName(session.getClientName(), session);
+            if (i < roomSize) {
+                members[i] = session;
+                registry.joinRoom(ROOM, session);
+            }
+        }
+        for (BroadcastBenchmark.QueueingSession member : members) {
+            while (member.outbound.poll() != null) {
+                // Drop the join notices.
+            }
+        }
+    }
+
+    @Benchmark
+    public void sendRoomMessage() {
+        registry.sendRoomMessage(ClientThread.joinUserWithMessage("user-0", "hello everybody in the room"), ROOM, members[0]);
+        for (BroadcastBenchmark.QueueingSession member : members) {
+            member.outbound.poll();
+        }
+    }
+
+}
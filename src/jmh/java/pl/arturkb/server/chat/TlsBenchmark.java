@@ -0,0 +1,151 @@
+package pl.arturkb.server.chat;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import javax.net.SocketFactory;
+import javax.net.ssl.SSLSocket;
+
+/**
+ * Cost of TLS against the plain listener, on loopback: connections per second with a full and with a resumed
+ * handshake, and the round trip of a message. The server certificate is a self-signed one generated for the trial.
+ */
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TlsBenchmark {
+
+    @Param({ServerConstants.BLOCKING_MODE, ServerConstants.NIO_MODE})
+    private String mode;
+
+    @Param({"plain", "tls"})
+    private String transport;
+
+    private Path keyStoreDirectory;
+
+    private ChatServer server;
+
+    private SocketFactory socketFactory;
+
+    private Socket sender;
+
+    private PrintStream senderOutput;
+
+    private Socket recipient;
+
+    private BufferedReader recipientInput;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty(ServerConstants.MODE_PROPERTY, mode);
+        properties.setProperty(ServerConstants.REACTORS_PROPERTY, "2");
+        socketFactory = SocketFactory.getDefault();
+        if (transport.equals("tls")) {
+            keyStoreDirectory = Files.createTempDirectory("chat-server-tls");
+            SelfSignedKeyStore keyStore = SelfSignedKeyStore.generate(keyStoreDirectory.resolve("server.p12"), "benchmark");
+            keyStore.configure(properties);
+            socketFactory = keyStore.newClientContext().getSocketFactory();
+        }
+        ServerContext context = new ServerContext(new ServerSettings(properties));
+        server = context.getSettings().isNioMode() ? new NioChatServer(0, context) : new MultiThreadChatServerSync(0, context);
+        server.bind();
+        Thread acceptor = new Thread(server::serve, "acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+
+        recipient = connect();
+        recipientInput = new BufferedReader(new InputStreamReader(recipient.getInputStream()));
+        login(recipientInput, new PrintStream(recipient.getOutputStream(), true), "recipient");
+
+        sender = connect();
+        BufferedReader senderInput = new BufferedReader(new InputStreamReader(sender.getInputStream()));
+        senderOutput = new PrintStream(sender.getOutputStream(), true);
+        login(senderInput, senderOutput, "sender");
+        recipientInput.readLine();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        sender.close();
+        recipient.close();
+        server.close();
+        if (keyStoreDirectory != null) {
+            Files.deleteIfExists(keyStoreDirectory.resolve("server.p12"));
+            Files.deleteIfExists(keyStoreDirectory);
+        }
+    }
+
+    /**
+     * Connect, get the prompt for the name and disconnect, the TLS session is resumed from the previous connection.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public String resumedHandshake() throws IOException {
+        try (Socket socket = connect()) {
+            return new BufferedReader(new InputStreamReader(socket.getInputStream())).readLine();
+        }
+    }
+
+    /**
+     * Connect, get the prompt for the name and disconnect, the TLS session is invalidated so every connection runs
+     * a full handshake.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public String fullHandshake() throws IOException {
+        try (Socket socket = connect()) {
+            String prompt = new BufferedReader(new InputStreamReader(socket.getInputStream())).readLine();
+            if (socket instanceof SSLSocket) {
+                ((SSLSocket) socket).getSession().invalidate();
+            }
+            return prompt;
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public String messageRoundTrip() throws IOException {
+        senderOutput.println("/all ping");
+        return recipientInput.readLine();
+    }
+
+    private Socket connect() throws IOException {
+        Socket socket = socketFactory.createSocket(InetAddress.getLoopbackAddress(), server.getLocalPort());
+        socket.setTcpNoDelay(true);
+        return socket;
+    }
+
+    private static void login(BufferedReader input, PrintStream output, String userName) throws IOException {
+        input.readLine();
+        output.println(userName);
+        input.readLine();
+        input.readLine();
+    }
+
+}
@@ -0,0 +1,34 @@
+package pl.arturkb.server.chat;
+
+/**
+ * The result of asking {@link ClientRegistry} for a connection slot.
+ */
+public enum Admission {
+
+    // The slot is taken, the connection is served.
+    ACCEPTED,
+
+    // All slots of the server are taken.
+    SERVER_FULL,
+
+    // All slots for the client address are taken.
+    ADDRESS_LIMIT_REACHED;
+
+    /**
+     * The message for the rejected client.
+     *
+     * @param retryAfterSeconds the number of seconds the client should wait before retry.
+     * @return the message, null for accepted connection.
+     */
+    public String rejectionMessage(int retryAfterSeconds) {
+        switch (this) {
+            case SERVER_FULL:
+                return OutputTexts.serverIsFull(retryAfterSeconds);
+            case ADDRESS_LIMIT_REACHED:
+                return OutputTexts.tooManyConnectionsFromAddress(retryAfterSeconds);
+            default:
+                return null;
+        }
+    }
+
+}
@@ -0,0 +1,150 @@
+package pl.arturkb.server.chat;
+
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogManager;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+/**
+ * Log handler that hands the records to a background thread, which formats them and passes them to the handlers
+ * that were installed before.
+ * <p>
+ * The logging thread only queues the record: the message with its parameters is formatted, and written to the
+ * console or a file, by the background thread. Records are queued in a bounded {@link OutboundQueue}; when the
+ * background thread can't keep up new records are dropped and counted, and the number of dropped records is
+ * logged once the queue drains, so logging never makes the accept loop or a session wait.
+ * <p>
+ * The class and method that logged a record are not looked up, that would walk the stack of the logging thread,
+ * the logger name is shown instead.
+ */
+public class AsyncLogHandler extends Handler {
+
+    // The handlers the records are passed to.
+    private final Handler[] targets;
+
+    // Records waiting for the background thread.
+    private final OutboundQueue<LogRecord> records;
+
+    // Passes the queued records to the targets.
+    private final Thread thread;
+
+    // The number of dropped records that is already reported.
+    private long reportedDropped;
+
+    /**
+     * The constructor
+     *
+     * @param targets  the handlers the records are passed to.
+     * @param capacity max number of queued records.
+     */
+    public AsyncLogHandler(Handler[] targets, int capacity) {
+        this.targets = targets.clone();
+        records = new OutboundQueue<>(capacity, OverflowPolicy.DROP_NEWEST);
+        thread = new Thread(this::publishRecords, "async-log");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Replace the handlers of the root logger with one asynchronous handler that passes the records to them.
+     *
+     * @return the installed handler.
+     */
+    public static AsyncLogHandler install() {
+        Logger root = LogManager.getLogManager().getLogger(ServerConstants.EMPTY);
+        Handler[] handlers = root.getHandlers();
+        AsyncLogHandler handler = new AsyncLogHandler(handlers, ServerConstants.LOG_RECORD_QUEUE_SIZE);
+        for (Handler target : handlers) {
+            root.removeHandler(target);
+        }
+        root.addHandler(handler);
+        return handler;
+    }
+
+    /**
+     * Queue the record, does not wait.
+     *
+     * @param record the record.
+     */
+    @Override
+    public void publish(LogRecord record) {
+        if (!isLoggable(record)) {
+            return;
+        }
+        // Setting the source stops the record from walking the stack of the background thread for it.
+        record.setSourceClassName(record.getLoggerName());
+        records.offer(record);
+    }
+
+    /**
+     * Flush the targets, records that are still queued are not waited for.
+     */
+    @Override
+    public void flush() {
+        for (Handler target : targets) {
+            target.flush();
+        }
+    }
+
+    /**
+     * Stop the background thread after it passes the queued records to the targets, then close the targets.
+     */
+    @Override
+    public void close() {
+        records.close();
+        try {
+            thread.join(ServerConstants.CLOSE_FLUSH_TIMEOUT_MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (Handler target : targets) {
+            target.close();
+        }
+    }
+
+    /**
+     * Getter for the number of dropped records.
+     *
+     * @return the number of records dropped because the queue was full.
+     */
+    public long getDropped() {
+        return records.getDropped();
+    }
+
+    /**
+     * The background thread, passes the queued records to the targets until the handler is closed.
+     */
+    private void publishRecords() {
+        try {
+            LogRecord record;
+            while ((record = records.take()) != null) {
+                for (Handler target : targets) {
+                    target.publish(record);
+                }
+                if (records.isEmpty()) {
+                    reportDropped();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Pass a record with the number of records dropped since the last report to the targets.
+     */
+    private void reportDropped() {
+        long dropped = records.getDropped();
+        if (dropped == reportedDropped) {
+            return;
+        }
+        LogRecord record = new LogRecord(Level.WARNING, "Dropped " + (dropped - reportedDropped) + " log records");
+        record.setSourceClassName(AsyncLogHandler.class.getName());
+        reportedDropped = dropped;
+        for (Handler target : targets) {
+            target.publish(record);
+        }
+    }
+
+}
@@ -0,0 +1,75 @@
+package pl.arturkb.server.chat;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool of byte buffers of one fixed size, shared by the client sessions. A session takes a buffer when it starts
+ * and gives it back when it ends, so connecting clients reuse the buffers of the clients that left instead of
+ * allocating new ones.
+ */
+public class BufferPool {
+
+    // Size of every buffer of the pool.
+    private final int bufferSize;
+
+    // Max number of free buffers kept, the others are left to the garbage collector.
+    private final int maxFree;
+
+    // The free buffers.
+    private final ConcurrentLinkedQueue<byte[]> free = new ConcurrentLinkedQueue<>();
+
+    // Number of the free buffers, the size of the queue is not constant time.
+    private final AtomicInteger freeCount = new AtomicInteger();
+
+    /**
+     * The constructor
+     *
+     * @param bufferSize the size of every buffer.
+     * @param maxFree    the max number of free buffers kept.
+     */
+    public BufferPool(int bufferSize, int maxFree) {
+        this.bufferSize = bufferSize;
+        this.maxFree = maxFree;
+    }
+
+    /**
+     * Take a free buffer, or allocate a new one when there is none.
+     *
+     * @return the buffer, its content is undefined.
+     */
+    public byte[] acquire() {
+        byte[] buffer = free.poll();
+        if (buffer == null) {
+            return new byte[bufferSize];
+        }
+        freeCount.decrementAndGet();
+        return buffer;
+    }
+
+    /**
+     * Give back a buffer taken with {@link #acquire()}. The buffer must not be used any more.
+     *
+     * @param buffer the buffer.
+     */
+    public void release(byte[] buffer) {
+        if (buffer.length != bufferSize) {
+            return;
+        }
+        if (freeCount.incrementAndGet() <= maxFree) {
+            free.offer(buffer);
+        } else {
+            freeCount.decrementAndGet();
+        }
+    }
+
+    /**
+     * Getter for the number of free buffers.
+     *
+     * @return the number of buffers.
+     */
+    int getFreeCount() {
+        return freeCount.get();
+    }
+
+}
@@ -0,0 +1,45 @@
+package pl.arturkb.server.chat;
+
+import java.io.IOException;
+
+/**
+ * The chat server, either blocking or non-blocking.
+ */
+public interface ChatServer {
+
+    /**
+     * Bind the server socket.
+     *
+     * @throws IOException If an I/O error occurs
+     */
+    void bind() throws IOException;
+
+    /**
+     * Accept connections until the server is closed.
+     */
+    void serve();
+
+    /**
+     * Close the server socket.
+     *
+     * @throws IOException If an I/O error occurs
+     */
+    void close() throws IOException;
+
+    /**
+     * Shut the server down gracefully: stop accepting connections, tell every client and let the sessions write
+     * what is queued for them, then close the server.
+     *
+     * @param timeoutMillis max time the sessions are given before the server is closed.
+     * @throws IOException If an I/O error occurs
+     */
+    void shutdown(long timeoutMillis) throws IOException;
+
+    /**
+     * Getter for the port the server is bound to.
+     *
+     * @return the local port
+     */
+    int getLocalPort();
+
+}
@@ -0,0 +1,39 @@
+package pl.arturkb.server.chat;
+
+/**
+ * The connected chat client, as seen by the other clients.
+ */
+public interface ChatSession {
+
+    /**
+     * Getter for userName
+     *
+     * @return the user name, null until the name is received.
+     */
+    String getUserName();
+
+    /**
+     * Getter for client name, that is the user name prefixed with
+     * {@link ServerConstants#CHAR_THAT_NAME_CAN_NOT_CONTAIN}.
+     *
+     * @return the client name, null until the name is registered.
+     */
+    String getClientName();
+
+    /**
+     * Send encoded message to the client.
+     *
+     * @param message the message to send, shared with other recipients.
+     */
+    void sendMessage(OutboundMessage message);
+
+    /**
+     * Send message to the client.
+     *
+     * @param message the message to send.
+     */
+    default void sendMessage(String message) {
+        sendMessage(OutboundMessage.of(message));
+    }
+
+}
@@ -0,0 +1,825 @@
+package pl.arturkb.server.chat;
+
+import java.net.InetAddress;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Registry of connected clients.
+ * <p>
+ * Holds the connection slots and the map from client name to the session that claimed it, so every lookup is
+ * O(1) regardless of the number of connected clients. The slots are limited both for the whole server and for
+ * every client address.
+ * <p>
+ * Concurrency model: the registry is the only shared membership state and it needs no lock held by callers.
+ * Names are claimed and released with atomic operations of the map, which also publishes the session to every
+ * thread that finds it there. Every change bumps the membership version. Broadcasts iterate an immutable
+ * snapshot of the members that is rebuilt lazily, once per version, so a broadcast sees every session
+ * registered before it started and never one that is half registered.
+ * <p>
+ * Rooms are indexed by name and every {@link Room} keeps its own members, so a message to the room costs the size
+ * of the room, not of the server. A room is created by the first join and removed with its last member, both
+ * inside an atomic operation of the map on the room name.
+ * <p>
+ * Messages to all clients and to every room are kept in a {@link MessageHistory} of fixed size, the history of a
+ * room lives as long as the room.
+ * <p>
+ * In cluster mode the registry also holds the clients of the other nodes as {@link RemoteSession}s, so they are
+ * listed and found like local ones, and messages to all clients and to rooms are forwarded to the
+ * {@link ClusterNode}. Broadcasts and rooms hold local sessions only.
+ */
+public class ClientRegistry {
+
+    private final static Logger LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+
+    // Max connections that server will accept.
+    private final int capacity;
+
+    // Max connections from one address, 0 for no limit.
+    private final int maxConnectionsPerAddress;
+
+    // The number of messages kept in the history of the chat and of every room, 0 for none.
+    private final int historySize;
+
+    // The last messages to all clients, null when no history is kept.
+    private final MessageHistory history;
+
+    // Number of taken connection slots.
+    private final AtomicInteger takenSlots = new AtomicInteger();
+
+    // Number of taken connection slots by client address.
+    private final ConcurrentMap<InetAddress, Integer> takenSlotsPerAddress = new ConcurrentHashMap<>();
+
+    // Sessions by client name.
+    private final ConcurrentMap<String, ChatSession> sessions = new ConcurrentHashMap<>();
+
+    // Membership version, bumped after every change of sessions.
+    private final AtomicLong version = new AtomicLong();
+
+    // Members at some version, replaced as a whole.
+    private volatile Snapshot snapshot = new Snapshot(0, new ChatSession[0]);
+
+    // Rooms by name.
+    private final ConcurrentMap<String, Room> rooms = new ConcurrentHashMap<>();
+
+    // Names of rooms joined by every session.
+    private final ConcurrentMap<ChatSession, Set<String>> roomsOfSession = new ConcurrentHashMap<>();
+
+    // Clients of the other cluster nodes by client name.
+    private final ConcurrentMap<String, RemoteSession> remoteSessions = new ConcurrentHashMap<>();
+
+    // Users listed by /who, local and remote.
+    private final Roster roster = new Roster(ServerConstants.WHO_PAGE_SIZE);
+
+    // The cluster node, null when the server runs alone.
+    private volatile ClusterNode cluster;
+
+    // The durable log of sent messages, null when no log is kept.
+    private volatile MessageLog messageLog;
+
+    /**
+     * The constructor
+     *
+     * @param capacity max connections that server will accept.
+     */
+    public ClientRegistry(int capacity) {
+        this(capacity, 0);
+    }
+
+    /**
+     * The constructor
+     *
+     * @param capacity                 max connections that server will accept.
+     * @param maxConnectionsPerAddress max connections from one address, 0 for no limit.
+     */
+    public ClientRegistry(int capacity, int maxConnectionsPerAddress) {
+        this(capacity, maxConnectionsPerAddress, ServerConstants.DEFAULT_HISTORY_SIZE);
+    }
+
+    /**
+     * The constructor
+     *
+     * @param capacity                 max connections that server will accept.
+     * @param maxConnectionsPerAddress max connections from one address, 0 for no limit.
+     * @param historySize              the number of messages kept in the history of the chat and of every room, 0
+     *                                 for none.
+     */
+    public ClientRegistry(int capacity, int maxConnectionsPerAddress, int historySize) {
+        this.capacity = capacity;
+        this.maxConnectionsPerAddress = maxConnectionsPerAddress;
+        this.historySize = historySize;
+        history = historySize > 0 ? new MessageHistory(historySize) : null;
+    }
+
+    /**
+     * Take a connection slot for the client address.
+     *
+     * @param address the client address, null when unknown.
+     * @return {@link Admission#ACCEPTED} if the slot is taken, the reason of rejection otherwise.
+     */
+    public Admission acquireSlot(InetAddress address) {
+        int taken;
+        do {
+            taken = takenSlots.get();
+            if (taken >= capacity) {
+                return Admission.SERVER_FULL;
+            }
+        } while (!takenSlots.compareAndSet(taken, taken + 1));
+
+        if (address != null && maxConnectionsPerAddress > 0 && !acquireAddressSlot(address)) {
+            takenSlots.decrementAndGet();
+            return Admission.ADDRESS_LIMIT_REACHED;
+        }
+        return Admission.ACCEPTED;
+    }
+
+    /**
+     * Give back the connection slot taken with {@link #acquireSlot(InetAddress)}.
+     *
+     * @param address the client address, the same as given on acquire.
+     */
+    public void releaseSlot(InetAddress address) {
+        if (address != null && maxConnectionsPerAddress > 0) {
+            takenSlotsPerAddress.computeIfPresent(address, (key, taken) -> taken > 1 ? taken - 1 : null);
+        }
+        takenSlots.decrementAndGet();
+    }
+
+    /**
+     * Getter for the number of taken connection slots.
+     *
+     * @return the number of taken slots.
+     */
+    public int getTakenSlots() {
+        return takenSlots.get();
+    }
+
+    /**
+     * Getter for the number of slots taken by the client address.
+     *
+     * @param address the client address.
+     * @return the number of slots taken by the address.
+     */
+    public int getTakenSlots(InetAddress address) {
+        Integer taken = takenSlotsPerAddress.get(address);
+        return taken == null ? 0 : taken;
+    }
+
+    /**
+     * Getter for capacity
+     *
+     * @return max connections that server will accept.
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Take a slot of the client address.
+     *
+     * @param address the client address.
+     * @return true if the slot is taken, false if all slots of the address are taken already.
+     */
+    private boolean acquireAddressSlot(InetAddress address) {
+        boolean[] acquired = new boolean[1];
+        takenSlotsPerAddress.compute(address, (key, taken) -> {
+            int count = taken == null ? 0 : taken;
+            acquired[0] = count < maxConnectionsPerAddress;
+            return acquired[0] ? count + 1 : taken;
+        });
+        return acquired[0];
+    }
+
+    /**
+     * Setter for cluster
+     *
+     * @param cluster the cluster node, null when the server runs alone.
+     */
+    public void setCluster(ClusterNode cluster) {
+        this.cluster = cluster;
+        if (cluster == null) {
+            removeAllRemoteSessions();
+        }
+    }
+
+    /**
+     * Setter for messageLog
+     *
+     * @param messageLog the durable log of sent messages, null when no log is kept.
+     */
+    public void setMessageLog(MessageLog messageLog) {
+        this.messageLog = messageLog;
+    }
+
+    /**
+     * Atomically register the client name for the session. In cluster mode the name is announced to the other
+     * nodes, call {@link #claimClusterName(String, ChatSession)} to make sure no other node uses it.
+     *
+     * @param clientName the client name to claim.
+     * @param session    the session that claims the name.
+     * @return true if the name is registered for the session, false if the name is already used.
+     */
+    public boolean claimName(String clientName, ChatSession session) {
+        if (remoteSessions.containsKey(clientName)) {
+            return false;
+        }
+        if (sessions.putIfAbsent(clientName, session) == null) {
+            version.incrementAndGet();
+            roster.add(clientName, session);
+            ClusterNode node = cluster;
+            if (node != null) {
+                node.memberJoined(clientName);
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Register the client name for the session once the {@link NameService} of the cluster grants it. Without
+     * cluster the same as {@link #claimName(String, ChatSession)}, completed at once.
+     *
+     * @param clientName the client name to claim.
+     * @param session    the session that claims the name.
+     * @return completed with true if the name is registered for the session, false if the name is already used.
+     */
+    public CompletableFuture<Boolean> claimClusterName(String clientName, ChatSession session) {
+        ClusterNode node = cluster;
+        if (node == null || isClientNameRegistered(clientName)) {
+            return CompletableFuture.completedFuture(claimName(clientName, session));
+        }
+        NameService nameService = node.getNameService();
+        return nameService.claim(clientName).thenApply(granted -> {
+            if (!granted) {
+                return false;
+            }
+            if (claimName(clientName, session)) {
+                return true;
+            }
+            nameService.release(clientName);
+            return false;
+        });
+    }
+
+    /**
+     * Unregister the session and remove it from all rooms it joined.
+     *
+     * @param session the session to unregister.
+     */
+    public void unregister(ChatSession session) {
+        String clientName = session.getClientName();
+        if (clientName != null && sessions.remove(clientName, session)) {
+            version.incrementAndGet();
+            roster.remove(clientName, session);
+            ClusterNode node = cluster;
+            if (node != null) {
+                node.memberLeft(clientName);
+            }
+        }
+        Set<String> joined = roomsOfSession.remove(session);
+        if (joined != null) {
+            for (String roomName : joined) {
+                removeFromRoom(roomName, session);
+            }
+        }
+    }
+
+    /**
+     * Check that given clientName is registered in the system, on any node of the cluster.
+     *
+     * @param clientName the given clientName to check for.
+     * @return true if given clientName is registered, false otherwise.
+     */
+    public boolean isClientNameRegistered(String clientName) {
+        return sessions.containsKey(clientName) || remoteSessions.containsKey(clientName);
+    }
+
+    /**
+     * Find session with given client name, on any node of the cluster.
+     *
+     * @param clientName the client name.
+     * @return the session or null if the name is not registered.
+     */
+    public ChatSession find(String clientName) {
+        ChatSession session = sessions.get(clientName);
+        return session != null ? session : remoteSessions.get(clientName);
+    }
+
+    /**
+     * Getter for the names registered on this node.
+     *
+     * @return the client names of this node, a live view.
+     */
+    public Set<String> getLocalClientNames() {
+        return sessions.keySet();
+    }
+
+    /**
+     * Add client of another cluster node.
+     *
+     * @param session the remote client.
+     */
+    public void addRemoteSession(RemoteSession session) {
+        remoteSessions.put(session.getClientName(), session);
+        roster.add(session.getClientName(), session);
+    }
+
+    /**
+     * Remove client of another cluster node.
+     *
+     * @param clientName the client name.
+     * @param nodeId     the node of the client.
+     */
+    public void removeRemoteSession(String clientName, String nodeId) {
+        RemoteSession[] removed = new RemoteSession[1];
+        remoteSessions.computeIfPresent(clientName, (key, session) -> {
+            if (!session.getNodeId().equals(nodeId)) {
+                return session;
+            }
+            removed[0] = session;
+            return null;
+        });
+        if (removed[0] != null) {
+            roster.remove(clientName, removed[0]);
+        }
+    }
+
+    /**
+     * Remove all clients of the cluster node.
+     *
+     * @param nodeId the node of the clients.
+     */
+    public void removeRemoteSessions(String nodeId) {
+        Iterator<RemoteSession> iterator = remoteSessions.values().iterator();
+        while (iterator.hasNext()) {
+            RemoteSession session = iterator.next();
+            if (session.getNodeId().equals(nodeId)) {
+                iterator.remove();
+                roster.remove(session.getClientName(), session);
+            }
+        }
+    }
+
+    /**
+     * Remove all clients of other cluster nodes.
+     */
+    private void removeAllRemoteSessions() {
+        Iterator<RemoteSession> iterator = remoteSessions.values().iterator();
+        while (iterator.hasNext()) {
+            RemoteSession session = iterator.next();
+            iterator.remove();
+            roster.remove(session.getClientName(), session);
+        }
+    }
+
+    /**
+     * Getter for the number of registered clients of this node.
+     *
+     * @return the number of registered clients.
+     */
+    public int size() {
+        return sessions.size();
+    }
+
+    /**
+     * Broadcast messages to all registered clients.
+     *
+     * @param message the message to broadcast.
+     * @param sender  the sending session, that does not get the message.
+     */
+    public void broadcastMessage(String message, ChatSession sender) {
+        broadcastMessage(OutboundMessage.of(message), sender);
+    }
+
+    /**
+     * Broadcast encoded message to all registered clients, of the whole cluster. All recipients share the same
+     * bytes.
+     *
+     * @param message the message to broadcast.
+     * @param sender  the sending session, that does not get the message.
+     */
+    public void broadcastMessage(OutboundMessage message, ChatSession sender) {
+        appendToHistory(history, message);
+        appendToLog(MessageLog.BROADCAST, ServerConstants.EMPTY, message);
+        for (ChatSession session : getMembers()) {
+            if (session != sender) {
+                session.sendMessage(message);
+            }
+        }
+        ClusterNode node = cluster;
+        if (node != null) {
+            node.forwardBroadcast(message);
+        }
+    }
+
+    /**
+     * Deliver message forwarded by another cluster node to all clients of this node.
+     *
+     * @param message the message to deliver.
+     */
+    public void deliverBroadcast(OutboundMessage message) {
+        appendToHistory(history, message);
+        for (ChatSession session : getMembers()) {
+            session.sendMessage(message);
+        }
+    }
+
+    /**
+     * Deliver message forwarded by another cluster node to the client of this node.
+     *
+     * @param clientName the client name.
+     * @param message    the message to deliver.
+     */
+    public void deliverPrivate(String clientName, OutboundMessage message) {
+        ChatSession recipient = sessions.get(clientName);
+        if (recipient != null) {
+            recipient.sendMessage(message);
+        }
+    }
+
+    /**
+     * Send the message to the clientName ane echo the message to sending client.
+     *
+     * @param message    the message to be send.
+     * @param clientName the client to whom send the message.
+     * @param sender     the sending session.
+     * @return true if the message is delivered, false otherwise.
+     */
+    public boolean sendMessage(String message, String clientName, ChatSession sender) {
+        if (message == null || clientName == null) {
+            return false;
+        }
+        if (message.isEmpty() || clientName.isEmpty()) {
+            return false;
+        }
+        ChatSession recipient = find(clientName);
+        if (recipient == null || recipient == sender) {
+            return false;
+        }
+        OutboundMessage outboundMessage = OutboundMessage.of(message);
+        recipient.sendMessage(outboundMessage);
+        appendToLog(MessageLog.PRIVATE, clientName, outboundMessage);
+
+        //Echo this message to let the client know the private message was sent
+        sender.sendMessage(outboundMessage);
+        return true;
+    }
+
+    /**
+     * Add the session to the room, the room is created when it does not exist. The session is told the result and
+     * the other members are told about the new member.
+     *
+     * @param roomName the room name.
+     * @param session  the session that joins the room.
+     * @return true if the session joined the room, false otherwise.
+     */
+    public boolean joinRoom(String roomName, ChatSession session) {
+        if (!isRoomName(roomName)) {
+            session.sendMessage(OutputTexts.WRONG_ROOM_NAME_RESPONSE.render(roomName));
+            return false;
+        }
+        boolean[] joined = new boolean[1];
+        Room room = rooms.compute(roomName, (key, existing) -> {
+            Room current = existing == null ? new Room(key, historySize) : existing;
+            joined[0] = current.add(session);
+            if (joined[0]) {
+                // Recorded with the membership, so a leave of the room never misses it.
+                roomsOfSession.compute(session, (s, names) -> {
+                    Set<String> joinedRooms = names == null ? ConcurrentHashMap.newKeySet() : names;
+                    joinedRooms.add(key);
+                    return joinedRooms;
+                });
+            }
+            return current;
+        });
+        if (!joined[0]) {
+            session.sendMessage(OutputTexts.YOU_ARE_ALREADY_IN_THE_ROOM_RESPONSE.render(roomName));
+            return false;
+        }
+        if (!isRegistered(session)) {
+            // Unregistered while joining, unregister may have missed the room.
+            roomsOfSession.remove(session);
+            removeFromRoom(roomName, session);
+            return false;
+        }
+        session.sendMessage(OutputTexts.YOU_JOINED_THE_ROOM_RESPONSE.render(roomName));
+        sendToRoom(room, OutputTexts.USER_JOINED_THE_ROOM_RESPONSE.render(roomName, session.getUserName()), session);
+        return true;
+    }
+
+    /**
+     * Remove the session from the room, the room is removed with its last member. The session is told the result
+     * and the other members are told about the leaving member.
+     *
+     * @param roomName the room name.
+     * @param session  the session that leaves the room.
+     * @return true if the session left the room, false if it is not a member.
+     */
+    public boolean leaveRoom(String roomName, ChatSession session) {
+        Room room = removeFromRoom(roomName, session);
+        if (room == null) {
+            session.sendMessage(OutputTexts.YOU_ARE_NOT_IN_THE_ROOM_RESPONSE.render(roomName));
+            return false;
+        }
+        session.sendMessage(OutputTexts.YOU_LEFT_THE_ROOM_RESPONSE.render(roomName));
+        sendToRoom(room, OutputTexts.USER_LEFT_THE_ROOM_RESPONSE.render(roomName, session.getUserName()), session);
+        return true;
+    }
+
+    /**
+     * Send the message to all other members of the room. Only members can send to the room.
+     *
+     * @param message  the message to send.
+     * @param roomName the room name.
+     * @param sender   the sending session.
+     * @return true if the message is sent, false if the sender is not a member of the room.
+     */
+    public boolean sendRoomMessage(String message, String roomName, ChatSession sender) {
+        Room room = rooms.get(roomName);
+        if (room == null || !room.contains(sender)) {
+            sender.sendMessage(OutputTexts.YOU_ARE_NOT_IN_THE_ROOM_RESPONSE.render(roomName));
+            return false;
+        }
+        sendToRoom(room, OutputTexts.ROOM_MESSAGE_RESPONSE.render(roomName, message), sender);
+        return true;
+    }
+
+    /**
+     * Deliver message forwarded by another cluster node to the members of the room on this node.
+     *
+     * @param roomName the room name.
+     * @param message  the message to deliver.
+     */
+    public void deliverRoomMessage(String roomName, OutboundMessage message) {
+        Room room = rooms.get(roomName);
+        if (room != null) {
+            appendToHistory(room.getHistory(), message);
+            room.broadcastMessage(message, null);
+        }
+    }
+
+    /**
+     * Send message to the other members of the room, on this node and on the other cluster nodes.
+     *
+     * @param room    the room.
+     * @param message the message to send.
+     * @param sender  the sending session, that does not get the message.
+     */
+    private void sendToRoom(Room room, OutboundMessage message, ChatSession sender) {
+        appendToHistory(room.getHistory(), message);
+        appendToLog(MessageLog.ROOM, room.getName(), message);
+        room.broadcastMessage(message, sender);
+        ClusterNode node = cluster;
+        if (node != null) {
+            node.forwardRoomMessage(room.getName(), message);
+        }
+    }
+
+    /**
+     * Send the last messages of the chat, or of the room when the room name is given, to the session. Only members
+     * get the history of a room. When more messages are asked for than the history keeps and the message log is
+     * kept, they are read from the log, up to {@link ServerConstants#LOG_HISTORY_MAX_MESSAGES}. The log is scanned
+     * by its reader thread and the messages are sent by the given executor, the reactor of a non-blocking session.
+     *
+     * @param roomName     the room name, empty for the chat.
+     * @param count        the number of messages as typed by the client, empty for all kept messages.
+     * @param session      the session that asks for the history.
+     * @param sendExecutor sends the messages read from the log.
+     * @return the number of sent messages, completed once they are sent.
+     */
+    public CompletableFuture<Integer> sendHistory(String roomName, String count, ChatSession session, Executor sendExecutor) {
+        int requested;
+        try {
+            requested = count.isEmpty() ? Integer.MAX_VALUE : Integer.parseInt(count.trim());
+        } catch (NumberFormatException e) {
+            requested = 0;
+        }
+        if (requested <= 0) {
+            session.sendMessage(OutputTexts.WRONG_HISTORY_COUNT_RESPONSE.render(count));
+            return CompletableFuture.completedFuture(0);
+        }
+        MessageHistory source = history;
+        if (!roomName.isEmpty()) {
+            Room room = rooms.get(roomName);
+            if (room == null || !room.contains(session)) {
+                session.sendMessage(OutputTexts.YOU_ARE_NOT_IN_THE_ROOM_RESPONSE.render(roomName));
+                return CompletableFuture.completedFuture(0);
+            }
+            source = room.getHistory();
+        }
+        MessageLog log = messageLog;
+        if (log != null && !count.isEmpty() && requested > (source == null ? 0 : source.getCapacity())) {
+            // More than the history keeps, the log has the older messages of the clients of this node.
+            return log.readLast(roomName.isEmpty() ? MessageLog.BROADCAST : MessageLog.ROOM, roomName,
+                    Math.min(requested, ServerConstants.LOG_HISTORY_MAX_MESSAGES))
+                    .exceptionally(e -> {
+                        LOGGER.log(Level.WARNING, "Can't read the history from the message log", e);
+                        return Collections.emptyList();
+                    })
+                    .thenApplyAsync(messages -> {
+                        for (OutboundMessage message : messages) {
+                            session.sendMessage(message);
+                        }
+                        return sentHistory(messages.size(), session);
+                    }, sendExecutor);
+        }
+        return CompletableFuture.completedFuture(sentHistory(source == null ? 0 : source.replay(requested, session), session));
+    }
+
+    /**
+     * Tell the session when there was no message to send.
+     *
+     * @param sent    the number of sent messages.
+     * @param session the session that asked for the history.
+     * @return the number of sent messages.
+     */
+    private static int sentHistory(int sent, ChatSession session) {
+        if (sent == 0) {
+            session.sendMessage(OutputTexts.NO_HISTORY_RESPONSE.render());
+        }
+        return sent;
+    }
+
+    /**
+     * Check that the session is registered under its client name on this node.
+     *
+     * @param session the session.
+     * @return true if the session is registered, false otherwise.
+     */
+    public boolean isRegistered(ChatSession session) {
+        String clientName = session.getClientName();
+        return clientName != null && sessions.get(clientName) == session;
+    }
+
+    /**
+     * Getter for the number of sessions that are members of a room.
+     *
+     * @return the number of sessions in rooms.
+     */
+    int sessionsInRooms() {
+        return roomsOfSession.size();
+    }
+
+    /**
+     * Find room with given name.
+     *
+     * @param roomName the room name.
+     * @return the room or null if there is no such room.
+     */
+    public Room findRoom(String roomName) {
+        return rooms.get(roomName);
+    }
+
+    /**
+     * Return a list of all rooms with the number of their members.
+     *
+     * @return the encoded list of all rooms.
+     */
+    public OutboundMessage getListOfRooms() {
+        if (rooms.isEmpty()) {
+            return OutputTexts.NO_ROOMS_RESPONSE.render();
+        }
+        StringBuilder stringBuilder = new StringBuilder();
+        for (Room room : rooms.values()) {
+            stringBuilder.append(room.getName()).append(" (").append(room.size()).append(")\n");
+        }
+        return OutboundMessage.of(stringBuilder.toString());
+    }
+
+    /**
+     * Check that the name is a valid room name.
+     *
+     * @param roomName the name to check.
+     * @return true for a valid room name, false otherwise.
+     */
+    static boolean isRoomName(String roomName) {
+        if (roomName.length() < 2 || roomName.charAt(0) != ServerConstants.ROOM_PREFIX) {
+            return false;
+        }
+        for (int i = 1; i < roomName.length(); i++) {
+            if (Character.isWhitespace(roomName.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Append the message to the history, if one is kept.
+     *
+     * @param history the history, null when no history is kept.
+     * @param message the message.
+     */
+    private static void appendToHistory(MessageHistory history, OutboundMessage message) {
+        if (history != null) {
+            history.append(message);
+        }
+    }
+
+    /**
+     * Append the message to the message log, if one is kept.
+     *
+     * @param type    the kind of the message.
+     * @param target  the recipient or room name, empty for a broadcast.
+     * @param message the message.
+     */
+    private void appendToLog(byte type, String target, OutboundMessage message) {
+        MessageLog log = messageLog;
+        if (log != null) {
+            log.append(type, target, message);
+        }
+    }
+
+    /**
+     * Remove the session from the room and the room when it is left empty.
+     *
+     * @param roomName the room name.
+     * @param session  the session to remove.
+     * @return the room if the session was its member, null otherwise.
+     */
+    private Room removeFromRoom(String roomName, ChatSession session) {
+        Room[] left = new Room[1];
+        rooms.computeIfPresent(roomName, (key, room) -> {
+            if (room.remove(session)) {
+                left[0] = room;
+                roomsOfSession.computeIfPresent(session, (s, joined) -> {
+                    joined.remove(key);
+                    return joined.isEmpty() ? null : joined;
+                });
+            }
+            return room.size() == 0 ? null : room;
+        });
+        return left[0];
+    }
+
+    /**
+     * Return the first page of the list of all registered users in the system, of the whole cluster.
+     *
+     * @return the encoded page, the same bytes until a user registers or leaves.
+     */
+    public OutboundMessage getListOfActiveUsers() {
+        return roster.page(1);
+    }
+
+    /**
+     * Return the list of registered users as asked for by /who, of the whole cluster.
+     *
+     * @param argument the argument of /who: empty for the first page, {@link ServerConstants#WHO_PAGE} and the page
+     *                 number for another page, or the prefix of the user names.
+     * @return the encoded list.
+     */
+    public OutboundMessage getListOfActiveUsers(String argument) {
+        String text = argument.trim();
+        if (text.isEmpty()) {
+            return roster.page(1);
+        }
+        if (text.startsWith(ServerConstants.WHO_PAGE + " ")) {
+            try {
+                return roster.page(Integer.parseInt(text.substring(ServerConstants.WHO_PAGE.length()).trim()));
+            } catch (NumberFormatException e) {
+                // Not a page number, the names start with the text.
+            }
+        }
+        return roster.withPrefix(text);
+    }
+
+    /**
+     * Getter for the registered sessions of this node, rebuilds the snapshot when membership has changed since the last call.
+     *
+     * @return the registered sessions, not to be modified.
+     */
+    ChatSession[] getMembers() {
+        long currentVersion = version.get();
+        Snapshot current = snapshot;
+        if (current.version != currentVersion) {
+            current = new Snapshot(currentVersion, sessions.values().toArray(new ChatSession[0]));
+            snapshot = current;
+        }
+        return current.members;
+    }
+
+    /**
+     * Immutable members at given version.
+     */
+    private static final class Snapshot {
+
+        private final long version;
+
+        private final ChatSession[] members;
+
+        private Snapshot(long version, ChatSession[] members) {
+            this.version = version;
+            this.members = members;
+        }
+    }
+
+}
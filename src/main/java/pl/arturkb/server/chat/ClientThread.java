@@ -1,37 +1,74 @@
 package pl.arturkb.server.chat;
 
-import java.io.BufferedReader;
+import java.io.BufferedOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.io.PrintStream;
+import java.net.InetAddress;
 import java.net.Socket;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
- * The chat client thread.
+ * The chat client session, run on its own thread by {@link SessionExecutor}.
  */
-public class ClientThread extends Thread {
+public class ClientThread implements Runnable, ChatSession, IdleSession, DrainableSession {
 
-    // Client threads
-    private final ClientThread[] threads;
+    // The state shared by all client sessions
+    private final ServerContext context;
+
+    // Registry of connected clients
+    private final ClientRegistry registry;
+
+    // Counters of what the server does
+    private final ServerMetrics metrics;
 
     // Client socket
     private final Socket clientSocket;
 
-    // The maximum clients that is counted.
-    private final int maxClientsCount;
+    // Client address, the connection slot is taken for it.
+    private final InetAddress clientAddress;
 
     // Input stream
-    private BufferedReader dataInputStream = null;
+    private LineReader dataInputStream = null;
 
     // Output stream
     private PrintStream printStream = null;
 
-    private String clientName;
+    // Messages waiting to be written to the output stream
+    private final OutboundQueue<OutboundMessage> outbound;
+
+    // Max time a queued message waits for more messages to be written with it, in nanoseconds
+    private final long flushDelayNanos;
+
+    // Counted down when the writer task finishes
+    private final CountDownLatch writerFinished = new CountDownLatch(1);
+
+    // Parser of command lines, reused for every line
+    private final CommandParser commandParser = new CommandParser();
+
+    // Decoder of the frames of the binary protocol, null while the client speaks the text protocol
+    private FrameCodec frameDecoder;
+
+    // Rate limits of the session, null when there is no limit
+    private RateLimiter rateLimiter;
+
+    // Inactivity timer of the session, set when the session starts
+    private IdleReaper.Timer idleTimer;
+
+    // Set by the first of quit and eviction, so the client leaves the chat once
+    private final AtomicBoolean leaving = new AtomicBoolean();
+
+    // True when the session is evicted for inactivity or drained, only the connection is left to close
+    private volatile boolean closing;
 
-    private String userName;
+    // Read by other sessions through the registry
+    private volatile String clientName;
+
+    private volatile String userName;
 
     // Logger;
     private final static Logger LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
@@ -41,12 +78,16 @@ public class ClientThread extends Thread {
      * The constructor
      *
      * @param clientSocket the socket
-     * @param threads the array with chat threads.
+     * @param context the state shared by all client sessions.
      */
-    public ClientThread(Socket clientSocket, ClientThread[] threads) {
+    public ClientThread(Socket clientSocket, ServerContext context) {
         this.clientSocket = clientSocket;
-        this.threads = threads;
-        maxClientsCount = threads.length;
+        this.context = context;
+        registry = context.getRegistry();
+        metrics = context.getMetrics();
+        outbound = context.newOutboundQueue();
+        flushDelayNanos = TimeUnit.MILLISECONDS.toNanos(context.getSettings().getFlushDelayMillis());
+        clientAddress = clientSocket.getInetAddress();
     }
 
     /**
@@ -54,216 +95,301 @@ public class ClientThread extends Thread {
      */
     public void run() {
 
+        metrics.sessionOpened();
+        context.sessionStarted(this);
+        rateLimiter = context.getRateLimits().newLimiter(clientAddress);
         try {
             createInputAndOutputStreams();
+            context.getSessionExecutor().execute(this::writeMessages, Thread.currentThread().getName() + "-writer");
+            idleTimer = context.getIdleReaper().register(this);
             userName = receiveUserName();
-            if (getUserName().equals(ServerConstants.DEFAULT_NAME)) {
-                sendMessage(OutputTexts.WRONG_USER_NAME);
+            if (closing || userName == null) {
+                // The client is gone or the goodbye message is already queued, only the connection is left to close.
+            } else if (getUserName().equals(ServerConstants.DEFAULT_NAME)) {
+                sendMessage(OutputTexts.WRONG_USER_NAME_RESPONSE.render());
                 LOGGER.info(OutputTexts.WRONG_USER_NAME);
             } else {
-                sendMessage(OutputTexts.welcomeMessageForGivenUser(getUserName()));
-                registerClientName(userName);
-                broadcastMessage(OutputTexts.newUserEnteredChatMessage(getUserName()));
+                sendMessage(OutputTexts.WELCOME_RESPONSE.render(getUserName()));
+                broadcastMessage(OutputTexts.NEW_USER_ENTERED_RESPONSE.render(getUserName()));
                 mainLoop();
             }
             closeTheOutputInputSocket();
         } catch (IOException e) {
             LOGGER.severe("IOExceptions " + e.getMessage());
+        } finally {
+            if (idleTimer != null) {
+                idleTimer.cancel();
+            }
+            unRegisterClient();
+            outbound.close();
+            registry.releaseSlot(clientAddress);
+            context.getRateLimits().release(clientAddress);
+            context.sessionEnded(this);
+            metrics.sessionClosed();
         }
     }
 
     /**
-     * The main loop of chat.
+     * The main loop of chat. Runs until the client quits or the session is evicted by {@link IdleReaper} or drained.
      */
     private void mainLoop() throws IOException {
         boolean loop = true;
 
         while (loop) {
-            long startTime = System.currentTimeMillis();
-            Map<String, String> mapLine = parseLine(readMessage());
-            String command = getCommand(mapLine);
-            String clientName = getClientName(mapLine);
-            String msg = getMsg(mapLine);
+            CommandParser line = readCommand();
+            if (closing) {
+                break;
+            }
+            if (line == null) {
+                leave();
+                break;
+            }
+            metrics.messageReceived(line.getCommand());
+            if (line.getCommand() != Command.QUIT && !admitLine(line.getLength())) {
+                if (rateLimiter.getPolicy() != RateLimitPolicy.DISCONNECT) {
+                    continue;
+                }
+                leave();
+                break;
+            }
 
-            switch (command) {
+            switch (line.getCommand()) {
 
-                case ServerConstants.WHO:
-                    sendMessage(getListOfActiveUsers());
+                case WHO:
+                    sendMessage(registry.getListOfActiveUsers(line.getMsg()));
                     break;
 
-                case ServerConstants.PRIVATE:
-                    sendMessage(joinUserWithMessage(msg), clientName);
+                case PRIVATE:
+                    sendMessage(joinUserWithMessage(line.getMsg()), line.getClientName());
                     break;
 
-                case ServerConstants.ALL:
-                    broadcastMessage(joinUserWithMessage(msg));
+                case ALL:
+                    broadcastMessage(OutputTexts.CHAT_MESSAGE_RESPONSE.render(getUserName(), line.getMsg()));
                     break;
 
-                case ServerConstants.HELP:
-                    sendMessage(OutputTexts.printUsage());
+                case HELP:
+                    sendMessage(OutputTexts.USAGE_RESPONSE.render());
                     break;
 
-                case ServerConstants.QUIT:
-                    broadcastMessage(OutputTexts.userIsLeavingTheChat(getUserName()));
-                    unRegisterClient();
+                case JOIN:
+                    registry.joinRoom(line.getRoomName(), this);
+                    break;
+
+                case LEAVE:
+                    registry.leaveRoom(line.getRoomName(), this);
+                    break;
+
+                case ROOMS:
+                    sendMessage(registry.getListOfRooms());
+                    break;
+
+                case HISTORY:
+                    registry.sendHistory(line.getRoomName(), line.getMsg(), this, Runnable::run).join();
+                    break;
+
+                case STATS:
+                    sendMessage(clientAddress.isLoopbackAddress() ? OutboundMessage.of(OutputTexts.stats(metrics)) : OutputTexts.STATS_NOT_ALLOWED_RESPONSE.render());
+                    break;
+
+                case ROOM:
+                    registry.sendRoomMessage(joinUserWithMessage(line.getMsg()), line.getRoomName(), this);
+                    break;
+
+                case QUIT:
+                    leave();
                     loop = false;
                     break;
             }
-            long stopTime = System.currentTimeMillis();
-            Long inactiveTime = (stopTime - startTime) / ServerConstants.MILLISECONDS_TO_SECONDS;
-            if(inactiveTime >= ServerConstants.MAX_INACTIVE_SECONDS) {
-                sendMessage(OutputTexts.printInactiveMessage(inactiveTime));
-                broadcastMessage(OutputTexts.userIsLeavingTheChat(getUserName()));
-                unRegisterClient();
-                loop = false;
-                LOGGER.info(OutputTexts.printInactiveInfoMessage(inactiveTime, getUserName()));
-            }
-
         }
     }
 
-
     /**
-     * Return a list of all active users in the system.
+     * Apply the rate limits to the line. A throttled line waits here, so nothing more is read from the client until
+     * it is within the limits again.
      *
-     * @return the list as a string of all active users.
+     * @param length the length of the line.
+     * @return true if the line is to be handled, false if it is dropped or the client is to be disconnected.
      */
-    private String getListOfActiveUsers() {
-        StringBuilder stringBuilder = new StringBuilder();
-        for (int i = 0; i < maxClientsCount; i++) {
-            if (threads[i] != null && threads[i].getUserName() != null) {
-                stringBuilder.append(threads[i].getUserName()).append('\n');
-            }
+    private boolean admitLine(int length) {
+        if (rateLimiter == null) {
+            return true;
+        }
+        long wait = rateLimiter.admit(length, this);
+        if (wait == 0) {
+            return true;
+        }
+        metrics.lineRateLimited();
+        if (wait == RateLimiter.REJECTED) {
+            return false;
         }
+        try {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return true;
+    }
 
-        return stringBuilder.toString();
+    /**
+     * Leave the chat, unless the session is already leaving because it is evicted or drained.
+     */
+    private void leave() {
+        if (leaving.compareAndSet(false, true)) {
+            broadcastMessage(OutputTexts.USER_LEAVING_RESPONSE.render(getUserName()));
+            unRegisterClient();
+        }
     }
 
     /**
-     * Join userName with message.
+     * Evict the inactive session. The client gets the inactive message and the others are told it leaves, then the
+     * input is shut down, so the session thread stops reading and closes the connection once the messages are
+     * written.
      *
-     * @param message the message to be joined.
-     * @return joined userName with the message.
+     * @param inactiveSeconds the number of seconds the session was inactive.
      */
-    private String joinUserWithMessage(String message) {
-        return "<" + getUserName() + "> " +
-                message;
+    public void evictIdle(long inactiveSeconds) {
+        if (!leaving.compareAndSet(false, true)) {
+            return;
+        }
+        closing = true;
+        metrics.sessionEvicted();
+        sendMessage(OutputTexts.printInactiveMessage(inactiveSeconds));
+        if (getClientName() != null) {
+            broadcastMessage(OutputTexts.USER_LEAVING_RESPONSE.render(getUserName()));
+        }
+        unRegisterClient();
+        LOGGER.log(Level.INFO, OutputTexts.INACTIVE_INFO_MESSAGE, new Object[]{getClientName() != null ? getUserName() : clientAddress, inactiveSeconds});
+        shutdownInput();
     }
 
     /**
-     * Gets command from the maoLine.
+     * Drain the session when the server shuts down, the same way as {@link #evictIdle(long)}. The others are not
+     * told the client leaves, they get the notice too.
      *
-     * @param mapLine the mapLine to get command from.
-     * @return the command if exists, EMPTY command otherwise.
+     * @param notice the message for the client.
      */
-    private String getCommand(Map<String, String> mapLine) {
-        String command = mapLine.get(ServerConstants.COMMAND);
-        return command == null ? ServerConstants.EMPTY : command;
+    public void drain(OutboundMessage notice) {
+        if (!leaving.compareAndSet(false, true)) {
+            return;
+        }
+        closing = true;
+        sendMessage(notice);
+        unRegisterClient();
+        shutdownInput();
     }
 
-    private String getClientName(Map<String, String> mapLine) {
-        String clientName = mapLine.get(ServerConstants.CLIENT_NAME);
-        return clientName == null ? ServerConstants.EMPTY : clientName;
+    /**
+     * Shut down the input of the socket, the session thread blocked on reading gets the end of the input. A TLS
+     * socket of a JDK that can't shut down its input is closed instead.
+     */
+    private void shutdownInput() {
+        try {
+            clientSocket.shutdownInput();
+        } catch (UnsupportedOperationException e) {
+            try {
+                clientSocket.close();
+            } catch (IOException closeException) {
+                LOGGER.info("IOExceptions " + closeException.getMessage());
+            }
+        } catch (IOException e) {
+            LOGGER.info("IOExceptions " + e.getMessage());
+        }
     }
 
+
     /**
-     * Gets message if exists, empty string otherwise.
+     * Join userName with message.
      *
-     * @param mapLine the line map to get message from.
-     * @return message if exists, empty string otherwise.
+     * @param message the message to be joined.
+     * @return joined userName with the message.
      */
-    private String getMsg(Map<String, String> mapLine) {
-        String command = mapLine.get(ServerConstants.MSG);
-        return command == null ? ServerConstants.EMPTY : command;
+    private String joinUserWithMessage(String message) {
+        return joinUserWithMessage(getUserName(), message);
     }
 
     /**
-     * Pars line
+     * Join given userName with message.
      *
-     * @param line the line to pars.
-     * @return maps
+     * @param userName the user name that prefix the message.
+     * @param message  the message to be joined.
+     * @return joined userName with the message.
      */
-    public Map<String, String> parseLine(String line) {
-        Map<String, String> result = new HashMap<>(3);
-
-        if (line.startsWith(String.valueOf(ServerConstants.CHAR_THAT_NAME_CAN_NOT_CONTAIN))) {
-            String[] words = line.split("\\s", 2);
-            if (words.length > 1 && words[1] != null && words[0] != null) {
-                result.put(ServerConstants.COMMAND, ServerConstants.PRIVATE);
-                result.put(ServerConstants.MSG, words[1]);
-                result.put(ServerConstants.CLIENT_NAME, words[0]);
-            }
-
-        } else {
-            String[] words = line.split("\\s", 2);
-            if (words.length == 2) {
-                result.put(ServerConstants.COMMAND, words[0]);
-                result.put(ServerConstants.MSG, words[1]);
-            } else if (words.length == 1) {
-                result.put(ServerConstants.COMMAND, words[0]);
-            }
-        }
-        return result;
+    static String joinUserWithMessage(String userName, String message) {
+        return OutputTexts.CHAT_MESSAGE_RESPONSE.format(userName, message);
     }
 
     /**
-     * Create inout and output streams for the client.
+     * Create inout and output streams for the client. The output is buffered, the writer task flushes it once per
+     * batch of messages. The input is read by lines of bounded length and counts the bytes of every read from the
+     * socket.
      *
      * @throws IOException If an I/O error occurs
      */
     private void createInputAndOutputStreams() throws IOException {
-        dataInputStream = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()));
-        printStream = new PrintStream(clientSocket.getOutputStream());
+        dataInputStream = context.newLineReader(new FilterInputStream(clientSocket.getInputStream()) {
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int read = super.read(b, off, len);
+                if (read > 0) {
+                    metrics.bytesReceived(read);
+                }
+                return read;
+            }
+        });
+        printStream = new PrintStream(new BufferedOutputStream(clientSocket.getOutputStream(), ServerConstants.WRITE_BUFFER_SIZE));
     }
 
     /**
-     * Close the output, inout stream. Close the socket.
+     * Close the output, inout stream. Close the socket. Messages queued so far are written first, unless the
+     * client does not take them in {@link ServerConstants#CLOSE_FLUSH_TIMEOUT_MILLISECONDS}.
      *
      * @throws IOException IOException If an I/O error occurs
      */
     private void closeTheOutputInputSocket() throws IOException {
+        outbound.close();
+        try {
+            writerFinished.await(ServerConstants.CLOSE_FLUSH_TIMEOUT_MILLISECONDS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
         dataInputStream.close();
         printStream.close();
         clientSocket.close();
     }
 
     /**
-     * Register client name in the system.
+     * Register client name in the system. The check and the registration is one atomic step, so two clients can
+     * not register the same name. In cluster mode waits until the name is granted by the cluster.
      *
      * @param userName the user name to be registered.
+     * @return true if the name is registered, false if the name is already used.
      */
-    public synchronized void registerClientName(String userName) {
-        for (int i = 0; i < maxClientsCount; i++) {
-            if (threads[i] != null && threads[i] == this) {
-                clientName = ServerConstants.CHAR_THAT_NAME_CAN_NOT_CONTAIN + userName;
-                break;
-            }
-
+    public boolean registerClientName(String userName) {
+        String clientName = ServerConstants.CHAR_THAT_NAME_CAN_NOT_CONTAIN + userName;
+        this.userName = userName;
+        if (registry.claimClusterName(clientName, this).join()) {
+            this.clientName = clientName;
+            return true;
         }
+        return false;
     }
 
     /**
      * Unregister client from the system.
      */
-    public synchronized void unRegisterClient() {
-        for (int i = 0; i < maxClientsCount; i++) {
-            if (threads[i] == this) {
-                threads[i] = null;
-            }
-        }
+    public void unRegisterClient() {
+        registry.unregister(this);
     }
 
     /**
-     * Broadcast messages to all connected clients.
+     * Broadcast messages to all connected clients, the time of the fan-out goes to the metrics.
      *
      * @param message the message to broadcast.
      */
-    private synchronized void broadcastMessage(String message) {
-        for (int i = 0; i < maxClientsCount; i++) {
-            if (threads[i] != null && threads[i] != this && threads[i].getClientName() != null) {
-                threads[i].sendMessage(message);
-            }
-        }
+    private void broadcastMessage(OutboundMessage message) {
+        long started = System.nanoTime();
+        registry.broadcastMessage(message, this);
+        metrics.recordBroadcastFanOut(System.nanoTime() - started);
     }
 
     /**
@@ -271,7 +397,7 @@ public class ClientThread extends Thread {
      *
      * @return the user name;
      */
-    private String getUserName() {
+    public String getUserName() {
         return userName;
     }
 
@@ -285,22 +411,77 @@ public class ClientThread extends Thread {
     }
 
     /**
-     * Setter for client name.
+     * Send message to assigned client. The message is queued and written by the writer task, so the caller never
+     * waits for a slow client.
      *
-     * @param clientName the client name
+     * @param message the message to send.
      */
-    public void setClientName(String clientName) {
-        this.clientName = clientName;
+    public void sendMessage(OutboundMessage message) {
+        if (!outbound.offer(message)) {
+            LOGGER.log(Level.INFO, "Outbound queue is full, disconnecting {0}", getUserName());
+            disconnect();
+        }
     }
 
+    /**
+     * The writer task, writes queued messages to the output stream until the queue is closed. Every message that is
+     * queued, or queued within the flush delay, is written to the buffer of the stream first and all of them go to
+     * the socket with one flush.
+     */
+    private void writeMessages() {
+        try {
+            OutboundMessage message;
+            while ((message = outbound.take()) != null) {
+                metrics.recordOutboundQueueDepth(outbound.size() + 1);
+                long flushDeadline = System.nanoTime() + flushDelayNanos;
+                int batched = 0;
+                int messages = 0;
+                do {
+                    message.writeTo(getPrintStream());
+                    batched += message.length();
+                    messages++;
+                } while (batched < ServerConstants.WRITE_BUFFER_SIZE && (message = nextMessage(flushDeadline)) != null);
+                getPrintStream().flush();
+                if (getPrintStream().checkError()) {
+                    disconnect();
+                    break;
+                }
+                metrics.messagesSent(messages, batched);
+            }
+        } catch (IOException e) {
+            LOGGER.severe("IOExceptions " + e.getMessage());
+            disconnect();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            writerFinished.countDown();
+        }
+    }
 
     /**
-     * Send message to assigned client.
+     * Take the next message of the batch that is being written.
      *
-     * @param message the message to send.
+     * @param flushDeadline the time the batch is flushed at, from {@link System#nanoTime()}.
+     * @return the message or null when the batch is to be flushed.
+     * @throws InterruptedException if the writer is interrupted while waiting.
      */
-    private void sendMessage(String message) {
-        getPrintStream().println(message);
+    private OutboundMessage nextMessage(long flushDeadline) throws InterruptedException {
+        OutboundMessage message = outbound.poll();
+        if (message == null && flushDelayNanos > 0) {
+            message = outbound.poll(flushDeadline - System.nanoTime());
+        }
+        return message;
+    }
+
+    /**
+     * Close the socket, the session thread blocked on reading ends with IOException.
+     */
+    private void disconnect() {
+        try {
+            clientSocket.close();
+        } catch (IOException e) {
+            LOGGER.severe("IOExceptions " + e.getMessage());
+        }
     }
 
     /**
@@ -309,41 +490,99 @@ public class ClientThread extends Thread {
      * @param message    the message to be send.
      * @param clientName the client to whom send the message.
      */
-    private synchronized void sendMessage(String message, String clientName) {
-        if (message == null || clientName == null) {
-            return;
-        }
-        if (message.isEmpty() || clientName.isEmpty()) {
-            return;
-        }
+    private void sendMessage(String message, String clientName) {
+        registry.sendMessage(message, clientName, this);
+    }
 
-        for (int i = 0; i < maxClientsCount; i++) {
-            if (threads[i] != null && threads[i] != this && threads[i].getClientName() != null && threads[i].getClientName().equals(clientName)) {
-                threads[i].sendMessage(message);
 
-                //Echo this message to let the client know the private message was sent
-                sendMessage(message);
-                break;
+    /**
+     * Read the message from dataInoutStream. The client is told about every line that is too long and skipped.
+     *
+     * @return message, or null when the client closed the connection.
+     * @throws IOException If an I/O error occurs
+     */
+    private String readMessage() throws IOException {
+        while (true) {
+            try {
+                return getDataInputStream().readLine();
+            } catch (LineTooLongException e) {
+                sendMessage(OutputTexts.lineTooLong(e.getMaxLineLength()));
+            } finally {
+                if (idleTimer != null) {
+                    idleTimer.touch();
+                }
             }
         }
     }
 
+    /**
+     * Read the next frame of the binary protocol into frameDecoder. The client is told about every frame that is too
+     * long and skipped.
+     *
+     * @return true when the frame is read, false when the client closed the connection.
+     * @throws IOException If an I/O error occurs or the client breaks the protocol
+     */
+    private boolean readFrame() throws IOException {
+        while (true) {
+            try {
+                return getDataInputStream().readFrame(frameDecoder);
+            } catch (LineTooLongException e) {
+                sendMessage(OutputTexts.lineTooLong(e.getMaxLineLength()));
+            } finally {
+                if (idleTimer != null) {
+                    idleTimer.touch();
+                }
+            }
+        }
+    }
 
     /**
-     * Read the message from dataInoutStream.
+     * Read and parse the next command, a line or a frame depending on the protocol of the client.
      *
-     * @return message
-     * @throws IOException If an I/O error occurs
+     * @return the parsed command, or null when the client closed the connection.
+     * @throws IOException If an I/O error occurs or the client breaks the protocol
      */
-    private String readMessage() throws IOException {
-        return getDataInputStream().readLine();
+    private CommandParser readCommand() throws IOException {
+        if (frameDecoder != null) {
+            if (!readFrame()) {
+                return null;
+            }
+            return commandParser.parseFrame(frameDecoder.getOpcode(), frameDecoder.getPayload(), frameDecoder.getLength(), OutboundMessage.CHARSET);
+        }
+        String message = readMessage();
+        return message == null ? null : commandParser.parse(message);
+    }
+
+    /**
+     * Read the proposed user name. A client that sends {@link ServerConstants#BINARY_PROTOCOL} switches to the binary
+     * protocol and sends the name in a frame; a frame other than the name frame is a wrong name.
+     *
+     * @return the proposed user name, or null when the client closed the connection.
+     * @throws IOException If an I/O error occurs or the client breaks the protocol
+     */
+    private String readUserName() throws IOException {
+        if (frameDecoder == null) {
+            String line = readMessage();
+            if (line == null || !line.equals(ServerConstants.BINARY_PROTOCOL) || closing) {
+                return line;
+            }
+            frameDecoder = new FrameCodec(context.getSettings().getMaxLineLength());
+            sendMessage(OutputTexts.BINARY_PROTOCOL_ON_RESPONSE.render());
+        }
+        if (!readFrame()) {
+            return null;
+        }
+        if (frameDecoder.getOpcode() != ServerConstants.NAME_OPCODE) {
+            return ServerConstants.DEFAULT_NAME;
+        }
+        return new String(frameDecoder.getPayload(), 0, frameDecoder.getLength(), OutboundMessage.CHARSET);
     }
 
 
     /**
-     * Gets user name;
+     * Gets user name and registers it in the system;
      *
-     * @return String with user name.
+     * @return String with user name, or null when the client closed the connection.
      * @throws IOException If an I/O error occurs
      */
     public String receiveUserName() throws IOException {
@@ -352,22 +591,25 @@ public class ClientThread extends Thread {
 
         while (numberOfTries < ServerConstants.MAX_NUMBER_OF_TRIES) {
             numberOfTries++;
-            sendMessage(OutputTexts.ENTER_YOUR_NAME);
-            userName = readMessage();
+            sendMessage(OutputTexts.ENTER_YOUR_NAME_RESPONSE.render());
+            userName = readUserName();
+            if (closing) {
+                return ServerConstants.DEFAULT_NAME;
+            }
+            if (userName == null) {
+                return null;
+            }
             if (!userName.equals(ServerConstants.DEFAULT_NAME)) {
                 userName = userName.trim();
             }
             if (userName.indexOf(ServerConstants.CHAR_THAT_NAME_CAN_NOT_CONTAIN) != -1) {
-                sendMessage(OutputTexts.getTheNameShouldNotContain(ServerConstants.CHAR_THAT_NAME_CAN_NOT_CONTAIN));
+                sendMessage(OutputTexts.NAME_SHOULD_NOT_CONTAIN_RESPONSE.render());
                 userName = ServerConstants.DEFAULT_NAME;
+            } else if (userName.equals(ServerConstants.DEFAULT_NAME) || registerClientName(userName)) {
+                return userName;
             } else {
-                String clientName = ServerConstants.CHAR_THAT_NAME_CAN_NOT_CONTAIN + userName;
-                if (isClientNameRegistered(clientName)) {
-                    sendMessage(OutputTexts.userNameIsAlreadyUsed(userName));
-                    userName = ServerConstants.DEFAULT_NAME;
-                } else {
-                    return userName;
-                }
+                sendMessage(OutputTexts.USER_NAME_ALREADY_USED_RESPONSE.render(userName));
+                userName = ServerConstants.DEFAULT_NAME;
             }
 
 
@@ -375,21 +617,6 @@ public class ClientThread extends Thread {
         return userName;
     }
 
-    /**
-     * Check that given clientName is registered in the system.
-     *
-     * @param clientName the given clientName to check for.
-     * @return true if given clientName is registered, false otherwise.
-     */
-    private synchronized boolean isClientNameRegistered(String clientName) {
-        for (int i = 0; i < maxClientsCount; i++) {
-            if (threads[i] != null && threads[i].getClientName() != null && threads[i].getClientName().equals(clientName)) {
-                return true;
-            }
-        }
-        return false;
-    }
-
     /**
      * Getter for printStream
      *
@@ -413,7 +640,7 @@ public class ClientThread extends Thread {
      *
      * @param dataInputStream the dataInputStream
      */
-    public void setDataInputStream(BufferedReader dataInputStream) {
+    public void setDataInputStream(LineReader dataInputStream) {
         this.dataInputStream = dataInputStream;
     }
 
@@ -422,7 +649,7 @@ public class ClientThread extends Thread {
      *
      * @return the dataInputStream
      */
-    private BufferedReader getDataInputStream() {
+    private LineReader getDataInputStream() {
         return dataInputStream;
     }
 
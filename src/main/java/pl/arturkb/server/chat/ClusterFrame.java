@@ -0,0 +1,218 @@
+package pl.arturkb.server.chat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Frames of the link between cluster nodes.
+ * <p>
+ * A frame is its length as int, followed by the type byte and the fields of the type. Strings are written as
+ * modified UTF-8 and messages for clients as their length and encoded bytes, so a forwarded message is not
+ * encoded again. Frames are encoded once and the same bytes are queued to every peer.
+ */
+public final class ClusterFrame {
+
+    // First frame in both directions of a link: node id.
+    static final byte HELLO = 1;
+
+    // Client registered on the sending node: user name.
+    static final byte JOINED = 2;
+
+    // Client unregistered on the sending node: user name.
+    static final byte LEFT = 3;
+
+    // Message to all clients: message.
+    static final byte BROADCAST = 4;
+
+    // Message to the client of the receiving node: client name, message.
+    static final byte PRIVATE = 5;
+
+    // Message to the room members of the receiving node: room name, message.
+    static final byte ROOM = 6;
+
+    // Name claim sent to the coordinator: request id, client name.
+    static final byte CLAIM = 7;
+
+    // Answer of the coordinator: request id, granted.
+    static final byte CLAIM_RESULT = 8;
+
+    // Claimed name that is not registered after all: client name.
+    static final byte RELEASE = 9;
+
+    // The type of the frame.
+    private final byte type;
+
+    // The fields of the frame.
+    private final DataInputStream fields;
+
+    /**
+     * The constructor
+     *
+     * @param frame the frame without length.
+     */
+    private ClusterFrame(byte[] frame) {
+        type = frame[0];
+        fields = new DataInputStream(new ByteArrayInputStream(frame, 1, frame.length - 1));
+    }
+
+    /**
+     * Read one frame.
+     *
+     * @param input the stream to read from.
+     * @return the frame.
+     * @throws IOException If an I/O error occurs, {@link java.io.EOFException} at the end of stream
+     */
+    static ClusterFrame read(DataInputStream input) throws IOException {
+        int length = input.readInt();
+        if (length < 1) {
+            throw new IOException("Invalid frame length " + length);
+        }
+        byte[] frame = new byte[length];
+        input.readFully(frame);
+        return new ClusterFrame(frame);
+    }
+
+    /**
+     * Getter for type
+     *
+     * @return the type of the frame.
+     */
+    byte getType() {
+        return type;
+    }
+
+    /**
+     * Read the next string field.
+     *
+     * @return the string.
+     * @throws IOException If the frame is shorter than its type requires
+     */
+    String readString() throws IOException {
+        return fields.readUTF();
+    }
+
+    /**
+     * Read the next long field.
+     *
+     * @return the number.
+     * @throws IOException If the frame is shorter than its type requires
+     */
+    long readLong() throws IOException {
+        return fields.readLong();
+    }
+
+    /**
+     * Read the next boolean field.
+     *
+     * @return the flag.
+     * @throws IOException If the frame is shorter than its type requires
+     */
+    boolean readBoolean() throws IOException {
+        return fields.readBoolean();
+    }
+
+    /**
+     * Read the next message field.
+     *
+     * @return the message, wrapping the received bytes.
+     * @throws IOException If the frame is shorter than its type requires
+     */
+    OutboundMessage readMessage() throws IOException {
+        byte[] bytes = new byte[fields.readInt()];
+        fields.readFully(bytes);
+        return OutboundMessage.wrap(bytes);
+    }
+
+    static byte[] hello(String nodeId) {
+        return encode(HELLO, out -> out.writeUTF(nodeId));
+    }
+
+    static byte[] joined(String userName) {
+        return encode(JOINED, out -> out.writeUTF(userName));
+    }
+
+    static byte[] left(String userName) {
+        return encode(LEFT, out -> out.writeUTF(userName));
+    }
+
+    static byte[] broadcast(OutboundMessage message) {
+        return encode(BROADCAST, out -> writeMessage(out, message));
+    }
+
+    static byte[] privateMessage(String clientName, OutboundMessage message) {
+        return encode(PRIVATE, out -> {
+            out.writeUTF(clientName);
+            writeMessage(out, message);
+        });
+    }
+
+    static byte[] roomMessage(String roomName, OutboundMessage message) {
+        return encode(ROOM, out -> {
+            out.writeUTF(roomName);
+            writeMessage(out, message);
+        });
+    }
+
+    static byte[] claim(long requestId, String clientName) {
+        return encode(CLAIM, out -> {
+            out.writeLong(requestId);
+            out.writeUTF(clientName);
+        });
+    }
+
+    static byte[] claimResult(long requestId, boolean granted) {
+        return encode(CLAIM_RESULT, out -> {
+            out.writeLong(requestId);
+            out.writeBoolean(granted);
+        });
+    }
+
+    static byte[] release(String clientName) {
+        return encode(RELEASE, out -> out.writeUTF(clientName));
+    }
+
+    private static void writeMessage(DataOutputStream out, OutboundMessage message) throws IOException {
+        byte[] bytes = message.bytes();
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Encode frame with the length in front.
+     *
+     * @param type   the type of the frame.
+     * @param fields writes the fields of the frame.
+     * @return the encoded frame.
+     */
+    private static byte[] encode(byte type, Fields fields) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(0);
+            out.writeByte(type);
+            fields.write(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        byte[] frame = bytes.toByteArray();
+        int length = frame.length - 4;
+        frame[0] = (byte) (length >>> 24);
+        frame[1] = (byte) (length >>> 16);
+        frame[2] = (byte) (length >>> 8);
+        frame[3] = (byte) length;
+        return frame;
+    }
+
+    /**
+     * Writes the fields of a frame.
+     */
+    private interface Fields {
+
+        void write(DataOutputStream out) throws IOException;
+    }
+
+}
@@ -0,0 +1,480 @@
+package pl.arturkb.server.chat;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * One node of a cluster of chat servers, see {@link ServerConstants#CLUSTER_PORT_PROPERTY}.
+ * <p>
+ * Every node keeps an outbound {@link PeerLink} to each peer found by the {@link PeerDiscovery} and accepts the
+ * links of the peers on the cluster port, so between two nodes there is one connection in each direction. Nodes
+ * announce the clients that register and unregister, so every node can list, find and message the clients of
+ * the whole cluster, see {@link RemoteSession}. Messages to all clients and to rooms are encoded into a frame once
+ * and forwarded to every peer, which delivers them to its own clients. Whether a node may register a name is
+ * decided by the {@link NameService}.
+ * <p>
+ * Membership frames are sent from one thread, so a peer gets the snapshot of the members and the later changes in
+ * order. When the link from a peer breaks, its clients are removed without leave notices, the peer announces them
+ * again when it is back.
+ */
+public class ClusterNode {
+
+    // The id of this node.
+    private final String nodeId;
+
+    // The port for links from other nodes.
+    private final int port;
+
+    // Registry of local and remote clients.
+    private final ClientRegistry registry;
+
+    // Finds the peer nodes.
+    private final PeerDiscovery discovery;
+
+    // Decides who may register a name.
+    private volatile NameService nameService;
+
+    // Outbound links that are up, by peer id.
+    private final ConcurrentMap<String, PeerLink> links = new ConcurrentHashMap<>();
+
+    // All outbound links.
+    private final List<PeerLink> allLinks = new ArrayList<>();
+
+    // Inbound connections, by peer id.
+    private final ConcurrentMap<String, Socket> inbound = new ConcurrentHashMap<>();
+
+    // Accepted sockets that did not say hello yet.
+    private final Set<Socket> accepted = ConcurrentHashMap.newKeySet();
+
+    // Name claims waiting for the coordinator, by request id.
+    private final ConcurrentMap<Long, CompletableFuture<Boolean>> pendingClaims = new ConcurrentHashMap<>();
+
+    // Source of request ids.
+    private final AtomicLong requestIds = new AtomicLong();
+
+    // Sends membership frames in order and runs the timeouts.
+    private final ScheduledExecutorService events = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "cluster-events");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // The socket for links from other nodes.
+    private ServerSocket serverSocket;
+
+    private volatile boolean closed;
+
+    // Logger;
+    private final static Logger LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+
+    /**
+     * The constructor
+     *
+     * @param settings  the server settings, with the cluster port and the node id.
+     * @param registry  the registry of local clients, gets the remote clients too.
+     * @param discovery finds the peer nodes.
+     */
+    public ClusterNode(ServerSettings settings, ClientRegistry registry, PeerDiscovery discovery) {
+        nodeId = settings.getNodeId();
+        port = settings.getClusterPort();
+        this.registry = registry;
+        this.discovery = discovery;
+        nameService = new CoordinatorNameService(this, registry);
+    }
+
+    /**
+     * Setter for nameService, to be called before {@link #start()}.
+     *
+     * @param nameService decides who may register a name.
+     */
+    public void setNameService(NameService nameService) {
+        this.nameService = nameService;
+    }
+
+    /**
+     * Getter for nameService
+     *
+     * @return decides who may register a name.
+     */
+    public NameService getNameService() {
+        return nameService;
+    }
+
+    /**
+     * Getter for nodeId
+     *
+     * @return the id of this node.
+     */
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * Bind the cluster port, start accepting links of the peers and connecting to them.
+     *
+     * @throws IOException If an I/O error occurs
+     */
+    public void start() throws IOException {
+        serverSocket = new ServerSocket(port);
+        registry.setCluster(this);
+        Thread acceptor = new Thread(this::acceptLinks, "cluster-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        for (InetSocketAddress address : discovery.getPeers()) {
+            PeerLink link = new PeerLink(this, address);
+            allLinks.add(link);
+            link.start();
+        }
+        LOGGER.info("Cluster node " + nodeId + " listens on port " + port + " for " + allLinks.size() + " peers");
+    }
+
+    /**
+     * Close all links, the clients of other nodes are forgotten.
+     */
+    public void close() {
+        closed = true;
+        try {
+            if (serverSocket != null) {
+                serverSocket.close();
+            }
+        } catch (IOException e) {
+            LOGGER.severe("IOExceptions " + e.getMessage());
+        }
+        for (PeerLink link : allLinks) {
+            link.close();
+        }
+        for (Socket socket : accepted) {
+            closeQuietly(socket);
+        }
+        for (Socket socket : inbound.values()) {
+            closeQuietly(socket);
+        }
+        events.shutdownNow();
+        registry.setCluster(null);
+    }
+
+    /**
+     * Return the id of the coordinator, the node with the lowest id among this node and the linked peers.
+     *
+     * @return the id of the coordinator.
+     */
+    public String getCoordinatorId() {
+        String coordinator = nodeId;
+        for (String peerId : links.keySet()) {
+            if (peerId.compareTo(coordinator) < 0) {
+                coordinator = peerId;
+            }
+        }
+        return coordinator;
+    }
+
+    /**
+     * Getter for the ids of the linked peers.
+     *
+     * @return the ids of the peers whose outbound link is up.
+     */
+    public Set<String> getLinkedPeers() {
+        return links.keySet();
+    }
+
+    /**
+     * Ask the node to grant the name to this node.
+     *
+     * @param coordinatorId the node that decides.
+     * @param clientName    the client name.
+     * @return completed with the answer, with false when there is no answer in
+     * {@link ServerConstants#CLUSTER_CLAIM_TIMEOUT_MILLISECONDS}.
+     */
+    public CompletableFuture<Boolean> requestClaim(String coordinatorId, String clientName) {
+        CompletableFuture<Boolean> result = new CompletableFuture<>();
+        PeerLink link = links.get(coordinatorId);
+        if (link == null) {
+            result.complete(false);
+            return result;
+        }
+        long requestId = requestIds.incrementAndGet();
+        pendingClaims.put(requestId, result);
+        schedule(() -> {
+            CompletableFuture<Boolean> pending = pendingClaims.remove(requestId);
+            if (pending != null) {
+                pending.complete(false);
+            }
+        }, ServerConstants.CLUSTER_CLAIM_TIMEOUT_MILLISECONDS);
+        link.send(ClusterFrame.claim(requestId, clientName));
+        return result;
+    }
+
+    /**
+     * Give back the name granted by the node.
+     *
+     * @param coordinatorId the node that granted the name.
+     * @param clientName    the client name.
+     */
+    public void sendRelease(String coordinatorId, String clientName) {
+        PeerLink link = links.get(coordinatorId);
+        if (link != null) {
+            link.send(ClusterFrame.release(clientName));
+        }
+    }
+
+    /**
+     * Run the task later on the events thread.
+     *
+     * @param task        the task to run.
+     * @param delayMillis the delay in milliseconds.
+     */
+    public void schedule(Runnable task, long delayMillis) {
+        if (!closed) {
+            events.schedule(task, delayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Forward message for all clients to all peers.
+     *
+     * @param message the message to forward.
+     */
+    public void forwardBroadcast(OutboundMessage message) {
+        sendToAll(links.isEmpty() ? null : ClusterFrame.broadcast(message));
+    }
+
+    /**
+     * Forward message for the room to all peers, they deliver it to their members of the room.
+     *
+     * @param roomName the room name.
+     * @param message  the message to forward.
+     */
+    public void forwardRoomMessage(String roomName, OutboundMessage message) {
+        sendToAll(links.isEmpty() ? null : ClusterFrame.roomMessage(roomName, message));
+    }
+
+    /**
+     * Forward message for a client of the peer.
+     *
+     * @param peerId     the node of the client.
+     * @param clientName the client name.
+     * @param message    the message to forward.
+     */
+    public void forwardPrivate(String peerId, String clientName, OutboundMessage message) {
+        PeerLink link = links.get(peerId);
+        if (link != null) {
+            link.send(ClusterFrame.privateMessage(clientName, message));
+        }
+    }
+
+    /**
+     * Announce the client registered on this node.
+     *
+     * @param clientName the registered client name.
+     */
+    public void memberJoined(String clientName) {
+        nameService.revoke(clientName, nodeId);
+        execute(() -> sendToAll(ClusterFrame.joined(clientName.substring(1))));
+    }
+
+    /**
+     * Announce the client unregistered on this node.
+     *
+     * @param clientName the unregistered client name.
+     */
+    public void memberLeft(String clientName) {
+        execute(() -> sendToAll(ClusterFrame.left(clientName.substring(1))));
+    }
+
+    /**
+     * Called by the link when it is up, the peer gets all local clients.
+     *
+     * @param link the link.
+     */
+    void onLinkUp(PeerLink link) {
+        execute(() -> {
+            links.put(link.getPeerId(), link);
+            for (String clientName : registry.getLocalClientNames()) {
+                link.send(ClusterFrame.joined(clientName.substring(1)));
+            }
+        });
+    }
+
+    /**
+     * Called by the link when it is down.
+     *
+     * @param link the link.
+     */
+    void onLinkDown(PeerLink link) {
+        execute(() -> links.remove(link.getPeerId(), link));
+    }
+
+    /**
+     * Accept links of the peers until the node is closed.
+     */
+    private void acceptLinks() {
+        while (!closed) {
+            try {
+                Socket socket = serverSocket.accept();
+                accepted.add(socket);
+                Thread reader = new Thread(() -> readLink(socket), "cluster-inbound-" + socket.getRemoteSocketAddress());
+                reader.setDaemon(true);
+                reader.start();
+            } catch (IOException e) {
+                if (!closed) {
+                    LOGGER.severe("I/O error occurs when waiting for a cluster link " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Read the frames of the peer until its link breaks, then forget its clients.
+     *
+     * @param socket the accepted socket.
+     */
+    private void readLink(Socket socket) {
+        String peerId = null;
+        try {
+            DataInputStream input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            ClusterFrame hello = ClusterFrame.read(input);
+            if (hello.getType() != ClusterFrame.HELLO) {
+                throw new IOException("Peer did not say hello");
+            }
+            peerId = hello.readString();
+            socket.getOutputStream().write(ClusterFrame.hello(nodeId));
+            Socket previous = inbound.put(peerId, socket);
+            if (previous != null) {
+                closeQuietly(previous);
+            }
+            accepted.remove(socket);
+            // Clients of an earlier link may be gone, the peer announces its current clients.
+            registry.removeRemoteSessions(peerId);
+            while (!closed) {
+                handleFrame(peerId, ClusterFrame.read(input));
+            }
+        } catch (IOException e) {
+            if (peerId != null && !closed) {
+                LOGGER.info("Cluster link from " + peerId + " is down " + e.getMessage());
+            }
+        } finally {
+            accepted.remove(socket);
+            closeQuietly(socket);
+            if (peerId != null && inbound.remove(peerId, socket)) {
+                registry.removeRemoteSessions(peerId);
+                PeerLink link = links.get(peerId);
+                if (link != null) {
+                    // The peer may be restarted, connect again so it gets the local clients.
+                    link.reset();
+                }
+            }
+        }
+    }
+
+    /**
+     * Handle frame received from the peer.
+     *
+     * @param peerId the id of the peer.
+     * @param frame  the frame.
+     * @throws IOException If the frame is malformed
+     */
+    private void handleFrame(String peerId, ClusterFrame frame) throws IOException {
+        switch (frame.getType()) {
+
+            case ClusterFrame.JOINED:
+                RemoteSession session = new RemoteSession(this, peerId, frame.readString());
+                registry.addRemoteSession(session);
+                nameService.revoke(session.getClientName(), peerId);
+                break;
+
+            case ClusterFrame.LEFT:
+                registry.removeRemoteSession(ServerConstants.CHAR_THAT_NAME_CAN_NOT_CONTAIN + frame.readString(), peerId);
+                break;
+
+            case ClusterFrame.BROADCAST:
+                registry.deliverBroadcast(frame.readMessage());
+                break;
+
+            case ClusterFrame.PRIVATE:
+                registry.deliverPrivate(frame.readString(), frame.readMessage());
+                break;
+
+            case ClusterFrame.ROOM:
+                registry.deliverRoomMessage(frame.readString(), frame.readMessage());
+                break;
+
+            case ClusterFrame.CLAIM:
+                long requestId = frame.readLong();
+                String clientName = frame.readString();
+                boolean granted = nameService.grant(clientName, peerId);
+                PeerLink link = links.get(peerId);
+                if (link != null) {
+                    link.send(ClusterFrame.claimResult(requestId, granted));
+                } else if (granted) {
+                    nameService.revoke(clientName, peerId);
+                }
+                break;
+
+            case ClusterFrame.CLAIM_RESULT:
+                CompletableFuture<Boolean> pending = pendingClaims.remove(frame.readLong());
+                if (pending != null) {
+                    pending.complete(frame.readBoolean());
+                }
+                break;
+
+            case ClusterFrame.RELEASE:
+                nameService.revoke(frame.readString(), peerId);
+                break;
+
+            default:
+                throw new IOException("Unknown frame type " + frame.getType());
+        }
+    }
+
+    /**
+     * Queue the frame to every linked peer.
+     *
+     * @param frame the encoded frame, null when there is no peer.
+     */
+    private void sendToAll(byte[] frame) {
+        if (frame == null) {
+            return;
+        }
+        for (PeerLink link : links.values()) {
+            link.send(frame);
+        }
+    }
+
+    /**
+     * Run the task on the events thread.
+     *
+     * @param task the task to run.
+     */
+    private void execute(Runnable task) {
+        schedule(task, 0);
+    }
+
+    /**
+     * Close the socket, errors are ignored.
+     *
+     * @param socket the socket to close.
+     */
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Nothing to do, the socket is closed anyway.
+        }
+    }
+
+}
@@ -0,0 +1,152 @@
+package pl.arturkb.server.chat;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The commands of the chat protocol.
+ */
+public enum Command {
+
+    // Empty line or unknown command, ignored.
+    NONE(null, -1),
+
+    WHO(ServerConstants.WHO, 1),
+
+    // Private message, the line starts with the client name.
+    PRIVATE(null, 2),
+
+    ALL(ServerConstants.ALL, 3),
+
+    HELP(ServerConstants.HELP, 4),
+
+    QUIT(ServerConstants.QUIT, 5),
+
+    JOIN(ServerConstants.JOIN, 6),
+
+    LEAVE(ServerConstants.LEAVE, 7),
+
+    ROOMS(ServerConstants.ROOMS, 8),
+
+    // The last messages of the chat or of the room given as the first word.
+    HISTORY(ServerConstants.HISTORY, 9),
+
+    // The server metrics, only for clients on the server host.
+    STATS(ServerConstants.STATS, 10),
+
+    // Message to the room, the line starts with the room name.
+    ROOM(null, 11);
+
+    // Commands that are typed by name.
+    private static final Command[] NAMED = {WHO, ALL, HELP, QUIT, JOIN, LEAVE, ROOMS, HISTORY, STATS};
+
+    // Commands by opcode of the binary protocol, null for unknown opcodes.
+    private static final Command[] BY_OPCODE = new Command[256];
+
+    static {
+        for (Command command : values()) {
+            if (command.opcode >= 0) {
+                BY_OPCODE[command.opcode] = command;
+            }
+        }
+    }
+
+    // The command as typed by the client, null if it is not typed by name.
+    private final String text;
+
+    // The command as ASCII bytes, null if it is not typed by name.
+    private final byte[] bytes;
+
+    // The opcode of the command in the binary protocol, -1 for none.
+    private final int opcode;
+
+    /**
+     * The constructor
+     *
+     * @param text   the command as typed by the client, null if it is not typed by name.
+     * @param opcode the opcode of the command in the binary protocol, -1 for none.
+     */
+    Command(String text, int opcode) {
+        this.text = text;
+        this.opcode = opcode;
+        bytes = text == null ? null : text.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Find command by opcode of the binary protocol.
+     *
+     * @param opcode the opcode, from 0 to 255.
+     * @return the command or {@link #NONE} if there is no such command.
+     */
+    static Command ofOpcode(int opcode) {
+        Command command = BY_OPCODE[opcode];
+        return command != null ? command : NONE;
+    }
+
+    /**
+     * Getter for opcode
+     *
+     * @return the opcode of the command in the binary protocol, -1 for none.
+     */
+    public int getOpcode() {
+        return opcode;
+    }
+
+    /**
+     * Find command typed by name.
+     *
+     * @param line  the line.
+     * @param start start of the command name in the line.
+     * @param end   end of the command name in the line, exclusive.
+     * @return the command or {@link #NONE} if there is no such command.
+     */
+    static Command of(CharSequence line, int start, int end) {
+        for (Command command : NAMED) {
+            if (command.matches(line, start, end)) {
+                return command;
+            }
+        }
+        return NONE;
+    }
+
+    /**
+     * Find command typed by name.
+     *
+     * @param line  the encoded line.
+     * @param start start of the command name in the line.
+     * @param end   end of the command name in the line, exclusive.
+     * @return the command or {@link #NONE} if there is no such command.
+     */
+    static Command of(byte[] line, int start, int end) {
+        for (Command command : NAMED) {
+            if (command.matches(line, start, end)) {
+                return command;
+            }
+        }
+        return NONE;
+    }
+
+    private boolean matches(CharSequence line, int start, int end) {
+        if (end - start != text.length()) {
+            return false;
+        }
+        for (int i = 0; i < text.length(); i++) {
+            if (line.charAt(start + i) != text.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean matches(byte[] line, int start, int end) {
+        if (end - start != bytes.length) {
+            return false;
+        }
+        for (int i = 0; i < bytes.length; i++) {
+            if (line[start + i] != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
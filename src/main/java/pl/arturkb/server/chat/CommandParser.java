@@ -0,0 +1,260 @@
+package pl.arturkb.server.chat;
+
+import java.nio.charset.Charset;
+
+/**
+ * Single pass parser of command lines.
+ * <p>
+ * One parser is reused for all lines of a session: parsing only records the command and the offsets of the
+ * client name and the message in the line, no map, array or string is allocated until the name or the message
+ * is asked for. Lines can be parsed as characters or directly as bytes read from the socket.
+ * <p>
+ * The line is split on the first whitespace into the command and the message. A line that starts with
+ * {@link ServerConstants#CHAR_THAT_NAME_CAN_NOT_CONTAIN} is a private message to the client named by the first
+ * word, and a line that starts with {@link ServerConstants#ROOM_PREFIX} is a message to the room named by the
+ * first word. Both are ignored when there is no message. The message of /join and /leave is the room name. The
+ * message of /history is the number of messages, after the room name when its first word is one.
+ * <p>
+ * Frames of the binary protocol, see {@link FrameCodec}, are parsed into the same command, names and message,
+ * their payload is not scanned: the opcode is the command and the name is prefixed by its length.
+ */
+public final class CommandParser {
+
+    // The parsed line, when parsed as characters.
+    private CharSequence chars;
+
+    // The parsed line, when parsed as bytes.
+    private byte[] bytes;
+
+    // Charset of the bytes.
+    private Charset charset;
+
+    private Command command = Command.NONE;
+
+    // Length of the line or of the payload of the frame.
+    private int length;
+
+    // Start and end of the client name or the room name, start == end when there is none.
+    private int targetStart;
+    private int targetEnd;
+
+    // Start and end of the message, start == end when there is none.
+    private int msgStart;
+    private int msgEnd;
+
+    /**
+     * Parse the line.
+     *
+     * @param line the line without line terminator.
+     * @return this parser
+     */
+    public CommandParser parse(CharSequence line) {
+        chars = line;
+        bytes = null;
+        int length = line.length();
+        this.length = length;
+        int space = 0;
+        while (space < length && !isWhitespace(line.charAt(space))) {
+            space++;
+        }
+        if (length > 0 && line.charAt(0) == ServerConstants.CHAR_THAT_NAME_CAN_NOT_CONTAIN) {
+            return parseAddressed(Command.PRIVATE, 0, space, length);
+        }
+        if (length > 0 && line.charAt(0) == ServerConstants.ROOM_PREFIX) {
+            return parseAddressed(Command.ROOM, 0, space, length);
+        }
+        return parseNamed(Command.of(line, 0, space), space, length);
+    }
+
+    /**
+     * Parse the encoded line. The bytes must not change until the client name and the message are taken.
+     *
+     * @param line    the buffer with the line.
+     * @param offset  start of the line in the buffer.
+     * @param length  length of the line without line terminator.
+     * @param charset charset of the line, must encode ASCII characters as single bytes.
+     * @return this parser
+     */
+    public CommandParser parse(byte[] line, int offset, int length, Charset charset) {
+        chars = null;
+        bytes = line;
+        this.charset = charset;
+        this.length = length;
+        int end = offset + length;
+        int space = offset;
+        while (space < end && !isWhitespace(line[space])) {
+            space++;
+        }
+        if (length > 0 && line[offset] == ServerConstants.CHAR_THAT_NAME_CAN_NOT_CONTAIN) {
+            return parseAddressed(Command.PRIVATE, offset, space, end);
+        }
+        if (length > 0 && line[offset] == ServerConstants.ROOM_PREFIX) {
+            return parseAddressed(Command.ROOM, offset, space, end);
+        }
+        return parseNamed(Command.of(line, offset, space), space, end);
+    }
+
+    /**
+     * Parse the payload of a frame of the binary protocol. The bytes must not change until the client name and the
+     * message are taken.
+     *
+     * @param opcode  the opcode of the frame.
+     * @param payload the buffer that starts with the payload.
+     * @param length  the length of the payload.
+     * @param charset charset of the payload.
+     * @return this parser
+     */
+    public CommandParser parseFrame(int opcode, byte[] payload, int length, Charset charset) {
+        chars = null;
+        bytes = payload;
+        this.charset = charset;
+        this.length = length;
+        Command command = Command.ofOpcode(opcode);
+        if (command == Command.PRIVATE || command == Command.ROOM || command == Command.HISTORY) {
+            return parseAddressedFrame(command, length);
+        }
+        if (command == Command.JOIN || command == Command.LEAVE) {
+            return set(command, 0, length, 0, length);
+        }
+        return set(command, 0, 0, 0, length);
+    }
+
+    /**
+     * Getter for command
+     *
+     * @return the command, {@link Command#NONE} for empty line or unknown command.
+     */
+    public Command getCommand() {
+        return command;
+    }
+
+    /**
+     * Getter for the client name of private message.
+     *
+     * @return the client name or empty string.
+     */
+    public String getClientName() {
+        return substring(targetStart, targetEnd);
+    }
+
+    /**
+     * Getter for the room name of room message, /join, /leave and /history.
+     *
+     * @return the room name or empty string.
+     */
+    public String getRoomName() {
+        return substring(targetStart, targetEnd);
+    }
+
+    /**
+     * Getter for the message.
+     *
+     * @return the message or empty string.
+     */
+    public String getMsg() {
+        return substring(msgStart, msgEnd);
+    }
+
+    /**
+     * Getter for the length of the parsed line.
+     *
+     * @return the number of characters of the line or the number of bytes of the payload.
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Check that the line has message.
+     *
+     * @return true if the message is not empty, false otherwise.
+     */
+    public boolean hasMsg() {
+        return msgEnd > msgStart;
+    }
+
+    private CommandParser parseAddressed(Command command, int start, int space, int end) {
+        if (space == end) {
+            return set(Command.NONE, 0, 0, 0, 0);
+        }
+        return set(command, start, space, space + 1, end);
+    }
+
+    /**
+     * Parse the payload that starts with the varint length of the name. A private or room message without the name
+     * is ignored like in the text protocol, a history without it is the history of the chat.
+     */
+    private CommandParser parseAddressedFrame(Command command, int end) {
+        int targetLength = 0;
+        int index = 0;
+        for (int shift = 0; ; shift += 7) {
+            if (index == end || shift > 28) {
+                return set(Command.NONE, 0, 0, 0, 0);
+            }
+            byte b = bytes[index++];
+            targetLength |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                break;
+            }
+        }
+        if (targetLength < 0 || targetLength > end - index || (targetLength == 0 && command != Command.HISTORY)) {
+            return set(Command.NONE, 0, 0, 0, 0);
+        }
+        return set(command, index, index + targetLength, index + targetLength, end);
+    }
+
+    private CommandParser parseNamed(Command command, int space, int end) {
+        int start = Math.min(space + 1, end);
+        if (command == Command.JOIN || command == Command.LEAVE) {
+            return set(command, start, end, start, end);
+        }
+        if (command == Command.HISTORY && start < end && charAt(start) == ServerConstants.ROOM_PREFIX) {
+            int roomEnd = start;
+            while (roomEnd < end && !isWhitespace(charAt(roomEnd))) {
+                roomEnd++;
+            }
+            return set(command, start, roomEnd, Math.min(roomEnd + 1, end), end);
+        }
+        return set(command, 0, 0, start, end);
+    }
+
+    private CommandParser set(Command command, int targetStart, int targetEnd, int msgStart, int msgEnd) {
+        this.command = command;
+        this.targetStart = targetStart;
+        this.targetEnd = targetEnd;
+        this.msgStart = msgStart;
+        this.msgEnd = msgEnd;
+        return this;
+    }
+
+    private String substring(int start, int end) {
+        if (start == end) {
+            return ServerConstants.EMPTY;
+        }
+        if (bytes != null) {
+            return new String(bytes, start, end - start, charset);
+        }
+        return chars.subSequence(start, end).toString();
+    }
+
+    /**
+     * Character of the parsed line, a byte when parsed as bytes.
+     *
+     * @param index the index in the line.
+     * @return the character.
+     */
+    private int charAt(int index) {
+        return bytes != null ? bytes[index] : chars.charAt(index);
+    }
+
+    /**
+     * Check the character the same way the regular expression \s does.
+     *
+     * @param c the character.
+     * @return true for whitespace, false otherwise.
+     */
+    private static boolean isWhitespace(int c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == 0x0B || c == '\f' || c == '\r';
+    }
+
+}
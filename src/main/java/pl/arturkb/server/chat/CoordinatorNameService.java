@@ -0,0 +1,95 @@
+package pl.arturkb.server.chat;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Name service that lets one node, the coordinator, decide all claims. The coordinator is the linked node with
+ * the lowest id, see {@link ClusterNode#getCoordinatorId()}.
+ * <p>
+ * The coordinator knows the names registered in the whole cluster from the membership the nodes exchange. A name
+ * it grants is reserved until the node announces it, so two nodes can not get the same name in between. While
+ * the cluster is split every part has its own coordinator, so the same name may then be registered in both.
+ */
+public class CoordinatorNameService implements NameService {
+
+    // The local node.
+    private final ClusterNode node;
+
+    // Registry with local and remote clients.
+    private final ClientRegistry registry;
+
+    // Node ids by names granted but not announced yet.
+    private final ConcurrentMap<String, String> reserved = new ConcurrentHashMap<>();
+
+    /**
+     * The constructor
+     *
+     * @param node     the local node.
+     * @param registry the registry with local and remote clients.
+     */
+    public CoordinatorNameService(ClusterNode node, ClientRegistry registry) {
+        this.node = node;
+        this.registry = registry;
+    }
+
+    /**
+     * Claim the name at the coordinator, directly when this node is the coordinator.
+     *
+     * @param clientName the client name.
+     * @return completed with true if the name may be registered, false otherwise.
+     */
+    public CompletableFuture<Boolean> claim(String clientName) {
+        String coordinator = node.getCoordinatorId();
+        if (coordinator.equals(node.getNodeId())) {
+            return CompletableFuture.completedFuture(grant(clientName, coordinator));
+        }
+        return node.requestClaim(coordinator, clientName);
+    }
+
+    /**
+     * Give back the name to the coordinator.
+     *
+     * @param clientName the client name.
+     */
+    public void release(String clientName) {
+        String coordinator = node.getCoordinatorId();
+        if (coordinator.equals(node.getNodeId())) {
+            revoke(clientName, coordinator);
+        } else {
+            node.sendRelease(coordinator, clientName);
+        }
+    }
+
+    /**
+     * Grant the name if nobody registered or reserved it. The reservation ends when the node announces the name,
+     * gives it back, or at the latest when the claim can no longer be waited for.
+     *
+     * @param clientName the client name.
+     * @param nodeId     the node that claims the name.
+     * @return true if the name is granted to the node, false otherwise.
+     */
+    public boolean grant(String clientName, String nodeId) {
+        if (reserved.putIfAbsent(clientName, nodeId) != null) {
+            return false;
+        }
+        if (registry.isClientNameRegistered(clientName)) {
+            reserved.remove(clientName, nodeId);
+            return false;
+        }
+        node.schedule(() -> reserved.remove(clientName, nodeId), 2 * ServerConstants.CLUSTER_CLAIM_TIMEOUT_MILLISECONDS);
+        return true;
+    }
+
+    /**
+     * Remove reservation of the name.
+     *
+     * @param clientName the client name.
+     * @param nodeId     the node that claimed the name.
+     */
+    public void revoke(String clientName, String nodeId) {
+        reserved.remove(clientName, nodeId);
+    }
+
+}
@@ -0,0 +1,16 @@
+package pl.arturkb.server.chat;
+
+/**
+ * The client session that is drained when the server shuts down, see {@link ServerContext#drainSessions(long)}.
+ */
+public interface DrainableSession {
+
+    /**
+     * Tell the client the server shuts down, leave the chat and close the connection once the messages queued so
+     * far are written, without blocking the caller.
+     *
+     * @param notice the message for the client.
+     */
+    void drain(OutboundMessage notice);
+
+}
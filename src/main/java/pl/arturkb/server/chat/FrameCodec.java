@@ -0,0 +1,222 @@
+package pl.arturkb.server.chat;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * The frames of the binary protocol: one opcode byte, the length of the payload as a varint and the payload.
+ * <p>
+ * A client turns the binary protocol on by sending {@link ServerConstants#BINARY_PROTOCOL} in place of its name,
+ * everything it sends after that line is frames; the server keeps answering with text lines. The opcode is
+ * {@link ServerConstants#NAME_OPCODE} for the name, otherwise the opcode of a {@link Command}. A varint holds seven
+ * bits in a byte, the lowest first, and the high bit tells that another byte follows. The payload of a private, room
+ * or history message starts with the length of the client name or the room name as a varint and the name, written
+ * the same way as in the text protocol; the rest of it is the message.
+ * <p>
+ * The decoder collects one frame at a time and can be given the bytes in any pieces: the header is decoded byte
+ * by byte, the payload is copied as a whole. A payload longer than the max length is skipped as it comes, without
+ * keeping it.
+ */
+public final class FrameCodec {
+
+    // Initial size of the buffer of the payload, it grows up to the max length.
+    private static final int PAYLOAD_BUFFER_SIZE = 128;
+
+    // Max number of bytes of a varint of an int.
+    private static final int MAX_VARINT_BYTES = 5;
+
+    // Max number of bytes of a payload.
+    private final int maxLength;
+
+    // The payload of the frame.
+    private byte[] payload = new byte[PAYLOAD_BUFFER_SIZE];
+
+    // The opcode of the frame, -1 until it is read.
+    private int opcode = -1;
+
+    // The length of the payload, -1 until its varint is read.
+    private int length = -1;
+
+    // The length read so far and the number of its bytes.
+    private int partialLength;
+    private int lengthBytes;
+
+    // The number of payload bytes received so far.
+    private int received;
+
+    // True when the frame is complete, the next call of decode starts a new one.
+    private boolean complete;
+
+    /**
+     * The constructor
+     *
+     * @param maxLength the max number of bytes of a payload.
+     */
+    public FrameCodec(int maxLength) {
+        this.maxLength = maxLength;
+    }
+
+    /**
+     * Decode the bytes of the input up to the end of the frame.
+     *
+     * @param input the received bytes, the decoded ones are consumed.
+     * @return true when the frame is complete, false when it needs more bytes.
+     * @throws IOException If the length of the frame is not a varint of an int
+     */
+    public boolean decode(ByteBuffer input) throws IOException {
+        if (complete) {
+            reset();
+        }
+        while (length < 0 && input.hasRemaining()) {
+            byte b = input.get();
+            if (opcode < 0) {
+                opcode = b & 0xFF;
+                continue;
+            }
+            partialLength |= (b & 0x7F) << (7 * lengthBytes++);
+            if (b >= 0) {
+                length = partialLength;
+                if (length < 0) {
+                    throw new IOException("Frame length is negative");
+                }
+            } else if (lengthBytes == MAX_VARINT_BYTES) {
+                throw new IOException("Frame length is longer than " + MAX_VARINT_BYTES + " bytes");
+            }
+        }
+        if (length < 0) {
+            return false;
+        }
+        int count = Math.min(input.remaining(), length - received);
+        if (length <= maxLength) {
+            if (payload.length < length) {
+                payload = Arrays.copyOf(payload, Math.max(length, Math.min(maxLength, payload.length * 2)));
+            }
+            input.get(payload, received, count);
+        } else {
+            input.position(input.position() + count);
+        }
+        received += count;
+        complete = received == length;
+        return complete;
+    }
+
+    /**
+     * Getter for the opcode of the complete frame.
+     *
+     * @return the opcode.
+     */
+    public int getOpcode() {
+        return opcode;
+    }
+
+    /**
+     * Getter for the payload of the complete frame, the buffer is reused by the next frame.
+     *
+     * @return the buffer that starts with the payload.
+     */
+    public byte[] getPayload() {
+        return payload;
+    }
+
+    /**
+     * Getter for the length of the payload.
+     *
+     * @return the number of bytes of the payload.
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Check that the payload was longer than the max length, it is skipped.
+     *
+     * @return true if the payload is skipped, false otherwise.
+     */
+    public boolean isTooLong() {
+        return length > maxLength;
+    }
+
+    /**
+     * Getter for maxLength
+     *
+     * @return the max number of bytes of a payload.
+     */
+    public int getMaxLength() {
+        return maxLength;
+    }
+
+    /**
+     * Encode the frame, for the clients of the binary protocol.
+     *
+     * @param opcode  the opcode.
+     * @param payload the payload.
+     * @return the encoded frame.
+     */
+    public static byte[] encode(int opcode, byte[] payload) {
+        byte[] frame = new byte[1 + varintLength(payload.length) + payload.length];
+        frame[0] = (byte) opcode;
+        int offset = writeVarint(payload.length, frame, 1);
+        System.arraycopy(payload, 0, frame, offset, payload.length);
+        return frame;
+    }
+
+    /**
+     * Encode the payload of a private, room or history message.
+     *
+     * @param target  the client name or the room name, encoded.
+     * @param message the message, encoded.
+     * @return the encoded payload.
+     */
+    public static byte[] addressedPayload(byte[] target, byte[] message) {
+        byte[] payload = new byte[varintLength(target.length) + target.length + message.length];
+        int offset = writeVarint(target.length, payload, 0);
+        System.arraycopy(target, 0, payload, offset, target.length);
+        System.arraycopy(message, 0, payload, offset + target.length, message.length);
+        return payload;
+    }
+
+    /**
+     * Count the bytes of the varint.
+     *
+     * @param value the value, not negative.
+     * @return the number of bytes.
+     */
+    static int varintLength(int value) {
+        int bytes = 1;
+        while ((value >>>= 7) != 0) {
+            bytes++;
+        }
+        return bytes;
+    }
+
+    /**
+     * Write the varint into the array.
+     *
+     * @param value  the value, not negative.
+     * @param bytes  the array to write into.
+     * @param offset the index of the first byte.
+     * @return the index after the last byte.
+     */
+    static int writeVarint(int value, byte[] bytes, int offset) {
+        while ((value & ~0x7F) != 0) {
+            bytes[offset++] = (byte) (value & 0x7F | 0x80);
+            value >>>= 7;
+        }
+        bytes[offset++] = (byte) value;
+        return offset;
+    }
+
+    /**
+     * Forget the complete frame.
+     */
+    private void reset() {
+        opcode = -1;
+        length = -1;
+        partialLength = 0;
+        lengthBytes = 0;
+        received = 0;
+        complete = false;
+    }
+
+}
@@ -0,0 +1,199 @@
+package pl.arturkb.server.chat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Logger;
+
+/**
+ * Evicts client sessions that are inactive too long, for all sessions of one server from one thread.
+ * <p>
+ * The timers sit in a hashed timing wheel with one slot per tick, large enough to hold the whole inactivity
+ * timeout. Activity only stores the time in the timer, the wheel is not touched. When the reaper reaches the slot
+ * of a timer it checks the stored time: the timer is expired and its session evicted, or it moves to the slot of
+ * its new deadline. So every timer is looked at about once per timeout, however often its session is active, and
+ * the sessions expired in one tick are evicted together.
+ */
+public class IdleReaper implements Runnable {
+
+    // Max inactivity of a session, in milliseconds.
+    private final long timeoutMillis;
+
+    // Duration of one tick of the wheel, in milliseconds.
+    private final long tickMillis;
+
+    // Slots of the wheel, used by the reaper thread only.
+    private final List<List<Timer>> wheel;
+
+    // Timers registered since the last tick, not in the wheel yet.
+    private final Queue<Timer> registered = new ConcurrentLinkedQueue<>();
+
+    // Time of the last tick, the clock that timers read on activity.
+    private volatile long now = System.currentTimeMillis();
+
+    // The last tick whose slot was processed.
+    private long processedTick;
+
+    // True once the reaper thread is started.
+    private final AtomicBoolean started = new AtomicBoolean();
+
+    // The reaper thread.
+    private final Thread thread;
+
+    // Logger;
+    private final static Logger LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+
+    /**
+     * The constructor
+     *
+     * @param timeoutMillis max inactivity of a session, in milliseconds.
+     * @param tickMillis    duration of one tick of the wheel, the precision of eviction, in milliseconds.
+     */
+    public IdleReaper(long timeoutMillis, long tickMillis) {
+        this.timeoutMillis = timeoutMillis;
+        this.tickMillis = tickMillis;
+        int slots = Integer.highestOneBit((int) (timeoutMillis / tickMillis + 1)) * 2;
+        wheel = new ArrayList<>(slots);
+        for (int i = 0; i < slots; i++) {
+            wheel.add(new ArrayList<>());
+        }
+        processedTick = now / tickMillis;
+        thread = new Thread(this, "idle-reaper");
+        thread.setDaemon(true);
+    }
+
+    /**
+     * Start tracking inactivity of the session, the session is active now. The reaper thread is started with the
+     * first session.
+     *
+     * @param session the session to track.
+     * @return the timer of the session.
+     */
+    public Timer register(IdleSession session) {
+        Timer timer = new Timer(session);
+        registered.add(timer);
+        if (!started.get() && started.compareAndSet(false, true)) {
+            thread.start();
+        }
+        return timer;
+    }
+
+    /**
+     * Stop the reaper thread, sessions are not evicted any more.
+     */
+    public void stop() {
+        thread.interrupt();
+    }
+
+    /**
+     * The main method for the reaper thread.
+     */
+    public void run() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                Thread.sleep(tickMillis);
+                tick(System.currentTimeMillis());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Advance the wheel to the given time and evict sessions whose timers expired.
+     *
+     * @param currentTime the current time, in milliseconds.
+     */
+    void tick(long currentTime) {
+        now = currentTime;
+        long currentTick = currentTime / tickMillis;
+        Timer timer;
+        while ((timer = registered.poll()) != null) {
+            schedule(timer, currentTick);
+        }
+
+        List<Timer> expired = new ArrayList<>();
+        // Slots behind by more than one turn of the wheel are the same slots again.
+        processedTick = Math.max(processedTick, currentTick - wheel.size());
+        while (processedTick < currentTick) {
+            processedTick++;
+            List<Timer> slot = wheel.get((int) (processedTick & (wheel.size() - 1)));
+            for (int i = 0; i < slot.size(); i++) {
+                timer = slot.get(i);
+                if (timer.cancelled) {
+                    continue;
+                }
+                if (timer.lastActivity + timeoutMillis <= currentTime) {
+                    expired.add(timer);
+                } else {
+                    schedule(timer, processedTick);
+                }
+            }
+            slot.clear();
+        }
+
+        for (Timer idle : expired) {
+            idle.cancelled = true;
+            long inactiveSeconds = (currentTime - idle.lastActivity) / ServerConstants.MILLISECONDS_TO_SECONDS;
+            try {
+                idle.session.evictIdle(inactiveSeconds);
+            } catch (RuntimeException e) {
+                LOGGER.severe("Can't evict inactive session " + e);
+            }
+        }
+    }
+
+    /**
+     * Put the timer into the slot of its deadline, but not before the next tick.
+     *
+     * @param timer       the timer to schedule.
+     * @param currentTick the tick being processed.
+     */
+    private void schedule(Timer timer, long currentTick) {
+        long deadlineTick = (timer.lastActivity + timeoutMillis + tickMillis - 1) / tickMillis;
+        long tick = Math.max(deadlineTick, currentTick + 1);
+        wheel.get((int) (tick & (wheel.size() - 1))).add(timer);
+    }
+
+    /**
+     * The inactivity timer of one session.
+     */
+    public class Timer {
+
+        // The tracked session.
+        private final IdleSession session;
+
+        // Time of the last activity, by the clock of the reaper.
+        private volatile long lastActivity = now;
+
+        // True when the session is closed or evicted.
+        private volatile boolean cancelled;
+
+        /**
+         * The constructor
+         *
+         * @param session the tracked session.
+         */
+        private Timer(IdleSession session) {
+            this.session = session;
+        }
+
+        /**
+         * The session is active now.
+         */
+        public void touch() {
+            lastActivity = now;
+        }
+
+        /**
+         * Stop tracking the session, called when it is closed.
+         */
+        public void cancel() {
+            cancelled = true;
+        }
+
+    }
+
+}
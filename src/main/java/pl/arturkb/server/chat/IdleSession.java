@@ -0,0 +1,16 @@
+package pl.arturkb.server.chat;
+
+/**
+ * The client session that {@link IdleReaper} evicts when it is inactive too long.
+ */
+public interface IdleSession {
+
+    /**
+     * Called on the reaper thread when the session was inactive for the max allowed time. The session should tell
+     * the client, leave the chat and close the connection, without blocking the reaper.
+     *
+     * @param inactiveSeconds the number of seconds the session was inactive.
+     */
+    void evictIdle(long inactiveSeconds);
+
+}
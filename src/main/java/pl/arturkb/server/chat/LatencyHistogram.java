@@ -0,0 +1,128 @@
+package pl.arturkb.server.chat;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of latencies in the style of HdrHistogram, safe to record into from many threads.
+ * <p>
+ * Values below 128 get a bucket each. Above that every power of two is split into 64 linear buckets, so a value
+ * is known with a relative error below 1/64 and the whole range of long fits into a few thousand counters. The
+ * totals are striped adders, so threads that record at the same time do not fight over one counter.
+ */
+public class LatencyHistogram {
+
+    // Number of bits of the value that select the linear bucket within a power of two.
+    private static final int SUB_BUCKET_BITS = 6;
+
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+    // Counters of values, indexed by bucket.
+    private final AtomicLongArray counts = new AtomicLongArray(bucketIndex(Long.MAX_VALUE) + 1);
+
+    private final LongAdder totalCount = new LongAdder();
+
+    private final LongAdder totalValue = new LongAdder();
+
+    private final AtomicLong maxValue = new AtomicLong();
+
+    /**
+     * Record the value, negative values are recorded as 0.
+     *
+     * @param value the value to record.
+     */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        counts.incrementAndGet(bucketIndex(value));
+        totalCount.increment();
+        totalValue.add(value);
+        long max = maxValue.get();
+        while (value > max && !maxValue.compareAndSet(max, value)) {
+            max = maxValue.get();
+        }
+    }
+
+    /**
+     * Getter for totalCount
+     *
+     * @return the number of recorded values.
+     */
+    public long getCount() {
+        return totalCount.sum();
+    }
+
+    /**
+     * Getter for maxValue
+     *
+     * @return the largest recorded value, 0 when nothing is recorded.
+     */
+    public long getMax() {
+        return maxValue.get();
+    }
+
+    /**
+     * Return the mean of recorded values.
+     *
+     * @return the mean, 0 when nothing is recorded.
+     */
+    public double getMean() {
+        long count = totalCount.sum();
+        return count == 0 ? 0 : (double) totalValue.sum() / count;
+    }
+
+    /**
+     * Return the value that the given percentage of recorded values is lower than or equal to. The value is the
+     * highest one of its bucket, but never higher than the largest recorded value.
+     *
+     * @param percentile the percentile, from 0 to 100.
+     * @return the value at the percentile, 0 when nothing is recorded.
+     */
+    public long getValueAtPercentile(double percentile) {
+        long count = totalCount.sum();
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(Math.min(percentile, 100.0) / 100.0 * count));
+        long seen = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(highestValueOfBucket(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    /**
+     * Return the bucket of the value.
+     *
+     * @param value the value, not negative.
+     * @return the bucket index.
+     */
+    static int bucketIndex(long value) {
+        if (value < 2 * SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return shift * SUB_BUCKET_COUNT + (int) (value >>> shift);
+    }
+
+    /**
+     * Return the highest value that falls into the bucket.
+     *
+     * @param index the bucket index.
+     * @return the highest value of the bucket.
+     */
+    static long highestValueOfBucket(int index) {
+        if (index < 2 * SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = index / SUB_BUCKET_COUNT - 1;
+        long subBucket = index % SUB_BUCKET_COUNT + SUB_BUCKET_COUNT;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+}
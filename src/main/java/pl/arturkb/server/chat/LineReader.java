@@ -0,0 +1,190 @@
+package pl.arturkb.server.chat;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Reads the lines of a client from its input stream, a line ends with \n, \r or \r\n like in
+ * {@link java.io.BufferedReader#readLine()}.
+ * <p>
+ * Unlike BufferedReader a line is at most the max line length long: the bytes of a longer line are skipped as they
+ * come, without keeping them, so the memory of the reader never grows over its read buffer, taken from a
+ * {@link BufferPool}, and the max line length. A client that turned the binary protocol on is read by frames,
+ * from the same read buffer, so the frames sent right after the last line are not lost.
+ */
+public class LineReader implements Closeable {
+
+    // Initial size of the buffer of the line, it grows up to the max line length.
+    private static final int LINE_BUFFER_SIZE = 128;
+
+    // The input stream of the client.
+    private final InputStream in;
+
+    // The pool the read buffer is given back to.
+    private final BufferPool pool;
+
+    // Max number of bytes of a line.
+    private final int maxLineLength;
+
+    // Charset the lines are decoded with.
+    private final Charset charset;
+
+    // The bytes read from the input, null when the reader is closed.
+    private byte[] readBuffer;
+
+    // Position of the next byte to handle and the end of the read bytes in readBuffer.
+    private int position;
+    private int limit;
+
+    // The line being read.
+    private byte[] lineBuffer = new byte[LINE_BUFFER_SIZE];
+
+    // True when the last line ended with \r, so \n that follows is not an empty line.
+    private boolean skipLineFeed;
+
+    // The read buffer as the input of the frame decoder, created with the first frame.
+    private ByteBuffer frameInput;
+
+    /**
+     * The constructor
+     *
+     * @param in            the input stream of the client.
+     * @param pool          the pool of read buffers.
+     * @param maxLineLength the max number of bytes of a line.
+     * @param charset       the charset the lines are decoded with.
+     */
+    public LineReader(InputStream in, BufferPool pool, int maxLineLength, Charset charset) {
+        this.in = in;
+        this.pool = pool;
+        this.maxLineLength = maxLineLength;
+        this.charset = charset;
+        readBuffer = pool.acquire();
+    }
+
+    /**
+     * Read the next line. A line longer than the max line length is read to its end and skipped.
+     *
+     * @return the line without its end, or null at the end of the input.
+     * @throws LineTooLongException when the line was longer than the max line length, the next line can be read.
+     * @throws IOException          If an I/O error occurs
+     */
+    public String readLine() throws IOException {
+        int lineLength = 0;
+        boolean tooLong = false;
+        while (true) {
+            if (position == limit && !fill()) {
+                if (lineLength == 0 && !tooLong) {
+                    return null;
+                }
+                break;
+            }
+            if (skipLineFeed) {
+                skipLineFeed = false;
+                if (readBuffer[position] == '\n') {
+                    position++;
+                    continue;
+                }
+            }
+            int end = position;
+            while (end < limit && readBuffer[end] != '\n' && readBuffer[end] != '\r') {
+                end++;
+            }
+            int length = end - position;
+            if (tooLong || lineLength + length > maxLineLength) {
+                tooLong = true;
+            } else {
+                if (lineLength + length > lineBuffer.length) {
+                    lineBuffer = Arrays.copyOf(lineBuffer, Math.min(maxLineLength, Math.max(lineBuffer.length * 2, lineLength + length)));
+                }
+                System.arraycopy(readBuffer, position, lineBuffer, lineLength, length);
+                lineLength += length;
+            }
+            position = end;
+            if (end < limit) {
+                skipLineFeed = readBuffer[position++] == '\r';
+                break;
+            }
+        }
+        if (tooLong) {
+            throw new LineTooLongException(maxLineLength);
+        }
+        return new String(lineBuffer, 0, lineLength, charset);
+    }
+
+    /**
+     * Read the next frame of the binary protocol. A frame longer than the max length of the decoder is read to its
+     * end and skipped.
+     *
+     * @param decoder the decoder that collects the frame.
+     * @return true when the frame is in the decoder, false at the end of the input.
+     * @throws LineTooLongException when the payload was longer than the max length, the next frame can be read.
+     * @throws IOException          If an I/O error occurs or the frame length is not a varint
+     */
+    public boolean readFrame(FrameCodec decoder) throws IOException {
+        while (true) {
+            if (position == limit && !fill()) {
+                return false;
+            }
+            if (skipLineFeed) {
+                skipLineFeed = false;
+                if (readBuffer[position] == '\n') {
+                    position++;
+                    continue;
+                }
+            }
+            if (frameInput == null) {
+                frameInput = ByteBuffer.wrap(readBuffer);
+            }
+            frameInput.limit(limit).position(position);
+            boolean complete = decoder.decode(frameInput);
+            position = frameInput.position();
+            if (complete) {
+                if (decoder.isTooLong()) {
+                    throw new LineTooLongException(decoder.getMaxLength());
+                }
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Close the input stream and give the read buffer back to the pool.
+     *
+     * @throws IOException If an I/O error occurs
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            in.close();
+        } finally {
+            if (readBuffer != null) {
+                pool.release(readBuffer);
+                readBuffer = null;
+            }
+        }
+    }
+
+    /**
+     * Read more bytes from the input into the read buffer.
+     *
+     * @return true if bytes are read, false at the end of the input.
+     * @throws IOException If an I/O error occurs
+     */
+    private boolean fill() throws IOException {
+        if (readBuffer == null) {
+            return false;
+        }
+        int read = in.read(readBuffer, 0, readBuffer.length);
+        if (read <= 0) {
+            return false;
+        }
+        position = 0;
+        limit = read;
+        return true;
+    }
+
+}
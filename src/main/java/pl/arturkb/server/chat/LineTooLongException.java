@@ -0,0 +1,35 @@
+package pl.arturkb.server.chat;
+
+import java.io.IOException;
+
+/**
+ * Signals that a line of the client is longer than the max line length. The line is skipped, reading continues
+ * with the next line.
+ */
+public class LineTooLongException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    // The max line length in bytes.
+    private final int maxLineLength;
+
+    /**
+     * The constructor
+     *
+     * @param maxLineLength the max line length in bytes.
+     */
+    public LineTooLongException(int maxLineLength) {
+        super("Line longer than " + maxLineLength + " bytes");
+        this.maxLineLength = maxLineLength;
+    }
+
+    /**
+     * Getter for maxLineLength
+     *
+     * @return the max line length in bytes.
+     */
+    public int getMaxLineLength() {
+        return maxLineLength;
+    }
+
+}
@@ -0,0 +1,226 @@
+package pl.arturkb.server.chat;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * One simulated client of the {@link LoadGenerator}.
+ * <p>
+ * The name handshake runs on the calling thread. After it the client reads on its own thread and reports the
+ * latency of every message of the load generator it receives. Messages are sent by one sender thread of the load
+ * generator only.
+ */
+public class LoadClient implements Runnable {
+
+    // The load generator that the client reports to.
+    private final LoadGenerator generator;
+
+    // The user name of the client.
+    private final String userName;
+
+    // The client socket.
+    private final Socket socket;
+
+    private final BufferedReader input;
+
+    private final OutputStream output;
+
+    // Prefix of messages the client sent itself, the server echoes private messages back.
+    private final String ownMessagePrefix;
+
+    // Send times of /who requests that are not answered yet.
+    private final Queue<Long> pendingWho = new ConcurrentLinkedQueue<>();
+
+    // True when the client is logged in and the connection is not lost.
+    private final AtomicBoolean active = new AtomicBoolean();
+
+    /**
+     * The constructor
+     *
+     * @param generator the load generator that the client reports to.
+     * @param userName  the user name of the client.
+     * @param socket    the connected socket.
+     * @throws IOException If an I/O error occurs
+     */
+    public LoadClient(LoadGenerator generator, String userName, Socket socket) throws IOException {
+        this.generator = generator;
+        this.userName = userName;
+        this.socket = socket;
+        input = new BufferedReader(new InputStreamReader(socket.getInputStream(), OutboundMessage.CHARSET));
+        output = socket.getOutputStream();
+        ownMessagePrefix = ClientThread.joinUserWithMessage(userName, ServerConstants.EMPTY);
+    }
+
+    /**
+     * Go through the name handshake of the server.
+     *
+     * @return true if the server welcomed the client, false if it asked for another name or rejected the connection.
+     * @throws IOException If an I/O error occurs
+     */
+    public boolean login() throws IOException {
+        socket.setSoTimeout(ServerConstants.LOAD_HANDSHAKE_TIMEOUT_MILLISECONDS);
+        if (!OutputTexts.ENTER_YOUR_NAME.equals(input.readLine())) {
+            return false;
+        }
+        write(userName);
+        String welcome = OutputTexts.welcomeMessageForGivenUser(userName);
+        if (!welcome.substring(0, welcome.indexOf('\n')).equals(input.readLine())) {
+            return false;
+        }
+        input.readLine();
+        socket.setSoTimeout(0);
+        active.set(true);
+        return true;
+    }
+
+    /**
+     * Read until the connection is closed and report the received messages of the load generator.
+     */
+    public void run() {
+        try {
+            String line;
+            while ((line = input.readLine()) != null) {
+                onLine(line, System.nanoTime());
+            }
+        } catch (IOException e) {
+            // Reported as a lost session below.
+        }
+        lost();
+    }
+
+    /**
+     * Send message to all users.
+     *
+     * @param sendTime the time the message is sent at, from {@link System#nanoTime()}.
+     * @return true if the message is sent, false if the connection is lost.
+     */
+    public boolean sendToAll(long sendTime) {
+        return send(ServerConstants.ALL + " " + ServerConstants.LOAD_MESSAGE_MARKER + sendTime);
+    }
+
+    /**
+     * Send private message.
+     *
+     * @param recipient the recipient of the message.
+     * @param sendTime  the time the message is sent at, from {@link System#nanoTime()}.
+     * @return true if the message is sent, false if the connection is lost.
+     */
+    public boolean sendPrivate(LoadClient recipient, long sendTime) {
+        return send(ServerConstants.CHAR_THAT_NAME_CAN_NOT_CONTAIN + recipient.userName + " " + ServerConstants.LOAD_MESSAGE_MARKER + sendTime);
+    }
+
+    /**
+     * Ask for the users whose names start with the user name of the client, so the answer lists it whatever the
+     * number of users is.
+     *
+     * @param sendTime the time the request is sent at, from {@link System#nanoTime()}.
+     * @return true if the request is sent, false if the connection is lost.
+     */
+    public boolean sendWho(long sendTime) {
+        pendingWho.add(sendTime);
+        return send(ServerConstants.WHO + " " + userName);
+    }
+
+    /**
+     * Close the connection without reporting it as lost.
+     */
+    public void close() {
+        active.set(false);
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Nothing to do, the client is closed anyway.
+        }
+    }
+
+    /**
+     * Check that the client is logged in and the connection is not lost.
+     *
+     * @return true if the client is active, false otherwise.
+     */
+    public boolean isActive() {
+        return active.get();
+    }
+
+    /**
+     * Getter for userName
+     *
+     * @return the user name;
+     */
+    public String getUserName() {
+        return userName;
+    }
+
+    /**
+     * Handle received line. Every /who answer lists the user name of the client exactly once, so the line with the
+     * user name completes the oldest /who request.
+     *
+     * @param line        the received line.
+     * @param receiveTime the time the line is received at, from {@link System#nanoTime()}.
+     */
+    private void onLine(String line, long receiveTime) {
+        if (line.equals(userName)) {
+            Long sendTime = pendingWho.poll();
+            if (sendTime != null) {
+                generator.onWhoAnswered(receiveTime - sendTime);
+            }
+            return;
+        }
+        if (line.startsWith(ownMessagePrefix)) {
+            return;
+        }
+        int marker = line.indexOf(ServerConstants.LOAD_MESSAGE_MARKER);
+        if (marker != -1) {
+            try {
+                long sendTime = Long.parseLong(line.substring(marker + ServerConstants.LOAD_MESSAGE_MARKER.length()));
+                generator.onMessageDelivered(receiveTime - sendTime);
+            } catch (NumberFormatException e) {
+                // Not a message of the load generator.
+            }
+        }
+    }
+
+    /**
+     * Send line to the server, the client is lost if the line can't be written.
+     *
+     * @param line the line to send.
+     * @return true if the line is sent, false if the connection is lost.
+     */
+    private boolean send(String line) {
+        try {
+            write(line);
+            return true;
+        } catch (IOException e) {
+            lost();
+            close();
+            return false;
+        }
+    }
+
+    /**
+     * Write line to the server with a single write.
+     *
+     * @param line the line to write.
+     * @throws IOException If an I/O error occurs
+     */
+    private void write(String line) throws IOException {
+        output.write((line + '\n').getBytes(OutboundMessage.CHARSET));
+        output.flush();
+    }
+
+    /**
+     * Report the client as lost, once.
+     */
+    private void lost() {
+        if (active.compareAndSet(true, false)) {
+            generator.onSessionLost(this);
+        }
+    }
+
+}
@@ -0,0 +1,406 @@
+package pl.arturkb.server.chat;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Logger;
+
+/**
+ * Load generator for capacity planning of the chat server.
+ * <p>
+ * Logs in the configured number of {@link LoadClient}s and sends a mix of /all, private and /who messages at the
+ * configured rate. Every message carries the time it is due to be sent by the schedule, not the time it was
+ * actually written, so a stalled server shows up in the latency instead of slowing the load down. At the end the
+ * throughput, the percentiles of delivery and /who latency, the messages that were never delivered and the failed
+ * sessions are reported.
+ * <p>
+ * Usage: {@code java [-Dchat.load.<property>=<value> ...] -cp chat-server.jar pl.arturkb.server.chat.LoadGenerator
+ * [port]}. Without a port the server is started in the same JVM, with the server settings from system properties.
+ */
+public class LoadGenerator {
+
+    // The settings of the load.
+    private final LoadSettings settings;
+
+    // The address of the server.
+    private final InetAddress address;
+
+    // The port of the server.
+    private final int port;
+
+    // The logged in clients.
+    private final List<LoadClient> clients = new ArrayList<>();
+
+    // Time from sending of a message to its delivery, in nanoseconds.
+    private final LatencyHistogram deliveryLatency = new LatencyHistogram();
+
+    // Time from sending of /who to its answer, in nanoseconds.
+    private final LatencyHistogram whoLatency = new LatencyHistogram();
+
+    private final LongAdder sentToAll = new LongAdder();
+
+    private final LongAdder sentPrivate = new LongAdder();
+
+    private final LongAdder sentWho = new LongAdder();
+
+    // Deliveries expected for the sent messages, one for every other active client of /all.
+    private final LongAdder expectedDeliveries = new LongAdder();
+
+    private final AtomicInteger activeClients = new AtomicInteger();
+
+    private final AtomicInteger failedLogins = new AtomicInteger();
+
+    private final AtomicInteger lostSessions = new AtomicInteger();
+
+    // Time messages were sent for, in nanoseconds.
+    private long sendingTime;
+
+    // Logger;
+    private final static Logger LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+
+    /**
+     * The constructor
+     *
+     * @param settings the settings of the load.
+     * @param address  the address of the server.
+     * @param port     the port of the server.
+     */
+    public LoadGenerator(LoadSettings settings, InetAddress address, int port) {
+        this.settings = settings;
+        this.address = address;
+        this.port = port;
+    }
+
+    /**
+     * The main method.
+     *
+     * @param args the arguments to the program.
+     * @throws Exception If the server can't be started or the load is interrupted
+     */
+    public static void main(String args[]) throws Exception {
+        AsyncLogHandler.install();
+        LoadSettings settings = LoadSettings.fromSystemProperties();
+        ChatServer server = null;
+        int portNumber;
+        if (args.length < 1) {
+            ServerContext context = new ServerContext(ServerSettings.fromSystemProperties());
+            server = context.getSettings().isNioMode() ? new NioChatServer(0, context) : new MultiThreadChatServerSync(0, context);
+            server.bind();
+            Thread acceptor = new Thread(server::serve, "acceptor");
+            acceptor.setDaemon(true);
+            acceptor.start();
+            portNumber = server.getLocalPort();
+            LOGGER.info("Started chat server in the same JVM on port: " + portNumber);
+        } else {
+            portNumber = Integer.parseInt(args[0]);
+        }
+        InetAddress address = settings.getHost() == null ? InetAddress.getLoopbackAddress() : InetAddress.getByName(settings.getHost());
+
+        LoadGenerator generator = new LoadGenerator(settings, address, portNumber);
+        generator.run();
+        generator.printReport(System.out);
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    /**
+     * Log the clients in, send messages for the configured time, wait for the messages in flight and close the
+     * clients.
+     *
+     * @throws InterruptedException If the thread is interrupted
+     */
+    public void run() throws InterruptedException {
+        SessionExecutor readers = new SessionExecutor(ServerConstants.VIRTUAL_THREADS);
+        try {
+            login(readers);
+            send();
+            drain();
+        } finally {
+            for (LoadClient client : clients) {
+                client.close();
+            }
+        }
+    }
+
+    /**
+     * Print the results of the load.
+     *
+     * @param out the stream to print to.
+     */
+    public void printReport(PrintStream out) {
+        double seconds = sendingTime / 1e9;
+        long sent = getSent();
+        out.printf(Locale.ROOT, "Clients: %d logged in, %d failed to log in, %d lost%n",
+                clients.size(), failedLogins.get(), lostSessions.get());
+        out.printf(Locale.ROOT, "Sent: %d messages in %.1f s, %.1f msg/s (all %d, private %d, who %d)%n",
+                sent, seconds, sent / seconds, sentToAll.sum(), sentPrivate.sum(), sentWho.sum());
+        out.printf(Locale.ROOT, "Delivered: %d of %d messages, %.1f msg/s, %d not delivered%n",
+                deliveryLatency.getCount(), expectedDeliveries.sum(), deliveryLatency.getCount() / seconds, getUndelivered());
+        printLatency(out, "Delivery latency", deliveryLatency);
+        out.printf(Locale.ROOT, "Who: %d of %d answered%n", whoLatency.getCount(), sentWho.sum());
+        printLatency(out, "Who latency", whoLatency);
+    }
+
+    /**
+     * Called by a client that received a message of the load generator.
+     *
+     * @param latency the time from sending to delivery, in nanoseconds.
+     */
+    void onMessageDelivered(long latency) {
+        deliveryLatency.record(latency);
+    }
+
+    /**
+     * Called by a client that received the answer to /who.
+     *
+     * @param latency the time from sending to the answer, in nanoseconds.
+     */
+    void onWhoAnswered(long latency) {
+        whoLatency.record(latency);
+    }
+
+    /**
+     * Called by a client that lost the connection while logged in.
+     *
+     * @param client the client.
+     */
+    void onSessionLost(LoadClient client) {
+        activeClients.decrementAndGet();
+        lostSessions.incrementAndGet();
+        LOGGER.info("Load client lost the connection: " + client.getUserName());
+    }
+
+    /**
+     * Getter for deliveryLatency
+     *
+     * @return time from sending of a message to its delivery, in nanoseconds.
+     */
+    public LatencyHistogram getDeliveryLatency() {
+        return deliveryLatency;
+    }
+
+    /**
+     * Getter for whoLatency
+     *
+     * @return time from sending of /who to its answer, in nanoseconds.
+     */
+    public LatencyHistogram getWhoLatency() {
+        return whoLatency;
+    }
+
+    /**
+     * Return the number of sent messages and /who requests.
+     *
+     * @return the number of sent messages.
+     */
+    public long getSent() {
+        return sentToAll.sum() + sentPrivate.sum() + sentWho.sum();
+    }
+
+    /**
+     * Return the number of expected deliveries that did not happen.
+     *
+     * @return the number of messages not delivered.
+     */
+    public long getUndelivered() {
+        return Math.max(0, expectedDeliveries.sum() - deliveryLatency.getCount());
+    }
+
+    /**
+     * Return the number of clients that could not log in.
+     *
+     * @return the number of failed logins.
+     */
+    public int getFailedLogins() {
+        return failedLogins.get();
+    }
+
+    /**
+     * Return the number of clients that lost the connection after log in.
+     *
+     * @return the number of lost sessions.
+     */
+    public int getLostSessions() {
+        return lostSessions.get();
+    }
+
+    /**
+     * Connect and log in the clients one by one, every logged in client starts reading on its own thread.
+     *
+     * @param readers the executor of reading threads.
+     */
+    private void login(SessionExecutor readers) {
+        for (int i = 0; i < settings.getClients(); i++) {
+            String userName = ServerConstants.LOAD_USER_NAME_PREFIX + i;
+            Socket socket = null;
+            try {
+                socket = new Socket(address, port);
+                socket.setTcpNoDelay(true);
+                LoadClient client = new LoadClient(this, userName, socket);
+                if (client.login()) {
+                    clients.add(client);
+                    activeClients.incrementAndGet();
+                    readers.execute(client, userName);
+                    continue;
+                }
+                LOGGER.info("Load client is not welcomed by the server: " + userName);
+            } catch (IOException e) {
+                LOGGER.info("Load client can't log in: " + userName + " " + e.getMessage());
+            }
+            failedLogins.incrementAndGet();
+            closeQuietly(socket);
+        }
+    }
+
+    /**
+     * Send messages from all sender threads for the configured time.
+     *
+     * @throws InterruptedException If the thread is interrupted
+     */
+    private void send() throws InterruptedException {
+        if (clients.size() < 2) {
+            return;
+        }
+        int threadCount = Math.min(settings.getSenderThreads(), clients.size());
+        long interval = TimeUnit.SECONDS.toNanos(1) * threadCount / settings.getRate();
+        long start = System.nanoTime();
+        long end = start + TimeUnit.SECONDS.toNanos(settings.getDurationSeconds());
+        List<Thread> senders = new ArrayList<>();
+        for (int t = 0; t < threadCount; t++) {
+            List<LoadClient> own = new ArrayList<>();
+            for (int i = t; i < clients.size(); i += threadCount) {
+                own.add(clients.get(i));
+            }
+            // Spread the schedules of the threads over one interval.
+            long first = start + interval * t / threadCount;
+            Thread sender = new Thread(() -> send(own, first, interval, end), "load-sender-" + t);
+            senders.add(sender);
+            sender.start();
+        }
+        for (Thread sender : senders) {
+            sender.join();
+        }
+        sendingTime = System.nanoTime() - start;
+    }
+
+    /**
+     * Send messages of the given clients by the schedule, until the end time.
+     *
+     * @param own      the clients of the sender thread.
+     * @param first    the time the first message is due.
+     * @param interval the time between messages of the thread, in nanoseconds.
+     * @param end      the time to stop sending.
+     */
+    private void send(List<LoadClient> own, long first, long interval, long end) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int totalWeight = settings.getAllWeight() + settings.getPrivateWeight() + settings.getWhoWeight();
+        int next = 0;
+        for (long due = first; due < end; due += interval) {
+            long wait = due - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            int index = nextActive(own, next);
+            if (index < 0) {
+                return;
+            }
+            LoadClient client = own.get(index);
+            next = (index + 1) % own.size();
+
+            int pick = random.nextInt(totalWeight);
+            if (pick < settings.getAllWeight()) {
+                int recipients = activeClients.get() - 1;
+                if (client.sendToAll(due)) {
+                    sentToAll.increment();
+                    expectedDeliveries.add(recipients);
+                }
+            } else if (pick < settings.getAllWeight() + settings.getPrivateWeight()) {
+                LoadClient recipient = clients.get(random.nextInt(clients.size()));
+                if (recipient != client && recipient.isActive() && client.sendPrivate(recipient, due)) {
+                    sentPrivate.increment();
+                    expectedDeliveries.increment();
+                }
+            } else if (client.sendWho(due)) {
+                sentWho.increment();
+            }
+        }
+    }
+
+    /**
+     * Find the next active client, starting from the given index.
+     *
+     * @param own  the clients of the sender thread.
+     * @param from the index to start from.
+     * @return the index of the active client or -1 if all clients are lost.
+     */
+    private static int nextActive(List<LoadClient> own, int from) {
+        for (int i = 0; i < own.size(); i++) {
+            int index = (from + i) % own.size();
+            if (own.get(index).isActive()) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Wait until messages in flight are delivered and /who requests are answered, or the drain time passes.
+     *
+     * @throws InterruptedException If the thread is interrupted
+     */
+    private void drain() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + ServerConstants.LOAD_DRAIN_MILLISECONDS;
+        while (System.currentTimeMillis() < deadline) {
+            if (getUndelivered() == 0 && whoLatency.getCount() >= sentWho.sum()) {
+                return;
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Print count, mean and percentiles of the histogram in microseconds.
+     *
+     * @param out       the stream to print to.
+     * @param title     the title of the line.
+     * @param histogram the histogram with values in nanoseconds.
+     */
+    private static void printLatency(PrintStream out, String title, LatencyHistogram histogram) {
+        out.printf(Locale.ROOT, "%s (us): mean %.1f, p50 %.1f, p90 %.1f, p99 %.1f, p99.9 %.1f, p99.99 %.1f, max %.1f%n",
+                title,
+                histogram.getMean() / 1e3,
+                histogram.getValueAtPercentile(50) / 1e3,
+                histogram.getValueAtPercentile(90) / 1e3,
+                histogram.getValueAtPercentile(99) / 1e3,
+                histogram.getValueAtPercentile(99.9) / 1e3,
+                histogram.getValueAtPercentile(99.99) / 1e3,
+                histogram.getMax() / 1e3);
+    }
+
+    /**
+     * Close the socket ignoring errors.
+     *
+     * @param socket the socket to close, may be null.
+     */
+    private static void closeQuietly(Socket socket) {
+        if (socket == null) {
+            return;
+        }
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Nothing to do, the socket is not used any more.
+        }
+    }
+
+}
@@ -0,0 +1,141 @@
+package pl.arturkb.server.chat;
+
+import java.util.Properties;
+
+/**
+ * Settings of the {@link LoadGenerator}, read from system properties.
+ */
+public class LoadSettings {
+
+    // The number of simulated clients.
+    private final int clients;
+
+    // Messages per second sent by all clients together.
+    private final int rate;
+
+    // The number of seconds messages are sent.
+    private final int durationSeconds;
+
+    // Weight of /all messages in the traffic.
+    private final int allWeight;
+
+    // Weight of private messages in the traffic.
+    private final int privateWeight;
+
+    // Weight of /who requests in the traffic.
+    private final int whoWeight;
+
+    // The number of threads that send messages.
+    private final int senderThreads;
+
+    // The host to connect to, null for loopback.
+    private final String host;
+
+    /**
+     * The constructor
+     *
+     * @param properties the properties to read settings from, missing ones get default values.
+     */
+    public LoadSettings(Properties properties) {
+        clients = ServerSettings.getInt(properties, ServerConstants.LOAD_CLIENTS_PROPERTY, ServerConstants.DEFAULT_LOAD_CLIENTS);
+        rate = ServerSettings.getInt(properties, ServerConstants.LOAD_RATE_PROPERTY, ServerConstants.DEFAULT_LOAD_RATE);
+        durationSeconds = ServerSettings.getInt(properties, ServerConstants.LOAD_DURATION_SECONDS_PROPERTY, ServerConstants.DEFAULT_LOAD_DURATION_SECONDS);
+        allWeight = ServerSettings.getInt(properties, ServerConstants.LOAD_ALL_WEIGHT_PROPERTY, ServerConstants.DEFAULT_LOAD_ALL_WEIGHT);
+        privateWeight = ServerSettings.getInt(properties, ServerConstants.LOAD_PRIVATE_WEIGHT_PROPERTY, ServerConstants.DEFAULT_LOAD_PRIVATE_WEIGHT);
+        whoWeight = ServerSettings.getInt(properties, ServerConstants.LOAD_WHO_WEIGHT_PROPERTY, ServerConstants.DEFAULT_LOAD_WHO_WEIGHT);
+        senderThreads = ServerSettings.getInt(properties, ServerConstants.LOAD_SENDER_THREADS_PROPERTY, ServerConstants.DEFAULT_LOAD_SENDER_THREADS);
+        host = properties.getProperty(ServerConstants.LOAD_HOST_PROPERTY);
+
+        if (clients < 2) {
+            throw new IllegalArgumentException("Property " + ServerConstants.LOAD_CLIENTS_PROPERTY + " should be at least 2: " + clients);
+        }
+        if (rate < 1 || durationSeconds < 1 || senderThreads < 1) {
+            throw new IllegalArgumentException("Rate, duration and sender threads of the load should be positive");
+        }
+        if (allWeight < 0 || privateWeight < 0 || whoWeight < 0 || allWeight + privateWeight + whoWeight == 0) {
+            throw new IllegalArgumentException("Weights of the load should not be negative and at least one should be positive");
+        }
+    }
+
+    /**
+     * Read settings from system properties.
+     *
+     * @return the settings.
+     */
+    public static LoadSettings fromSystemProperties() {
+        return new LoadSettings(System.getProperties());
+    }
+
+    /**
+     * Getter for clients
+     *
+     * @return the number of simulated clients.
+     */
+    public int getClients() {
+        return clients;
+    }
+
+    /**
+     * Getter for rate
+     *
+     * @return messages per second sent by all clients together.
+     */
+    public int getRate() {
+        return rate;
+    }
+
+    /**
+     * Getter for durationSeconds
+     *
+     * @return the number of seconds messages are sent.
+     */
+    public int getDurationSeconds() {
+        return durationSeconds;
+    }
+
+    /**
+     * Getter for allWeight
+     *
+     * @return weight of /all messages in the traffic.
+     */
+    public int getAllWeight() {
+        return allWeight;
+    }
+
+    /**
+     * Getter for privateWeight
+     *
+     * @return weight of private messages in the traffic.
+     */
+    public int getPrivateWeight() {
+        return privateWeight;
+    }
+
+    /**
+     * Getter for whoWeight
+     *
+     * @return weight of /who requests in the traffic.
+     */
+    public int getWhoWeight() {
+        return whoWeight;
+    }
+
+    /**
+     * Getter for senderThreads
+     *
+     * @return the number of threads that send messages.
+     */
+    public int getSenderThreads() {
+        return senderThreads;
+    }
+
+    /**
+     * Getter for host
+     *
+     * @return the host to connect to, null for loopback.
+     */
+    public String getHost() {
+        return host;
+    }
+
+}
@@ -0,0 +1,304 @@
+package pl.arturkb.server.chat;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * One file of the {@link MessageLog}, mapped into memory and filled with records from the start.
+ * <p>
+ * A record is {@code [int length][int crc][long offset][long timestamp][byte type][short target length][target]
+ * [message]}, where the length counts the whole record and the CRC the bytes after it. The file is created with
+ * its full size, so the bytes after the last record are zeros. Records are written by one writer thread; the end
+ * of the written records is published through a volatile field, so readers see only complete records.
+ * <p>
+ * A sparse index keeps the position of one record every {@link ServerConstants#LOG_INDEX_INTERVAL_BYTES}, a read
+ * starts at the closest indexed record before the wanted offset. The index is not stored, it is rebuilt by the
+ * recovery scan when the segment is opened, which also finds the end of the valid records after a crash.
+ */
+public class LogSegment {
+
+    // Bytes of the record header before the target.
+    static final int HEADER_SIZE = 27;
+
+    // Position of the CRC in the record.
+    private static final int CRC_POSITION = 4;
+
+    // Position of the first byte covered by the CRC.
+    private static final int CHECKED_POSITION = 8;
+
+    // The segment file.
+    private final Path path;
+
+    // Offset of the first record.
+    private final long baseOffset;
+
+    // The size of the file in bytes.
+    private final int size;
+
+    // The mapped file, null once the segment is deleted.
+    private MappedByteBuffer buffer;
+
+    // View of the mapped file used by the writer, null once the segment is deleted.
+    private ByteBuffer writeView;
+
+    // Read-only view of the mapped file, duplicated by readers, null once the segment is deleted.
+    private volatile ByteBuffer readView;
+
+    // Checksum of the written records, used by the writer.
+    private final CRC32 crc = new CRC32();
+
+    // Position after the last complete record.
+    private volatile int end;
+
+    // Offset of the next record.
+    private volatile long nextOffset;
+
+    // Time of the last record, 0 when there is none.
+    private volatile long lastTimestamp;
+
+    // Offsets of the indexed records.
+    private volatile long[] indexOffsets = new long[16];
+
+    // Positions of the indexed records.
+    private volatile int[] indexPositions = new int[16];
+
+    // Number of indexed records.
+    private volatile int indexSize;
+
+    // Position of the last indexed record.
+    private int lastIndexedPosition = -ServerConstants.LOG_INDEX_INTERVAL_BYTES;
+
+    /**
+     * The constructor
+     *
+     * @param path       the segment file.
+     * @param baseOffset offset of the first record.
+     * @param buffer     the mapped file.
+     */
+    private LogSegment(Path path, long baseOffset, MappedByteBuffer buffer) {
+        this.path = path;
+        this.baseOffset = baseOffset;
+        this.buffer = buffer;
+        size = buffer.capacity();
+        writeView = buffer.duplicate();
+        readView = buffer.asReadOnlyBuffer();
+        nextOffset = baseOffset;
+    }
+
+    /**
+     * Open the segment file, created with the given size if missing, and scan its records.
+     *
+     * @param path       the segment file.
+     * @param baseOffset offset of the first record.
+     * @param size       the size of a new file in bytes.
+     * @return the segment, positioned after the last valid record.
+     * @throws IOException If an I/O error occurs
+     */
+    public static LogSegment open(Path path, long baseOffset, int size) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            long length = channel.size() > 0 ? Math.min(channel.size(), Integer.MAX_VALUE) : size;
+            // The mapping stays valid after the channel is closed.
+            LogSegment segment = new LogSegment(path, baseOffset, channel.map(FileChannel.MapMode.READ_WRITE, 0, length));
+            segment.recover();
+            return segment;
+        }
+    }
+
+    /**
+     * Scan the records from the start, rebuild the index and stop at the first one that is not complete.
+     */
+    private void recover() {
+        int position = 0;
+        long offset = baseOffset;
+        ByteBuffer view = buffer.duplicate();
+        while (position + HEADER_SIZE <= buffer.capacity()) {
+            int length = buffer.getInt(position);
+            if (length < HEADER_SIZE || length > buffer.capacity() - position
+                    || buffer.getLong(position + CHECKED_POSITION) != offset) {
+                break;
+            }
+            view.limit(position + length).position(position + CHECKED_POSITION);
+            crc.reset();
+            crc.update(view);
+            if ((int) crc.getValue() != buffer.getInt(position + CRC_POSITION)) {
+                break;
+            }
+            index(offset, position);
+            lastTimestamp = buffer.getLong(position + CHECKED_POSITION + 8);
+            position += length;
+            offset++;
+        }
+        end = position;
+        nextOffset = offset;
+    }
+
+    /**
+     * Append the record, to be called by one writer thread.
+     *
+     * @param timestamp time of the message.
+     * @param type      the kind of the message, see {@link MessageLog}.
+     * @param target    the encoded recipient.
+     * @param message   the message.
+     * @return false if the record does not fit into the segment, true otherwise.
+     */
+    public boolean append(long timestamp, byte type, byte[] target, OutboundMessage message) {
+        int position = end;
+        int length = HEADER_SIZE + target.length + message.length();
+        if (length > buffer.capacity() - position) {
+            return false;
+        }
+        long offset = nextOffset;
+        writeView.limit(position + length).position(position + CHECKED_POSITION);
+        writeView.putLong(offset).putLong(timestamp).put(type).putShort((short) target.length).put(target)
+                .put(message.bytes());
+        writeView.position(position + CHECKED_POSITION);
+        crc.reset();
+        crc.update(writeView);
+        buffer.putInt(position + CRC_POSITION, (int) crc.getValue());
+        buffer.putInt(position, length);
+        index(offset, position);
+        lastTimestamp = timestamp;
+        nextOffset = offset + 1;
+        // Publishes the record to readers.
+        end = position + length;
+        return true;
+    }
+
+    /**
+     * Add the record to the index if it is far enough from the last indexed one.
+     *
+     * @param offset   the offset of the record.
+     * @param position the position of the record.
+     */
+    private void index(long offset, int position) {
+        if (position - lastIndexedPosition < ServerConstants.LOG_INDEX_INTERVAL_BYTES) {
+            return;
+        }
+        int size = indexSize;
+        if (size == indexOffsets.length) {
+            indexOffsets = Arrays.copyOf(indexOffsets, size * 2);
+            indexPositions = Arrays.copyOf(indexPositions, size * 2);
+        }
+        indexOffsets[size] = offset;
+        indexPositions[size] = position;
+        indexSize = size + 1;
+        lastIndexedPosition = position;
+    }
+
+    /**
+     * Pass the records from the given offset to the visitor. The messages are views of the mapped file.
+     *
+     * @param fromOffset offset of the first record.
+     * @param maxRecords max number of records.
+     * @param visitor    gets the records.
+     * @return the number of visited records.
+     */
+    public int read(long fromOffset, int maxRecords, MessageLog.RecordVisitor visitor) {
+        ByteBuffer source = readView;
+        if (source == null) {
+            return 0;
+        }
+        int limit = end;
+        int size = indexSize;
+        long[] offsets = indexOffsets;
+        int slot = Arrays.binarySearch(offsets, 0, size, fromOffset);
+        if (slot < 0) {
+            slot = -slot - 2;
+        }
+        int position = slot < 0 ? 0 : indexPositions[slot];
+        ByteBuffer view = source.duplicate();
+        int count = 0;
+        while (position < limit && count < maxRecords) {
+            int length = view.getInt(position);
+            long offset = view.getLong(position + CHECKED_POSITION);
+            if (offset >= fromOffset) {
+                long timestamp = view.getLong(position + CHECKED_POSITION + 8);
+                byte type = view.get(position + CHECKED_POSITION + 16);
+                int targetLength = view.getShort(position + CHECKED_POSITION + 17);
+                byte[] target = new byte[targetLength];
+                view.limit(position + length).position(position + HEADER_SIZE);
+                view.get(target);
+                visitor.visit(offset, timestamp, type, new String(target, StandardCharsets.UTF_8), view.slice());
+                view.limit(view.capacity());
+                count++;
+            }
+            position += length;
+        }
+        return count;
+    }
+
+    /**
+     * Write the changed pages of the file to the storage device.
+     */
+    public void force() {
+        buffer.force();
+    }
+
+    /**
+     * Delete the segment file and drop the mapping, so it can be collected; the storage of the file is freed when
+     * the mapping is. A read that already started finishes, later reads find nothing.
+     *
+     * @throws IOException If an I/O error occurs
+     */
+    public void delete() throws IOException {
+        readView = null;
+        writeView = null;
+        buffer = null;
+        Files.deleteIfExists(path);
+    }
+
+    /**
+     * Getter for baseOffset
+     *
+     * @return offset of the first record.
+     */
+    public long getBaseOffset() {
+        return baseOffset;
+    }
+
+    /**
+     * Getter for nextOffset
+     *
+     * @return offset of the next record.
+     */
+    public long getNextOffset() {
+        return nextOffset;
+    }
+
+    /**
+     * Getter for lastTimestamp
+     *
+     * @return time of the last record, 0 when there is none.
+     */
+    public long getLastTimestamp() {
+        return lastTimestamp;
+    }
+
+    /**
+     * Getter for the size of the file.
+     *
+     * @return the size of the file in bytes.
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Getter for the number of written bytes.
+     *
+     * @return the position after the last record.
+     */
+    public int getEnd() {
+        return end;
+    }
+
+}
@@ -0,0 +1,101 @@
+package pl.arturkb.server.chat;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The last messages of a room, kept in a ring buffer that is allocated once.
+ * <p>
+ * Appends are lock-free: a writer takes the next sequence number and stores the message in its slot, the oldest
+ * message is overwritten. Every slot has the sequence number of its message, set only after the message, so a
+ * replay that reads the number before and after the message detects a slot overwritten in between and skips it.
+ * Messages are kept encoded and a replay queues the same {@link OutboundMessage}s to the client, nothing is copied.
+ */
+public class MessageHistory {
+
+    // Marks the slot whose message is being replaced.
+    private static final long WRITING = Long.MIN_VALUE;
+
+    // The number of slots minus one, the number of slots is a power of two.
+    private final int mask;
+
+    // The messages by slot.
+    private final AtomicReferenceArray<OutboundMessage> messages;
+
+    // Sequence number of the message in every slot.
+    private final AtomicLongArray sequences;
+
+    // Sequence number of the next message.
+    private final AtomicLong next = new AtomicLong();
+
+    /**
+     * The constructor
+     *
+     * @param capacity max number of kept messages, rounded up to a power of two.
+     */
+    public MessageHistory(int capacity) {
+        int slots = capacity <= 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        mask = slots - 1;
+        messages = new AtomicReferenceArray<>(slots);
+        sequences = new AtomicLongArray(slots);
+        for (int i = 0; i < slots; i++) {
+            // Sequence number of the message before the first one of the slot.
+            sequences.set(i, i - slots);
+        }
+    }
+
+    /**
+     * Append the message, the oldest one is dropped when the history is full.
+     *
+     * @param message the message.
+     */
+    public void append(OutboundMessage message) {
+        long sequence = next.getAndIncrement();
+        int slot = (int) sequence & mask;
+        long previous = sequence - messages.length();
+        // The writer of the previous round has not finished, only when the ring wraps during one append.
+        while (sequences.get(slot) != previous) {
+            Thread.yield();
+        }
+        sequences.set(slot, WRITING);
+        messages.set(slot, message);
+        sequences.set(slot, sequence);
+    }
+
+    /**
+     * Send the last messages to the session, the oldest first.
+     *
+     * @param count   the number of messages to send.
+     * @param session the session to send to.
+     * @return the number of sent messages.
+     */
+    public int replay(int count, ChatSession session) {
+        long end = next.get();
+        long start = Math.max(0, end - Math.min(count, messages.length()));
+        int sent = 0;
+        for (long sequence = start; sequence < end; sequence++) {
+            int slot = (int) sequence & mask;
+            if (sequences.get(slot) != sequence) {
+                continue;
+            }
+            OutboundMessage message = messages.get(slot);
+            if (sequences.get(slot) != sequence) {
+                continue;
+            }
+            session.sendMessage(message);
+            sent++;
+        }
+        return sent;
+    }
+
+    /**
+     * Getter for the capacity.
+     *
+     * @return max number of kept messages.
+     */
+    public int getCapacity() {
+        return messages.length();
+    }
+
+}
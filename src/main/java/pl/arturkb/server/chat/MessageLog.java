@@ -0,0 +1,411 @@
+package pl.arturkb.server.chat;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Durable, append-only log of the messages sent by the clients of this node, see
+ * {@link ServerConstants#LOG_DIRECTORY_PROPERTY}.
+ * <p>
+ * Every message gets the next offset and is stored in the last of the {@link LogSegment} files, named after the
+ * offset of their first record. Senders only queue the message, one writer thread appends all queued messages
+ * to the memory mapped segment and forces the segment to disk at most once per flush interval, so a burst of
+ * messages is committed together. When the writer can't keep up the newest messages are dropped and counted,
+ * the chat never waits for the disk.
+ * <p>
+ * When a segment is full a new one is started and the oldest segments are deleted while the log is larger than
+ * the retention size or their last message is older than the retention time, checked whenever messages are
+ * forced to disk. Messages forwarded by the other cluster nodes are not logged here, every node logs the messages
+ * of its own clients.
+ * <p>
+ * The newest records serve a /history that asks for more messages than the in-memory history keeps.
+ */
+public class MessageLog {
+
+    private final static Logger LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+
+    // Message to all clients, without target.
+    public static final byte BROADCAST = 1;
+
+    // Private message, the target is the client name of the recipient.
+    public static final byte PRIVATE = 2;
+
+    // Room message, the target is the room name.
+    public static final byte ROOM = 3;
+
+    // Suffix of segment file names.
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    // The directory of the segment files.
+    private final Path directory;
+
+    // The size of a segment file in bytes.
+    private final int segmentSize;
+
+    // Max size of all segment files in bytes.
+    private final long retentionBytes;
+
+    // Max age of the last message of a segment, in milliseconds.
+    private final long retentionMillis;
+
+    // Max time between writing a message and forcing it to disk, in milliseconds.
+    private final long flushIntervalMillis;
+
+    // Messages waiting for the writer.
+    private final OutboundQueue<Entry> queue = new OutboundQueue<>(ServerConstants.LOG_QUEUE_SIZE, OverflowPolicy.DROP_NEWEST);
+
+    // The segments, oldest first, replaced as a whole when changed.
+    private volatile LogSegment[] segments = new LogSegment[0];
+
+    // Writes the queued messages.
+    private Thread writer;
+
+    // Scans the records for the history, so the reactors don't wait for the scan.
+    private final ExecutorService reader = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "message-log-reader");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private volatile boolean closed;
+
+    /**
+     * The constructor
+     *
+     * @param directory           the directory of the segment files.
+     * @param segmentSize         the size of a segment file in bytes.
+     * @param retentionBytes      max size of all segment files in bytes.
+     * @param retentionMillis     max age of the last message of a segment, in milliseconds.
+     * @param flushIntervalMillis max time between writing a message and forcing it to disk, in milliseconds.
+     */
+    public MessageLog(Path directory, int segmentSize, long retentionBytes, long retentionMillis, long flushIntervalMillis) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.retentionBytes = retentionBytes;
+        this.retentionMillis = retentionMillis;
+        this.flushIntervalMillis = flushIntervalMillis;
+    }
+
+    /**
+     * Open the segments found in the directory, scan their records and start the writer.
+     *
+     * @throws IOException If an I/O error occurs
+     */
+    public void open() throws IOException {
+        long started = System.nanoTime();
+        Files.createDirectories(directory);
+        List<Long> baseOffsets = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                String fileName = file.getFileName().toString();
+                try {
+                    baseOffsets.add(Long.parseLong(fileName.substring(0, fileName.length() - SEGMENT_SUFFIX.length())));
+                } catch (NumberFormatException e) {
+                    LOGGER.warning("Ignoring " + file + " in the message log");
+                }
+            }
+        }
+        baseOffsets.sort(null);
+        List<LogSegment> opened = new ArrayList<>();
+        for (long baseOffset : baseOffsets) {
+            opened.add(LogSegment.open(segmentPath(baseOffset), baseOffset, segmentSize));
+        }
+        if (opened.isEmpty()) {
+            opened.add(LogSegment.open(segmentPath(0), 0, segmentSize));
+        }
+        segments = opened.toArray(new LogSegment[0]);
+        applyRetention();
+        LOGGER.info("Message log " + directory + " recovered " + segments.length + " segments up to offset "
+                + getNextOffset() + " in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started) + " ms");
+        writer = new Thread(this::writeEntries, "message-log");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Queue the message for the log, does not wait.
+     *
+     * @param type    the kind of the message, {@link #BROADCAST}, {@link #PRIVATE} or {@link #ROOM}.
+     * @param target  the recipient or room name, empty for a broadcast.
+     * @param message the message.
+     */
+    public void append(byte type, String target, OutboundMessage message) {
+        queue.offer(new Entry(System.currentTimeMillis(), type, target, message));
+    }
+
+    /**
+     * Pass the logged messages from the given offset to the visitor, oldest first. The messages are read-only
+     * views of the mapped segments, nothing is copied.
+     *
+     * @param fromOffset offset of the first message, older messages may be already deleted.
+     * @param maxRecords max number of messages.
+     * @param visitor    gets the messages.
+     * @return the number of visited messages.
+     */
+    public int read(long fromOffset, int maxRecords, RecordVisitor visitor) {
+        LogSegment[] snapshot = segments;
+        int count = 0;
+        for (int i = 0; i < snapshot.length && count < maxRecords; i++) {
+            LogSegment segment = snapshot[i];
+            if (segment.getNextOffset() > fromOffset) {
+                count += segment.read(fromOffset, maxRecords - count, visitor);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Read the last logged messages of the kind and target on the reader thread, the oldest first. Only the newest
+     * {@link ServerConstants#LOG_HISTORY_SCAN_RECORDS} records are looked at, so the cost does not grow with the
+     * log. The messages are read-only views of the mapped segments, nothing is copied.
+     *
+     * @param type   the kind of the messages, {@link #BROADCAST} or {@link #ROOM}.
+     * @param target the room name, empty for a broadcast.
+     * @param count  max number of messages.
+     * @return the messages, completed by the reader thread.
+     */
+    public CompletableFuture<List<OutboundMessage>> readLast(byte type, String target, int count) {
+        try {
+            return CompletableFuture.supplyAsync(() -> last(type, target, count), reader);
+        } catch (RejectedExecutionException e) {
+            CompletableFuture<List<OutboundMessage>> closedLog = new CompletableFuture<>();
+            closedLog.completeExceptionally(e);
+            return closedLog;
+        }
+    }
+
+    /**
+     * Scan the newest records for the last messages of the kind and target.
+     *
+     * @param type   the kind of the messages.
+     * @param target the room name, empty for a broadcast.
+     * @param count  max number of messages.
+     * @return the messages, the oldest first.
+     */
+    private List<OutboundMessage> last(byte type, String target, int count) {
+        ArrayDeque<OutboundMessage> last = new ArrayDeque<>();
+        long fromOffset = Math.max(getStartOffset(), getNextOffset() - ServerConstants.LOG_HISTORY_SCAN_RECORDS);
+        read(fromOffset, ServerConstants.LOG_HISTORY_SCAN_RECORDS, (offset, timestamp, recordType, recordTarget, message) -> {
+            if (recordType == type && recordTarget.equals(target)) {
+                last.addLast(OutboundMessage.view(message));
+                if (last.size() > count) {
+                    last.removeFirst();
+                }
+            }
+        });
+        return new ArrayList<>(last);
+    }
+
+    /**
+     * Getter for the offset of the oldest kept message.
+     *
+     * @return the offset of the first record of the oldest segment.
+     */
+    public long getStartOffset() {
+        return segments[0].getBaseOffset();
+    }
+
+    /**
+     * Getter for the offset of the next message.
+     *
+     * @return the offset the next written message gets.
+     */
+    public long getNextOffset() {
+        LogSegment[] snapshot = segments;
+        return snapshot[snapshot.length - 1].getNextOffset();
+    }
+
+    /**
+     * Getter for the number of dropped messages.
+     *
+     * @return the number of messages dropped because the writer could not keep up.
+     */
+    public long getDropped() {
+        return queue.getDropped();
+    }
+
+    /**
+     * Stop the writer after it writes the queued messages and force them to disk.
+     */
+    public void close() {
+        closed = true;
+        reader.shutdownNow();
+        queue.close();
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.join(ServerConstants.CLOSE_FLUSH_TIMEOUT_MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Write the queued messages until the log is closed, forcing them to disk once per flush interval.
+     */
+    private void writeEntries() {
+        long forceDeadline = 0;
+        boolean dirty = false;
+        try {
+            while (true) {
+                Entry entry = dirty ? queue.poll(forceDeadline - System.nanoTime()) : queue.take();
+                if (entry == null) {
+                    if (dirty) {
+                        force();
+                        dirty = false;
+                    }
+                    if (closed && queue.isEmpty()) {
+                        return;
+                    }
+                    continue;
+                }
+                do {
+                    write(entry);
+                } while ((entry = queue.poll()) != null);
+                if (!dirty) {
+                    dirty = true;
+                    forceDeadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+                }
+                if (System.nanoTime() - forceDeadline >= 0) {
+                    force();
+                    dirty = false;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            LOGGER.severe("Message log " + directory + " is not written any more " + e.getMessage());
+        }
+    }
+
+    /**
+     * Append the message to the last segment, start a new segment when it is full.
+     *
+     * @param entry the message.
+     * @throws IOException If an I/O error occurs
+     */
+    private void write(Entry entry) throws IOException {
+        byte[] target = entry.target.getBytes(StandardCharsets.UTF_8);
+        LogSegment[] snapshot = segments;
+        LogSegment active = snapshot[snapshot.length - 1];
+        if (active.append(entry.timestamp, entry.type, target, entry.message)) {
+            return;
+        }
+        if (active.getEnd() == 0) {
+            LOGGER.warning("Message of " + entry.message.length() + " bytes does not fit into a log segment");
+            return;
+        }
+        active.force();
+        long baseOffset = active.getNextOffset();
+        LogSegment[] rolled = Arrays.copyOf(snapshot, snapshot.length + 1);
+        rolled[snapshot.length] = LogSegment.open(segmentPath(baseOffset), baseOffset, segmentSize);
+        segments = rolled;
+        applyRetention();
+        write(entry);
+    }
+
+    /**
+     * Delete the oldest segments while the log is too large or their messages too old, the last one is kept. The
+     * deleted segments drop their mappings, the disk space is freed once the readers still using them are done.
+     *
+     * @throws IOException If an I/O error occurs
+     */
+    private void applyRetention() throws IOException {
+        LogSegment[] snapshot = segments;
+        long size = 0;
+        for (LogSegment segment : snapshot) {
+            size += segment.getSize();
+        }
+        long oldest = System.currentTimeMillis() - retentionMillis;
+        int removed = 0;
+        while (removed < snapshot.length - 1
+                && (size > retentionBytes || snapshot[removed].getLastTimestamp() < oldest)) {
+            size -= snapshot[removed].getSize();
+            snapshot[removed].delete();
+            removed++;
+        }
+        if (removed > 0) {
+            segments = Arrays.copyOfRange(snapshot, removed, snapshot.length);
+            LOGGER.info("Message log " + directory + " deleted " + removed + " old segments");
+        }
+    }
+
+    /**
+     * Force the last segment to disk and delete the segments that are too old.
+     *
+     * @throws IOException If an I/O error occurs
+     */
+    private void force() throws IOException {
+        LogSegment[] snapshot = segments;
+        snapshot[snapshot.length - 1].force();
+        applyRetention();
+    }
+
+    /**
+     * Path of the segment file.
+     *
+     * @param baseOffset offset of the first record of the segment.
+     * @return the path.
+     */
+    private Path segmentPath(long baseOffset) {
+        return directory.resolve(String.format("%020d%s", baseOffset, SEGMENT_SUFFIX));
+    }
+
+    /**
+     * Gets the messages read from the log.
+     */
+    public interface RecordVisitor {
+
+        /**
+         * Called for every read message.
+         *
+         * @param offset    the offset of the message.
+         * @param timestamp time of the message.
+         * @param type      the kind of the message.
+         * @param target    the recipient or room name, empty for a broadcast.
+         * @param message   read-only view of the encoded message in the mapped segment.
+         */
+        void visit(long offset, long timestamp, byte type, String target, ByteBuffer message);
+    }
+
+    /**
+     * Message waiting for the writer.
+     */
+    private static class Entry {
+
+        // Time the message was sent.
+        private final long timestamp;
+
+        // The kind of the message.
+        private final byte type;
+
+        // The recipient or room name.
+        private final String target;
+
+        // The message.
+        private final OutboundMessage message;
+
+        Entry(long timestamp, byte type, String target, OutboundMessage message) {
+            this.timestamp = timestamp;
+            this.type = type;
+            this.target = target;
+            this.message = message;
+        }
+    }
+
+}
@@ -1,27 +1,39 @@
 package pl.arturkb.server.chat;
 
 import java.io.IOException;
+import java.io.PrintStream;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  * Class for a chat server that delivers public and private messages.
  */
-public class MultiThreadChatServerSync {
+public class MultiThreadChatServerSync implements ChatServer {
 
-    // The server socket.
-    private static ServerSocket serverSocket;
+    // The port to listen on.
+    private final int portNumber;
 
+    // The state shared by all client sessions
+    private final ServerContext context;
 
-    // Max connections that server will accept.
-    private static final int MAX_CLIENT_COUNT = 10;
+    // The server socket.
+    private ServerSocket serverSocket;
 
     // Logger;
     private final static Logger LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
 
-    // Array of client threads
-    private static final ClientThread[] CLIENT_THREADS = new ClientThread[MAX_CLIENT_COUNT];
+    /**
+     * The constructor
+     *
+     * @param portNumber the port to listen on, 0 for any free port.
+     * @param context    the state shared by all client sessions.
+     */
+    public MultiThreadChatServerSync(int portNumber, ServerContext context) {
+        this.portNumber = portNumber;
+        this.context = context;
+    }
 
     /**
      * The main method.
@@ -30,6 +42,7 @@ public class MultiThreadChatServerSync {
      */
     public static void main(String args[]) {
 
+        AsyncLogHandler.install();
         int portNumber = ServerConstants.DEFAULT_PORT;
 
         if (args.length < 1) {
@@ -39,37 +52,161 @@ public class MultiThreadChatServerSync {
             portNumber = Integer.parseInt(args[0]);
         }
 
+        ServerSettings settings = ServerSettings.fromSystemProperties();
+        ServerContext context = new ServerContext(settings);
+        LOGGER.info("Max connections that server will accept: " + settings.getMaxClients());
+
+        ChatServer server = null;
         try {
-            serverSocket = new ServerSocket(portNumber);
-        } catch (NumberFormatException e) {
-            LOGGER.severe("Given port number is not numeric. Stopping server");
-            System.exit(1);
+            if (settings.isNioMode()) {
+                LOGGER.info("Starting non-blocking chat server with " + settings.getReactorCount() + " I/O reactor threads");
+                server = new NioChatServer(portNumber, context);
+            } else {
+                server = new MultiThreadChatServerSync(portNumber, context);
+            }
+            server.bind();
         } catch (IOException e) {
             LOGGER.severe("Can't bind socket to the given port " + e.getMessage());
             System.exit(1);
         }
+        ChatServer running = server;
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                running.shutdown(settings.getShutdownTimeoutMillis());
+            } catch (IOException e) {
+                LOGGER.severe("I/O error occurs when shutting down " + e.getMessage());
+            }
+        }, "shutdown"));
+        server.serve();
+    }
+
+    /**
+     * Bind the server socket, or take over the inherited one, and join the cluster.
+     *
+     * @throws IOException If an I/O error occurs
+     */
+    public void bind() throws IOException {
+        serverSocket = context.openServerChannel(portNumber).socket();
+        context.start();
+    }
+
+    /**
+     * Accept connections until the server socket is closed.
+     */
+    public void serve() {
+        ClientRegistry registry = context.getRegistry();
+        SessionExecutor sessionExecutor = context.getSessionExecutor();
+        LOGGER.info("Client sessions run on " + (sessionExecutor.isVirtual() ? "virtual" : "platform") + " threads");
 
         // Create a client socket for each connection and pass it to a new client thread.
-        while (true) {
+        while (!serverSocket.isClosed()) {
             try {
                 Socket clientSocket = serverSocket.accept();
-                LOGGER.info("Accepted connection on socket " + clientSocket.getInetAddress() + ":" + clientSocket.getLocalPort());
-                int i;
-                for (i = 0; i < MAX_CLIENT_COUNT; i++) {
-                    if (CLIENT_THREADS[i] == null) {
-                        CLIENT_THREADS[i] = new ClientThread(clientSocket, CLIENT_THREADS);
-                        CLIENT_THREADS[i].start();
-                        break;
-                    }
+                try {
+                    context.configureSocket(clientSocket);
+                } catch (IOException e) {
+                    // The client may be gone already, the descriptor must not leak.
+                    LOGGER.info("Can't configure the accepted connection " + e.getMessage());
+                    clientSocket.close();
+                    continue;
                 }
-                if (i == MAX_CLIENT_COUNT) {
+                LOGGER.log(Level.INFO, "Accepted connection on socket {0}:{1,number,#}", new Object[]{clientSocket.getInetAddress(), clientSocket.getLocalPort()});
+                Admission admission = registry.acquireSlot(clientSocket.getInetAddress());
+                TlsContext tls = context.getTls();
+                if (admission == Admission.ACCEPTED) {
+                    context.getMetrics().connectionAccepted();
+                    if (tls != null) {
+                        tls.getHandshakeExecutor().execute(() -> startSecureSession(tls, clientSocket));
+                    } else {
+                        sessionExecutor.execute(new ClientThread(clientSocket, context), "client-" + clientSocket.getRemoteSocketAddress());
+                    }
+                } else if (tls != null) {
+                    // The client expects a handshake, not a text.
+                    context.getMetrics().connectionRejected();
                     clientSocket.close();
-                    LOGGER.info("Max connections that server will accept is reached, try later.");
+                    LOGGER.log(Level.INFO, "Connection rejected, {0}", admission);
+                } else {
+                    context.getMetrics().connectionRejected();
+                    reject(clientSocket, admission.rejectionMessage(context.getSettings().getRetryAfterSeconds()));
+                    LOGGER.log(Level.INFO, "Connection rejected, {0}", admission);
                 }
             } catch (IOException e) {
-                LOGGER.severe("I/O error occurs when waiting for a connection " + e.getMessage());
+                if (!serverSocket.isClosed()) {
+                    LOGGER.severe("I/O error occurs when waiting for a connection " + e.getMessage());
+                }
             }
         }
+    }
 
+    /**
+     * Run the TLS handshake on a handshake thread and start the session of the client once it is done, so a slow
+     * handshake never holds the acceptor. The connection slot is given back when the handshake fails.
+     *
+     * @param tls          the TLS setup.
+     * @param clientSocket the accepted socket.
+     */
+    private void startSecureSession(TlsContext tls, Socket clientSocket) {
+        try {
+            Socket sslSocket = tls.handshake(clientSocket);
+            context.getSessionExecutor().execute(new ClientThread(sslSocket, context), "client-" + clientSocket.getRemoteSocketAddress());
+        } catch (IOException e) {
+            LOGGER.log(Level.INFO, "TLS handshake with {0} failed {1}", new Object[]{clientSocket.getRemoteSocketAddress(), e.getMessage()});
+            context.getRegistry().releaseSlot(clientSocket.getInetAddress());
+            try {
+                clientSocket.close();
+            } catch (IOException closeException) {
+                LOGGER.info("IOExceptions " + closeException.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Close the server socket, stop evicting inactive sessions and leave the cluster.
+     *
+     * @throws IOException If an I/O error occurs
+     */
+    public void close() throws IOException {
+        serverSocket.close();
+        context.stop();
+    }
+
+    /**
+     * Stop accepting connections, drain the client sessions and close the server. A blocking session ends when its
+     * messages are written or after {@link ServerConstants#CLOSE_FLUSH_TIMEOUT_MILLISECONDS}.
+     *
+     * @param timeoutMillis max time to wait for the sessions.
+     * @throws IOException If an I/O error occurs
+     */
+    public void shutdown(long timeoutMillis) throws IOException {
+        serverSocket.close();
+        context.drainSessions(timeoutMillis);
+        close();
+    }
+
+    /**
+     * Getter for the port the server is bound to.
+     *
+     * @return the local port
+     */
+    public int getLocalPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Tell the client why it is rejected and close the socket.
+     *
+     * @param clientSocket the rejected socket.
+     * @param message      the message for the client.
+     * @throws IOException If an I/O error occurs
+     */
+    private static void reject(Socket clientSocket, String message) throws IOException {
+        try {
+            PrintStream printStream = new PrintStream(clientSocket.getOutputStream());
+            printStream.println(message);
+            printStream.flush();
+        } finally {
+            clientSocket.close();
+        }
     }
+
 }
@@ -0,0 +1,47 @@
+package pl.arturkb.server.chat;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Decides which node of the cluster may register a client name, so a name is used once in the whole cluster.
+ * <p>
+ * The node asks with {@link #claim(String)} before it registers the name locally. Implementations that decide on
+ * one of the nodes get the claims of other nodes through {@link #grant(String, String)}; implementations backed by
+ * an external store may ignore them.
+ */
+public interface NameService {
+
+    /**
+     * Claim the client name for this node.
+     *
+     * @param clientName the client name.
+     * @return completed with true if the name may be registered, with false if it is used or the claim can't be
+     * decided in time. Never completed exceptionally.
+     */
+    CompletableFuture<Boolean> claim(String clientName);
+
+    /**
+     * Give back a name claimed by this node that was not registered after all.
+     *
+     * @param clientName the client name.
+     */
+    void release(String clientName);
+
+    /**
+     * Decide claim of another node.
+     *
+     * @param clientName the client name.
+     * @param nodeId     the node that claims the name.
+     * @return true if the name is granted to the node, false otherwise.
+     */
+    boolean grant(String clientName, String nodeId);
+
+    /**
+     * End the claim of a node, it announced the name as registered or gave it back.
+     *
+     * @param clientName the client name.
+     * @param nodeId     the node that claimed the name, this node too.
+     */
+    void revoke(String clientName, String nodeId);
+
+}
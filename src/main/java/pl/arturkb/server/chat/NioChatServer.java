@@ -0,0 +1,173 @@
+package pl.arturkb.server.chat;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Non-blocking chat server. The connections are accepted on the calling thread and served by a small, fixed pool
+ * of {@link NioReactor}s, so an idle client costs a selection key instead of a thread.
+ */
+public class NioChatServer implements ChatServer {
+
+    // The port to listen on.
+    private final int portNumber;
+
+    // The state shared by all client sessions
+    private final ServerContext context;
+
+    // The server settings.
+    private final ServerSettings settings;
+
+    // Registry of connected clients
+    private final ClientRegistry registry;
+
+    // The I/O reactors.
+    private final NioReactor[] reactors;
+
+    // The server socket channel.
+    private ServerSocketChannel serverSocketChannel;
+
+    // Index of the reactor that gets the next connection.
+    private int nextReactor;
+
+    // Logger;
+    private final static Logger LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+
+    /**
+     * The constructor
+     *
+     * @param portNumber the port to listen on, 0 for any free port.
+     * @param context    the state shared by all client sessions.
+     * @throws IOException If an I/O error occurs
+     */
+    public NioChatServer(int portNumber, ServerContext context) throws IOException {
+        this.portNumber = portNumber;
+        this.context = context;
+        settings = context.getSettings();
+        registry = context.getRegistry();
+        reactors = new NioReactor[settings.getReactorCount()];
+        for (int i = 0; i < reactors.length; i++) {
+            reactors[i] = new NioReactor("nio-reactor-" + i);
+        }
+    }
+
+    /**
+     * Bind the server socket, or take over the inherited one, start the reactors and join the cluster.
+     *
+     * @throws IOException If an I/O error occurs
+     */
+    public void bind() throws IOException {
+        serverSocketChannel = context.openServerChannel(portNumber);
+        for (NioReactor reactor : reactors) {
+            reactor.start();
+        }
+        context.start();
+    }
+
+    /**
+     * Accept connections until the server socket is closed.
+     */
+    public void serve() {
+        while (serverSocketChannel.isOpen()) {
+            try {
+                SocketChannel channel = serverSocketChannel.accept();
+                try {
+                    context.configureSocket(channel.socket());
+                } catch (IOException e) {
+                    // The client may be gone already, the descriptor must not leak.
+                    LOGGER.info("Can't configure the accepted connection " + e.getMessage());
+                    channel.close();
+                    continue;
+                }
+                LOGGER.log(Level.INFO, "Accepted connection on socket {0}:{1,number,#}", new Object[]{channel.socket().getInetAddress(), channel.socket().getLocalPort()});
+                Admission admission = registry.acquireSlot(channel.socket().getInetAddress());
+                if (admission != Admission.ACCEPTED) {
+                    context.getMetrics().connectionRejected();
+                    reject(channel, admission);
+                    continue;
+                }
+                context.getMetrics().connectionAccepted();
+                NioReactor reactor = reactors[nextReactor];
+                nextReactor = (nextReactor + 1) % reactors.length;
+                NioClientSession session;
+                try {
+                    channel.configureBlocking(false);
+                    session = new NioClientSession(context, reactor, channel);
+                } catch (IOException e) {
+                    LOGGER.severe("Can't start the session " + e.getMessage());
+                    registry.releaseSlot(channel.socket().getInetAddress());
+                    channel.close();
+                    continue;
+                }
+                reactor.register(channel, session);
+            } catch (IOException e) {
+                if (serverSocketChannel.isOpen()) {
+                    LOGGER.severe("I/O error occurs when waiting for a connection " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Tell the client why it is rejected and close the connection. The channel is still blocking, the message is
+     * short enough to fit in the empty socket send buffer. A client of the TLS listener is not told.
+     *
+     * @param channel   the rejected channel.
+     * @param admission the reason of rejection.
+     * @throws IOException If an I/O error occurs
+     */
+    private void reject(SocketChannel channel, Admission admission) throws IOException {
+        try {
+            if (context.getTls() != null) {
+                // The client expects a handshake, not a text.
+                return;
+            }
+            String message = admission.rejectionMessage(settings.getRetryAfterSeconds()) + System.lineSeparator();
+            channel.write(ByteBuffer.wrap(message.getBytes(Charset.defaultCharset())));
+        } finally {
+            channel.close();
+        }
+        LOGGER.log(Level.INFO, "Connection rejected, {0}", admission);
+    }
+
+    /**
+     * Close the server socket, stop the reactors, stop evicting inactive sessions and leave the cluster.
+     *
+     * @throws IOException If an I/O error occurs
+     */
+    public void close() throws IOException {
+        serverSocketChannel.close();
+        for (NioReactor reactor : reactors) {
+            reactor.stop();
+        }
+        context.stop();
+    }
+
+    /**
+     * Stop accepting connections, drain the client sessions and close the server. Sessions that are left after the
+     * timeout are closed with their reactors.
+     *
+     * @param timeoutMillis max time to wait for the sessions.
+     * @throws IOException If an I/O error occurs
+     */
+    public void shutdown(long timeoutMillis) throws IOException {
+        serverSocketChannel.close();
+        context.drainSessions(timeoutMillis);
+        close();
+    }
+
+    /**
+     * Getter for the port the server is bound to.
+     *
+     * @return the local port
+     */
+    public int getLocalPort() {
+        return serverSocketChannel.socket().getLocalPort();
+    }
+
+}
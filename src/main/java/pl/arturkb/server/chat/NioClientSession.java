@@ -0,0 +1,778 @@
+package pl.arturkb.server.chat;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The chat client session served by a {@link NioReactor}.
+ * <p>
+ * Speaks the same protocol as {@link ClientThread}, but instead of blocking in readLine the inbound bytes are
+ * split into lines and every line moves the session one step forward. While the cluster decides a name claim the
+ * session stops reading, so the lines that follow the name wait for the answer.
+ */
+public class NioClientSession implements ChatSession, IdleSession, DrainableSession {
+
+    // Initial size of the buffer that collects one inbound line, it grows up to the max line length.
+    private static final int LINE_BUFFER_SIZE = 128;
+
+    // The state shared by all client sessions
+    private final ServerContext context;
+
+    // Registry of connected clients
+    private final ClientRegistry registry;
+
+    // Counters of what the server does
+    private final ServerMetrics metrics;
+
+    // Rate limits of all sessions, the buckets of the client address are given back on close.
+    private final RateLimits rateLimits;
+
+    // Evicts the session when it is inactive too long.
+    private final IdleReaper idleReaper;
+
+    // The reactor that serves the session.
+    private final NioReactor reactor;
+
+    // Client channel
+    private final SocketChannel channel;
+
+    // TLS over the channel, null when the server serves plain text.
+    private final TlsChannel tls;
+
+    // Client address, the connection slot is taken for it.
+    private final InetAddress clientAddress;
+
+    // Selection key of the channel, set on the reactor thread.
+    private SelectionKey selectionKey;
+
+    // Bytes of the line that is being collected.
+    private byte[] lineBuffer = new byte[LINE_BUFFER_SIZE];
+
+    // Number of bytes in lineBuffer.
+    private int lineLength;
+
+    // Max number of bytes of a line.
+    private final int maxLineLength;
+
+    // True when the line that is being collected is longer than the max line length, the rest of it is skipped.
+    private boolean lineTooLong;
+
+    // Skip '\n' that follows '\r', the same way BufferedReader does.
+    private boolean skipLineFeed;
+
+    // Parser of command lines, reused for every line.
+    private final CommandParser commandParser = new CommandParser();
+
+    // Decoder of the frames of the binary protocol, null while the client speaks the text protocol.
+    private FrameCodec frameDecoder;
+
+    // Messages waiting to be written.
+    private final OutboundQueue<ByteBuffer> outbound;
+
+    // Messages being written with one gathering write, used on the reactor thread.
+    private final ByteBuffer[] writeBatch = new ByteBuffer[ServerConstants.WRITE_BATCH_SIZE];
+
+    // Number of messages in writeBatch.
+    private int writeBatchSize;
+
+    // Max time a queued message waits for more messages to be written with it.
+    private final long flushDelayMillis;
+
+    // True when flush of the outbound queue is submitted to the reactor.
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+
+    // Close the channel when all outbound messages are written.
+    private boolean closeWhenFlushed;
+
+    private volatile boolean closed;
+
+    private volatile String clientName;
+
+    private volatile String userName;
+
+    // The number of tries to assign name.
+    private int numberOfTries;
+
+    // True once receiving of the user name is finished.
+    private boolean nameReceived;
+
+    // True while reading waits for the name claim to be decided.
+    private boolean claimPending;
+
+    // True while reading stops because the client is over its rate limits.
+    private boolean throttled;
+
+    // True while reading waits for the history read from the message log.
+    private boolean historyPending;
+
+    // Bytes read after the claimed name, the throttled line or the history command, handled when reading resumes.
+    private ByteBuffer pendingInput;
+
+    // Rate limits of the session, null when there is no limit.
+    private final RateLimiter rateLimiter;
+
+    // Inactivity timer of the session, set on the reactor thread.
+    private IdleReaper.Timer idleTimer;
+
+    // Logger;
+    private final static Logger LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+
+    /**
+     * The constructor
+     *
+     * @param context the state shared by all client sessions.
+     * @param reactor the reactor that serves the session.
+     * @param channel the client channel.
+     * @throws IOException If the TLS handshake can't be started
+     */
+    public NioClientSession(ServerContext context, NioReactor reactor, SocketChannel channel) throws IOException {
+        this.context = context;
+        registry = context.getRegistry();
+        metrics = context.getMetrics();
+        idleReaper = context.getIdleReaper();
+        outbound = context.newOutboundQueue();
+        flushDelayMillis = context.getSettings().getFlushDelayMillis();
+        maxLineLength = context.getSettings().getMaxLineLength();
+        this.reactor = reactor;
+        this.channel = channel;
+        clientAddress = channel.socket().getInetAddress();
+        TlsContext tlsContext = context.getTls();
+        tls = tlsContext == null ? null : new TlsChannel(channel, tlsContext.newEngine(), tlsContext.getHandshakeExecutor(),
+                () -> reactor.execute(this::onTlsTasksDone), metrics);
+        rateLimits = context.getRateLimits();
+        rateLimiter = rateLimits.newLimiter(clientAddress);
+    }
+
+    /**
+     * Called on the reactor thread when the channel is registered with the selector.
+     *
+     * @param selectionKey the selection key of the channel.
+     */
+    void onRegistered(SelectionKey selectionKey) {
+        this.selectionKey = selectionKey;
+        metrics.sessionOpened();
+        context.sessionStarted(this);
+        idleTimer = idleReaper.register(this);
+        numberOfTries++;
+        sendMessage(OutputTexts.ENTER_YOUR_NAME_RESPONSE.render());
+    }
+
+    /**
+     * Read available bytes and handle every complete line.
+     *
+     * @throws IOException If an I/O error occurs
+     */
+    void handleRead() throws IOException {
+        if (tls != null) {
+            handleTlsRead();
+            return;
+        }
+        ByteBuffer readBuffer = reactor.getReadBuffer();
+        readBuffer.clear();
+        int read = channel.read(readBuffer);
+        if (read < 0) {
+            onEndOfStream();
+            return;
+        }
+        metrics.bytesReceived(read);
+        readBuffer.flip();
+        handleInput(readBuffer);
+    }
+
+    /**
+     * Unwrap the received records and handle every complete line, as long as the session reads. Once the handshake
+     * has finished the messages queued so far, the prompt for the name first, are written.
+     *
+     * @throws IOException If an I/O error occurs or the client breaks the protocol
+     */
+    private void handleTlsRead() throws IOException {
+        while (!closed && !closeWhenFlushed && !isReadingStopped()) {
+            ByteBuffer input = tls.read();
+            if (input == null) {
+                onEndOfStream();
+                return;
+            }
+            if (!input.hasRemaining()) {
+                break;
+            }
+            handleInput(input);
+        }
+        if (!closed && (tls.takeHandshakeFinished() || tls.hasPendingOutput())) {
+            handleWrite();
+        }
+    }
+
+    /**
+     * Continue the handshake when the delegated tasks of the engine are done, called on the reactor thread.
+     */
+    private void onTlsTasksDone() {
+        tls.tasksDone();
+        if (closed) {
+            return;
+        }
+        try {
+            handleTlsRead();
+            handleWrite();
+        } catch (IOException e) {
+            LOGGER.info("IOExceptions " + e.getMessage());
+            close();
+        }
+    }
+
+    /**
+     * Handle every complete line or frame of the input, stop when the name claim waits for the cluster, the client
+     * is throttled or the history is read from the message log.
+     *
+     * @param input the bytes to handle.
+     * @throws IOException If the client breaks the binary protocol
+     */
+    private void handleInput(ByteBuffer input) throws IOException {
+        while (input.hasRemaining() && !closeWhenFlushed && !isReadingStopped()) {
+            if (skipLineFeed) {
+                skipLineFeed = false;
+                if (input.get(input.position()) == '\n') {
+                    input.get();
+                    continue;
+                }
+            }
+            if (frameDecoder != null) {
+                if (frameDecoder.decode(input)) {
+                    handleFrame();
+                }
+                continue;
+            }
+            byte b = input.get();
+            if (b == '\n' || b == '\r') {
+                skipLineFeed = b == '\r';
+                handleLine();
+                lineLength = 0;
+            } else {
+                appendToLine(b);
+            }
+        }
+        if (isReadingStopped() && input.hasRemaining()) {
+            // The read buffer is shared by the sessions of the reactor, keep a copy of the rest.
+            pendingInput = ByteBuffer.allocate(input.remaining());
+            pendingInput.put(input).flip();
+        }
+    }
+
+    /**
+     * Write as much of the outbound messages as the channel accepts. Up to {@link ServerConstants#WRITE_BATCH_SIZE}
+     * queued messages are written with one gathering write.
+     *
+     * @throws IOException If an I/O error occurs
+     */
+    void handleWrite() throws IOException {
+        metrics.recordOutboundQueueDepth(writeBatchSize + outbound.size());
+        fillWriteBatch();
+        while (writeBatchSize > 0 || tls != null && tls.hasPendingOutput()) {
+            long bytes = tls != null ? tls.write(writeBatch, 0, writeBatchSize) : channel.write(writeBatch, 0, writeBatchSize);
+            int written = 0;
+            while (written < writeBatchSize && !writeBatch[written].hasRemaining()) {
+                written++;
+            }
+            metrics.messagesSent(written, bytes);
+            System.arraycopy(writeBatch, written, writeBatch, 0, writeBatchSize - written);
+            Arrays.fill(writeBatch, writeBatchSize - written, writeBatchSize, null);
+            writeBatchSize -= written;
+            if (tls != null && !tls.hasPendingOutput() && tls.isHandshaking()) {
+                // The messages wait for the handshake, the client can't get them before.
+                selectionKey.interestOps(selectionKey.interestOps() & ~SelectionKey.OP_WRITE);
+                if (closeWhenFlushed) {
+                    close();
+                }
+                return;
+            }
+            if (writeBatchSize > 0 || tls != null && tls.hasPendingOutput()) {
+                // The socket send buffer is full, continue when the channel is writable.
+                selectionKey.interestOps(selectionKey.interestOps() | SelectionKey.OP_WRITE);
+                return;
+            }
+            fillWriteBatch();
+        }
+        selectionKey.interestOps(selectionKey.interestOps() & ~SelectionKey.OP_WRITE);
+        if (closeWhenFlushed) {
+            close();
+        }
+    }
+
+    /**
+     * Move queued messages to the write batch, as many as it holds.
+     */
+    private void fillWriteBatch() {
+        ByteBuffer message;
+        while (writeBatchSize < writeBatch.length && (message = outbound.poll()) != null) {
+            writeBatch[writeBatchSize++] = message;
+        }
+    }
+
+    /**
+     * Send message to assigned client. The message is queued and written by the reactor, so the caller never
+     * waits for a slow client.
+     *
+     * @param message the message to send.
+     */
+    public void sendMessage(OutboundMessage message) {
+        if (closed) {
+            return;
+        }
+        if (!outbound.offer(message.buffer())) {
+            LOGGER.log(Level.INFO, "Outbound queue is full, disconnecting {0}", userName);
+            reactor.execute(this::close);
+        } else if (flushScheduled.compareAndSet(false, true)) {
+            reactor.execute(this::flush, flushDelayMillis);
+        }
+    }
+
+    /**
+     * Close the channel, unregister the session and give back its connection slot.
+     */
+    void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (selectionKey != null) {
+            metrics.sessionClosed();
+        }
+        if (idleTimer != null) {
+            idleTimer.cancel();
+        }
+        outbound.close();
+        registry.unregister(this);
+        registry.releaseSlot(clientAddress);
+        rateLimits.release(clientAddress);
+        context.sessionEnded(this);
+        if (selectionKey != null) {
+            selectionKey.cancel();
+        }
+        if (tls != null) {
+            tls.close();
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            LOGGER.severe("IOExceptions " + e.getMessage());
+        }
+    }
+
+    /**
+     * Getter for client name;
+     *
+     * @return the client name
+     */
+    public String getClientName() {
+        return clientName;
+    }
+
+    /**
+     * Getter for userName
+     *
+     * @return the user name;
+     */
+    public String getUserName() {
+        return userName;
+    }
+
+    /**
+     * Register client name in the system, see {@link ClientThread#registerClientName(String)}. When the claim waits
+     * for the cluster, reading stops until the answer is back on the reactor thread.
+     *
+     * @param name the user name to be registered.
+     */
+    private void registerClientName(String name) {
+        userName = name;
+        CompletableFuture<Boolean> claim = registry.claimClusterName(ServerConstants.CHAR_THAT_NAME_CAN_NOT_CONTAIN + name, this);
+        if (claim.isDone()) {
+            onNameClaimed(name, claim.join());
+            return;
+        }
+        claimPending = true;
+        selectionKey.interestOps(selectionKey.interestOps() & ~SelectionKey.OP_READ);
+        claim.thenAccept(granted -> reactor.execute(() -> {
+            claimPending = false;
+            if (closed || closeWhenFlushed) {
+                if (granted) {
+                    clientName = ServerConstants.CHAR_THAT_NAME_CAN_NOT_CONTAIN + name;
+                    registry.unregister(this);
+                }
+                return;
+            }
+            onNameClaimed(name, granted);
+            if (!closeWhenFlushed) {
+                resumeReading();
+            }
+        }));
+    }
+
+    /**
+     * Check whether reading waits for the name claim, the rate limits or the history.
+     *
+     * @return true if reading is stopped, false otherwise.
+     */
+    private boolean isReadingStopped() {
+        return claimPending || throttled || historyPending;
+    }
+
+    /**
+     * Read from the client again, starting with the input kept while reading was stopped, unless another reason
+     * to stop reading still holds.
+     */
+    private void resumeReading() {
+        if (isReadingStopped()) {
+            return;
+        }
+        selectionKey.interestOps(selectionKey.interestOps() | SelectionKey.OP_READ);
+        ByteBuffer input = pendingInput;
+        pendingInput = null;
+        try {
+            if (input != null) {
+                handleInput(input);
+            }
+            if (tls != null) {
+                // Records unwrapped later are still in the channel buffer, the selector does not tell about them.
+                handleTlsRead();
+            }
+        } catch (IOException e) {
+            LOGGER.info("IOExceptions " + e.getMessage());
+            close();
+        }
+    }
+
+    /**
+     * Stop reading from the client that is over its rate limits for the given time, the line that went over them is
+     * still handled.
+     *
+     * @param nanos the time to stop reading for, in nanoseconds.
+     */
+    private void throttle(long nanos) {
+        throttled = true;
+        selectionKey.interestOps(selectionKey.interestOps() & ~SelectionKey.OP_READ);
+        reactor.execute(() -> {
+            throttled = false;
+            if (!closed && !closeWhenFlushed) {
+                resumeReading();
+            }
+        }, Math.max(1, TimeUnit.NANOSECONDS.toMillis(nanos)));
+    }
+
+    /**
+     * Continue receiving of the user name with the result of the claim.
+     *
+     * @param name    the claimed user name.
+     * @param granted true if the name is registered, false if the name is already used.
+     */
+    private void onNameClaimed(String name, boolean granted) {
+        if (granted) {
+            clientName = ServerConstants.CHAR_THAT_NAME_CAN_NOT_CONTAIN + name;
+            assignUserName(name);
+        } else {
+            sendMessage(OutputTexts.USER_NAME_ALREADY_USED_RESPONSE.render(name));
+            askForUserName();
+        }
+    }
+
+    /**
+     * Handle the line collected in lineBuffer.
+     */
+    private void handleLine() {
+        idleTimer.touch();
+        if (lineTooLong) {
+            lineTooLong = false;
+            sendMessage(OutputTexts.lineTooLong(maxLineLength));
+            return;
+        }
+        if (nameReceived) {
+            handleCommand(commandParser.parse(lineBuffer, 0, lineLength, OutboundMessage.CHARSET));
+        } else {
+            receiveUserName(new String(lineBuffer, 0, lineLength, OutboundMessage.CHARSET));
+        }
+    }
+
+    /**
+     * Handle the frame collected by frameDecoder, the name frame until the name is assigned.
+     */
+    private void handleFrame() {
+        idleTimer.touch();
+        if (frameDecoder.isTooLong()) {
+            sendMessage(OutputTexts.lineTooLong(maxLineLength));
+        } else if (nameReceived) {
+            handleCommand(commandParser.parseFrame(frameDecoder.getOpcode(), frameDecoder.getPayload(), frameDecoder.getLength(), OutboundMessage.CHARSET));
+        } else if (frameDecoder.getOpcode() != ServerConstants.NAME_OPCODE) {
+            receiveUserName(ServerConstants.DEFAULT_NAME);
+        } else {
+            receiveUserName(new String(frameDecoder.getPayload(), 0, frameDecoder.getLength(), OutboundMessage.CHARSET));
+        }
+    }
+
+    /**
+     * One step of assigning the user name, see {@link ClientThread#receiveUserName()}. A client that sends
+     * {@link ServerConstants#BINARY_PROTOCOL} sends frames from then on, the next one with the name.
+     *
+     * @param line the line with proposed user name.
+     */
+    private void receiveUserName(String line) {
+        if (frameDecoder == null && line.equals(ServerConstants.BINARY_PROTOCOL)) {
+            frameDecoder = new FrameCodec(maxLineLength);
+            sendMessage(OutputTexts.BINARY_PROTOCOL_ON_RESPONSE.render());
+            return;
+        }
+        String name = line;
+        if (!name.equals(ServerConstants.DEFAULT_NAME)) {
+            name = name.trim();
+        }
+        if (name.indexOf(ServerConstants.CHAR_THAT_NAME_CAN_NOT_CONTAIN) != -1) {
+            sendMessage(OutputTexts.NAME_SHOULD_NOT_CONTAIN_RESPONSE.render());
+            askForUserName();
+        } else if (name.equals(ServerConstants.DEFAULT_NAME)) {
+            assignUserName(name);
+        } else {
+            registerClientName(name);
+        }
+    }
+
+    /**
+     * Ask for the user name again, or give up after {@link ServerConstants#MAX_NUMBER_OF_TRIES}.
+     */
+    private void askForUserName() {
+        if (numberOfTries < ServerConstants.MAX_NUMBER_OF_TRIES) {
+            numberOfTries++;
+            sendMessage(OutputTexts.ENTER_YOUR_NAME_RESPONSE.render());
+        } else {
+            assignUserName(ServerConstants.DEFAULT_NAME);
+        }
+    }
+
+    /**
+     * Finish the name assignment the way {@link ClientThread#run()} does.
+     *
+     * @param name the received user name.
+     */
+    private void assignUserName(String name) {
+        nameReceived = true;
+        userName = name;
+        if (name.equals(ServerConstants.DEFAULT_NAME)) {
+            sendMessage(OutputTexts.WRONG_USER_NAME_RESPONSE.render());
+            LOGGER.info(OutputTexts.WRONG_USER_NAME);
+            closeAfterFlush();
+        } else {
+            sendMessage(OutputTexts.WELCOME_RESPONSE.render(name));
+            broadcastMessage(OutputTexts.NEW_USER_ENTERED_RESPONSE.render(name));
+        }
+    }
+
+    /**
+     * One step of the main loop of chat, see {@link ClientThread} mainLoop.
+     *
+     * @param line the parsed line.
+     */
+    private void handleCommand(CommandParser line) {
+        metrics.messageReceived(line.getCommand());
+        if (rateLimiter != null && line.getCommand() != Command.QUIT) {
+            long wait = rateLimiter.admit(line.getLength(), this);
+            if (wait != 0) {
+                metrics.lineRateLimited();
+            }
+            if (wait == RateLimiter.REJECTED) {
+                if (rateLimiter.getPolicy() == RateLimitPolicy.DISCONNECT) {
+                    leave();
+                }
+                return;
+            }
+            if (wait > 0) {
+                throttle(wait);
+            }
+        }
+        switch (line.getCommand()) {
+
+            case WHO:
+                sendMessage(registry.getListOfActiveUsers(line.getMsg()));
+                break;
+
+            case PRIVATE:
+                registry.sendMessage(ClientThread.joinUserWithMessage(userName, line.getMsg()), line.getClientName(), this);
+                break;
+
+            case ALL:
+                broadcastMessage(OutputTexts.CHAT_MESSAGE_RESPONSE.render(userName, line.getMsg()));
+                break;
+
+            case HELP:
+                sendMessage(OutputTexts.USAGE_RESPONSE.render());
+                break;
+
+            case JOIN:
+                registry.joinRoom(line.getRoomName(), this);
+                break;
+
+            case LEAVE:
+                registry.leaveRoom(line.getRoomName(), this);
+                break;
+
+            case ROOMS:
+                sendMessage(registry.getListOfRooms());
+                break;
+
+            case HISTORY:
+                sendHistory(line.getRoomName(), line.getMsg());
+                break;
+
+            case STATS:
+                sendMessage(clientAddress.isLoopbackAddress() ? OutboundMessage.of(OutputTexts.stats(metrics)) : OutputTexts.STATS_NOT_ALLOWED_RESPONSE.render());
+                break;
+
+            case ROOM:
+                registry.sendRoomMessage(ClientThread.joinUserWithMessage(userName, line.getMsg()), line.getRoomName(), this);
+                break;
+
+            case QUIT:
+                leave();
+                break;
+        }
+    }
+
+    /**
+     * Evict the inactive session, see {@link ClientThread#evictIdle(long)}. The eviction runs on the reactor thread,
+     * so it does not race with the lines of the session.
+     *
+     * @param inactiveSeconds the number of seconds the session was inactive.
+     */
+    public void evictIdle(long inactiveSeconds) {
+        reactor.execute(() -> {
+            if (closed || closeWhenFlushed) {
+                return;
+            }
+            metrics.sessionEvicted();
+            sendMessage(OutputTexts.printInactiveMessage(inactiveSeconds));
+            if (clientName != null) {
+                leave();
+            } else {
+                closeAfterFlush();
+            }
+            LOGGER.log(Level.INFO, OutputTexts.INACTIVE_INFO_MESSAGE, new Object[]{clientName != null ? userName : clientAddress, inactiveSeconds});
+        });
+    }
+
+    /**
+     * Drain the session when the server shuts down, see {@link ClientThread#drain(OutboundMessage)}. Runs on the
+     * reactor thread like the eviction.
+     *
+     * @param notice the message for the client.
+     */
+    public void drain(OutboundMessage notice) {
+        reactor.execute(() -> {
+            if (closed || closeWhenFlushed) {
+                return;
+            }
+            sendMessage(notice);
+            registry.unregister(this);
+            closeAfterFlush();
+        });
+    }
+
+    /**
+     * Send the last messages, see {@link ClientRegistry#sendHistory}. The messages read from the message log are
+     * sent by the reactor; until then reading stops, so the answers keep the order of the commands.
+     *
+     * @param roomName the room name, empty for the chat.
+     * @param count    the number of messages as typed by the client.
+     */
+    private void sendHistory(String roomName, String count) {
+        CompletableFuture<Integer> sent = registry.sendHistory(roomName, count, this, reactor::execute);
+        if (sent.isDone()) {
+            return;
+        }
+        historyPending = true;
+        selectionKey.interestOps(selectionKey.interestOps() & ~SelectionKey.OP_READ);
+        sent.whenComplete((messages, e) -> reactor.execute(() -> {
+            historyPending = false;
+            if (!closed && !closeWhenFlushed) {
+                resumeReading();
+            }
+        }));
+    }
+
+    /**
+     * Client closed the connection, leave the chat if the name is already assigned.
+     */
+    private void onEndOfStream() {
+        if (clientName != null) {
+            broadcastMessage(OutputTexts.USER_LEAVING_RESPONSE.render(userName));
+        }
+        close();
+    }
+
+    /**
+     * Broadcast message to all connected clients, the time of the fan-out goes to the metrics.
+     *
+     * @param message the message to broadcast.
+     */
+    private void broadcastMessage(OutboundMessage message) {
+        long started = System.nanoTime();
+        registry.broadcastMessage(message, this);
+        metrics.recordBroadcastFanOut(System.nanoTime() - started);
+    }
+
+    /**
+     * Leave the chat and close the connection once everything queued so far is written.
+     */
+    private void leave() {
+        broadcastMessage(OutputTexts.USER_LEAVING_RESPONSE.render(userName));
+        registry.unregister(this);
+        closeAfterFlush();
+    }
+
+    /**
+     * Close the channel once all outbound messages are written. Nothing is read any more, so the end of stream of
+     * the client does not leave the chat a second time.
+     */
+    private void closeAfterFlush() {
+        closeWhenFlushed = true;
+        selectionKey.interestOps(selectionKey.interestOps() & ~SelectionKey.OP_READ);
+        reactor.execute(this::flush);
+    }
+
+    /**
+     * Write pending messages, called on the reactor thread.
+     */
+    private void flush() {
+        flushScheduled.set(false);
+        if (closed || selectionKey == null) {
+            return;
+        }
+        try {
+            handleWrite();
+        } catch (IOException e) {
+            LOGGER.info("IOExceptions " + e.getMessage());
+            close();
+        }
+    }
+
+    /**
+     * Append byte to the collected line, growing the buffer when needed. Bytes over the max line length are
+     * skipped, so the buffer never grows over it.
+     *
+     * @param b the byte to append.
+     */
+    private void appendToLine(byte b) {
+        if (lineLength >= maxLineLength) {
+            lineTooLong = true;
+            return;
+        }
+        if (lineLength == lineBuffer.length) {
+            lineBuffer = Arrays.copyOf(lineBuffer, Math.min(maxLineLength, lineLength * 2));
+        }
+        lineBuffer[lineLength++] = b;
+    }
+
+}
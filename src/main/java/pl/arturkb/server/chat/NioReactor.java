@@ -0,0 +1,247 @@
+package pl.arturkb.server.chat;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * The I/O reactor. One thread with its own selector that serves many {@link NioClientSession}s.
+ */
+public class NioReactor implements Runnable {
+
+    // Selector of the reactor.
+    private final Selector selector;
+
+    // Tasks submitted to be run on the reactor thread.
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+    // Tasks submitted to be run later, moved to timers by the reactor thread.
+    private final Queue<DelayedTask> delayedTasks = new ConcurrentLinkedQueue<>();
+
+    // Delayed tasks in the order of their deadlines, used by the reactor thread only.
+    private final PriorityQueue<DelayedTask> timers = new PriorityQueue<>((a, b) -> Long.signum(a.deadline - b.deadline));
+
+    // Buffer that channels of this reactor are read into.
+    private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(ServerConstants.READ_BUFFER_SIZE);
+
+    // The reactor thread.
+    private final Thread thread;
+
+    // Logger;
+    private final static Logger LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+
+    /**
+     * The constructor
+     *
+     * @param name the name of the reactor thread.
+     * @throws IOException If an I/O error occurs
+     */
+    public NioReactor(String name) throws IOException {
+        selector = Selector.open();
+        thread = new Thread(this, name);
+        thread.setDaemon(true);
+    }
+
+    /**
+     * Start the reactor thread.
+     */
+    public void start() {
+        thread.start();
+    }
+
+    /**
+     * Stop the reactor and close its selector.
+     */
+    public void stop() {
+        thread.interrupt();
+        selector.wakeup();
+    }
+
+    /**
+     * Register accepted channel with this reactor.
+     *
+     * @param channel the accepted channel, already in non-blocking mode.
+     * @param session the session that serves the channel.
+     */
+    public void register(SocketChannel channel, NioClientSession session) {
+        execute(() -> {
+            try {
+                session.onRegistered(channel.register(selector, SelectionKey.OP_READ, session));
+            } catch (IOException e) {
+                LOGGER.severe("Can't register channel " + e.getMessage());
+                session.close();
+            }
+        });
+    }
+
+    /**
+     * Run the task on the reactor thread.
+     *
+     * @param task the task to run.
+     */
+    public void execute(Runnable task) {
+        tasks.add(task);
+        if (!inReactorThread()) {
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * Run the task on the reactor thread after the delay. The task is queued without locking, the reactor thread
+     * orders it by deadline.
+     *
+     * @param task        the task to run.
+     * @param delayMillis the delay in milliseconds, 0 to run the task in this tick of the reactor.
+     */
+    public void execute(Runnable task, long delayMillis) {
+        if (delayMillis <= 0) {
+            execute(task);
+            return;
+        }
+        delayedTasks.add(new DelayedTask(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMillis), task));
+        if (!inReactorThread()) {
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * Check that the caller runs on the reactor thread.
+     *
+     * @return true if called from the reactor thread, false otherwise.
+     */
+    public boolean inReactorThread() {
+        return Thread.currentThread() == thread;
+    }
+
+    /**
+     * Getter for readBuffer, to be used on the reactor thread only.
+     *
+     * @return the readBuffer
+     */
+    ByteBuffer getReadBuffer() {
+        return readBuffer;
+    }
+
+    /**
+     * The main method for the reactor thread.
+     */
+    public void run() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                runTasks();
+                long timeout = runDelayedTasks();
+                if (!tasks.isEmpty()) {
+                    // Queued by the delayed tasks, without a wakeup since they run here; run them in the next tick.
+                    selector.selectNow();
+                } else if (timeout > 0) {
+                    selector.select(timeout);
+                } else {
+                    selector.select();
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    handle(key);
+                }
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            LOGGER.severe("I/O error in reactor " + thread.getName() + " " + e.getMessage());
+        } finally {
+            closeSelector();
+        }
+    }
+
+    /**
+     * Dispatch ready operations of the key to its session.
+     *
+     * @param key the selected key.
+     */
+    private void handle(SelectionKey key) {
+        NioClientSession session = (NioClientSession) key.attachment();
+        try {
+            if (key.isValid() && key.isReadable()) {
+                session.handleRead();
+            }
+            if (key.isValid() && key.isWritable()) {
+                session.handleWrite();
+            }
+        } catch (IOException e) {
+            LOGGER.info("IOExceptions " + e.getMessage());
+            session.close();
+        }
+    }
+
+    /**
+     * Run all tasks submitted so far.
+     */
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            task.run();
+        }
+    }
+
+    /**
+     * Run the delayed tasks whose time has come.
+     *
+     * @return milliseconds until the next delayed task, 0 when there is none.
+     */
+    private long runDelayedTasks() {
+        while (true) {
+            DelayedTask task;
+            while ((task = delayedTasks.poll()) != null) {
+                timers.add(task);
+            }
+            task = timers.peek();
+            if (task == null) {
+                return 0;
+            }
+            long remaining = task.deadline - System.nanoTime();
+            if (remaining > 0) {
+                return Math.max(1, TimeUnit.NANOSECONDS.toMillis(remaining));
+            }
+            timers.poll();
+            task.task.run();
+        }
+    }
+
+    /**
+     * Close the selector and all channels registered with it.
+     */
+    private void closeSelector() {
+        for (SelectionKey key : selector.keys()) {
+            ((NioClientSession) key.attachment()).close();
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            LOGGER.severe("Can't close selector " + e.getMessage());
+        }
+    }
+
+    /**
+     * Task to be run at the deadline.
+     */
+    private static final class DelayedTask {
+
+        private final long deadline;
+
+        private final Runnable task;
+
+        private DelayedTask(long deadline, Runnable task) {
+            this.deadline = deadline;
+            this.task = task;
+        }
+    }
+
+}
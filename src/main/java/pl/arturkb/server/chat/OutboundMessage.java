@@ -0,0 +1,123 @@
+package pl.arturkb.server.chat;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * The message for clients, encoded once together with its line separator.
+ * <p>
+ * The bytes are never modified, so one instance is shared by all recipients of a broadcast: blocking sessions
+ * write the same array and non-blocking sessions write read-only views of it. A message replayed from the
+ * {@link MessageLog} is a read-only view of the mapped segment instead of an array.
+ */
+public final class OutboundMessage {
+
+    // Charset used for the messages, the same PrintStream uses.
+    static final Charset CHARSET = Charset.defaultCharset();
+
+    // Line separator used by PrintStream.println.
+    static final String LINE_SEPARATOR = System.lineSeparator();
+
+    // The encoded message with line separator, null for a view of the message log.
+    private final byte[] bytes;
+
+    // Read-only view of the encoded message in a mapped log segment, null for an encoded array.
+    private final ByteBuffer view;
+
+    /**
+     * The constructor
+     *
+     * @param bytes the encoded message with line separator, not copied.
+     */
+    private OutboundMessage(byte[] bytes) {
+        this.bytes = bytes;
+        view = null;
+    }
+
+    /**
+     * The constructor
+     *
+     * @param view read-only view of the encoded message with line separator, not copied.
+     */
+    private OutboundMessage(ByteBuffer view) {
+        bytes = null;
+        this.view = view;
+    }
+
+    /**
+     * Encode the message.
+     *
+     * @param message the message without line separator.
+     * @return the encoded message.
+     */
+    public static OutboundMessage of(String message) {
+        return new OutboundMessage((message + LINE_SEPARATOR).getBytes(CHARSET));
+    }
+
+    /**
+     * Wrap message that is already encoded, for example received from another cluster node.
+     *
+     * @param bytes the encoded message with line separator, not copied.
+     * @return the message.
+     */
+    static OutboundMessage wrap(byte[] bytes) {
+        return new OutboundMessage(bytes);
+    }
+
+    /**
+     * Wrap message kept in the message log. The view refers to the mapping of the segment, so the message stays
+     * readable after the segment is deleted.
+     *
+     * @param view read-only view of the encoded message with line separator, from its position to its limit.
+     * @return the message.
+     */
+    static OutboundMessage view(ByteBuffer view) {
+        return new OutboundMessage(view.slice());
+    }
+
+    /**
+     * Read-only view of the encoded message, every caller gets its own position.
+     *
+     * @return the view positioned at the first byte.
+     */
+    public ByteBuffer buffer() {
+        return bytes != null ? ByteBuffer.wrap(bytes).asReadOnlyBuffer() : view.duplicate();
+    }
+
+    /**
+     * Write the encoded message to the stream, a view of the message log is copied first.
+     *
+     * @param outputStream the stream to write to.
+     * @throws IOException If an I/O error occurs
+     */
+    public void writeTo(OutputStream outputStream) throws IOException {
+        byte[] encoded = bytes();
+        outputStream.write(encoded, 0, encoded.length);
+    }
+
+    /**
+     * Getter for the encoded bytes, not to be modified. A view of the message log is copied.
+     *
+     * @return the encoded message with line separator.
+     */
+    byte[] bytes() {
+        if (bytes != null) {
+            return bytes;
+        }
+        byte[] copy = new byte[view.remaining()];
+        view.duplicate().get(copy);
+        return copy;
+    }
+
+    /**
+     * Getter for the number of encoded bytes.
+     *
+     * @return the number of bytes, line separator included.
+     */
+    public int length() {
+        return bytes != null ? bytes.length : view.remaining();
+    }
+
+}
@@ -0,0 +1,190 @@
+package pl.arturkb.server.chat;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Bounded queue of messages waiting to be written to one client.
+ * <p>
+ * Any thread may offer messages without locking, so sending to a client never waits for that client's socket.
+ * The queue is drained by one writer: either a writer task blocked in {@link #take()}, or a reactor that
+ * {@link #poll()}s it. Writers take every message that is queued before they write, so a burst of messages is
+ * written together. When the queue is full the {@link OverflowPolicy} decides what happens.
+ *
+ * @param <E> the type of queued messages.
+ */
+public class OutboundQueue<E> {
+
+    // Max number of queued messages.
+    private final int capacity;
+
+    // What to do when the queue is full.
+    private final OverflowPolicy overflowPolicy;
+
+    // Queued messages.
+    private final Queue<E> messages = new ConcurrentLinkedQueue<>();
+
+    // Number of queued messages.
+    private final AtomicInteger size = new AtomicInteger();
+
+    // Number of dropped messages.
+    private final AtomicLong dropped = new AtomicLong();
+
+    // The writer parked in take(), null if none.
+    private volatile Thread waitingWriter;
+
+    private volatile boolean closed;
+
+    /**
+     * The constructor
+     *
+     * @param capacity       max number of queued messages.
+     * @param overflowPolicy what to do when the queue is full.
+     */
+    public OutboundQueue(int capacity, OverflowPolicy overflowPolicy) {
+        this.capacity = capacity;
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    /**
+     * Queue the message.
+     *
+     * @param message the message to queue.
+     * @return false if the queue is full and the client should be disconnected, true otherwise, also when the
+     * message or an older one is dropped.
+     */
+    public boolean offer(E message) {
+        if (closed) {
+            return true;
+        }
+        if (size.incrementAndGet() > capacity) {
+            switch (overflowPolicy) {
+                case DROP_OLDEST:
+                    if (messages.poll() != null) {
+                        size.decrementAndGet();
+                    }
+                    dropped.incrementAndGet();
+                    break;
+                case DROP_NEWEST:
+                    size.decrementAndGet();
+                    dropped.incrementAndGet();
+                    return true;
+                case DISCONNECT:
+                    size.decrementAndGet();
+                    return false;
+            }
+        }
+        messages.add(message);
+        Thread writer = waitingWriter;
+        if (writer != null) {
+            LockSupport.unpark(writer);
+        }
+        return true;
+    }
+
+    /**
+     * Take the oldest message, does not wait.
+     *
+     * @return the message or null if the queue is empty.
+     */
+    public E poll() {
+        E message = messages.poll();
+        if (message != null) {
+            size.decrementAndGet();
+        }
+        return message;
+    }
+
+    /**
+     * Take the oldest message, waits until there is one. To be called by one writer only.
+     *
+     * @return the message or null if the queue is closed and empty.
+     * @throws InterruptedException if the writer is interrupted while waiting.
+     */
+    public E take() throws InterruptedException {
+        E message;
+        while ((message = poll()) == null) {
+            if (closed) {
+                return null;
+            }
+            waitingWriter = Thread.currentThread();
+            if (messages.isEmpty() && !closed) {
+                LockSupport.park(this);
+            }
+            waitingWriter = null;
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+        return message;
+    }
+
+    /**
+     * Take the oldest message, waits at most the given time until there is one. To be called by one writer only.
+     *
+     * @param timeoutNanos max time to wait, in nanoseconds.
+     * @return the message or null if there is none in time or the queue is closed and empty.
+     * @throws InterruptedException if the writer is interrupted while waiting.
+     */
+    public E poll(long timeoutNanos) throws InterruptedException {
+        long deadline = System.nanoTime() + timeoutNanos;
+        E message;
+        while ((message = poll()) == null) {
+            long remaining = deadline - System.nanoTime();
+            if (closed || remaining <= 0) {
+                return null;
+            }
+            waitingWriter = Thread.currentThread();
+            if (messages.isEmpty() && !closed) {
+                LockSupport.parkNanos(this, remaining);
+            }
+            waitingWriter = null;
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+        return message;
+    }
+
+    /**
+     * Close the queue. Messages queued so far are still taken, new ones are ignored.
+     */
+    public void close() {
+        closed = true;
+        Thread writer = waitingWriter;
+        if (writer != null) {
+            LockSupport.unpark(writer);
+        }
+    }
+
+    /**
+     * Check that there is no queued message.
+     *
+     * @return true if the queue is empty, false otherwise.
+     */
+    public boolean isEmpty() {
+        return messages.isEmpty();
+    }
+
+    /**
+     * Getter for the number of queued messages.
+     *
+     * @return the number of queued messages.
+     */
+    public int size() {
+        return size.get();
+    }
+
+    /**
+     * Getter for the number of dropped messages.
+     *
+     * @return the number of dropped messages.
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+}
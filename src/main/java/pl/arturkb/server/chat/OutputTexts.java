@@ -1,7 +1,13 @@
 package pl.arturkb.server.chat;
 
+import java.util.Map;
+
 /**
  * Class that renders output texts:
+ * <p>
+ * The responses sent to clients are also compiled to {@link ResponseTemplate}s, encoded once when the class is
+ * loaded. Sessions send the rendered templates, the text methods are for logs and for the clients that compare what
+ * they get.
  */
 public class OutputTexts {
 
@@ -9,6 +15,86 @@ public class OutputTexts {
 
     public static final String WRONG_USER_NAME = "Assigning user name unsuccessful. Closing connection.";
 
+    public static final String NO_ROOMS = "There are no rooms.";
+
+    public static final String NO_HISTORY = "There are no messages in the history.";
+
+    public static final String NO_USERS = "There are no users.";
+
+    // Log message pattern with the user name or the address and the number of inactive seconds.
+    public static final String INACTIVE_INFO_MESSAGE = "{0} have been inactive for :{1,number,#} and maximum allowed is "
+            + ServerConstants.MAX_INACTIVE_SECONDS + " seconds.\nClosing connection to chat server";
+
+    public static final String RATE_LIMIT_DROP = "You are sending too fast, your messages are dropped.";
+
+    public static final String RATE_LIMIT_DISCONNECT = "You are sending too fast. Closing connection.";
+
+    public static final String STATS_NOT_ALLOWED = "The server statistics are only shown to clients on the server host.";
+
+    public static final String BINARY_PROTOCOL_ON = "Binary protocol is on, send your name in a name frame.";
+
+    private static final String USAGE = buildUsage();
+
+    public static final ResponseTemplate ENTER_YOUR_NAME_RESPONSE = ResponseTemplate.compile(ENTER_YOUR_NAME);
+
+    public static final ResponseTemplate WRONG_USER_NAME_RESPONSE = ResponseTemplate.compile(WRONG_USER_NAME);
+
+    public static final ResponseTemplate NO_ROOMS_RESPONSE = ResponseTemplate.compile(NO_ROOMS);
+
+    public static final ResponseTemplate NO_HISTORY_RESPONSE = ResponseTemplate.compile(NO_HISTORY);
+
+    public static final ResponseTemplate NO_USERS_RESPONSE = ResponseTemplate.compile(NO_USERS);
+
+    public static final ResponseTemplate RATE_LIMIT_DROP_RESPONSE = ResponseTemplate.compile(RATE_LIMIT_DROP);
+
+    public static final ResponseTemplate RATE_LIMIT_DISCONNECT_RESPONSE = ResponseTemplate.compile(RATE_LIMIT_DISCONNECT);
+
+    public static final ResponseTemplate STATS_NOT_ALLOWED_RESPONSE = ResponseTemplate.compile(STATS_NOT_ALLOWED);
+
+    public static final ResponseTemplate USAGE_RESPONSE = ResponseTemplate.compile(USAGE);
+
+    public static final ResponseTemplate BINARY_PROTOCOL_ON_RESPONSE = ResponseTemplate.compile(BINARY_PROTOCOL_ON);
+
+    public static final ResponseTemplate NAME_SHOULD_NOT_CONTAIN_RESPONSE =
+            ResponseTemplate.compile(getTheNameShouldNotContain(ServerConstants.CHAR_THAT_NAME_CAN_NOT_CONTAIN));
+
+    // Templates with the user name as {0}.
+    public static final ResponseTemplate USER_NAME_ALREADY_USED_RESPONSE = ResponseTemplate.compile("The user name :{0} is already used.");
+
+    public static final ResponseTemplate WELCOME_RESPONSE = ResponseTemplate.compile("Welcome {0} to our chat room.\nTo leave enter "
+            + ServerConstants.QUIT + " in a new line.");
+
+    public static final ResponseTemplate NEW_USER_ENTERED_RESPONSE = ResponseTemplate.compile("*** A new user {0} entered the chat room !!! ***");
+
+    public static final ResponseTemplate USER_LEAVING_RESPONSE = ResponseTemplate.compile("*** The user {0} is leaving the chat room !!! ***");
+
+    // Templates with the room name as {0}, and the user name or the message as {1}.
+    public static final ResponseTemplate WRONG_ROOM_NAME_RESPONSE = ResponseTemplate.compile("The room name :{0} should start with "
+            + ServerConstants.ROOM_PREFIX + " and should not contain white space.");
+
+    public static final ResponseTemplate YOU_JOINED_THE_ROOM_RESPONSE = ResponseTemplate.compile("You joined the room {0}.");
+
+    public static final ResponseTemplate YOU_ARE_ALREADY_IN_THE_ROOM_RESPONSE = ResponseTemplate.compile("You are already in the room {0}.");
+
+    public static final ResponseTemplate YOU_LEFT_THE_ROOM_RESPONSE = ResponseTemplate.compile("You left the room {0}.");
+
+    public static final ResponseTemplate YOU_ARE_NOT_IN_THE_ROOM_RESPONSE = ResponseTemplate.compile("You are not in the room {0}.");
+
+    public static final ResponseTemplate USER_JOINED_THE_ROOM_RESPONSE = ResponseTemplate.compile("*** The user {1} joined the room {0} ***");
+
+    public static final ResponseTemplate USER_LEFT_THE_ROOM_RESPONSE = ResponseTemplate.compile("*** The user {1} left the room {0} ***");
+
+    // Template with the number of seconds to wait before reconnecting as {0}.
+    public static final ResponseTemplate SERVER_RESTARTING_RESPONSE = ResponseTemplate.compile("The server is restarting, reconnect in {0} s.");
+
+    // Template with the user name as {0} and the message as {1}.
+    public static final ResponseTemplate CHAT_MESSAGE_RESPONSE = ResponseTemplate.compile("<{0}> {1}");
+
+    public static final ResponseTemplate ROOM_MESSAGE_RESPONSE = ResponseTemplate.compile("{0} {1}");
+
+    // Template with the number as typed by the client as {0}.
+    public static final ResponseTemplate WRONG_HISTORY_COUNT_RESPONSE = ResponseTemplate.compile("The number of messages :{0} should be a positive number.");
+
     public static String getTheNameShouldNotContain(char shouldNotContain) {
         StringBuilder text = new StringBuilder("The name should not contain ");
         text.append(shouldNotContain);
@@ -17,52 +103,111 @@ public class OutputTexts {
     }
     
     public static String userNameIsAlreadyUsed(String userName) {
-        StringBuilder text = new StringBuilder("The user name :");
-        text.append(userName).append(" is already used.");
-        return text.toString();
+        return USER_NAME_ALREADY_USED_RESPONSE.format(userName);
     }
 
     public static String welcomeMessageForGivenUser(String userName) {
-        StringBuilder text = new StringBuilder("Welcome ");
-        text.append(userName);
-        text.append(" to our chat room.\nTo leave enter /quit in a new line.");
-        return text.toString();
+        return WELCOME_RESPONSE.format(userName);
     }
 
     public static String newUserEnteredChatMessage(String userName) {
-        StringBuilder text = new StringBuilder("*** A new user ");
-        text.append(userName).append(" entered the chat room !!! ***");
-        return text.toString();
+        return NEW_USER_ENTERED_RESPONSE.format(userName);
     }
 
     public static String userIsLeavingTheChat(String userName) {
-        StringBuilder text = new StringBuilder("*** The user ");
-        text.append(userName).append(" is leaving the chat room !!! ***");
-        return  text.toString();
+        return USER_LEAVING_RESPONSE.format(userName);
     }
 
     public static String printUsage() {
+        return USAGE;
+    }
+
+    private static String buildUsage() {
         StringBuilder text = new StringBuilder("Usage:\n\n");
         text.append(ServerConstants.ALL).append(" to send message to all users.\n");
         text.append(ServerConstants.CHAR_THAT_NAME_CAN_NOT_CONTAIN).append("user name").append(" to send message to given user. Private message\n");
+        text.append(ServerConstants.WHO).append(" [prefix] to list users in chat, or the users whose names start with the prefix\n");
+        text.append(ServerConstants.WHO).append(' ').append(ServerConstants.WHO_PAGE).append(" n to print the page n of the list of users\n");
+        text.append(ServerConstants.JOIN).append(' ').append(ServerConstants.ROOM_PREFIX).append("room to join the room\n");
+        text.append(ServerConstants.LEAVE).append(' ').append(ServerConstants.ROOM_PREFIX).append("room to leave the room\n");
+        text.append(ServerConstants.ROOM_PREFIX).append("room to send message to the room\n");
+        text.append(ServerConstants.ROOMS).append(" to list rooms\n");
+        text.append(ServerConstants.HISTORY).append(" [").append(ServerConstants.ROOM_PREFIX).append("room] [n] to print the last n messages of the chat or the room\n");
+        text.append(ServerConstants.STATS).append(" to print the server statistics, on the server host only\n");
         text.append(ServerConstants.QUIT).append(" to exit from chat\n");
         text.append(ServerConstants.HELP).append(" to print this help info\n");
 
         return text.toString();
     }
 
-    public static String printInactiveMessage(Long seconds) {
-        StringBuilder text = new StringBuilder("You have been inactive for :");
-        text.append(seconds).append(" and maximum allowed is ");
-        text.append(ServerConstants.MAX_INACTIVE_SECONDS).append(" seconds.\n");
-        text.append("Closing connection to chat server");
+    public static String serverIsFull(int retryAfterSeconds) {
+        StringBuilder text = new StringBuilder("The server is full, retry after ");
+        text.append(retryAfterSeconds).append(" s.");
+        return text.toString();
+    }
+
+    public static String lineTooLong(int maxLineLength) {
+        StringBuilder text = new StringBuilder("The line is too long and is skipped, max ");
+        text.append(maxLineLength).append(" bytes.");
+        return text.toString();
+    }
 
+    public static String tooManyConnectionsFromAddress(int retryAfterSeconds) {
+        StringBuilder text = new StringBuilder("Too many connections from your address, retry after ");
+        text.append(retryAfterSeconds).append(" s.");
         return text.toString();
     }
 
-    public static String printInactiveInfoMessage(Long seconds, String userName) {
-        StringBuilder text = new StringBuilder(userName);
-        text.append(" have been inactive for :");
+    public static String stats(ServerMetrics metrics) {
+        StringBuilder text = new StringBuilder("Server statistics:\n");
+        text.append("active sessions ").append(metrics.getActiveSessions()).append('\n');
+        text.append("accepted connections ").append(metrics.getAcceptedConnections()).append('\n');
+        text.append("rejected connections ").append(metrics.getRejectedConnections()).append('\n');
+        for (Map.Entry<String, Long> entry : metrics.getMessagesIn().entrySet()) {
+            text.append("messages in ").append(entry.getKey()).append(' ').append(entry.getValue()).append('\n');
+        }
+        text.append("messages out ").append(metrics.getMessagesOut()).append('\n');
+        text.append("bytes in ").append(metrics.getBytesIn()).append('\n');
+        text.append("bytes out ").append(metrics.getBytesOut()).append('\n');
+        text.append("idle evictions ").append(metrics.getIdleEvictions()).append('\n');
+        text.append("rate limited lines ").append(metrics.getRateLimitedLines()).append('\n');
+        text.append("broadcast fan-out us mean ").append(String.format("%.1f", metrics.getBroadcastFanOutMeanMicros()))
+                .append(" p99 ").append(metrics.getBroadcastFanOutP99Micros()).append('\n');
+        text.append("outbound queue depth p99 ").append(metrics.getOutboundQueueDepthP99())
+                .append(" max ").append(metrics.getOutboundQueueDepthMax()).append('\n');
+        return text.toString();
+    }
+
+    public static String userPage(int page, int pageCount) {
+        StringBuilder text = new StringBuilder("Page ");
+        text.append(page).append(" of ").append(pageCount).append('.');
+        if (page < pageCount) {
+            text.append(" Enter ").append(ServerConstants.WHO).append(' ').append(ServerConstants.WHO_PAGE).append(' ')
+                    .append(page + 1).append(" for the next page.");
+        }
+        return text.toString();
+    }
+
+    public static String noSuchUserPage(int page, int pageCount) {
+        StringBuilder text = new StringBuilder("There is no page ");
+        text.append(page).append(", the list of users has ").append(pageCount).append(" pages.");
+        return text.toString();
+    }
+
+    public static String moreUsersWithPrefix(String prefix) {
+        StringBuilder text = new StringBuilder("More users start with ");
+        text.append(prefix).append(", enter a longer prefix.");
+        return text.toString();
+    }
+
+    public static String noUsersWithPrefix(String prefix) {
+        StringBuilder text = new StringBuilder("No user name starts with ");
+        text.append(prefix).append('.');
+        return text.toString();
+    }
+
+    public static String printInactiveMessage(Long seconds) {
+        StringBuilder text = new StringBuilder("You have been inactive for :");
         text.append(seconds).append(" and maximum allowed is ");
         text.append(ServerConstants.MAX_INACTIVE_SECONDS).append(" seconds.\n");
         text.append("Closing connection to chat server");
@@ -0,0 +1,17 @@
+package pl.arturkb.server.chat;
+
+/**
+ * What to do with a message for a client whose outbound queue is full.
+ */
+public enum OverflowPolicy {
+
+    // Drop the oldest queued message to make room for the new one.
+    DROP_OLDEST,
+
+    // Drop the new message.
+    DROP_NEWEST,
+
+    // Disconnect the client.
+    DISCONNECT
+
+}
@@ -0,0 +1,18 @@
+package pl.arturkb.server.chat;
+
+import java.net.InetSocketAddress;
+import java.util.List;
+
+/**
+ * Finds the other nodes of the cluster.
+ */
+public interface PeerDiscovery {
+
+    /**
+     * Return the cluster addresses of the other nodes.
+     *
+     * @return the addresses of the peer nodes.
+     */
+    List<InetSocketAddress> getPeers();
+
+}
@@ -0,0 +1,201 @@
+package pl.arturkb.server.chat;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.logging.Logger;
+
+/**
+ * Link that sends frames to one peer node, connected again whenever it breaks.
+ * <p>
+ * Frames are queued by any thread and written by the thread of the link. The writer takes every frame that is
+ * queued, up to {@link ServerConstants#CLUSTER_BATCH_BYTES}, and writes them with one flush, so under load many
+ * frames share one system call and one TCP segment. While the link is down frames are dropped; the peer gets the
+ * membership again when the link is up. A peer that does not take frames fast enough to keep the queue below
+ * {@link ServerConstants#CLUSTER_LINK_QUEUE_SIZE} has its link reset.
+ */
+public class PeerLink implements Runnable {
+
+    // The local node.
+    private final ClusterNode node;
+
+    // The cluster address of the peer.
+    private final InetSocketAddress address;
+
+    // The id of the peer, known once the link is up.
+    private volatile String peerId;
+
+    // The connected socket, null while the link is down.
+    private volatile Socket socket;
+
+    // Frames waiting to be written, null while the link is down.
+    private volatile OutboundQueue<byte[]> queue;
+
+    private volatile boolean closed;
+
+    // The thread of the link.
+    private final Thread thread;
+
+    // Logger;
+    private final static Logger LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+
+    /**
+     * The constructor
+     *
+     * @param node    the local node.
+     * @param address the cluster address of the peer, may be unresolved.
+     */
+    public PeerLink(ClusterNode node, InetSocketAddress address) {
+        this.node = node;
+        this.address = address;
+        thread = new Thread(this, "cluster-link-" + address.getHostString() + ":" + address.getPort());
+        thread.setDaemon(true);
+    }
+
+    /**
+     * Start the thread of the link.
+     */
+    public void start() {
+        thread.start();
+    }
+
+    /**
+     * Connect to the peer and write queued frames, connect again when the link breaks, until the link is closed.
+     */
+    public void run() {
+        while (!closed) {
+            try {
+                connect();
+                writeFrames();
+            } catch (IOException e) {
+                LOGGER.fine("Cluster link to " + address + " is down " + e.getMessage());
+            } catch (InterruptedException e) {
+                break;
+            } finally {
+                down();
+            }
+            try {
+                Thread.sleep(ServerConstants.CLUSTER_RECONNECT_MILLISECONDS);
+            } catch (InterruptedException e) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Queue the frame for the peer. The frame is dropped while the link is down.
+     *
+     * @param frame the encoded frame, shared with other links.
+     */
+    public void send(byte[] frame) {
+        OutboundQueue<byte[]> current = queue;
+        if (current != null && !current.offer(frame)) {
+            LOGGER.warning("Cluster link to " + peerId + " is too slow, resetting it");
+            reset();
+        }
+    }
+
+    /**
+     * Break the link, it is connected again.
+     */
+    public void reset() {
+        OutboundQueue<byte[]> current = queue;
+        if (current != null) {
+            current.close();
+        }
+        Socket connected = socket;
+        if (connected != null) {
+            try {
+                connected.close();
+            } catch (IOException e) {
+                // Nothing to do, the link is down anyway.
+            }
+        }
+    }
+
+    /**
+     * Close the link for good.
+     */
+    public void close() {
+        closed = true;
+        reset();
+        thread.interrupt();
+    }
+
+    /**
+     * Getter for peerId
+     *
+     * @return the id of the peer, null until the link was up.
+     */
+    public String getPeerId() {
+        return peerId;
+    }
+
+    /**
+     * Connect to the peer and exchange node ids.
+     *
+     * @throws IOException If an I/O error occurs
+     */
+    private void connect() throws IOException {
+        Socket connected = new Socket();
+        socket = connected;
+        if (closed) {
+            throw new IOException("Link is closed");
+        }
+        connected.connect(new InetSocketAddress(address.getHostString(), address.getPort()), ServerConstants.CLUSTER_CLAIM_TIMEOUT_MILLISECONDS);
+        connected.setTcpNoDelay(true);
+        connected.getOutputStream().write(ClusterFrame.hello(node.getNodeId()));
+        connected.setSoTimeout(ServerConstants.CLUSTER_CLAIM_TIMEOUT_MILLISECONDS);
+        ClusterFrame hello = ClusterFrame.read(new DataInputStream(connected.getInputStream()));
+        if (hello.getType() != ClusterFrame.HELLO) {
+            throw new IOException("Peer did not say hello");
+        }
+        peerId = hello.readString();
+        if (peerId.equals(node.getNodeId())) {
+            LOGGER.warning("Cluster peer " + address + " is this node, closing the link");
+            closed = true;
+            throw new IOException("Link to itself");
+        }
+        queue = new OutboundQueue<>(ServerConstants.CLUSTER_LINK_QUEUE_SIZE, OverflowPolicy.DISCONNECT);
+        LOGGER.info("Cluster link to " + peerId + " at " + address + " is up");
+        node.onLinkUp(this);
+    }
+
+    /**
+     * Write queued frames in batches until the link is reset.
+     *
+     * @throws IOException          If an I/O error occurs
+     * @throws InterruptedException If the link is closed
+     */
+    private void writeFrames() throws IOException, InterruptedException {
+        OutboundQueue<byte[]> frames = queue;
+        OutputStream output = new BufferedOutputStream(socket.getOutputStream(), ServerConstants.CLUSTER_BATCH_BYTES);
+        byte[] frame;
+        while ((frame = frames.take()) != null) {
+            int batched = 0;
+            do {
+                output.write(frame);
+                batched += frame.length;
+            } while (batched < ServerConstants.CLUSTER_BATCH_BYTES && (frame = frames.poll()) != null);
+            output.flush();
+        }
+    }
+
+    /**
+     * The link is down, frames are dropped until it is up again.
+     */
+    private void down() {
+        OutboundQueue<byte[]> current = queue;
+        reset();
+        queue = null;
+        socket = null;
+        if (current != null) {
+            node.onLinkDown(this);
+            LOGGER.info("Cluster link to " + peerId + " at " + address + " is down");
+        }
+    }
+
+}
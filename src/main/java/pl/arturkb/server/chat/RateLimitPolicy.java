@@ -0,0 +1,17 @@
+package pl.arturkb.server.chat;
+
+/**
+ * What to do with a line of a client that sends faster than its rate limits allow.
+ */
+public enum RateLimitPolicy {
+
+    // Handle the line, then stop reading from the client until it is within the limits again.
+    THROTTLE,
+
+    // Ignore the line, the client is told once until it is within the limits again.
+    DROP,
+
+    // Tell the client and disconnect it.
+    DISCONNECT
+
+}
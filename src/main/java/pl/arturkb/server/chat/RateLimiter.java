@@ -0,0 +1,104 @@
+package pl.arturkb.server.chat;
+
+/**
+ * The rate limits of one client session: token buckets of the session and, shared with the other sessions from
+ * the same address, of its address. Every line costs one message token and one byte token per byte.
+ * <p>
+ * Used by the thread that reads the lines of the session, only the buckets of the address are shared.
+ */
+public class RateLimiter {
+
+    // Returned by admit when the line is not to be handled.
+    static final long REJECTED = -1;
+
+    // What to do with lines over the limits.
+    private final RateLimitPolicy policy;
+
+    // Buckets of the session and its address, null when there is no such limit.
+    private final TokenBucket sessionMessages;
+    private final TokenBucket sessionBytes;
+    private final TokenBucket addressMessages;
+    private final TokenBucket addressBytes;
+
+    // True while lines are dropped, the client is told only when dropping starts.
+    private boolean dropping;
+
+    /**
+     * The constructor
+     *
+     * @param policy          what to do with lines over the limits.
+     * @param sessionMessages the message bucket of the session, null for no limit.
+     * @param sessionBytes    the byte bucket of the session, null for no limit.
+     * @param addressMessages the message bucket of the address, null for no limit.
+     * @param addressBytes    the byte bucket of the address, null for no limit.
+     */
+    RateLimiter(RateLimitPolicy policy, TokenBucket sessionMessages, TokenBucket sessionBytes,
+                TokenBucket addressMessages, TokenBucket addressBytes) {
+        this.policy = policy;
+        this.sessionMessages = sessionMessages;
+        this.sessionBytes = sessionBytes;
+        this.addressMessages = addressMessages;
+        this.addressBytes = addressBytes;
+    }
+
+    /**
+     * Take the tokens for the line and apply the policy when they are not there. A line that is rejected takes no
+     * tokens from any bucket. The session gets the notice of
+     * {@link RateLimitPolicy#DROP} and {@link RateLimitPolicy#DISCONNECT}, disconnecting is left to the caller.
+     *
+     * @param bytes   the length of the line.
+     * @param session the session that received the line.
+     * @return 0 to handle the line, the time in nanoseconds to stop reading for after the line is handled, or
+     * {@link #REJECTED} when the line is not to be handled.
+     */
+    public long admit(int bytes, ChatSession session) {
+        if (policy == RateLimitPolicy.THROTTLE) {
+            return Math.max(Math.max(acquire(sessionMessages, 1), acquire(sessionBytes, bytes)),
+                    Math.max(acquire(addressMessages, 1), acquire(addressBytes, bytes)));
+        }
+        if (tryAcquire(sessionMessages, 1)) {
+            if (tryAcquire(sessionBytes, bytes)) {
+                if (tryAcquire(addressMessages, 1)) {
+                    if (tryAcquire(addressBytes, bytes)) {
+                        dropping = false;
+                        return 0;
+                    }
+                    release(addressMessages, 1);
+                }
+                release(sessionBytes, bytes);
+            }
+            release(sessionMessages, 1);
+        }
+        if (policy == RateLimitPolicy.DISCONNECT) {
+            session.sendMessage(OutputTexts.RATE_LIMIT_DISCONNECT_RESPONSE.render());
+        } else if (!dropping) {
+            dropping = true;
+            session.sendMessage(OutputTexts.RATE_LIMIT_DROP_RESPONSE.render());
+        }
+        return REJECTED;
+    }
+
+    /**
+     * Getter for policy
+     *
+     * @return what to do with lines over the limits.
+     */
+    public RateLimitPolicy getPolicy() {
+        return policy;
+    }
+
+    private static long acquire(TokenBucket bucket, int tokens) {
+        return bucket == null ? 0 : bucket.acquire(tokens);
+    }
+
+    private static boolean tryAcquire(TokenBucket bucket, int tokens) {
+        return bucket == null || bucket.tryAcquire(tokens);
+    }
+
+    private static void release(TokenBucket bucket, int tokens) {
+        if (bucket != null) {
+            bucket.release(tokens);
+        }
+    }
+
+}
@@ -0,0 +1,112 @@
+package pl.arturkb.server.chat;
+
+import java.net.InetAddress;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Creates the {@link RateLimiter}s of client sessions and keeps the token buckets of client addresses, shared by
+ * all sessions from one address while at least one of them is connected.
+ */
+public class RateLimits {
+
+    // What to do with lines over the limits.
+    private final RateLimitPolicy policy;
+
+    // Max lines per second of one session, 0 for no limit.
+    private final int messagesPerSecond;
+
+    // Max bytes per second of one session, 0 for no limit.
+    private final int bytesPerSecond;
+
+    // Max lines per second of all sessions from one address, 0 for no limit.
+    private final int addressMessagesPerSecond;
+
+    // Max bytes per second of all sessions from one address, 0 for no limit.
+    private final int addressBytesPerSecond;
+
+    // Max bytes of a line, the byte buckets hold at least that many so that every line can pass.
+    private final int maxLineLength;
+
+    // Buckets of the addresses with connected sessions.
+    private final ConcurrentMap<InetAddress, AddressBuckets> addressBuckets = new ConcurrentHashMap<>();
+
+    /**
+     * The constructor
+     *
+     * @param settings the server settings.
+     */
+    public RateLimits(ServerSettings settings) {
+        policy = settings.getRateLimitPolicy();
+        messagesPerSecond = settings.getMessagesPerSecond();
+        bytesPerSecond = settings.getBytesPerSecond();
+        addressMessagesPerSecond = settings.getAddressMessagesPerSecond();
+        addressBytesPerSecond = settings.getAddressBytesPerSecond();
+        maxLineLength = settings.getMaxLineLength();
+    }
+
+    /**
+     * Create the rate limiter of a session, give it back with {@link #release(InetAddress)} when the session ends.
+     *
+     * @param address the client address.
+     * @return the rate limiter, null when no limit is set.
+     */
+    public RateLimiter newLimiter(InetAddress address) {
+        if (messagesPerSecond <= 0 && bytesPerSecond <= 0 && addressMessagesPerSecond <= 0 && addressBytesPerSecond <= 0) {
+            return null;
+        }
+        AddressBuckets buckets = null;
+        if (addressMessagesPerSecond > 0 || addressBytesPerSecond > 0) {
+            buckets = addressBuckets.compute(address, (key, current) -> {
+                AddressBuckets result = current != null ? current
+                        : new AddressBuckets(newBucket(addressMessagesPerSecond, 0), newBucket(addressBytesPerSecond, maxLineLength));
+                result.sessions++;
+                return result;
+            });
+        }
+        return new RateLimiter(policy, newBucket(messagesPerSecond, 0), newBucket(bytesPerSecond, maxLineLength),
+                buckets != null ? buckets.messages : null, buckets != null ? buckets.bytes : null);
+    }
+
+    /**
+     * Forget the buckets of the address when the last session from it ends.
+     *
+     * @param address the client address, the same as given to {@link #newLimiter(InetAddress)}.
+     */
+    public void release(InetAddress address) {
+        addressBuckets.computeIfPresent(address, (key, buckets) -> --buckets.sessions > 0 ? buckets : null);
+    }
+
+    /**
+     * Getter for the number of addresses with buckets.
+     *
+     * @return the number of addresses.
+     */
+    int getAddressCount() {
+        return addressBuckets.size();
+    }
+
+    private static TokenBucket newBucket(int tokensPerSecond, int minBurstTokens) {
+        return tokensPerSecond > 0
+                ? new TokenBucket(tokensPerSecond, ServerConstants.RATE_LIMIT_BURST_SECONDS, minBurstTokens) : null;
+    }
+
+    /**
+     * The buckets of one address, changed only inside the compute methods of the map.
+     */
+    private static class AddressBuckets {
+
+        private final TokenBucket messages;
+
+        private final TokenBucket bytes;
+
+        // The number of sessions from the address.
+        private int sessions;
+
+        AddressBuckets(TokenBucket messages, TokenBucket bytes) {
+            this.messages = messages;
+            this.bytes = bytes;
+        }
+    }
+
+}
@@ -0,0 +1,68 @@
+package pl.arturkb.server.chat;
+
+/**
+ * Client connected to another node of the cluster. Messages to it are forwarded to its node.
+ */
+public class RemoteSession implements ChatSession {
+
+    // The local node, that forwards the messages.
+    private final ClusterNode cluster;
+
+    // The node the client is connected to.
+    private final String nodeId;
+
+    private final String userName;
+
+    private final String clientName;
+
+    /**
+     * The constructor
+     *
+     * @param cluster  the local node.
+     * @param nodeId   the node the client is connected to.
+     * @param userName the user name of the client.
+     */
+    public RemoteSession(ClusterNode cluster, String nodeId, String userName) {
+        this.cluster = cluster;
+        this.nodeId = nodeId;
+        this.userName = userName;
+        clientName = ServerConstants.CHAR_THAT_NAME_CAN_NOT_CONTAIN + userName;
+    }
+
+    /**
+     * Getter for nodeId
+     *
+     * @return the node the client is connected to.
+     */
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * Getter for userName
+     *
+     * @return the user name;
+     */
+    public String getUserName() {
+        return userName;
+    }
+
+    /**
+     * Getter for client name;
+     *
+     * @return the client name
+     */
+    public String getClientName() {
+        return clientName;
+    }
+
+    /**
+     * Forward the message to the node of the client.
+     *
+     * @param message the message to send.
+     */
+    public void sendMessage(OutboundMessage message) {
+        cluster.forwardPrivate(nodeId, clientName, message);
+    }
+
+}
@@ -0,0 +1,232 @@
+package pl.arturkb.server.chat;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A response of the server to its clients, with its text encoded once when the template is compiled.
+ * <p>
+ * The pattern is the text of the response with the placeholders {0} and {1} for its parameters. Rendering copies the
+ * encoded text and encodes the parameters straight into the bytes of the message, so a response costs one byte
+ * array and no intermediate strings. A template without parameters renders to one message shared by all clients.
+ */
+public final class ResponseTemplate {
+
+    // Max number of parameters of a template.
+    private static final int MAX_PARAMETERS = 2;
+
+    // True when the parameters can be encoded without the charset, see encode.
+    private static final boolean UTF_8 = OutboundMessage.CHARSET.equals(StandardCharsets.UTF_8);
+
+    // The text around the placeholders, one more than placeholders.
+    private final String[] literals;
+
+    // The encoded literals, the last one ends with the line separator.
+    private final byte[][] encodedLiterals;
+
+    // The number of encoded bytes of all literals.
+    private final int literalsLength;
+
+    // The parameter index of every placeholder.
+    private final int[] placeholders;
+
+    // The number of parameters of the template.
+    private final int parameterCount;
+
+    // The message of a template without parameters, null otherwise.
+    private final OutboundMessage constant;
+
+    /**
+     * The constructor
+     *
+     * @param literals       the text around the placeholders.
+     * @param placeholders   the parameter index of every placeholder.
+     * @param parameterCount the number of parameters.
+     */
+    private ResponseTemplate(String[] literals, int[] placeholders, int parameterCount) {
+        this.literals = literals;
+        this.placeholders = placeholders;
+        this.parameterCount = parameterCount;
+        encodedLiterals = new byte[literals.length][];
+        int length = 0;
+        for (int i = 0; i < literals.length; i++) {
+            String literal = i == literals.length - 1 ? literals[i] + OutboundMessage.LINE_SEPARATOR : literals[i];
+            encodedLiterals[i] = literal.getBytes(OutboundMessage.CHARSET);
+            length += encodedLiterals[i].length;
+        }
+        literalsLength = length;
+        constant = parameterCount == 0 ? OutboundMessage.wrap(encodedLiterals[0]) : null;
+    }
+
+    /**
+     * Compile the pattern of a response.
+     *
+     * @param pattern the text with the placeholders {0} and {1}.
+     * @return the template.
+     * @throws IllegalArgumentException if the pattern has other placeholders.
+     */
+    public static ResponseTemplate compile(String pattern) {
+        int count = 0;
+        for (int i = pattern.indexOf('{'); i != -1; i = pattern.indexOf('{', i + 1)) {
+            count++;
+        }
+        String[] literals = new String[count + 1];
+        int[] placeholders = new int[count];
+        int parameterCount = 0;
+        int start = 0;
+        for (int i = 0; i < count; i++) {
+            int open = pattern.indexOf('{', start);
+            int index = open + 2 < pattern.length() && pattern.charAt(open + 2) == '}' ? pattern.charAt(open + 1) - '0' : -1;
+            if (index < 0 || index >= MAX_PARAMETERS) {
+                throw new IllegalArgumentException("Wrong placeholder at " + open + " in response pattern: " + pattern);
+            }
+            literals[i] = pattern.substring(start, open);
+            placeholders[i] = index;
+            parameterCount = Math.max(parameterCount, index + 1);
+            start = open + 3;
+        }
+        literals[count] = pattern.substring(start);
+        return new ResponseTemplate(literals, placeholders, parameterCount);
+    }
+
+    /**
+     * Render the response without parameters.
+     *
+     * @return the message, the same for every call.
+     */
+    public OutboundMessage render() {
+        checkParameterCount(0);
+        return constant;
+    }
+
+    /**
+     * Render the response with one parameter.
+     *
+     * @param first the parameter {0}.
+     * @return the encoded message.
+     */
+    public OutboundMessage render(String first) {
+        checkParameterCount(1);
+        return encode(first, null);
+    }
+
+    /**
+     * Render the response with two parameters.
+     *
+     * @param first  the parameter {0}.
+     * @param second the parameter {1}.
+     * @return the encoded message.
+     */
+    public OutboundMessage render(String first, String second) {
+        checkParameterCount(2);
+        return encode(first, second);
+    }
+
+    /**
+     * Format the text of the response, for logs and for the clients that compare what they get.
+     *
+     * @param parameters the parameters {0} and {1}.
+     * @return the text without line separator.
+     */
+    public String format(String... parameters) {
+        checkParameterCount(parameters.length);
+        StringBuilder text = new StringBuilder(literals[0]);
+        for (int i = 0; i < placeholders.length; i++) {
+            text.append(parameters[placeholders[i]]).append(literals[i + 1]);
+        }
+        return text.toString();
+    }
+
+    private void checkParameterCount(int count) {
+        if (count != parameterCount) {
+            throw new IllegalArgumentException("The response has " + parameterCount + " parameters, not " + count);
+        }
+    }
+
+    /**
+     * Encode the response into a byte array of its exact length.
+     *
+     * @param first  the parameter {0}.
+     * @param second the parameter {1}, null when there is one parameter.
+     * @return the encoded message.
+     */
+    private OutboundMessage encode(String first, String second) {
+        if (!UTF_8) {
+            return OutboundMessage.of(second == null ? format(first) : format(first, second));
+        }
+        int length = literalsLength;
+        for (int placeholder : placeholders) {
+            length += utf8Length(placeholder == 0 ? first : second);
+        }
+        byte[] bytes = new byte[length];
+        int offset = 0;
+        for (int i = 0; i < placeholders.length; i++) {
+            System.arraycopy(encodedLiterals[i], 0, bytes, offset, encodedLiterals[i].length);
+            offset += encodedLiterals[i].length;
+            offset = utf8Encode(placeholders[i] == 0 ? first : second, bytes, offset);
+        }
+        byte[] last = encodedLiterals[placeholders.length];
+        System.arraycopy(last, 0, bytes, offset, last.length);
+        return OutboundMessage.wrap(bytes);
+    }
+
+    /**
+     * Count the UTF-8 bytes of the text, the same way as {@link String#getBytes(java.nio.charset.Charset)}: a
+     * surrogate without its pair is replaced with '?'.
+     *
+     * @param text the text.
+     * @return the number of bytes.
+     */
+    static int utf8Length(String text) {
+        int length = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (!Character.isSurrogate(c)) {
+                length += 3;
+            } else if (Character.isHighSurrogate(c) && i + 1 < text.length() && Character.isLowSurrogate(text.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else {
+                length++;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Encode the text as UTF-8 into the array, it must have room for {@link #utf8Length(String)} bytes.
+     *
+     * @param text   the text.
+     * @param bytes  the array to encode into.
+     * @param offset the index of the first byte.
+     * @return the index after the last byte.
+     */
+    static int utf8Encode(String text, byte[] bytes, int offset) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                bytes[offset++] = (byte) c;
+            } else if (c < 0x800) {
+                bytes[offset++] = (byte) (0xC0 | c >> 6);
+                bytes[offset++] = (byte) (0x80 | c & 0x3F);
+            } else if (!Character.isSurrogate(c)) {
+                bytes[offset++] = (byte) (0xE0 | c >> 12);
+                bytes[offset++] = (byte) (0x80 | c >> 6 & 0x3F);
+                bytes[offset++] = (byte) (0x80 | c & 0x3F);
+            } else if (Character.isHighSurrogate(c) && i + 1 < text.length() && Character.isLowSurrogate(text.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, text.charAt(++i));
+                bytes[offset++] = (byte) (0xF0 | codePoint >> 18);
+                bytes[offset++] = (byte) (0x80 | codePoint >> 12 & 0x3F);
+                bytes[offset++] = (byte) (0x80 | codePoint >> 6 & 0x3F);
+                bytes[offset++] = (byte) (0x80 | codePoint & 0x3F);
+            } else {
+                bytes[offset++] = '?';
+            }
+        }
+        return offset;
+    }
+
+}
@@ -0,0 +1,160 @@
+package pl.arturkb.server.chat;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Chat room with its own membership index, so a message to the room touches only its members.
+ * <p>
+ * Members are added and removed without locks. Like {@link ClientRegistry}, every change bumps the membership
+ * version and messages to the room iterate an immutable snapshot of the members that is rebuilt lazily, once per
+ * version. The last messages of the room are kept in its {@link MessageHistory}.
+ */
+public class Room {
+
+    // The room name, starts with ServerConstants.ROOM_PREFIX.
+    private final String name;
+
+    // The members of the room.
+    private final Set<ChatSession> members = ConcurrentHashMap.newKeySet();
+
+    // Membership version, bumped after every change of members.
+    private final AtomicLong version = new AtomicLong();
+
+    // Members at some version, replaced as a whole.
+    private volatile Snapshot snapshot = new Snapshot(0, new ChatSession[0]);
+
+    // The last messages of the room, null when no history is kept.
+    private final MessageHistory history;
+
+    /**
+     * The constructor, the room keeps no history.
+     *
+     * @param name the room name.
+     */
+    public Room(String name) {
+        this(name, 0);
+    }
+
+    /**
+     * The constructor
+     *
+     * @param name        the room name.
+     * @param historySize the number of messages kept in the history, 0 for none.
+     */
+    public Room(String name, int historySize) {
+        this.name = name;
+        history = historySize > 0 ? new MessageHistory(historySize) : null;
+    }
+
+    /**
+     * Getter for name
+     *
+     * @return the room name.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Add the session to the room.
+     *
+     * @param session the session that joins the room.
+     * @return true if the session is added, false if it is already a member.
+     */
+    public boolean add(ChatSession session) {
+        if (members.add(session)) {
+            version.incrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Remove the session from the room.
+     *
+     * @param session the session that leaves the room.
+     * @return true if the session is removed, false if it is not a member.
+     */
+    public boolean remove(ChatSession session) {
+        if (members.remove(session)) {
+            version.incrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Check that the session is a member of the room.
+     *
+     * @param session the session.
+     * @return true for a member, false otherwise.
+     */
+    public boolean contains(ChatSession session) {
+        return members.contains(session);
+    }
+
+    /**
+     * Getter for the number of members.
+     *
+     * @return the number of members.
+     */
+    public int size() {
+        return members.size();
+    }
+
+    /**
+     * Send encoded message to all members of the room. All recipients share the same bytes.
+     *
+     * @param message the message to send.
+     * @param sender  the sending session, that does not get the message.
+     */
+    public void broadcastMessage(OutboundMessage message, ChatSession sender) {
+        for (ChatSession session : getMembers()) {
+            if (session != sender) {
+                session.sendMessage(message);
+            }
+        }
+    }
+
+    /**
+     * Getter for history
+     *
+     * @return the last messages of the room, null when no history is kept.
+     */
+    public MessageHistory getHistory() {
+        return history;
+    }
+
+    /**
+     * Getter for the members, rebuilds the snapshot when membership has changed since the last call.
+     *
+     * @return the members, not to be modified.
+     */
+    ChatSession[] getMembers() {
+        long currentVersion = version.get();
+        Snapshot current = snapshot;
+        if (current.version != currentVersion) {
+            current = new Snapshot(currentVersion, members.toArray(new ChatSession[0]));
+            snapshot = current;
+        }
+        return current.members;
+    }
+
+    /**
+     * Immutable members at given version.
+     */
+    private static final class Snapshot {
+
+        private final long version;
+
+        private final ChatSession[] members;
+
+        private Snapshot(long version, ChatSession[] members) {
+            this.version = version;
+            this.members = members;
+        }
+    }
+
+}
@@ -0,0 +1,248 @@
+package pl.arturkb.server.chat;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The list of users shown by /who, of the whole cluster, in name order.
+ * <p>
+ * The users are kept in a sorted concurrent map, for the prefix lookups, and in an index of sorted blocks of
+ * names, for the pages. A client that registers or leaves changes one block of the index, copied with its change,
+ * so a change costs a block and the array of blocks, never the whole list. Every change replaces the index as a
+ * whole, and the pages of an index are encoded on the first request that needs them: clients that poll /who while
+ * nobody joins or leaves get the same bytes and the server does no work per request, and after a change a page is
+ * found by the lengths of the blocks and encoded from the names it holds. A page holds at most the page size of
+ * users, so a huge list is never sent at once; a prefix only walks the users that start with it.
+ */
+public class Roster {
+
+    // Sessions by client name, sorted.
+    private final ConcurrentSkipListMap<String, ChatSession> sessions = new ConcurrentSkipListMap<>();
+
+    // Max number of users of one page.
+    private final int pageSize;
+
+    // The index at the last change, replaced as a whole under the lock of the roster.
+    private volatile Pages pages;
+
+    /**
+     * The constructor
+     *
+     * @param pageSize the max number of users of one page.
+     */
+    public Roster(int pageSize) {
+        this.pageSize = pageSize;
+        pages = new Pages(new String[0][], 0);
+    }
+
+    /**
+     * Add the user to the list, or replace the session of the user.
+     *
+     * @param clientName the client name.
+     * @param session    the session of the user.
+     */
+    public synchronized void add(String clientName, ChatSession session) {
+        if (sessions.put(clientName, session) == null) {
+            pages = pages.insert(clientName);
+        }
+    }
+
+    /**
+     * Remove the user from the list, unless the name is used by another session by now.
+     *
+     * @param clientName the client name.
+     * @param session    the session of the user.
+     */
+    public synchronized void remove(String clientName, ChatSession session) {
+        if (sessions.remove(clientName, session)) {
+            pages = pages.delete(clientName);
+        }
+    }
+
+    /**
+     * Render the page of the list.
+     *
+     * @param number the page number, starting with 1.
+     * @return the users of the page, encoded once per version of the list.
+     */
+    public OutboundMessage page(int number) {
+        Pages current = pages;
+        int pageCount = current.getPageCount();
+        if (current.size == 0) {
+            return OutputTexts.NO_USERS_RESPONSE.render();
+        }
+        if (number < 1 || number > pageCount) {
+            return OutboundMessage.of(OutputTexts.noSuchUserPage(number, pageCount));
+        }
+        OutboundMessage page = current.encoded.get(number - 1);
+        if (page == null) {
+            page = current.encode(number, pageCount);
+            current.encoded.set(number - 1, page);
+        }
+        return page;
+    }
+
+    /**
+     * Render the users whose names start with the prefix, at most one page of them.
+     *
+     * @param prefix the prefix of the user names.
+     * @return the matching users.
+     */
+    public OutboundMessage withPrefix(String prefix) {
+        String from = ServerConstants.CHAR_THAT_NAME_CAN_NOT_CONTAIN + prefix;
+        ConcurrentNavigableMap<String, ChatSession> tail = sessions.tailMap(from);
+        StringBuilder text = new StringBuilder();
+        int count = 0;
+        for (Map.Entry<String, ChatSession> entry : tail.entrySet()) {
+            if (!entry.getKey().startsWith(from)) {
+                break;
+            }
+            if (count == pageSize) {
+                text.append(OutputTexts.moreUsersWithPrefix(prefix)).append('\n');
+                break;
+            }
+            text.append(entry.getKey(), 1, entry.getKey().length()).append('\n');
+            count++;
+        }
+        if (count == 0) {
+            return OutboundMessage.of(OutputTexts.noUsersWithPrefix(prefix));
+        }
+        return OutboundMessage.of(text.toString());
+    }
+
+    /**
+     * Getter for the number of users.
+     *
+     * @return the number of users.
+     */
+    public int size() {
+        return sessions.size();
+    }
+
+    /**
+     * The sorted client names in blocks, at one version of the list, and their pages, each encoded when it is
+     * first asked for. Blocks are never changed, a change of the list makes new ones.
+     */
+    private final class Pages {
+
+        private final String[][] blocks;
+
+        // The number of names of all blocks.
+        private final int size;
+
+        // The encoded pages, null until asked for. Two threads may encode the same page, both get equal bytes.
+        private final AtomicReferenceArray<OutboundMessage> encoded;
+
+        private Pages(String[][] blocks, int size) {
+            this.blocks = blocks;
+            this.size = size;
+            encoded = new AtomicReferenceArray<>(getPageCount());
+        }
+
+        private int getPageCount() {
+            return (size + pageSize - 1) / pageSize;
+        }
+
+        private OutboundMessage encode(int number, int pageCount) {
+            StringBuilder text = new StringBuilder();
+            int skip = (number - 1) * pageSize;
+            int block = 0;
+            while (skip >= blocks[block].length) {
+                skip -= blocks[block].length;
+                block++;
+            }
+            int count = Math.min(pageSize, size - (number - 1) * pageSize);
+            for (int i = skip; count > 0; i++) {
+                if (i == blocks[block].length) {
+                    block++;
+                    i = 0;
+                }
+                String name = blocks[block][i];
+                text.append(name, 1, name.length()).append('\n');
+                count--;
+            }
+            if (pageCount > 1) {
+                text.append(OutputTexts.userPage(number, pageCount)).append('\n');
+            }
+            return OutboundMessage.of(text.toString());
+        }
+
+        /**
+         * Make the index with the name added, a block that grows over two pages is split in two.
+         */
+        private Pages insert(String name) {
+            if (blocks.length == 0) {
+                return new Pages(new String[][]{{name}}, 1);
+            }
+            int index = findBlock(name);
+            String[] block = blocks[index];
+            int position = -Arrays.binarySearch(block, name) - 1;
+            String[] changed = new String[block.length + 1];
+            System.arraycopy(block, 0, changed, 0, position);
+            changed[position] = name;
+            System.arraycopy(block, position, changed, position + 1, block.length - position);
+            if (changed.length <= 2 * pageSize) {
+                return new Pages(replace(index, 1, changed), size + 1);
+            }
+            int half = changed.length / 2;
+            return new Pages(replace(index, 1, Arrays.copyOfRange(changed, 0, half), Arrays.copyOfRange(changed, half, changed.length)), size + 1);
+        }
+
+        /**
+         * Make the index without the name, a block left with less than a page is merged with the next one when
+         * both fit in a page.
+         */
+        private Pages delete(String name) {
+            int index = findBlock(name);
+            String[] block = blocks[index];
+            int position = Arrays.binarySearch(block, name);
+            if (position < 0) {
+                return this;
+            }
+            String[] changed = new String[block.length - 1];
+            System.arraycopy(block, 0, changed, 0, position);
+            System.arraycopy(block, position + 1, changed, position, changed.length - position);
+            if (changed.length == 0) {
+                return new Pages(replace(index, 1), size - 1);
+            }
+            if (index + 1 < blocks.length && changed.length + blocks[index + 1].length <= pageSize) {
+                String[] merged = Arrays.copyOf(changed, changed.length + blocks[index + 1].length);
+                System.arraycopy(blocks[index + 1], 0, merged, changed.length, blocks[index + 1].length);
+                return new Pages(replace(index, 2, merged), size - 1);
+            }
+            return new Pages(replace(index, 1, changed), size - 1);
+        }
+
+        /**
+         * Find the block the name belongs to, the last one that starts with a lower name, or the first one.
+         */
+        private int findBlock(String name) {
+            int low = 1;
+            int high = blocks.length - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                if (blocks[middle][0].compareTo(name) <= 0) {
+                    low = middle + 1;
+                } else {
+                    high = middle - 1;
+                }
+            }
+            return low - 1;
+        }
+
+        /**
+         * Copy the blocks with the count of blocks from the index replaced by the given ones.
+         */
+        private String[][] replace(int index, int count, String[]... replacement) {
+            String[][] result = new String[blocks.length - count + replacement.length][];
+            System.arraycopy(blocks, 0, result, 0, index);
+            System.arraycopy(replacement, 0, result, index, replacement.length);
+            System.arraycopy(blocks, index + count, result, index + replacement.length, blocks.length - index - count);
+            return result;
+        }
+    }
+
+}
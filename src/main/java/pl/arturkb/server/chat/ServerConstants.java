@@ -22,20 +22,293 @@ public class ServerConstants {
 
     static final String WHO = "/who";
 
-    static final String CLIENT_NAME = "user";
+    static final String JOIN = "/join";
 
-    static final String PRIVATE = "private";
+    static final String LEAVE = "/leave";
 
-    static final String EMPTY = "";
+    static final String ROOMS = "/rooms";
+
+    static final String HISTORY = "/history";
+
+    static final String STATS = "/stats";
+
+    // Sent in place of the name, the client sends frames of the binary protocol from then on.
+    static final String BINARY_PROTOCOL = "/binary";
 
-    static final String COMMAND = "command";
+    // Opcode of the frame with the name in the binary protocol.
+    static final int NAME_OPCODE = 0;
 
-    static final String MSG = "msg";
+    // Word of /who that is followed by the page number.
+    static final String WHO_PAGE = "page";
+
+    // Max number of users on one page of /who.
+    static final int WHO_PAGE_SIZE = 100;
+
+    // Room names start with this character, a line that starts with it is a message to the room.
+    static final char ROOM_PREFIX = '#';
+
+    static final String EMPTY = "";
 
     static final int MILLISECONDS_TO_SECONDS = 1000;
 
     static final int MAX_INACTIVE_SECONDS = 60;
 
+    // Precision of eviction of inactive sessions.
+    static final int IDLE_TICK_MILLISECONDS = 1000;
+
     static final int DEFAULT_PORT = 2222;
 
+    // System property that selects the server mode.
+    static final String MODE_PROPERTY = "chat.server.mode";
+
+    // Blocking, thread per client server mode.
+    static final String BLOCKING_MODE = "blocking";
+
+    // Non-blocking, selector based server mode.
+    static final String NIO_MODE = "nio";
+
+    // System property with the number of I/O reactor threads in the non-blocking mode.
+    static final String REACTORS_PROPERTY = "chat.server.reactors";
+
+    // System property that selects the threads client sessions run on in the blocking mode.
+    static final String THREADS_PROPERTY = "chat.server.threads";
+
+    // Run client sessions on virtual threads when the JDK supports them.
+    static final String VIRTUAL_THREADS = "virtual";
+
+    // Run every client session on a platform thread.
+    static final String PLATFORM_THREADS = "platform";
+
+    // System property with max connections that server will accept.
+    static final String MAX_CLIENTS_PROPERTY = "chat.server.maxClients";
+
+    static final int DEFAULT_MAX_CLIENTS = 10000;
+
+    // System property with the length of the queue of connections waiting to be accepted.
+    static final String ACCEPT_BACKLOG_PROPERTY = "chat.server.acceptBacklog";
+
+    static final int DEFAULT_ACCEPT_BACKLOG = 128;
+
+    // System property with max connections from one address, 0 for no limit.
+    static final String MAX_CONNECTIONS_PER_ADDRESS_PROPERTY = "chat.server.maxConnectionsPerAddress";
+
+    static final int DEFAULT_MAX_CONNECTIONS_PER_ADDRESS = 0;
+
+    // System property with the number of seconds a rejected client is asked to wait before retry.
+    static final String RETRY_AFTER_SECONDS_PROPERTY = "chat.server.retryAfterSeconds";
+
+    static final int DEFAULT_RETRY_AFTER_SECONDS = 5;
+
+    // Size of the buffer that one read is done into.
+    static final int READ_BUFFER_SIZE = 8192;
+
+    // Max number of free read buffers kept for the blocking client sessions.
+    static final int READ_BUFFER_POOL_SIZE = 256;
+
+    // System property with max number of bytes of a line from a client, longer lines are skipped.
+    static final String MAX_LINE_LENGTH_PROPERTY = "chat.server.maxLineLength";
+
+    static final int DEFAULT_MAX_LINE_LENGTH = 4096;
+
+    // System property with max number of messages queued for one client.
+    static final String OUTBOUND_QUEUE_SIZE_PROPERTY = "chat.server.outboundQueueSize";
+
+    static final int DEFAULT_OUTBOUND_QUEUE_SIZE = 1024;
+
+    // System property with the overflow policy of full outbound queue: drop_oldest, drop_newest or disconnect.
+    static final String OVERFLOW_POLICY_PROPERTY = "chat.server.overflowPolicy";
+
+    // System property with the max time a queued message waits for more messages to be written with it.
+    static final String FLUSH_DELAY_MILLISECONDS_PROPERTY = "chat.server.flushDelayMillis";
+
+    // System property that turns off Nagle's algorithm on client sockets.
+    static final String TCP_NO_DELAY_PROPERTY = "chat.server.tcpNoDelay";
+
+    // System property with the socket send buffer size of client sockets, 0 for the system default.
+    static final String SEND_BUFFER_SIZE_PROPERTY = "chat.server.sendBufferSize";
+
+    // System properties with max lines and bytes per second of one session and of all sessions from one address,
+    // 0 for no limit.
+    static final String MESSAGES_PER_SECOND_PROPERTY = "chat.server.messagesPerSecond";
+
+    static final String BYTES_PER_SECOND_PROPERTY = "chat.server.bytesPerSecond";
+
+    static final String ADDRESS_MESSAGES_PER_SECOND_PROPERTY = "chat.server.addressMessagesPerSecond";
+
+    static final String ADDRESS_BYTES_PER_SECOND_PROPERTY = "chat.server.addressBytesPerSecond";
+
+    // System property with what to do with lines over the rate limits, throttle, drop or disconnect.
+    static final String RATE_LIMIT_POLICY_PROPERTY = "chat.server.rateLimitPolicy";
+
+    // Number of seconds of tokens a rate limit bucket holds, the burst a client may send at once.
+    static final int RATE_LIMIT_BURST_SECONDS = 2;
+
+    // Max number of bytes of queued messages written to a blocking client with one write.
+    static final int WRITE_BUFFER_SIZE = 16384;
+
+    // Max number of queued messages written to a non-blocking client with one gathering write.
+    static final int WRITE_BATCH_SIZE = 64;
+
+    // System property with the number of messages kept in the history of the chat and of every room, 0 for none.
+    static final String HISTORY_SIZE_PROPERTY = "chat.server.historySize";
+
+    static final int DEFAULT_HISTORY_SIZE = 128;
+
+    // Max number of log records waiting for the background logging thread.
+    static final int LOG_RECORD_QUEUE_SIZE = 8192;
+
+    // Max time to write messages queued for a client that is leaving.
+    static final int CLOSE_FLUSH_TIMEOUT_MILLISECONDS = 5000;
+
+    // System property with max time the sessions are given to write their messages when the server shuts down.
+    static final String SHUTDOWN_TIMEOUT_MILLISECONDS_PROPERTY = "chat.server.shutdownTimeoutMillis";
+
+    static final int DEFAULT_SHUTDOWN_TIMEOUT_MILLISECONDS = 10000;
+
+    // Time between the checks for the sessions that are left when the server shuts down.
+    static final int DRAIN_POLL_MILLISECONDS = 50;
+
+    // System property that lets another process bind the same port, so a new server starts before the old one ends.
+    static final String REUSE_PORT_PROPERTY = "chat.server.reusePort";
+
+    // System property with the key store of the server certificate, the server speaks TLS when it is set.
+    static final String TLS_KEY_STORE_PROPERTY = "chat.server.tls.keyStore";
+
+    // System property with the password of the key store and of the key.
+    static final String TLS_KEY_STORE_PASSWORD_PROPERTY = "chat.server.tls.keyStorePassword";
+
+    // System property with the type of the key store.
+    static final String TLS_KEY_STORE_TYPE_PROPERTY = "chat.server.tls.keyStoreType";
+
+    static final String DEFAULT_TLS_KEY_STORE_TYPE = "PKCS12";
+
+    // System property with the number of threads that run the TLS handshakes.
+    static final String TLS_HANDSHAKE_THREADS_PROPERTY = "chat.server.tls.handshakeThreads";
+
+    // System property with max number of TLS sessions kept for resumption.
+    static final String TLS_SESSION_CACHE_SIZE_PROPERTY = "chat.server.tls.sessionCacheSize";
+
+    static final int DEFAULT_TLS_SESSION_CACHE_SIZE = 20480;
+
+    // System property with the number of seconds a TLS session can be resumed for.
+    static final String TLS_SESSION_TIMEOUT_SECONDS_PROPERTY = "chat.server.tls.sessionTimeoutSeconds";
+
+    static final int DEFAULT_TLS_SESSION_TIMEOUT_SECONDS = 86400;
+
+    // Max time a client is given to finish the TLS handshake in the blocking mode.
+    static final int TLS_HANDSHAKE_TIMEOUT_MILLISECONDS = 10000;
+
+    // Name of the server metrics MXBean, followed by the number of the server in the JVM.
+    static final String METRICS_OBJECT_NAME = "pl.arturkb.server.chat:type=ServerMetrics,instance=";
+
+    // System property with the directory of the message log, empty to keep no log.
+    static final String LOG_DIRECTORY_PROPERTY = "chat.log.directory";
+
+    // System property with the size of a message log segment in megabytes.
+    static final String LOG_SEGMENT_MEGABYTES_PROPERTY = "chat.log.segmentMegabytes";
+
+    static final int DEFAULT_LOG_SEGMENT_MEGABYTES = 64;
+
+    // System property with max size of the message log in megabytes.
+    static final String LOG_RETENTION_MEGABYTES_PROPERTY = "chat.log.retentionMegabytes";
+
+    static final int DEFAULT_LOG_RETENTION_MEGABYTES = 1024;
+
+    // System property with max age of logged messages in hours.
+    static final String LOG_RETENTION_HOURS_PROPERTY = "chat.log.retentionHours";
+
+    static final int DEFAULT_LOG_RETENTION_HOURS = 168;
+
+    // System property with max time between logging a message and forcing it to disk.
+    static final String LOG_FLUSH_INTERVAL_MILLISECONDS_PROPERTY = "chat.log.flushIntervalMillis";
+
+    static final int DEFAULT_LOG_FLUSH_INTERVAL_MILLISECONDS = 1000;
+
+    // Max number of messages waiting for the message log writer.
+    static final int LOG_QUEUE_SIZE = 65536;
+
+    // Bytes of a message log segment between two records of its index.
+    static final int LOG_INDEX_INTERVAL_BYTES = 4096;
+
+    // Max number of the newest message log records scanned for a /history beyond the kept history.
+    static final int LOG_HISTORY_SCAN_RECORDS = 16384;
+
+    // Max number of messages of a /history read from the message log.
+    static final int LOG_HISTORY_MAX_MESSAGES = 1000;
+
+    // Number of bytes in a megabyte.
+    static final int BYTES_IN_MEGABYTE = 1024 * 1024;
+
+    // System property with the port for links from other cluster nodes, 0 to run without cluster.
+    static final String CLUSTER_PORT_PROPERTY = "chat.cluster.port";
+
+    // System property with the cluster ports of the other nodes, host:port separated by commas.
+    static final String CLUSTER_PEERS_PROPERTY = "chat.cluster.peers";
+
+    // System property with the id of the node, unique in the cluster.
+    static final String CLUSTER_NODE_ID_PROPERTY = "chat.cluster.nodeId";
+
+    // Prefix of the default node id, followed by the cluster port.
+    static final String DEFAULT_NODE_ID_PREFIX = "node-";
+
+    // Max number of frames queued for one peer node, the link is reset when it is exceeded.
+    static final int CLUSTER_LINK_QUEUE_SIZE = 65536;
+
+    // Max number of bytes of frames written to a peer node with one write.
+    static final int CLUSTER_BATCH_BYTES = 65536;
+
+    // Time between attempts to connect to a peer node.
+    static final int CLUSTER_RECONNECT_MILLISECONDS = 500;
+
+    // Max time to wait for the coordinator to answer a name claim.
+    static final int CLUSTER_CLAIM_TIMEOUT_MILLISECONDS = 5000;
+
+    // System property with the number of clients the load generator simulates.
+    static final String LOAD_CLIENTS_PROPERTY = "chat.load.clients";
+
+    static final int DEFAULT_LOAD_CLIENTS = 100;
+
+    // System property with the number of messages per second all load clients send together.
+    static final String LOAD_RATE_PROPERTY = "chat.load.rate";
+
+    static final int DEFAULT_LOAD_RATE = 1000;
+
+    // System property with the number of seconds the load generator sends messages.
+    static final String LOAD_DURATION_SECONDS_PROPERTY = "chat.load.durationSeconds";
+
+    static final int DEFAULT_LOAD_DURATION_SECONDS = 30;
+
+    // System properties with the weights of /all, private and /who messages in the generated traffic.
+    static final String LOAD_ALL_WEIGHT_PROPERTY = "chat.load.allWeight";
+
+    static final int DEFAULT_LOAD_ALL_WEIGHT = 80;
+
+    static final String LOAD_PRIVATE_WEIGHT_PROPERTY = "chat.load.privateWeight";
+
+    static final int DEFAULT_LOAD_PRIVATE_WEIGHT = 15;
+
+    static final String LOAD_WHO_WEIGHT_PROPERTY = "chat.load.whoWeight";
+
+    static final int DEFAULT_LOAD_WHO_WEIGHT = 5;
+
+    // System property with the number of threads that send messages of load clients.
+    static final String LOAD_SENDER_THREADS_PROPERTY = "chat.load.senderThreads";
+
+    static final int DEFAULT_LOAD_SENDER_THREADS = 4;
+
+    // System property with the host the load generator connects to, loopback when not set.
+    static final String LOAD_HOST_PROPERTY = "chat.load.host";
+
+    // Prefix of user names of load clients.
+    static final String LOAD_USER_NAME_PREFIX = "load-";
+
+    // Marker followed by the send time in every message of the load generator.
+    static final String LOAD_MESSAGE_MARKER = "ping:";
+
+    // Max time a load client waits for an answer during the name handshake.
+    static final int LOAD_HANDSHAKE_TIMEOUT_MILLISECONDS = 10000;
+
+    // Max time to wait for messages in flight when the load generator stops sending.
+    static final int LOAD_DRAIN_MILLISECONDS = 5000;
+
 }
@@ -0,0 +1,330 @@
+package pl.arturkb.server.chat;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketOption;
+import java.net.StandardSocketOptions;
+import java.nio.channels.Channel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.file.Paths;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The state shared by all client sessions of one server.
+ */
+public class ServerContext {
+
+    private final static Logger LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+
+    // The server settings.
+    private final ServerSettings settings;
+
+    // Registry of connected clients
+    private final ClientRegistry registry;
+
+    // Starts the client sessions and their writers.
+    private final SessionExecutor sessionExecutor;
+
+    // Evicts inactive client sessions.
+    private final IdleReaper idleReaper;
+
+    // The cluster node, null when the server runs alone.
+    private final ClusterNode cluster;
+
+    // The durable log of sent messages, null when no log is kept.
+    private final MessageLog messageLog;
+
+    // Counters of what the server does.
+    private final ServerMetrics metrics = new ServerMetrics();
+
+    // Rate limits of the client sessions.
+    private final RateLimits rateLimits;
+
+    // The running client sessions, drained when the server shuts down.
+    private final Set<DrainableSession> sessions = ConcurrentHashMap.newKeySet();
+
+    // The TLS setup, null when the server serves plain text. Set when the server is bound.
+    private volatile TlsContext tls;
+
+    // Read buffers of the blocking client sessions.
+    private final BufferPool readBufferPool = new BufferPool(ServerConstants.READ_BUFFER_SIZE, ServerConstants.READ_BUFFER_POOL_SIZE);
+
+    /**
+     * The constructor
+     *
+     * @param settings the server settings.
+     */
+    public ServerContext(ServerSettings settings) {
+        this.settings = settings;
+        registry = new ClientRegistry(settings.getMaxClients(), settings.getMaxConnectionsPerAddress(), settings.getHistorySize());
+        rateLimits = new RateLimits(settings);
+        sessionExecutor = new SessionExecutor(settings.getThreadMode());
+        idleReaper = new IdleReaper(ServerConstants.MAX_INACTIVE_SECONDS * ServerConstants.MILLISECONDS_TO_SECONDS,
+                ServerConstants.IDLE_TICK_MILLISECONDS);
+        cluster = settings.isClusterMode()
+                ? new ClusterNode(settings, registry, new StaticPeerDiscovery(settings.getClusterPeers()))
+                : null;
+        messageLog = settings.isMessageLogEnabled()
+                ? new MessageLog(Paths.get(settings.getLogDirectory()),
+                settings.getLogSegmentMegabytes() * ServerConstants.BYTES_IN_MEGABYTE,
+                (long) settings.getLogRetentionMegabytes() * ServerConstants.BYTES_IN_MEGABYTE,
+                TimeUnit.HOURS.toMillis(settings.getLogRetentionHours()), settings.getLogFlushIntervalMillis())
+                : null;
+    }
+
+    /**
+     * Start the services shared by the sessions, called when the server is bound.
+     *
+     * @throws IOException If an I/O error occurs, or the TLS key store can't be read
+     */
+    public void start() throws IOException {
+        if (settings.isTlsEnabled()) {
+            tls = new TlsContext(settings);
+        }
+        metrics.register();
+        if (messageLog != null) {
+            messageLog.open();
+            registry.setMessageLog(messageLog);
+        }
+        if (cluster != null) {
+            cluster.start();
+        }
+    }
+
+    /**
+     * Stop evicting inactive sessions and running TLS handshakes, leave the cluster and close the message log,
+     * called when the server is closed.
+     */
+    public void stop() {
+        idleReaper.stop();
+        if (tls != null) {
+            tls.close();
+        }
+        metrics.unregister();
+        if (cluster != null) {
+            cluster.close();
+        }
+        if (messageLog != null) {
+            registry.setMessageLog(null);
+            messageLog.close();
+        }
+    }
+
+    /**
+     * Open the server socket. A server socket inherited from the parent process, for example handed over by the
+     * previous server or by the service manager, is used as it is, so clients connect while the server restarts.
+     * Otherwise a new one is bound with SO_REUSEADDR, so a restarted server binds again at once, and with
+     * SO_REUSEPORT when set, so a new server can bind while the old one still drains its sessions.
+     *
+     * @param port the port to listen on, 0 for any free port.
+     * @return the server socket channel in blocking mode.
+     * @throws IOException If an I/O error occurs
+     */
+    public ServerSocketChannel openServerChannel(int port) throws IOException {
+        Channel inherited = System.inheritedChannel();
+        if (inherited instanceof ServerSocketChannel) {
+            ServerSocketChannel channel = (ServerSocketChannel) inherited;
+            channel.configureBlocking(true);
+            LOGGER.log(Level.INFO, "Using the server socket inherited from the parent process {0}", channel.getLocalAddress());
+            return channel;
+        }
+        ServerSocketChannel channel = ServerSocketChannel.open();
+        channel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+        if (settings.isReusePort()) {
+            setReusePort(channel);
+        }
+        channel.bind(new InetSocketAddress(port), settings.getAcceptBacklog());
+        return channel;
+    }
+
+    /**
+     * Add the started session, it is drained when the server shuts down.
+     *
+     * @param session the session.
+     */
+    public void sessionStarted(DrainableSession session) {
+        sessions.add(session);
+    }
+
+    /**
+     * Remove the finished session.
+     *
+     * @param session the session.
+     */
+    public void sessionEnded(DrainableSession session) {
+        sessions.remove(session);
+    }
+
+    /**
+     * Drain all sessions and wait until they end. Every client is told to reconnect after a random number of seconds
+     * up to the retry after setting, so the clients of a restarted server do not all reconnect at once. New
+     * connections must not be accepted any more.
+     *
+     * @param timeoutMillis max time to wait for the sessions.
+     * @return true if all sessions ended, false if some are left after the timeout.
+     */
+    public boolean drainSessions(long timeoutMillis) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        int retryAfterSeconds = Math.max(1, settings.getRetryAfterSeconds());
+        LOGGER.log(Level.INFO, "Draining {0} client sessions", sessions.size());
+        for (DrainableSession session : sessions) {
+            String retryAfter = Integer.toString(1 + ThreadLocalRandom.current().nextInt(retryAfterSeconds));
+            session.drain(OutputTexts.SERVER_RESTARTING_RESPONSE.render(retryAfter));
+        }
+        while (!sessions.isEmpty() && System.nanoTime() - deadline < 0) {
+            try {
+                Thread.sleep(ServerConstants.DRAIN_POLL_MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        if (!sessions.isEmpty()) {
+            LOGGER.log(Level.WARNING, "{0} client sessions are left after the shutdown timeout", sessions.size());
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Getter for the TLS setup.
+     *
+     * @return the TLS setup, null when the server serves plain text.
+     */
+    public TlsContext getTls() {
+        return tls;
+    }
+
+    /**
+     * Create outbound queue for a client session.
+     *
+     * @param <E> the type of queued messages.
+     * @return the new queue.
+     */
+    public <E> OutboundQueue<E> newOutboundQueue() {
+        return new OutboundQueue<>(settings.getOutboundQueueSize(), settings.getOverflowPolicy());
+    }
+
+    /**
+     * Create line reader for the input of a client session, with a read buffer from the pool.
+     *
+     * @param in the input stream of the client.
+     * @return the new reader, closing it gives the buffer back.
+     */
+    public LineReader newLineReader(InputStream in) {
+        return new LineReader(in, readBufferPool, settings.getMaxLineLength(), OutboundMessage.CHARSET);
+    }
+
+    /**
+     * Apply the socket settings to an accepted client socket.
+     *
+     * @param socket the client socket.
+     * @throws IOException If an I/O error occurs
+     */
+    public void configureSocket(Socket socket) throws IOException {
+        socket.setTcpNoDelay(settings.isTcpNoDelay());
+        if (settings.getSendBufferSize() > 0) {
+            socket.setSendBufferSize(settings.getSendBufferSize());
+        }
+    }
+
+    /**
+     * Set SO_REUSEPORT on the server socket. The option is looked up by reflection, it is not in Java 8.
+     *
+     * @param channel the unbound server socket channel.
+     * @throws IOException If an I/O error occurs
+     */
+    @SuppressWarnings("unchecked")
+    private static void setReusePort(ServerSocketChannel channel) throws IOException {
+        try {
+            SocketOption<Boolean> reusePort = (SocketOption<Boolean>) StandardSocketOptions.class.getField("SO_REUSEPORT").get(null);
+            if (channel.supportedOptions().contains(reusePort)) {
+                channel.setOption(reusePort, true);
+                return;
+            }
+        } catch (ReflectiveOperationException e) {
+            // Not supported by this JDK.
+        }
+        LOGGER.warning("SO_REUSEPORT is not supported, the port is not shared with other processes");
+    }
+
+    /**
+     * Getter for settings
+     *
+     * @return the server settings.
+     */
+    public ServerSettings getSettings() {
+        return settings;
+    }
+
+    /**
+     * Getter for registry
+     *
+     * @return the registry of connected clients.
+     */
+    public ClientRegistry getRegistry() {
+        return registry;
+    }
+
+    /**
+     * Getter for sessionExecutor
+     *
+     * @return the executor of client sessions.
+     */
+    public SessionExecutor getSessionExecutor() {
+        return sessionExecutor;
+    }
+
+    /**
+     * Getter for idleReaper
+     *
+     * @return the reaper of inactive client sessions.
+     */
+    public IdleReaper getIdleReaper() {
+        return idleReaper;
+    }
+
+    /**
+     * Getter for cluster
+     *
+     * @return the cluster node, null when the server runs alone.
+     */
+    public ClusterNode getCluster() {
+        return cluster;
+    }
+
+    /**
+     * Getter for metrics
+     *
+     * @return the counters of what the server does.
+     */
+    public ServerMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Getter for rateLimits
+     *
+     * @return the rate limits of the client sessions.
+     */
+    public RateLimits getRateLimits() {
+        return rateLimits;
+    }
+
+    /**
+     * Getter for messageLog
+     *
+     * @return the durable log of sent messages, null when no log is kept.
+     */
+    public MessageLog getMessageLog() {
+        return messageLog;
+    }
+
+}
@@ -0,0 +1,237 @@
+package pl.arturkb.server.chat;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Counters and histograms of what the server does, shown by /stats and registered as an MXBean.
+ * <p>
+ * Counters are {@link LongAdder}s, so the session threads that update them at the same time each add to their
+ * own cell instead of fighting over one value; only reading a counter sums the cells. Writers record the bytes
+ * and messages of a whole batch at once, so a counter is updated once per write, not once per message.
+ */
+public class ServerMetrics implements ServerMetricsMXBean {
+
+    private final static Logger LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+
+    // Source of the numbers that tell apart the servers of one JVM.
+    private static final AtomicInteger INSTANCES = new AtomicInteger();
+
+    private final LongAdder activeSessions = new LongAdder();
+
+    private final LongAdder acceptedConnections = new LongAdder();
+
+    private final LongAdder rejectedConnections = new LongAdder();
+
+    // Received command lines, indexed by command ordinal.
+    private final LongAdder[] messagesIn = new LongAdder[Command.values().length];
+
+    private final LongAdder messagesOut = new LongAdder();
+
+    private final LongAdder bytesIn = new LongAdder();
+
+    private final LongAdder bytesOut = new LongAdder();
+
+    private final LongAdder idleEvictions = new LongAdder();
+
+    private final LongAdder rateLimitedLines = new LongAdder();
+
+    // Time of queueing a message for all clients, in nanoseconds.
+    private final LatencyHistogram broadcastFanOut = new LatencyHistogram();
+
+    // Number of messages queued for a client when its writer takes them.
+    private final LatencyHistogram outboundQueueDepth = new LatencyHistogram();
+
+    // The name the metrics are registered with, null when not registered.
+    private ObjectName objectName;
+
+    /**
+     * The constructor
+     */
+    public ServerMetrics() {
+        for (int i = 0; i < messagesIn.length; i++) {
+            messagesIn[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Register the metrics with the platform MBean server. Failure is logged, the server runs without JMX.
+     */
+    public void register() {
+        try {
+            objectName = new ObjectName(ServerConstants.METRICS_OBJECT_NAME + INSTANCES.incrementAndGet());
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        } catch (JMException e) {
+            objectName = null;
+            LOGGER.warning("Can't register server metrics " + e.getMessage());
+        }
+    }
+
+    /**
+     * Unregister the metrics from the platform MBean server.
+     */
+    public void unregister() {
+        if (objectName == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (JMException e) {
+            LOGGER.warning("Can't unregister server metrics " + e.getMessage());
+        }
+        objectName = null;
+    }
+
+    /**
+     * Count the accepted connection.
+     */
+    public void connectionAccepted() {
+        acceptedConnections.increment();
+    }
+
+    /**
+     * Count the rejected connection.
+     */
+    public void connectionRejected() {
+        rejectedConnections.increment();
+    }
+
+    /**
+     * Count the started client session.
+     */
+    public void sessionOpened() {
+        activeSessions.increment();
+    }
+
+    /**
+     * Count the finished client session.
+     */
+    public void sessionClosed() {
+        activeSessions.decrement();
+    }
+
+    /**
+     * Count the received command line.
+     *
+     * @param command the command of the line.
+     */
+    public void messageReceived(Command command) {
+        messagesIn[command.ordinal()].increment();
+    }
+
+    /**
+     * Count the bytes read from a client.
+     *
+     * @param bytes the number of bytes.
+     */
+    public void bytesReceived(long bytes) {
+        bytesIn.add(bytes);
+    }
+
+    /**
+     * Count the messages written to a client with one write.
+     *
+     * @param messages the number of messages.
+     * @param bytes    the number of bytes.
+     */
+    public void messagesSent(int messages, long bytes) {
+        messagesOut.add(messages);
+        bytesOut.add(bytes);
+    }
+
+    /**
+     * Count the session evicted for inactivity.
+     */
+    public void sessionEvicted() {
+        idleEvictions.increment();
+    }
+
+    /**
+     * Count the line over the rate limits.
+     */
+    public void lineRateLimited() {
+        rateLimitedLines.increment();
+    }
+
+    /**
+     * Record the time of queueing a message for all clients.
+     *
+     * @param nanos the time in nanoseconds.
+     */
+    public void recordBroadcastFanOut(long nanos) {
+        broadcastFanOut.record(nanos);
+    }
+
+    /**
+     * Record the number of messages queued for a client when its writer takes them.
+     *
+     * @param depth the number of messages.
+     */
+    public void recordOutboundQueueDepth(int depth) {
+        outboundQueueDepth.record(depth);
+    }
+
+    public long getActiveSessions() {
+        return activeSessions.sum();
+    }
+
+    public long getAcceptedConnections() {
+        return acceptedConnections.sum();
+    }
+
+    public long getRejectedConnections() {
+        return rejectedConnections.sum();
+    }
+
+    public Map<String, Long> getMessagesIn() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (Command command : Command.values()) {
+            counts.put(command.name().toLowerCase(), messagesIn[command.ordinal()].sum());
+        }
+        return counts;
+    }
+
+    public long getMessagesOut() {
+        return messagesOut.sum();
+    }
+
+    public long getBytesIn() {
+        return bytesIn.sum();
+    }
+
+    public long getBytesOut() {
+        return bytesOut.sum();
+    }
+
+    public long getIdleEvictions() {
+        return idleEvictions.sum();
+    }
+
+    public long getRateLimitedLines() {
+        return rateLimitedLines.sum();
+    }
+
+    public double getBroadcastFanOutMeanMicros() {
+        return broadcastFanOut.getMean() / TimeUnit.MICROSECONDS.toNanos(1);
+    }
+
+    public long getBroadcastFanOutP99Micros() {
+        return TimeUnit.NANOSECONDS.toMicros(broadcastFanOut.getValueAtPercentile(99));
+    }
+
+    public long getOutboundQueueDepthP99() {
+        return outboundQueueDepth.getValueAtPercentile(99);
+    }
+
+    public long getOutboundQueueDepthMax() {
+        return outboundQueueDepth.getMax();
+    }
+
+}
@@ -0,0 +1,101 @@
+package pl.arturkb.server.chat;
+
+import java.util.Map;
+
+/**
+ * The management interface of {@link ServerMetrics}, registered with the platform MBean server.
+ */
+public interface ServerMetricsMXBean {
+
+    /**
+     * Getter for the number of running client sessions.
+     *
+     * @return the number of sessions.
+     */
+    long getActiveSessions();
+
+    /**
+     * Getter for the number of accepted connections.
+     *
+     * @return the number of connections.
+     */
+    long getAcceptedConnections();
+
+    /**
+     * Getter for the number of rejected connections.
+     *
+     * @return the number of connections.
+     */
+    long getRejectedConnections();
+
+    /**
+     * Getter for the number of received command lines, by command.
+     *
+     * @return the number of lines by command name.
+     */
+    Map<String, Long> getMessagesIn();
+
+    /**
+     * Getter for the number of messages written to clients.
+     *
+     * @return the number of messages.
+     */
+    long getMessagesOut();
+
+    /**
+     * Getter for the number of bytes read from clients.
+     *
+     * @return the number of bytes.
+     */
+    long getBytesIn();
+
+    /**
+     * Getter for the number of bytes written to clients.
+     *
+     * @return the number of bytes.
+     */
+    long getBytesOut();
+
+    /**
+     * Getter for the number of sessions evicted for inactivity.
+     *
+     * @return the number of sessions.
+     */
+    long getIdleEvictions();
+
+    /**
+     * Getter for the number of lines over the rate limits, throttled, dropped or disconnecting their client.
+     *
+     * @return the number of lines.
+     */
+    long getRateLimitedLines();
+
+    /**
+     * Getter for the mean time of queueing a message for all clients.
+     *
+     * @return the mean time in microseconds.
+     */
+    double getBroadcastFanOutMeanMicros();
+
+    /**
+     * Getter for the 99th percentile of the time of queueing a message for all clients.
+     *
+     * @return the time in microseconds.
+     */
+    long getBroadcastFanOutP99Micros();
+
+    /**
+     * Getter for the 99th percentile of the number of messages queued for a client when its writer takes them.
+     *
+     * @return the number of messages.
+     */
+    long getOutboundQueueDepthP99();
+
+    /**
+     * Getter for the largest number of messages queued for a client when its writer takes them.
+     *
+     * @return the number of messages.
+     */
+    long getOutboundQueueDepthMax();
+
+}
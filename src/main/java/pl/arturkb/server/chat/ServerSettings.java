@@ -0,0 +1,571 @@
+package pl.arturkb.server.chat;
+
+import java.util.Locale;
+import java.util.Properties;
+
+/**
+ * Runtime settings of the server, read from system properties.
+ */
+public class ServerSettings {
+
+    // The server mode, blocking or nio.
+    private final String mode;
+
+    // The threads client sessions run on in the blocking mode, virtual or platform.
+    private final String threadMode;
+
+    // The number of I/O reactor threads in the non-blocking mode.
+    private final int reactorCount;
+
+    // Max connections that server will accept.
+    private final int maxClients;
+
+    // The length of the queue of connections waiting to be accepted.
+    private final int acceptBacklog;
+
+    // Max connections from one address, 0 for no limit.
+    private final int maxConnectionsPerAddress;
+
+    // The number of seconds a rejected client is asked to wait before retry.
+    private final int retryAfterSeconds;
+
+    // Max number of messages queued for one client.
+    private final int outboundQueueSize;
+
+    // What to do with a message for a client whose outbound queue is full.
+    private final OverflowPolicy overflowPolicy;
+
+    // Max lines per second of one session, 0 for no limit.
+    private final int messagesPerSecond;
+
+    // Max bytes per second of one session, 0 for no limit.
+    private final int bytesPerSecond;
+
+    // Max lines per second of all sessions from one address, 0 for no limit.
+    private final int addressMessagesPerSecond;
+
+    // Max bytes per second of all sessions from one address, 0 for no limit.
+    private final int addressBytesPerSecond;
+
+    // What to do with lines over the rate limits.
+    private final RateLimitPolicy rateLimitPolicy;
+
+    // Max number of bytes of a line from a client.
+    private final int maxLineLength;
+
+    // The number of messages kept in the history of the chat and of every room, 0 for none.
+    private final int historySize;
+
+    // Max time a queued message waits for more messages to be written with it, 0 to write at once.
+    private final int flushDelayMillis;
+
+    // True to turn off Nagle's algorithm on client sockets.
+    private final boolean tcpNoDelay;
+
+    // The socket send buffer size of client sockets, 0 for the system default.
+    private final int sendBufferSize;
+
+    // Max time the sessions are given to write their messages when the server shuts down.
+    private final int shutdownTimeoutMillis;
+
+    // True to set SO_REUSEPORT on the server socket.
+    private final boolean reusePort;
+
+    // The key store of the server certificate, empty to serve plain text.
+    private final String tlsKeyStore;
+
+    // The password of the key store and of the key.
+    private final String tlsKeyStorePassword;
+
+    // The type of the key store.
+    private final String tlsKeyStoreType;
+
+    // The number of threads that run the TLS handshakes.
+    private final int tlsHandshakeThreads;
+
+    // Max number of TLS sessions kept for resumption.
+    private final int tlsSessionCacheSize;
+
+    // The number of seconds a TLS session can be resumed for.
+    private final int tlsSessionTimeoutSeconds;
+
+    // The directory of the message log, empty to keep no log.
+    private final String logDirectory;
+
+    // The size of a message log segment in megabytes.
+    private final int logSegmentMegabytes;
+
+    // Max size of the message log in megabytes.
+    private final int logRetentionMegabytes;
+
+    // Max age of logged messages in hours.
+    private final int logRetentionHours;
+
+    // Max time between logging a message and forcing it to disk.
+    private final int logFlushIntervalMillis;
+
+    // The port for links from other cluster nodes, 0 to run without cluster.
+    private final int clusterPort;
+
+    // The cluster ports of the other nodes, host:port separated by commas.
+    private final String clusterPeers;
+
+    // The id of the node, unique in the cluster.
+    private final String nodeId;
+
+    /**
+     * The constructor
+     *
+     * @param properties the properties to read settings from, missing ones get default values.
+     */
+    public ServerSettings(Properties properties) {
+        mode = properties.getProperty(ServerConstants.MODE_PROPERTY, ServerConstants.BLOCKING_MODE);
+        threadMode = properties.getProperty(ServerConstants.THREADS_PROPERTY, ServerConstants.VIRTUAL_THREADS);
+        reactorCount = getInt(properties, ServerConstants.REACTORS_PROPERTY, Runtime.getRuntime().availableProcessors());
+        maxClients = getInt(properties, ServerConstants.MAX_CLIENTS_PROPERTY, ServerConstants.DEFAULT_MAX_CLIENTS);
+        acceptBacklog = getInt(properties, ServerConstants.ACCEPT_BACKLOG_PROPERTY, ServerConstants.DEFAULT_ACCEPT_BACKLOG);
+        maxConnectionsPerAddress = getInt(properties, ServerConstants.MAX_CONNECTIONS_PER_ADDRESS_PROPERTY, ServerConstants.DEFAULT_MAX_CONNECTIONS_PER_ADDRESS);
+        retryAfterSeconds = getInt(properties, ServerConstants.RETRY_AFTER_SECONDS_PROPERTY, ServerConstants.DEFAULT_RETRY_AFTER_SECONDS);
+        outboundQueueSize = getInt(properties, ServerConstants.OUTBOUND_QUEUE_SIZE_PROPERTY, ServerConstants.DEFAULT_OUTBOUND_QUEUE_SIZE);
+        overflowPolicy = getEnum(properties, ServerConstants.OVERFLOW_POLICY_PROPERTY, OverflowPolicy.DROP_OLDEST);
+        messagesPerSecond = getInt(properties, ServerConstants.MESSAGES_PER_SECOND_PROPERTY, 0);
+        bytesPerSecond = getInt(properties, ServerConstants.BYTES_PER_SECOND_PROPERTY, 0);
+        addressMessagesPerSecond = getInt(properties, ServerConstants.ADDRESS_MESSAGES_PER_SECOND_PROPERTY, 0);
+        addressBytesPerSecond = getInt(properties, ServerConstants.ADDRESS_BYTES_PER_SECOND_PROPERTY, 0);
+        rateLimitPolicy = getEnum(properties, ServerConstants.RATE_LIMIT_POLICY_PROPERTY, RateLimitPolicy.THROTTLE);
+        maxLineLength = getInt(properties, ServerConstants.MAX_LINE_LENGTH_PROPERTY, ServerConstants.DEFAULT_MAX_LINE_LENGTH);
+        historySize = getInt(properties, ServerConstants.HISTORY_SIZE_PROPERTY, ServerConstants.DEFAULT_HISTORY_SIZE);
+        flushDelayMillis = getInt(properties, ServerConstants.FLUSH_DELAY_MILLISECONDS_PROPERTY, 0);
+        tcpNoDelay = getBoolean(properties, ServerConstants.TCP_NO_DELAY_PROPERTY, true);
+        sendBufferSize = getInt(properties, ServerConstants.SEND_BUFFER_SIZE_PROPERTY, 0);
+        shutdownTimeoutMillis = getInt(properties, ServerConstants.SHUTDOWN_TIMEOUT_MILLISECONDS_PROPERTY, ServerConstants.DEFAULT_SHUTDOWN_TIMEOUT_MILLISECONDS);
+        reusePort = getBoolean(properties, ServerConstants.REUSE_PORT_PROPERTY, false);
+        tlsKeyStore = properties.getProperty(ServerConstants.TLS_KEY_STORE_PROPERTY, ServerConstants.EMPTY);
+        tlsKeyStorePassword = properties.getProperty(ServerConstants.TLS_KEY_STORE_PASSWORD_PROPERTY, ServerConstants.EMPTY);
+        tlsKeyStoreType = properties.getProperty(ServerConstants.TLS_KEY_STORE_TYPE_PROPERTY, ServerConstants.DEFAULT_TLS_KEY_STORE_TYPE);
+        tlsHandshakeThreads = getInt(properties, ServerConstants.TLS_HANDSHAKE_THREADS_PROPERTY, Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+        tlsSessionCacheSize = getInt(properties, ServerConstants.TLS_SESSION_CACHE_SIZE_PROPERTY, ServerConstants.DEFAULT_TLS_SESSION_CACHE_SIZE);
+        tlsSessionTimeoutSeconds = getInt(properties, ServerConstants.TLS_SESSION_TIMEOUT_SECONDS_PROPERTY, ServerConstants.DEFAULT_TLS_SESSION_TIMEOUT_SECONDS);
+        logDirectory = properties.getProperty(ServerConstants.LOG_DIRECTORY_PROPERTY, ServerConstants.EMPTY);
+        logSegmentMegabytes = getInt(properties, ServerConstants.LOG_SEGMENT_MEGABYTES_PROPERTY, ServerConstants.DEFAULT_LOG_SEGMENT_MEGABYTES);
+        logRetentionMegabytes = getInt(properties, ServerConstants.LOG_RETENTION_MEGABYTES_PROPERTY, ServerConstants.DEFAULT_LOG_RETENTION_MEGABYTES);
+        logRetentionHours = getInt(properties, ServerConstants.LOG_RETENTION_HOURS_PROPERTY, ServerConstants.DEFAULT_LOG_RETENTION_HOURS);
+        logFlushIntervalMillis = getInt(properties, ServerConstants.LOG_FLUSH_INTERVAL_MILLISECONDS_PROPERTY, ServerConstants.DEFAULT_LOG_FLUSH_INTERVAL_MILLISECONDS);
+        clusterPort = getInt(properties, ServerConstants.CLUSTER_PORT_PROPERTY, 0);
+        clusterPeers = properties.getProperty(ServerConstants.CLUSTER_PEERS_PROPERTY, ServerConstants.EMPTY);
+        nodeId = properties.getProperty(ServerConstants.CLUSTER_NODE_ID_PROPERTY, ServerConstants.DEFAULT_NODE_ID_PREFIX + clusterPort);
+    }
+
+    /**
+     * Read settings from system properties.
+     *
+     * @return the settings.
+     */
+    public static ServerSettings fromSystemProperties() {
+        return new ServerSettings(System.getProperties());
+    }
+
+    /**
+     * Check that the non-blocking mode is selected.
+     *
+     * @return true for the non-blocking mode, false otherwise.
+     */
+    public boolean isNioMode() {
+        return ServerConstants.NIO_MODE.equalsIgnoreCase(mode);
+    }
+
+    /**
+     * Getter for threadMode
+     *
+     * @return the threads client sessions run on in the blocking mode, virtual or platform.
+     */
+    public String getThreadMode() {
+        return threadMode;
+    }
+
+    /**
+     * Getter for reactorCount
+     *
+     * @return the number of I/O reactor threads.
+     */
+    public int getReactorCount() {
+        return reactorCount;
+    }
+
+    /**
+     * Getter for maxClients
+     *
+     * @return max connections that server will accept.
+     */
+    public int getMaxClients() {
+        return maxClients;
+    }
+
+    /**
+     * Getter for acceptBacklog
+     *
+     * @return the length of the queue of connections waiting to be accepted.
+     */
+    public int getAcceptBacklog() {
+        return acceptBacklog;
+    }
+
+    /**
+     * Getter for maxConnectionsPerAddress
+     *
+     * @return max connections from one address, 0 for no limit.
+     */
+    public int getMaxConnectionsPerAddress() {
+        return maxConnectionsPerAddress;
+    }
+
+    /**
+     * Getter for retryAfterSeconds
+     *
+     * @return the number of seconds a rejected client is asked to wait before retry.
+     */
+    public int getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+
+    /**
+     * Getter for outboundQueueSize
+     *
+     * @return max number of messages queued for one client.
+     */
+    public int getOutboundQueueSize() {
+        return outboundQueueSize;
+    }
+
+    /**
+     * Getter for overflowPolicy
+     *
+     * @return what to do with a message for a client whose outbound queue is full.
+     */
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    /**
+     * Getter for messagesPerSecond
+     *
+     * @return max lines per second of one session, 0 for no limit.
+     */
+    public int getMessagesPerSecond() {
+        return messagesPerSecond;
+    }
+
+    /**
+     * Getter for bytesPerSecond
+     *
+     * @return max bytes per second of one session, 0 for no limit.
+     */
+    public int getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    /**
+     * Getter for addressMessagesPerSecond
+     *
+     * @return max lines per second of all sessions from one address, 0 for no limit.
+     */
+    public int getAddressMessagesPerSecond() {
+        return addressMessagesPerSecond;
+    }
+
+    /**
+     * Getter for addressBytesPerSecond
+     *
+     * @return max bytes per second of all sessions from one address, 0 for no limit.
+     */
+    public int getAddressBytesPerSecond() {
+        return addressBytesPerSecond;
+    }
+
+    /**
+     * Getter for rateLimitPolicy
+     *
+     * @return what to do with lines over the rate limits.
+     */
+    public RateLimitPolicy getRateLimitPolicy() {
+        return rateLimitPolicy;
+    }
+
+    /**
+     * Getter for maxLineLength
+     *
+     * @return the max number of bytes of a line from a client.
+     */
+    public int getMaxLineLength() {
+        return maxLineLength;
+    }
+
+    /**
+     * Getter for historySize
+     *
+     * @return the number of messages kept in the history of the chat and of every room, 0 for none.
+     */
+    public int getHistorySize() {
+        return historySize;
+    }
+
+    /**
+     * Getter for flushDelayMillis
+     *
+     * @return max time a queued message waits for more messages to be written with it, 0 to write at once.
+     */
+    public int getFlushDelayMillis() {
+        return flushDelayMillis;
+    }
+
+    /**
+     * Getter for tcpNoDelay
+     *
+     * @return true to turn off Nagle's algorithm on client sockets.
+     */
+    public boolean isTcpNoDelay() {
+        return tcpNoDelay;
+    }
+
+    /**
+     * Getter for sendBufferSize
+     *
+     * @return the socket send buffer size of client sockets, 0 for the system default.
+     */
+    public int getSendBufferSize() {
+        return sendBufferSize;
+    }
+
+    /**
+     * Getter for shutdownTimeoutMillis
+     *
+     * @return max time the sessions are given to write their messages when the server shuts down.
+     */
+    public int getShutdownTimeoutMillis() {
+        return shutdownTimeoutMillis;
+    }
+
+    /**
+     * Getter for reusePort
+     *
+     * @return true to set SO_REUSEPORT on the server socket.
+     */
+    public boolean isReusePort() {
+        return reusePort;
+    }
+
+    /**
+     * Check that the server speaks TLS.
+     *
+     * @return true when the key store is set, false otherwise.
+     */
+    public boolean isTlsEnabled() {
+        return !tlsKeyStore.isEmpty();
+    }
+
+    /**
+     * Getter for tlsKeyStore
+     *
+     * @return the key store of the server certificate, empty to serve plain text.
+     */
+    public String getTlsKeyStore() {
+        return tlsKeyStore;
+    }
+
+    /**
+     * Getter for tlsKeyStorePassword
+     *
+     * @return the password of the key store and of the key.
+     */
+    public String getTlsKeyStorePassword() {
+        return tlsKeyStorePassword;
+    }
+
+    /**
+     * Getter for tlsKeyStoreType
+     *
+     * @return the type of the key store.
+     */
+    public String getTlsKeyStoreType() {
+        return tlsKeyStoreType;
+    }
+
+    /**
+     * Getter for tlsHandshakeThreads
+     *
+     * @return the number of threads that run the TLS handshakes.
+     */
+    public int getTlsHandshakeThreads() {
+        return tlsHandshakeThreads;
+    }
+
+    /**
+     * Getter for tlsSessionCacheSize
+     *
+     * @return max number of TLS sessions kept for resumption.
+     */
+    public int getTlsSessionCacheSize() {
+        return tlsSessionCacheSize;
+    }
+
+    /**
+     * Getter for tlsSessionTimeoutSeconds
+     *
+     * @return the number of seconds a TLS session can be resumed for.
+     */
+    public int getTlsSessionTimeoutSeconds() {
+        return tlsSessionTimeoutSeconds;
+    }
+
+    /**
+     * Check that the message log is kept.
+     *
+     * @return true when the log directory is set, false otherwise.
+     */
+    public boolean isMessageLogEnabled() {
+        return !logDirectory.isEmpty();
+    }
+
+    /**
+     * Getter for logDirectory
+     *
+     * @return the directory of the message log, empty to keep no log.
+     */
+    public String getLogDirectory() {
+        return logDirectory;
+    }
+
+    /**
+     * Getter for logSegmentMegabytes
+     *
+     * @return the size of a message log segment in megabytes.
+     */
+    public int getLogSegmentMegabytes() {
+        return logSegmentMegabytes;
+    }
+
+    /**
+     * Getter for logRetentionMegabytes
+     *
+     * @return max size of the message log in megabytes.
+     */
+    public int getLogRetentionMegabytes() {
+        return logRetentionMegabytes;
+    }
+
+    /**
+     * Getter for logRetentionHours
+     *
+     * @return max age of logged messages in hours.
+     */
+    public int getLogRetentionHours() {
+        return logRetentionHours;
+    }
+
+    /**
+     * Getter for logFlushIntervalMillis
+     *
+     * @return max time between logging a message and forcing it to disk.
+     */
+    public int getLogFlushIntervalMillis() {
+        return logFlushIntervalMillis;
+    }
+
+    /**
+     * Check that the server is a node of a cluster.
+     *
+     * @return true when the cluster port is set, false otherwise.
+     */
+    public boolean isClusterMode() {
+        return clusterPort > 0;
+    }
+
+    /**
+     * Getter for clusterPort
+     *
+     * @return the port for links from other cluster nodes, 0 to run without cluster.
+     */
+    public int getClusterPort() {
+        return clusterPort;
+    }
+
+    /**
+     * Getter for clusterPeers
+     *
+     * @return the cluster ports of the other nodes, host:port separated by commas.
+     */
+    public String getClusterPeers() {
+        return clusterPeers;
+    }
+
+    /**
+     * Getter for nodeId
+     *
+     * @return the id of the node, unique in the cluster.
+     */
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * Read int property.
+     *
+     * @param properties   the properties.
+     * @param name         the property name.
+     * @param defaultValue the value used when the property is not set.
+     * @return the property value.
+     */
+    static int getInt(Properties properties, String name, int defaultValue) {
+        String value = properties.getProperty(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Property " + name + " is not numeric: " + value, e);
+        }
+    }
+
+    /**
+     * Read boolean property.
+     *
+     * @param properties   the properties.
+     * @param name         the property name.
+     * @param defaultValue the value used when the property is not set.
+     * @return the property value.
+     */
+    private static boolean getBoolean(Properties properties, String name, boolean defaultValue) {
+        String value = properties.getProperty(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        value = value.trim();
+        if (!value.equalsIgnoreCase("true") && !value.equalsIgnoreCase("false")) {
+            throw new IllegalArgumentException("Property " + name + " is not true or false: " + value);
+        }
+        return Boolean.parseBoolean(value);
+    }
+
+    /**
+     * Read enum property, the value is not case sensitive.
+     *
+     * @param properties   the properties.
+     * @param name         the property name.
+     * @param defaultValue the value used when the property is not set.
+     * @param <E>          the enum type.
+     * @return the property value.
+     */
+    private static <E extends Enum<E>> E getEnum(Properties properties, String name, E defaultValue) {
+        String value = properties.getProperty(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Enum.valueOf(defaultValue.getDeclaringClass(), value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Property " + name + " has unknown value: " + value, e);
+        }
+    }
+
+}
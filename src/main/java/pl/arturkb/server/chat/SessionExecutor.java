@@ -0,0 +1,73 @@
+package pl.arturkb.server.chat;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Logger;
+
+/**
+ * Starts the client sessions of the blocking server, one thread per session.
+ * <p>
+ * On a JDK with virtual threads the sessions run on virtual threads, so the blocking readLine style costs no
+ * platform stack per client. Otherwise, or when platform threads are asked for, every session gets a platform
+ * thread as before. The project is built for Java 8, so virtual threads are looked up by reflection.
+ */
+public class SessionExecutor {
+
+    // Creates virtual threads, null when platform threads are used.
+    private final ThreadFactory virtualThreadFactory;
+
+    // Logger;
+    private final static Logger LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+
+    /**
+     * The constructor
+     *
+     * @param threadMode the thread mode, {@link ServerConstants#VIRTUAL_THREADS} or
+     *                   {@link ServerConstants#PLATFORM_THREADS}.
+     */
+    public SessionExecutor(String threadMode) {
+        if (ServerConstants.PLATFORM_THREADS.equalsIgnoreCase(threadMode)) {
+            virtualThreadFactory = null;
+        } else {
+            virtualThreadFactory = createVirtualThreadFactory();
+        }
+    }
+
+    /**
+     * Check that sessions run on virtual threads.
+     *
+     * @return true for virtual threads, false for platform threads.
+     */
+    public boolean isVirtual() {
+        return virtualThreadFactory != null;
+    }
+
+    /**
+     * Run the session on its own thread.
+     *
+     * @param session the session to run.
+     * @param name    the thread name.
+     */
+    public void execute(Runnable session, String name) {
+        Thread thread = isVirtual() ? virtualThreadFactory.newThread(session) : new Thread(session);
+        thread.setName(name);
+        thread.start();
+    }
+
+    /**
+     * Create factory of virtual threads.
+     *
+     * @return the factory or null when the JDK has no virtual threads.
+     */
+    private static ThreadFactory createVirtualThreadFactory() {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Method factory = Class.forName("java.lang.Thread$Builder").getMethod("factory");
+            return (ThreadFactory) factory.invoke(builder);
+        } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            LOGGER.info("Virtual threads are not supported by this JDK, using platform threads");
+            return null;
+        }
+    }
+
+}
@@ -0,0 +1,50 @@
+package pl.arturkb.server.chat;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Peer nodes given as a fixed list of host:port addresses, see {@link ServerConstants#CLUSTER_PEERS_PROPERTY}.
+ */
+public class StaticPeerDiscovery implements PeerDiscovery {
+
+    // The addresses of the peer nodes.
+    private final List<InetSocketAddress> peers;
+
+    /**
+     * The constructor
+     *
+     * @param peers the addresses of the peer nodes, host:port separated by commas.
+     */
+    public StaticPeerDiscovery(String peers) {
+        List<InetSocketAddress> addresses = new ArrayList<>();
+        for (String peer : peers.split(",")) {
+            peer = peer.trim();
+            if (peer.isEmpty()) {
+                continue;
+            }
+            int colon = peer.lastIndexOf(':');
+            if (colon <= 0) {
+                throw new IllegalArgumentException("Peer address should be host:port: " + peer);
+            }
+            try {
+                addresses.add(InetSocketAddress.createUnresolved(peer.substring(0, colon), Integer.parseInt(peer.substring(colon + 1))));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Peer port is not numeric: " + peer, e);
+            }
+        }
+        this.peers = Collections.unmodifiableList(addresses);
+    }
+
+    /**
+     * Getter for peers
+     *
+     * @return the addresses of the peer nodes.
+     */
+    public List<InetSocketAddress> getPeers() {
+        return peers;
+    }
+
+}
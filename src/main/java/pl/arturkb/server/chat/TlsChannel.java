@@ -0,0 +1,303 @@
+package pl.arturkb.server.chat;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLException;
+
+/**
+ * TLS over a non-blocking socket channel, used by a {@link NioClientSession} on its reactor thread.
+ * <p>
+ * Reading unwraps the records received so far and writing wraps the outbound messages, both drive the handshake
+ * on the way. The delegated tasks of the engine, the costly part of the handshake, run on the handshake executor;
+ * until they are done the channel neither reads nor writes, and the callback given to the constructor tells the
+ * session to continue.
+ */
+public class TlsChannel {
+
+    // No messages, to wrap handshake records only.
+    private static final ByteBuffer[] NO_MESSAGES = new ByteBuffer[0];
+
+    // The client channel.
+    private final SocketChannel channel;
+
+    // The engine of the connection.
+    private final SSLEngine engine;
+
+    // Runs the delegated tasks of the engine.
+    private final Executor handshakeExecutor;
+
+    // Called on the executor thread when the delegated tasks are done.
+    private final Runnable onTasksDone;
+
+    // Counters of what the server does.
+    private final ServerMetrics metrics;
+
+    // Records received from the client and not unwrapped yet, in write mode.
+    private ByteBuffer netIn;
+
+    // Records to be written to the client, in write mode.
+    private ByteBuffer netOut;
+
+    // Bytes unwrapped from the records, handed to the session.
+    private ByteBuffer appIn;
+
+    // True while the delegated tasks run.
+    private boolean tasksRunning;
+
+    // True when the handshake has finished and the session has not been told yet.
+    private boolean handshakeFinished;
+
+    /**
+     * The constructor, starts the handshake.
+     *
+     * @param channel           the client channel.
+     * @param engine            the engine in server mode.
+     * @param handshakeExecutor runs the delegated tasks of the engine.
+     * @param onTasksDone       called when the delegated tasks are done, on the executor thread.
+     * @param metrics           counters of what the server does.
+     * @throws SSLException If the handshake can't be started
+     */
+    public TlsChannel(SocketChannel channel, SSLEngine engine, Executor handshakeExecutor, Runnable onTasksDone, ServerMetrics metrics) throws SSLException {
+        this.channel = channel;
+        this.engine = engine;
+        this.handshakeExecutor = handshakeExecutor;
+        this.onTasksDone = onTasksDone;
+        this.metrics = metrics;
+        netIn = ByteBuffer.allocate(engine.getSession().getPacketBufferSize());
+        netOut = ByteBuffer.allocate(engine.getSession().getPacketBufferSize());
+        appIn = ByteBuffer.allocate(engine.getSession().getApplicationBufferSize());
+        engine.beginHandshake();
+    }
+
+    /**
+     * Read from the channel and unwrap the received records. The bytes of the previous call must be handled or
+     * copied by now, the buffer is reused.
+     *
+     * @return the unwrapped bytes, empty when there are none yet, null at the end of the stream.
+     * @throws IOException If an I/O error occurs or the client breaks the protocol
+     */
+    public ByteBuffer read() throws IOException {
+        if (engine.isInboundDone()) {
+            return null;
+        }
+        appIn.clear();
+        while (!tasksRunning) {
+            SSLEngineResult.HandshakeStatus status = engine.getHandshakeStatus();
+            if (status == SSLEngineResult.HandshakeStatus.NEED_TASK) {
+                runDelegatedTasks();
+                break;
+            }
+            if (status == SSLEngineResult.HandshakeStatus.NEED_WRAP) {
+                write(NO_MESSAGES, 0, 0);
+                if (hasPendingOutput() || engine.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.NEED_WRAP) {
+                    break;
+                }
+                continue;
+            }
+            netIn.flip();
+            SSLEngineResult result = engine.unwrap(netIn, appIn);
+            netIn.compact();
+            if (result.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.FINISHED) {
+                handshakeFinished = true;
+            }
+            if (result.getStatus() == SSLEngineResult.Status.CLOSED) {
+                if (appIn.position() == 0) {
+                    return null;
+                }
+                break;
+            }
+            if (result.getStatus() == SSLEngineResult.Status.BUFFER_OVERFLOW) {
+                if (appIn.position() > 0) {
+                    // Hand over what is unwrapped, the next call continues with the rest.
+                    break;
+                }
+                appIn = enlarge(appIn, engine.getSession().getApplicationBufferSize());
+            } else if (result.getStatus() == SSLEngineResult.Status.BUFFER_UNDERFLOW) {
+                if (appIn.position() > 0) {
+                    break;
+                }
+                if (!netIn.hasRemaining()) {
+                    netIn = enlarge(netIn, engine.getSession().getPacketBufferSize());
+                }
+                int read = channel.read(netIn);
+                if (read < 0) {
+                    closeInbound();
+                    return null;
+                }
+                if (read == 0) {
+                    break;
+                }
+                metrics.bytesReceived(read);
+            }
+        }
+        appIn.flip();
+        return appIn;
+    }
+
+    /**
+     * Wrap as much of the messages as the channel accepts and write the records. Nothing is wrapped before the
+     * handshake has finished.
+     *
+     * @param messages the messages, the wrapped bytes are consumed.
+     * @param offset   the index of the first message.
+     * @param length   the number of messages.
+     * @return the number of bytes written to the channel.
+     * @throws IOException If an I/O error occurs
+     */
+    public long write(ByteBuffer[] messages, int offset, int length) throws IOException {
+        long written = 0;
+        while (true) {
+            if (netOut.position() > 0) {
+                netOut.flip();
+                written += channel.write(netOut);
+                netOut.compact();
+                if (netOut.position() > 0) {
+                    // The socket send buffer is full.
+                    return written;
+                }
+            }
+            if (tasksRunning) {
+                return written;
+            }
+            SSLEngineResult.HandshakeStatus status = engine.getHandshakeStatus();
+            if (status == SSLEngineResult.HandshakeStatus.NEED_TASK) {
+                runDelegatedTasks();
+                return written;
+            }
+            if (status == SSLEngineResult.HandshakeStatus.NEED_UNWRAP || engine.isOutboundDone()) {
+                return written;
+            }
+            if (status == SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING && !hasRemaining(messages, offset, length)) {
+                return written;
+            }
+            SSLEngineResult result = engine.wrap(messages, offset, length, netOut);
+            if (result.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.FINISHED) {
+                handshakeFinished = true;
+            }
+            if (result.getStatus() == SSLEngineResult.Status.BUFFER_OVERFLOW && netOut.position() == 0) {
+                netOut = enlarge(netOut, engine.getSession().getPacketBufferSize());
+            } else if (result.getStatus() == SSLEngineResult.Status.CLOSED && netOut.position() == 0) {
+                return written;
+            }
+        }
+    }
+
+    /**
+     * Check that there are records the channel did not accept yet.
+     *
+     * @return true if the channel must be written when it is writable, false otherwise.
+     */
+    public boolean hasPendingOutput() {
+        return netOut.position() > 0;
+    }
+
+    /**
+     * Check that the handshake is going on, the messages of the session wait for it.
+     *
+     * @return true until the handshake has finished.
+     */
+    public boolean isHandshaking() {
+        return tasksRunning || engine.getHandshakeStatus() != SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING;
+    }
+
+    /**
+     * Check that the handshake has finished since the last call, the messages of the session can be written.
+     *
+     * @return true once after the handshake has finished.
+     */
+    public boolean takeHandshakeFinished() {
+        boolean finished = handshakeFinished;
+        handshakeFinished = false;
+        return finished;
+    }
+
+    /**
+     * Called on the reactor thread after the delegated tasks are done, reading and writing continue.
+     */
+    public void tasksDone() {
+        tasksRunning = false;
+    }
+
+    /**
+     * Send the close notification, as far as the channel accepts it without waiting.
+     */
+    public void close() {
+        engine.closeOutbound();
+        try {
+            write(NO_MESSAGES, 0, 0);
+        } catch (IOException e) {
+            // The channel is closed next anyway.
+        }
+    }
+
+    /**
+     * Run the delegated tasks of the engine on the handshake executor.
+     */
+    private void runDelegatedTasks() {
+        tasksRunning = true;
+        try {
+            handshakeExecutor.execute(() -> {
+                Runnable task;
+                while ((task = engine.getDelegatedTask()) != null) {
+                    task.run();
+                }
+                onTasksDone.run();
+            });
+        } catch (RejectedExecutionException e) {
+            // The server is closing, run them here.
+            Runnable task;
+            while ((task = engine.getDelegatedTask()) != null) {
+                task.run();
+            }
+            tasksRunning = false;
+        }
+    }
+
+    /**
+     * The client closed the connection, with or without the close notification.
+     */
+    private void closeInbound() {
+        try {
+            engine.closeInbound();
+        } catch (SSLException e) {
+            // No close notification, the client is gone anyway.
+        }
+    }
+
+    /**
+     * Check that some of the messages have bytes left.
+     *
+     * @param messages the messages.
+     * @param offset   the index of the first message.
+     * @param length   the number of messages.
+     * @return true if a message has bytes left, false otherwise.
+     */
+    private static boolean hasRemaining(ByteBuffer[] messages, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            if (messages[i].hasRemaining()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Copy the buffer into a larger one.
+     *
+     * @param buffer  the buffer in write mode.
+     * @param minimum the minimum free space of the new buffer.
+     * @return the new buffer in write mode.
+     */
+    private static ByteBuffer enlarge(ByteBuffer buffer, int minimum) {
+        ByteBuffer larger = ByteBuffer.allocate(buffer.position() + Math.max(minimum, buffer.capacity()));
+        buffer.flip();
+        larger.put(buffer);
+        return larger;
+    }
+
+}
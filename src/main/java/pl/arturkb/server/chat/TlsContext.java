@@ -0,0 +1,110 @@
+package pl.arturkb.server.chat;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocket;
+
+/**
+ * The TLS setup of a server: the server certificate, the cache of resumable sessions and the threads that run the
+ * handshakes.
+ * <p>
+ * The expensive part of a handshake, the key exchange and the signature, runs on the handshake threads, so the
+ * session threads and the I/O reactors never wait for it. The sessions of the clients are kept in the server
+ * session cache, so a client that connects again resumes its session, by session id or by session ticket
+ * depending on the protocol version, and skips the full handshake.
+ */
+public class TlsContext {
+
+    // The SSL context of the server certificate.
+    private final SSLContext sslContext;
+
+    // Runs the handshakes and the delegated tasks of the engines.
+    private final ExecutorService handshakeExecutor;
+
+    /**
+     * The constructor
+     *
+     * @param settings the server settings with the key store.
+     * @throws IOException If the key store can't be read
+     */
+    public TlsContext(ServerSettings settings) throws IOException {
+        char[] password = settings.getTlsKeyStorePassword().toCharArray();
+        try (InputStream in = Files.newInputStream(Paths.get(settings.getTlsKeyStore()))) {
+            KeyStore keyStore = KeyStore.getInstance(settings.getTlsKeyStoreType());
+            keyStore.load(in, password);
+            KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+            keyManagerFactory.init(keyStore, password);
+            sslContext = SSLContext.getInstance("TLS");
+            sslContext.init(keyManagerFactory.getKeyManagers(), null, null);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Can't load the key store " + settings.getTlsKeyStore() + " " + e.getMessage(), e);
+        }
+        SSLSessionContext sessionContext = sslContext.getServerSessionContext();
+        sessionContext.setSessionCacheSize(settings.getTlsSessionCacheSize());
+        sessionContext.setSessionTimeout(settings.getTlsSessionTimeoutSeconds());
+        AtomicInteger threadNumber = new AtomicInteger();
+        handshakeExecutor = Executors.newFixedThreadPool(settings.getTlsHandshakeThreads(), runnable -> {
+            Thread thread = new Thread(runnable, "tls-handshake-" + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Create the engine for a connection served by a reactor.
+     *
+     * @return the engine in server mode.
+     */
+    public SSLEngine newEngine() {
+        SSLEngine engine = sslContext.createSSLEngine();
+        engine.setUseClientMode(false);
+        return engine;
+    }
+
+    /**
+     * Run the handshake on the accepted socket, called on a handshake thread. The client is given
+     * {@link ServerConstants#TLS_HANDSHAKE_TIMEOUT_MILLISECONDS} to finish it.
+     *
+     * @param socket the accepted socket.
+     * @return the socket that speaks TLS over the accepted one, closing it closes both.
+     * @throws IOException If the handshake fails
+     */
+    public SSLSocket handshake(Socket socket) throws IOException {
+        SSLSocket sslSocket = (SSLSocket) sslContext.getSocketFactory().createSocket(socket, socket.getInetAddress().getHostAddress(), socket.getPort(), true);
+        sslSocket.setUseClientMode(false);
+        sslSocket.setSoTimeout(ServerConstants.TLS_HANDSHAKE_TIMEOUT_MILLISECONDS);
+        sslSocket.startHandshake();
+        sslSocket.setSoTimeout(0);
+        return sslSocket;
+    }
+
+    /**
+     * Getter for the executor of the handshakes.
+     *
+     * @return the executor.
+     */
+    public Executor getHandshakeExecutor() {
+        return handshakeExecutor;
+    }
+
+    /**
+     * Stop the handshake threads.
+     */
+    public void close() {
+        handshakeExecutor.shutdownNow();
+    }
+
+}
@@ -0,0 +1,95 @@
+package pl.arturkb.server.chat;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token bucket that refills at a fixed rate up to a burst size, safe to use from many threads without locking.
+ * <p>
+ * The whole state is one number: the time at which the bucket would be full again if nothing more were taken. Taking
+ * tokens moves that time forward by the time the tokens take to refill; the bucket has enough tokens while that time
+ * is at most the burst duration ahead of now. An update is one compare-and-set, and the bucket needs no refill
+ * thread.
+ */
+public class TokenBucket {
+
+    // Time to refill one token, in nanoseconds.
+    private final long nanosPerToken;
+
+    // Time to refill the whole bucket, in nanoseconds.
+    private final long burstNanos;
+
+    // The time the bucket is full again, from System.nanoTime().
+    private final AtomicLong fullAt;
+
+    /**
+     * The constructor
+     *
+     * @param tokensPerSecond the refill rate, greater than 0.
+     * @param burstSeconds    the number of seconds of refill the bucket holds.
+     */
+    public TokenBucket(long tokensPerSecond, int burstSeconds) {
+        this(tokensPerSecond, burstSeconds, 0);
+    }
+
+    /**
+     * The constructor of a bucket that holds at least the given number of tokens, so that a request of that size
+     * can succeed however low the rate is.
+     *
+     * @param tokensPerSecond the refill rate, greater than 0.
+     * @param burstSeconds    the number of seconds of refill the bucket holds.
+     * @param minBurstTokens  the min number of tokens the bucket holds.
+     */
+    public TokenBucket(long tokensPerSecond, int burstSeconds, long minBurstTokens) {
+        nanosPerToken = Math.max(1, TimeUnit.SECONDS.toNanos(1) / tokensPerSecond);
+        burstNanos = Math.max(TimeUnit.SECONDS.toNanos(burstSeconds), minBurstTokens * nanosPerToken);
+        fullAt = new AtomicLong(System.nanoTime());
+    }
+
+    /**
+     * Take the tokens if the bucket has them.
+     *
+     * @param tokens the number of tokens.
+     * @return true if the tokens are taken, false if the bucket has not enough of them.
+     */
+    public boolean tryAcquire(long tokens) {
+        long now = System.nanoTime();
+        long current;
+        long next;
+        do {
+            current = fullAt.get();
+            next = Math.max(current, now) + tokens * nanosPerToken;
+            if (next - now > burstNanos) {
+                return false;
+            }
+        } while (!fullAt.compareAndSet(current, next));
+        return true;
+    }
+
+    /**
+     * Give back the tokens taken by {@link #tryAcquire(long)}, when what they were taken for is not done.
+     *
+     * @param tokens the number of tokens.
+     */
+    public void release(long tokens) {
+        fullAt.addAndGet(-tokens * nanosPerToken);
+    }
+
+    /**
+     * Take the tokens, going into debt if the bucket has not enough of them.
+     *
+     * @param tokens the number of tokens.
+     * @return the time in nanoseconds until the debt is paid back, 0 when the bucket had enough tokens.
+     */
+    public long acquire(long tokens) {
+        long now = System.nanoTime();
+        long current;
+        long next;
+        do {
+            current = fullAt.get();
+            next = Math.max(current, now) + tokens * nanosPerToken;
+        } while (!fullAt.compareAndSet(current, next));
+        return Math.max(0, next - now - burstNanos);
+    }
+
+}
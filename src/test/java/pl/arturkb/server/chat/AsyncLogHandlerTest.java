@@ -0,0 +1,86 @@
+package pl.arturkb.server.chat;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.SimpleFormatter;
+
+/**
+ * Junit test class
+ */
+public class AsyncLogHandlerTest {
+
+    @Test
+    public void testRecordsAreFormattedByTheTargetInOrder() {
+        CapturingHandler target = new CapturingHandler(null);
+        AsyncLogHandler handler = new AsyncLogHandler(new Handler[]{target}, 1024);
+        for (int i = 0; i < 100; i++) {
+            LogRecord record = new LogRecord(Level.INFO, "Accepted connection on socket {0}:{1,number,#}");
+            record.setParameters(new Object[]{"/127.0.0.1", 2222 + i});
+            handler.publish(record);
+        }
+        handler.close();
+
+        Assert.assertEquals(100, target.messages.size());
+        Assert.assertEquals("Accepted connection on socket /127.0.0.1:2222", target.messages.get(0));
+        Assert.assertEquals("Accepted connection on socket /127.0.0.1:2321", target.messages.get(99));
+        Assert.assertEquals(0, handler.getDropped());
+    }
+
+    @Test
+    public void testRecordsAreDroppedAndCountedWhenQueueIsFull() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        CapturingHandler target = new CapturingHandler(release);
+        AsyncLogHandler handler = new AsyncLogHandler(new Handler[]{target}, 10);
+        for (int i = 0; i < 100; i++) {
+            handler.publish(new LogRecord(Level.INFO, "message " + i));
+        }
+        release.countDown();
+        handler.close();
+
+        Assert.assertTrue(handler.getDropped() > 0);
+        Assert.assertEquals(100 - handler.getDropped() + 1, target.messages.size());
+        Assert.assertEquals("Dropped " + handler.getDropped() + " log records",
+                target.messages.get(target.messages.size() - 1));
+    }
+
+    /**
+     * Handler that keeps the formatted messages, optionally waiting before the first one.
+     */
+    private static class CapturingHandler extends Handler {
+
+        private final List<String> messages = new CopyOnWriteArrayList<>();
+        private final CountDownLatch release;
+
+        CapturingHandler(CountDownLatch release) {
+            this.release = release;
+            setFormatter(new SimpleFormatter());
+        }
+
+        @Override
+        public void publish(LogRecord record) {
+            if (release != null) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            messages.add(getFormatter().formatMessage(record));
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package pl.arturkb.server.chat;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.Properties;
+
+/**
+ * Junit test class, talks the binary protocol to both servers over loopback.
+ */
+public class BinaryProtocolTest {
+
+    private static final int MAX_LINE_LENGTH = 100;
+
+    private ChatServer server;
+
+    @After
+    public void tearDown() throws IOException {
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    @Test
+    public void testBlockingServer() throws IOException {
+        start(new MultiThreadChatServerSync(0, new ServerContext(new ServerSettings(properties()))));
+        testPipelinedFrames();
+        testTooLongFrame();
+        testWrongFirstFrame();
+    }
+
+    @Test
+    public void testNioServer() throws IOException {
+        start(new NioChatServer(0, new ServerContext(new ServerSettings(properties()))));
+        testPipelinedFrames();
+        testTooLongFrame();
+        testWrongFirstFrame();
+    }
+
+    private void testPipelinedFrames() throws IOException {
+        try (Client artur = new Client()) {
+            artur.login("Artur");
+            // The session has handled /who only after it told the others about Artur.
+            artur.write(bytes(ServerConstants.WHO + " Art\n"));
+            Assert.assertEquals("Artur", artur.readLine());
+            Assert.assertEquals("", artur.readLine());
+
+            try (Client carol = new Client()) {
+                // The switch, the name and the commands in one write, before any answer.
+                ByteArrayOutputStream frames = new ByteArrayOutputStream();
+                frames.write(bytes(ServerConstants.BINARY_PROTOCOL + "\r\n"));
+                frames.write(FrameCodec.encode(ServerConstants.NAME_OPCODE, bytes("Carol")));
+                frames.write(FrameCodec.encode(Command.ALL.getOpcode(), bytes("hello")));
+                frames.write(FrameCodec.encode(Command.PRIVATE.getOpcode(), FrameCodec.addressedPayload(bytes("@Artur"), bytes("psst"))));
+                frames.write(FrameCodec.encode(Command.WHO.getOpcode(), bytes("Car")));
+                frames.write(FrameCodec.encode(Command.QUIT.getOpcode(), new byte[0]));
+                carol.write(frames.toByteArray());
+
+                Assert.assertEquals(OutputTexts.ENTER_YOUR_NAME, carol.readLine());
+                Assert.assertEquals(OutputTexts.BINARY_PROTOCOL_ON, carol.readLine());
+                Assert.assertEquals("Welcome Carol to our chat room.", carol.readLine());
+                carol.readLine();
+                Assert.assertEquals("<Carol> psst", carol.readLine());
+                Assert.assertEquals("Carol", carol.readLine());
+
+                Assert.assertEquals(OutputTexts.newUserEnteredChatMessage("Carol"), artur.readLine());
+                Assert.assertEquals("<Carol> hello", artur.readLine());
+                Assert.assertEquals("<Carol> psst", artur.readLine());
+                Assert.assertEquals(OutputTexts.userIsLeavingTheChat("Carol"), artur.readLine());
+            }
+
+            // Leave before the next client logs in, it must not get the notice.
+            artur.write(bytes(ServerConstants.QUIT + "\n"));
+            while (artur.readLine() != null) {
+                // The server closes the connection after the notice is sent.
+            }
+        }
+    }
+
+    private void testTooLongFrame() throws IOException {
+        try (Client carol = new Client()) {
+            carol.write(bytes(ServerConstants.BINARY_PROTOCOL + "\n"));
+            carol.write(FrameCodec.encode(ServerConstants.NAME_OPCODE, bytes("Carol")));
+            Assert.assertEquals(OutputTexts.ENTER_YOUR_NAME, carol.readLine());
+            Assert.assertEquals(OutputTexts.BINARY_PROTOCOL_ON, carol.readLine());
+            Assert.assertEquals("Welcome Carol to our chat room.", carol.readLine());
+            carol.readLine();
+
+            carol.write(FrameCodec.encode(Command.ALL.getOpcode(), new byte[MAX_LINE_LENGTH + 1]));
+            carol.write(FrameCodec.encode(Command.WHO.getOpcode(), bytes("Car")));
+            Assert.assertEquals(OutputTexts.lineTooLong(MAX_LINE_LENGTH), carol.readLine());
+            Assert.assertEquals("Carol", carol.readLine());
+        }
+    }
+
+    private void testWrongFirstFrame() throws IOException {
+        try (Client carol = new Client()) {
+            carol.write(bytes(ServerConstants.BINARY_PROTOCOL + "\n"));
+            carol.write(FrameCodec.encode(Command.ALL.getOpcode(), bytes("Carol")));
+            Assert.assertEquals(OutputTexts.ENTER_YOUR_NAME, carol.readLine());
+            Assert.assertEquals(OutputTexts.BINARY_PROTOCOL_ON, carol.readLine());
+            Assert.assertEquals(OutputTexts.WRONG_USER_NAME, carol.readLine());
+        }
+    }
+
+    private static Properties properties() {
+        Properties properties = new Properties();
+        properties.setProperty(ServerConstants.MAX_LINE_LENGTH_PROPERTY, String.valueOf(MAX_LINE_LENGTH));
+        return properties;
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(OutboundMessage.CHARSET);
+    }
+
+    private void start(ChatServer chatServer) throws IOException {
+        server = chatServer;
+        server.bind();
+        Thread acceptor = new Thread(server::serve);
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /**
+     * The chat client, writes raw bytes and reads lines.
+     */
+    private class Client implements AutoCloseable {
+
+        private final Socket socket;
+        private final BufferedReader reader;
+        private final OutputStream output;
+
+        Client() throws IOException {
+            socket = new Socket(InetAddress.getLoopbackAddress(), server.getLocalPort());
+            socket.setSoTimeout(5000);
+            reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), OutboundMessage.CHARSET));
+            output = socket.getOutputStream();
+        }
+
+        void login(String userName) throws IOException {
+            Assert.assertEquals(OutputTexts.ENTER_YOUR_NAME, readLine());
+            new PrintStream(output, true).println(userName);
+            readLine();
+            readLine();
+        }
+
+        String readLine() throws IOException {
+            return reader.readLine();
+        }
+
+        void write(byte[] bytes) throws IOException {
+            output.write(bytes);
+            output.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+}
@@ -0,0 +1,295 @@
+package pl.arturkb.server.chat;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Junit test class, runs concurrent join, leave and broadcast against the registry.
+ */
+public class ClientRegistryTest {
+
+    private static final int THREADS = 8;
+    private static final int ROUNDS = 2000;
+
+    private ClientRegistry registry;
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        registry = new ClientRegistry(THREADS * ROUNDS);
+        executor = Executors.newFixedThreadPool(THREADS);
+    }
+
+    @Test
+    public void testConcurrentJoinLeaveAndBroadcast() throws Exception {
+        StubSession observer = new StubSession("observer");
+        Assert.assertTrue(registry.claimName(observer.getClientName(), observer));
+
+        List<Callable<Void>> tasks = new ArrayList<>();
+        CyclicBarrier start = new CyclicBarrier(THREADS);
+        for (int t = 0; t < THREADS; t++) {
+            int thread = t;
+            tasks.add(() -> {
+                start.await();
+                for (int i = 0; i < ROUNDS; i++) {
+                    StubSession session = new StubSession("user-" + thread + "-" + i);
+                    Assert.assertTrue(registry.claimName(session.getClientName(), session));
+                    registry.broadcastMessage("hello", session);
+                    registry.getListOfActiveUsers();
+                    if (i % 2 == 0) {
+                        registry.unregister(session);
+                    }
+                }
+                return null;
+            });
+        }
+        runAll(tasks);
+
+        Assert.assertEquals(1 + THREADS * ROUNDS / 2, registry.size());
+        Assert.assertEquals(registry.size(), registry.getMembers().length);
+        Assert.assertEquals(THREADS * ROUNDS, observer.received.get());
+        for (int t = 0; t < THREADS; t++) {
+            for (int i = 1; i < ROUNDS; i += 2) {
+                Assert.assertTrue(registry.isClientNameRegistered(ServerConstants.CHAR_THAT_NAME_CAN_NOT_CONTAIN + "user-" + t + "-" + i));
+            }
+        }
+    }
+
+    @Test
+    public void testConcurrentClaimOfTheSameName() throws Exception {
+        AtomicInteger claimed = new AtomicInteger();
+        List<Callable<Void>> tasks = new ArrayList<>();
+        CyclicBarrier start = new CyclicBarrier(THREADS);
+        for (int t = 0; t < THREADS; t++) {
+            tasks.add(() -> {
+                start.await();
+                for (int i = 0; i < ROUNDS; i++) {
+                    StubSession session = new StubSession("user-" + i);
+                    if (registry.claimName(session.getClientName(), session)) {
+                        claimed.incrementAndGet();
+                    }
+                }
+                return null;
+            });
+        }
+        runAll(tasks);
+
+        Assert.assertEquals(ROUNDS, claimed.get());
+        Assert.assertEquals(ROUNDS, registry.size());
+    }
+
+    @Test
+    public void testConcurrentSlots() throws Exception {
+        registry = new ClientRegistry(THREADS);
+        AtomicInteger maxTaken = new AtomicInteger();
+        List<Callable<Void>> tasks = new ArrayList<>();
+        CyclicBarrier start = new CyclicBarrier(THREADS);
+        for (int t = 0; t < THREADS; t++) {
+            tasks.add(() -> {
+                start.await();
+                for (int i = 0; i < ROUNDS; i++) {
+                    if (registry.acquireSlot(null) == Admission.ACCEPTED) {
+                        maxTaken.accumulateAndGet(registry.getTakenSlots(), Math::max);
+                        registry.releaseSlot(null);
+                    }
+                }
+                return null;
+            });
+        }
+        runAll(tasks);
+
+        Assert.assertEquals(0, registry.getTakenSlots());
+        Assert.assertTrue(maxTaken.get() <= THREADS);
+    }
+
+    @Test
+    public void testWhoPagesAndPrefix() {
+        int users = ServerConstants.WHO_PAGE_SIZE + 10;
+        List<StubSession> sessions = new ArrayList<>();
+        for (int i = 0; i < users; i++) {
+            StubSession session = new StubSession(String.format("user-%03d", i));
+            Assert.assertTrue(registry.claimName(session.getClientName(), session));
+            sessions.add(session);
+        }
+
+        OutboundMessage first = registry.getListOfActiveUsers("");
+        Assert.assertSame(first, registry.getListOfActiveUsers());
+        String[] lines = text(first).split("\n");
+        Assert.assertEquals(ServerConstants.WHO_PAGE_SIZE + 1, lines.length);
+        Assert.assertEquals("user-000", lines[0]);
+        Assert.assertEquals(OutputTexts.userPage(1, 2), lines[ServerConstants.WHO_PAGE_SIZE]);
+
+        lines = text(registry.getListOfActiveUsers("page 2")).split("\n");
+        Assert.assertEquals(11, lines.length);
+        Assert.assertEquals("user-" + ServerConstants.WHO_PAGE_SIZE, lines[0]);
+        Assert.assertEquals(OutputTexts.noSuchUserPage(3, 2), text(registry.getListOfActiveUsers("page 3")).trim());
+
+        lines = text(registry.getListOfActiveUsers("user-10")).split("\n");
+        Assert.assertEquals(10, lines.length);
+        Assert.assertEquals("user-100", lines[0]);
+        Assert.assertEquals(OutputTexts.noUsersWithPrefix("nobody"), text(registry.getListOfActiveUsers("nobody")).trim());
+
+        registry.unregister(sessions.get(0));
+        OutboundMessage changed = registry.getListOfActiveUsers();
+        Assert.assertNotSame(first, changed);
+        Assert.assertTrue(text(changed).startsWith("user-001\n"));
+    }
+
+    private static String text(OutboundMessage message) {
+        return new String(message.bytes(), OutboundMessage.CHARSET);
+    }
+
+    @Test
+    public void testRoomMessageGoesToRoomMembersOnly() {
+        StubSession artur = register("Artur");
+        StubSession carol = register("Carol");
+        StubSession outsider = register("Outsider");
+
+        Assert.assertTrue(registry.joinRoom("#java", artur));
+        Assert.assertTrue(registry.joinRoom("#java", carol));
+        Assert.assertFalse(registry.joinRoom("#java", carol));
+        Assert.assertFalse(registry.joinRoom("java", outsider));
+        Assert.assertEquals(2, registry.findRoom("#java").size());
+
+        int artursMessages = artur.received.get();
+        int outsidersMessages = outsider.received.get();
+        Assert.assertTrue(registry.sendRoomMessage("hello", "#java", carol));
+        Assert.assertEquals(artursMessages + 1, artur.received.get());
+        Assert.assertEquals(outsidersMessages, outsider.received.get());
+
+        Assert.assertFalse(registry.sendRoomMessage("hello", "#java", outsider));
+        Assert.assertEquals(artursMessages + 1, artur.received.get());
+    }
+
+    @Test
+    public void testRoomIsRemovedWithLastMember() {
+        StubSession artur = register("Artur");
+        StubSession carol = register("Carol");
+        registry.joinRoom("#java", artur);
+        registry.joinRoom("#java", carol);
+        registry.joinRoom("#go", carol);
+
+        Assert.assertTrue(registry.leaveRoom("#java", artur));
+        Assert.assertFalse(registry.leaveRoom("#java", artur));
+        Assert.assertEquals(1, registry.findRoom("#java").size());
+
+        registry.unregister(carol);
+        Assert.assertNull(registry.findRoom("#java"));
+        Assert.assertNull(registry.findRoom("#go"));
+        Assert.assertSame(OutputTexts.NO_ROOMS_RESPONSE.render(), registry.getListOfRooms());
+    }
+
+    @Test
+    public void testConcurrentJoinAndLeave() throws Exception {
+        List<Callable<Void>> tasks = new ArrayList<>();
+        CyclicBarrier start = new CyclicBarrier(THREADS);
+        StubSession[] stayers = new StubSession[THREADS];
+        for (int t = 0; t < THREADS; t++) {
+            stayers[t] = register("stayer-" + t);
+            StubSession stayer = stayers[t];
+            StubSession churner = register("churner-" + t);
+            tasks.add(() -> {
+                start.await();
+                registry.joinRoom("#room", stayer);
+                for (int i = 0; i < ROUNDS; i++) {
+                    registry.joinRoom("#room", churner);
+                    registry.sendRoomMessage("hello", "#room", churner);
+                    registry.leaveRoom("#room", churner);
+                }
+                return null;
+            });
+        }
+        runAll(tasks);
+
+        Room room = registry.findRoom("#room");
+        Assert.assertEquals(THREADS, room.size());
+        Assert.assertEquals(THREADS, room.getMembers().length);
+        for (StubSession stayer : stayers) {
+            Assert.assertTrue(room.contains(stayer));
+        }
+    }
+
+    @Test
+    public void testConcurrentJoinAndUnregister() throws Exception {
+        List<Callable<Void>> tasks = new ArrayList<>();
+        CyclicBarrier start = new CyclicBarrier(THREADS);
+        for (int t = 0; t < THREADS; t += 2) {
+            StubSession[] sessions = new StubSession[ROUNDS];
+            for (int i = 0; i < ROUNDS; i++) {
+                sessions[i] = register("user-" + t + "-" + i);
+            }
+            tasks.add(() -> {
+                start.await();
+                for (StubSession session : sessions) {
+                    registry.joinRoom("#room", session);
+                }
+                return null;
+            });
+            tasks.add(() -> {
+                start.await();
+                for (StubSession session : sessions) {
+                    registry.unregister(session);
+                }
+                return null;
+            });
+        }
+        runAll(tasks);
+
+        Assert.assertNull(registry.findRoom("#room"));
+        Assert.assertEquals(0, registry.sessionsInRooms());
+    }
+
+    private StubSession register(String userName) {
+        StubSession session = new StubSession(userName);
+        Assert.assertTrue(registry.claimName(session.getClientName(), session));
+        return session;
+    }
+
+    private void runAll(List<Callable<Void>> tasks) throws Exception {
+        List<Future<Void>> futures = executor.invokeAll(tasks);
+        executor.shutdown();
+        Assert.assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+        for (Future<Void> future : futures) {
+            future.get();
+        }
+    }
+
+    /**
+     * The session that counts received messages.
+     */
+    private static class StubSession implements ChatSession {
+
+        private final String userName;
+        private final AtomicInteger received = new AtomicInteger();
+
+        StubSession(String userName) {
+            this.userName = userName;
+        }
+
+        @Override
+        public String getUserName() {
+            return userName;
+        }
+
+        @Override
+        public String getClientName() {
+            return ServerConstants.CHAR_THAT_NAME_CAN_NOT_CONTAIN + userName;
+        }
+
+        @Override
+        public void sendMessage(OutboundMessage message) {
+            received.incrementAndGet();
+        }
+    }
+}
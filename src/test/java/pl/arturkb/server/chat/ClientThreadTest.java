@@ -4,11 +4,10 @@ import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.net.Socket;
-import java.util.Map;
+import java.util.Properties;
 
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
@@ -20,22 +19,24 @@ public class ClientThreadTest {
 
 
     private Socket clientSocketMocked;
-    private ClientThread[] threadsMocked;
+    private ServerContext context;
+    private ClientRegistry registry;
     private PrintStream printStream;
-    private BufferedReader bufferedReader;
+    private LineReader bufferedReader;
 
     @Before
     public void setUp() {
-        threadsMocked = new ClientThread[10];
+        context = new ServerContext(new ServerSettings(new Properties()));
+        registry = context.getRegistry();
         clientSocketMocked = mock(Socket.class);
         printStream = mock(PrintStream.class);
-        bufferedReader = mock(BufferedReader.class);
+        bufferedReader = mock(LineReader.class);
     }
 
     @Test
     public void testReceiveUserNameWithCharThatIsNotAllowed() throws IOException {
         String stringWithCharThaIsNoAllowed = "Artur@Home";
-        ClientThread classUnderTest = new ClientThread(clientSocketMocked, threadsMocked);
+        ClientThread classUnderTest = new ClientThread(clientSocketMocked, context);
 
         when(bufferedReader.readLine()).thenReturn(stringWithCharThaIsNoAllowed);
 
@@ -49,7 +50,7 @@ public class ClientThreadTest {
     @Test
     public void testReceiveUserNameWithCharThatIsAllowed() throws IOException {
         String stringWithoutCharThaIsNoAllowed = "Artur";
-        ClientThread classUnderTest = new ClientThread(clientSocketMocked, threadsMocked);
+        ClientThread classUnderTest = new ClientThread(clientSocketMocked, context);
 
         when(bufferedReader.readLine()).thenReturn(stringWithoutCharThaIsNoAllowed);
 
@@ -62,7 +63,7 @@ public class ClientThreadTest {
     @Test
     public void testReceiveUserNameTrimmed() throws IOException {
         String stringWithoutCharThaiIsNoAllowedNotTrimmed = " Artur ";
-        ClientThread classUnderTest = new ClientThread(clientSocketMocked, threadsMocked);
+        ClientThread classUnderTest = new ClientThread(clientSocketMocked, context);
 
         when(bufferedReader.readLine()).thenReturn(stringWithoutCharThaiIsNoAllowedNotTrimmed);
 
@@ -76,11 +77,10 @@ public class ClientThreadTest {
     public void testReceiveUserNameThatIsAlreadyUsed() throws IOException {
         String stringWithCharThaIsAllowed = "Artur";
 
-        ClientThread classFixture = new ClientThread(clientSocketMocked, threadsMocked);
-        classFixture.setClientName(ServerConstants.CHAR_THAT_NAME_CAN_NOT_CONTAIN + stringWithCharThaIsAllowed);
-        threadsMocked[0] = classFixture;
+        ClientThread classFixture = new ClientThread(clientSocketMocked, context);
+        classFixture.registerClientName(stringWithCharThaIsAllowed);
 
-        ClientThread classUnderTest = new ClientThread(clientSocketMocked, threadsMocked);
+        ClientThread classUnderTest = new ClientThread(clientSocketMocked, context);
 
         when(bufferedReader.readLine()).thenReturn(stringWithCharThaIsAllowed);
 
@@ -90,89 +90,57 @@ public class ClientThreadTest {
         Assert.assertEquals(ServerConstants.DEFAULT_NAME, ServerConstants.DEFAULT_NAME, actual);
     }
 
-
     @Test
-    public void testRegisterClientName() {
-        String clientName1 = "Artur";
-        String clientName2 = "Carol";
-
-        ClientThread classUnderTest1 = new ClientThread(clientSocketMocked, threadsMocked);
-        ClientThread classUnderTest2 = new ClientThread(clientSocketMocked, threadsMocked);
+    public void testReceiveUserNameAtEndOfInput() throws IOException {
+        ClientThread classUnderTest = new ClientThread(clientSocketMocked, context);
 
-        threadsMocked[0] = classUnderTest1;
-        threadsMocked[1] = classUnderTest2;
-        classUnderTest1.registerClientName(clientName1);
-        classUnderTest2.registerClientName(clientName2);
+        when(bufferedReader.readLine()).thenReturn(null);
 
-        Assert.assertEquals(threadsMocked[0].getClientName(), ServerConstants.CHAR_THAT_NAME_CAN_NOT_CONTAIN + clientName1);
-        Assert.assertEquals(threadsMocked[1].getClientName(), ServerConstants.CHAR_THAT_NAME_CAN_NOT_CONTAIN + clientName2);
+        classUnderTest.setPrintStream(printStream);
+        classUnderTest.setDataInputStream(bufferedReader);
+        Assert.assertNull(classUnderTest.receiveUserName());
     }
 
 
     @Test
-    public void testUnRegisterClient() {
+    public void testRegisterClientName() {
+        String clientName1 = "Artur";
+        String clientName2 = "Carol";
 
-        ClientThread classUnderTest = new ClientThread(clientSocketMocked, threadsMocked);
-        threadsMocked[0] = classUnderTest;
+        ClientThread classUnderTest1 = new ClientThread(clientSocketMocked, context);
+        ClientThread classUnderTest2 = new ClientThread(clientSocketMocked, context);
 
-        classUnderTest.unRegisterClient();
-        Assert.assertEquals(threadsMocked[0], null);
-    }
+        Assert.assertTrue(classUnderTest1.registerClientName(clientName1));
+        Assert.assertTrue(classUnderTest2.registerClientName(clientName2));
 
-    @Test
-    public void testParseLineHappyDay() {
-        String commandWithMessage = "/all this is test message";
-        Map<String, String> result;
-
-        ClientThread classUnderTest = new ClientThread(clientSocketMocked, threadsMocked);
-        result = classUnderTest.parseLine(commandWithMessage);
-        Assert.assertEquals(2, result.size());
-        Assert.assertEquals("/all", result.get(ServerConstants.COMMAND));
-        Assert.assertEquals("this is test message", result.get(ServerConstants.MSG));
+        Assert.assertEquals(classUnderTest1.getClientName(), ServerConstants.CHAR_THAT_NAME_CAN_NOT_CONTAIN + clientName1);
+        Assert.assertEquals(classUnderTest2.getClientName(), ServerConstants.CHAR_THAT_NAME_CAN_NOT_CONTAIN + clientName2);
+        Assert.assertSame(classUnderTest1, registry.find(ServerConstants.CHAR_THAT_NAME_CAN_NOT_CONTAIN + clientName1));
+        Assert.assertSame(classUnderTest2, registry.find(ServerConstants.CHAR_THAT_NAME_CAN_NOT_CONTAIN + clientName2));
     }
 
     @Test
-    public void testParseLineWithPrivateMessageHappyDay() {
-        String commandWithMessage = "@Artur this is test message";
-        Map<String, String> result;
-
-        ClientThread classUnderTest = new ClientThread(clientSocketMocked, threadsMocked);
-        result = classUnderTest.parseLine(commandWithMessage);
-        Assert.assertEquals(3, result.size());
-        Assert.assertEquals(ServerConstants.PRIVATE, result.get(ServerConstants.COMMAND));
-        Assert.assertEquals("@Artur", result.get(ServerConstants.CLIENT_NAME));
-        Assert.assertEquals("this is test message", result.get(ServerConstants.MSG));
-    }
+    public void testRegisterClientNameThatIsAlreadyUsed() {
+        String clientName = "Artur";
 
-    @Test
-    public void testParseLineWithEmptyPrivateMes() {
-        String commandWithOutMessage = "@Artur";
-        Map<String, String> result;
+        ClientThread classUnderTest1 = new ClientThread(clientSocketMocked, context);
+        ClientThread classUnderTest2 = new ClientThread(clientSocketMocked, context);
 
-        ClientThread classUnderTest = new ClientThread(clientSocketMocked, threadsMocked);
-        result = classUnderTest.parseLine(commandWithOutMessage);
-        Assert.assertEquals(0, result.size());
+        Assert.assertTrue(classUnderTest1.registerClientName(clientName));
+        Assert.assertFalse(classUnderTest2.registerClientName(clientName));
+        Assert.assertNull(classUnderTest2.getClientName());
+        Assert.assertSame(classUnderTest1, registry.find(ServerConstants.CHAR_THAT_NAME_CAN_NOT_CONTAIN + clientName));
     }
 
-    @Test
-    public void testParseLineWithEmptyMsg() {
-        String commandWithMessage = "/all";
-        Map<String, String> result;
-
-        ClientThread classUnderTest = new ClientThread(clientSocketMocked, threadsMocked);
-        result = classUnderTest.parseLine(commandWithMessage);
-        Assert.assertEquals(1, result.size());
-        Assert.assertEquals("/all", result.get(ServerConstants.COMMAND));
-    }
 
     @Test
-    public void testParseEmptyLine() {
-        String commandWithMessage = ServerConstants.EMPTY;
-        Map<String, String> result;
-
-        ClientThread classUnderTest = new ClientThread(clientSocketMocked, threadsMocked);
-        result = classUnderTest.parseLine(commandWithMessage);
-        Assert.assertEquals(1, result.size());
-        Assert.assertEquals(result.get(ServerConstants.COMMAND), ServerConstants.EMPTY);
+    public void testUnRegisterClient() {
+
+        ClientThread classUnderTest = new ClientThread(clientSocketMocked, context);
+        classUnderTest.registerClientName("Artur");
+
+        classUnderTest.unRegisterClient();
+        Assert.assertFalse(registry.isClientNameRegistered(ServerConstants.CHAR_THAT_NAME_CAN_NOT_CONTAIN + "Artur"));
+        Assert.assertEquals(0, registry.size());
     }
 }
@@ -0,0 +1,195 @@
+package pl.arturkb.server.chat;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Junit test class, runs a blocking and a non-blocking node of one cluster on loopback.
+ */
+public class ClusterTest {
+
+    private ServerContext contextA;
+    private ServerContext contextB;
+    private ChatServer serverA;
+    private ChatServer serverB;
+
+    @Before
+    public void setUp() throws IOException {
+        int clusterPortA = freePort();
+        int clusterPortB = freePort();
+        contextA = new ServerContext(new ServerSettings(clusterProperties("node-a", clusterPortA, clusterPortB)));
+        contextB = new ServerContext(new ServerSettings(clusterProperties("node-b", clusterPortB, clusterPortA)));
+        serverA = start(new MultiThreadChatServerSync(0, contextA));
+        serverB = start(new NioChatServer(0, contextB));
+        waitFor(() -> contextA.getCluster().getLinkedPeers().contains("node-b")
+                && contextB.getCluster().getLinkedPeers().contains("node-a"));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        serverA.close();
+        serverB.close();
+    }
+
+    @Test
+    public void testMembershipAndRouting() throws IOException {
+        try (Client artur = new Client(serverA); Client carol = new Client(serverB)) {
+            artur.login("Artur");
+            waitFor(() -> contextB.getRegistry().isClientNameRegistered("@Artur"));
+
+            Assert.assertEquals(OutputTexts.ENTER_YOUR_NAME, carol.readLine());
+            carol.println("Artur");
+            Assert.assertEquals(OutputTexts.userNameIsAlreadyUsed("Artur"), carol.readLine());
+            Assert.assertEquals(OutputTexts.ENTER_YOUR_NAME, carol.readLine());
+            carol.println("Carol");
+            Assert.assertEquals("Welcome Carol to our chat room.", carol.readLine());
+            carol.readLine();
+            Assert.assertEquals(OutputTexts.newUserEnteredChatMessage("Carol"), artur.readLine());
+            waitFor(() -> contextA.getRegistry().isClientNameRegistered("@Carol"));
+
+            carol.println("/who");
+            Assert.assertEquals(new HashSet<>(Arrays.asList("Artur", "Carol")),
+                    new HashSet<>(Arrays.asList(carol.readLine(), carol.readLine())));
+            Assert.assertEquals(ServerConstants.EMPTY, carol.readLine());
+
+            artur.println("@Carol psst");
+            Assert.assertEquals("<Artur> psst", carol.readLine());
+            Assert.assertEquals("<Artur> psst", artur.readLine());
+
+            carol.println("/all hello");
+            Assert.assertEquals("<Carol> hello", artur.readLine());
+
+            artur.println("/join #java");
+            Assert.assertEquals(OutputTexts.YOU_JOINED_THE_ROOM_RESPONSE.format("#java"), artur.readLine());
+            carol.println("/join #java");
+            Assert.assertEquals(OutputTexts.YOU_JOINED_THE_ROOM_RESPONSE.format("#java"), carol.readLine());
+            Assert.assertEquals(OutputTexts.USER_JOINED_THE_ROOM_RESPONSE.format("#java", "Carol"), artur.readLine());
+            artur.println("#java hi");
+            Assert.assertEquals("#java <Artur> hi", carol.readLine());
+
+            carol.println("/quit");
+            Assert.assertEquals(OutputTexts.userIsLeavingTheChat("Carol"), artur.readLine());
+            waitFor(() -> !contextA.getRegistry().isClientNameRegistered("@Carol"));
+        }
+    }
+
+    @Test
+    public void testConcurrentClaimsOfOneName() {
+        for (int i = 0; i < 20; i++) {
+            String clientName = "@user-" + i;
+            CompletableFuture<Boolean> onA = contextA.getRegistry().claimClusterName(clientName, new NamedSession(clientName));
+            CompletableFuture<Boolean> onB = contextB.getRegistry().claimClusterName(clientName, new NamedSession(clientName));
+            Assert.assertTrue(clientName, onA.join() ^ onB.join());
+        }
+    }
+
+    private static Properties clusterProperties(String nodeId, int clusterPort, int peerPort) {
+        Properties properties = new Properties();
+        properties.setProperty(ServerConstants.CLUSTER_NODE_ID_PROPERTY, nodeId);
+        properties.setProperty(ServerConstants.CLUSTER_PORT_PROPERTY, String.valueOf(clusterPort));
+        properties.setProperty(ServerConstants.CLUSTER_PEERS_PROPERTY, "localhost:" + peerPort);
+        return properties;
+    }
+
+    private static ChatServer start(ChatServer server) throws IOException {
+        server.bind();
+        Thread acceptor = new Thread(server::serve);
+        acceptor.setDaemon(true);
+        acceptor.start();
+        return server;
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static void waitFor(BooleanSupplier condition) {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (!condition.getAsBoolean()) {
+            Assert.assertTrue("Timed out", System.currentTimeMillis() < deadline);
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                Assert.fail("Interrupted");
+            }
+        }
+    }
+
+    /**
+     * Session that only has a name.
+     */
+    private static class NamedSession implements ChatSession {
+
+        private final String clientName;
+
+        NamedSession(String clientName) {
+            this.clientName = clientName;
+        }
+
+        public String getUserName() {
+            return clientName.substring(1);
+        }
+
+        public String getClientName() {
+            return clientName;
+        }
+
+        public void sendMessage(OutboundMessage message) {
+        }
+    }
+
+    /**
+     * The line based chat client.
+     */
+    private static class Client implements AutoCloseable {
+
+        private final Socket socket;
+        private final BufferedReader reader;
+        private final PrintStream printStream;
+
+        Client(ChatServer server) throws IOException {
+            socket = new Socket(InetAddress.getLoopbackAddress(), server.getLocalPort());
+            socket.setSoTimeout(5000);
+            reader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+            printStream = new PrintStream(socket.getOutputStream(), true);
+        }
+
+        void login(String userName) throws IOException {
+            Assert.assertEquals(OutputTexts.ENTER_YOUR_NAME, readLine());
+            println(userName);
+            readLine();
+            readLine();
+        }
+
+        String readLine() throws IOException {
+            return reader.readLine();
+        }
+
+        void println(String line) {
+            printStream.println(line);
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+}
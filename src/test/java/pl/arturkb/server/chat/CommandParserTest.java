@@ -0,0 +1,172 @@
+package pl.arturkb.server.chat;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Junit test class.
+ */
+public class CommandParserTest {
+
+    private CommandParser classUnderTest;
+
+    @Before
+    public void setUp() {
+        classUnderTest = new CommandParser();
+    }
+
+    @Test
+    public void testParseLineHappyDay() {
+        String commandWithMessage = "/all this is test message";
+
+        for (CommandParser result : parseBothWays(commandWithMessage)) {
+            Assert.assertEquals(Command.ALL, result.getCommand());
+            Assert.assertEquals("this is test message", result.getMsg());
+        }
+    }
+
+    @Test
+    public void testParseLineWithPrivateMessageHappyDay() {
+        String commandWithMessage = "@Artur this is test message";
+
+        for (CommandParser result : parseBothWays(commandWithMessage)) {
+            Assert.assertEquals(Command.PRIVATE, result.getCommand());
+            Assert.assertEquals("@Artur", result.getClientName());
+            Assert.assertEquals("this is test message", result.getMsg());
+        }
+    }
+
+    @Test
+    public void testParseLineWithEmptyPrivateMes() {
+        String commandWithOutMessage = "@Artur";
+
+        for (CommandParser result : parseBothWays(commandWithOutMessage)) {
+            Assert.assertEquals(Command.NONE, result.getCommand());
+            Assert.assertEquals(ServerConstants.EMPTY, result.getClientName());
+        }
+    }
+
+    @Test
+    public void testParseLineWithEmptyMsg() {
+        String commandWithMessage = "/all";
+
+        for (CommandParser result : parseBothWays(commandWithMessage)) {
+            Assert.assertEquals(Command.ALL, result.getCommand());
+            Assert.assertFalse(result.hasMsg());
+            Assert.assertEquals(ServerConstants.EMPTY, result.getMsg());
+        }
+    }
+
+    @Test
+    public void testParseEmptyLine() {
+        for (CommandParser result : parseBothWays(ServerConstants.EMPTY)) {
+            Assert.assertEquals(Command.NONE, result.getCommand());
+        }
+    }
+
+    @Test
+    public void testParseUnknownCommand() {
+        for (CommandParser result : parseBothWays("/allx message")) {
+            Assert.assertEquals(Command.NONE, result.getCommand());
+        }
+        for (CommandParser result : parseBothWays(" /all message")) {
+            Assert.assertEquals(Command.NONE, result.getCommand());
+        }
+    }
+
+    @Test
+    public void testParseSplitsOnFirstWhitespaceOnly() {
+        for (CommandParser result : parseBothWays("/all\tza\u017c\u00f3\u0142\u0107  g\u0119\u015bl\u0105")) {
+            Assert.assertEquals(Command.ALL, result.getCommand());
+            Assert.assertEquals("za\u017c\u00f3\u0142\u0107  g\u0119\u015bl\u0105", result.getMsg());
+        }
+    }
+
+    @Test
+    public void testParseRoomCommands() {
+        for (CommandParser result : parseBothWays("/join #java")) {
+            Assert.assertEquals(Command.JOIN, result.getCommand());
+            Assert.assertEquals("#java", result.getRoomName());
+        }
+        for (CommandParser result : parseBothWays("/leave #java")) {
+            Assert.assertEquals(Command.LEAVE, result.getCommand());
+            Assert.assertEquals("#java", result.getRoomName());
+        }
+        for (CommandParser result : parseBothWays("/rooms")) {
+            Assert.assertEquals(Command.ROOMS, result.getCommand());
+        }
+    }
+
+    @Test
+    public void testParseRoomMessage() {
+        for (CommandParser result : parseBothWays("#java hello room")) {
+            Assert.assertEquals(Command.ROOM, result.getCommand());
+            Assert.assertEquals("#java", result.getRoomName());
+            Assert.assertEquals("hello room", result.getMsg());
+        }
+        for (CommandParser result : parseBothWays("#java")) {
+            Assert.assertEquals(Command.NONE, result.getCommand());
+        }
+    }
+
+    @Test
+    public void testParseHistory() {
+        for (CommandParser result : parseBothWays("/history 10")) {
+            Assert.assertEquals(Command.HISTORY, result.getCommand());
+            Assert.assertEquals("", result.getRoomName());
+            Assert.assertEquals("10", result.getMsg());
+        }
+        for (CommandParser result : parseBothWays("/history #java 5")) {
+            Assert.assertEquals(Command.HISTORY, result.getCommand());
+            Assert.assertEquals("#java", result.getRoomName());
+            Assert.assertEquals("5", result.getMsg());
+        }
+        for (CommandParser result : parseBothWays("/history #java")) {
+            Assert.assertEquals("#java", result.getRoomName());
+            Assert.assertFalse(result.hasMsg());
+        }
+    }
+
+    @Test
+    public void testParseBytesWithOffset() {
+        byte[] buffer = "xx@Carol hi".getBytes(StandardCharsets.UTF_8);
+
+        classUnderTest.parse(buffer, 2, buffer.length - 2, StandardCharsets.UTF_8);
+        Assert.assertEquals(Command.PRIVATE, classUnderTest.getCommand());
+        Assert.assertEquals("@Carol", classUnderTest.getClientName());
+        Assert.assertEquals("hi", classUnderTest.getMsg());
+    }
+
+    @Test
+    public void testParseFrame() {
+        byte[] target = "@Carol".getBytes(StandardCharsets.UTF_8);
+        byte[] message = "hi there".getBytes(StandardCharsets.UTF_8);
+        byte[] payload = FrameCodec.addressedPayload(target, message);
+
+        classUnderTest.parseFrame(Command.PRIVATE.getOpcode(), payload, payload.length, StandardCharsets.UTF_8);
+        Assert.assertEquals(Command.PRIVATE, classUnderTest.getCommand());
+        Assert.assertEquals("@Carol", classUnderTest.getClientName());
+        Assert.assertEquals("hi there", classUnderTest.getMsg());
+        Assert.assertEquals(payload.length, classUnderTest.getLength());
+
+        classUnderTest.parseFrame(Command.ALL.getOpcode(), message, message.length, StandardCharsets.UTF_8);
+        Assert.assertEquals(Command.ALL, classUnderTest.getCommand());
+        Assert.assertEquals("hi there", classUnderTest.getMsg());
+
+        classUnderTest.parseFrame(Command.PRIVATE.getOpcode(), payload, target.length, StandardCharsets.UTF_8);
+        Assert.assertEquals(Command.NONE, classUnderTest.getCommand());
+
+        classUnderTest.parseFrame(200, message, message.length, StandardCharsets.UTF_8);
+        Assert.assertEquals(Command.NONE, classUnderTest.getCommand());
+    }
+
+    private CommandParser[] parseBothWays(String line) {
+        CommandParser fromBytes = new CommandParser();
+        byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+        fromBytes.parse(bytes, 0, bytes.length, StandardCharsets.UTF_8);
+        return new CommandParser[]{classUnderTest.parse(line), fromBytes};
+    }
+}
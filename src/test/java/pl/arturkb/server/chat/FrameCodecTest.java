@@ -0,0 +1,76 @@
+package pl.arturkb.server.chat;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Junit test class for the frames of the binary protocol.
+ */
+public class FrameCodecTest {
+
+    @Test
+    public void testVarint() {
+        int[] values = {0, 127, 128, 16383, 16384, Integer.MAX_VALUE};
+        int[] lengths = {1, 1, 2, 2, 3, 5};
+        for (int i = 0; i < values.length; i++) {
+            byte[] bytes = new byte[5];
+            Assert.assertEquals(lengths[i], FrameCodec.varintLength(values[i]));
+            Assert.assertEquals(lengths[i], FrameCodec.writeVarint(values[i], bytes, 0));
+        }
+    }
+
+    @Test
+    public void testDecodeByteByByte() throws IOException {
+        byte[] payload = new byte[300];
+        Arrays.fill(payload, (byte) 'x');
+        byte[] frame = FrameCodec.encode(Command.ALL.getOpcode(), payload);
+        FrameCodec decoder = new FrameCodec(1000);
+        for (int i = 0; i < frame.length - 1; i++) {
+            Assert.assertFalse(decoder.decode(ByteBuffer.wrap(frame, i, 1)));
+        }
+        Assert.assertTrue(decoder.decode(ByteBuffer.wrap(frame, frame.length - 1, 1)));
+        Assert.assertEquals(Command.ALL.getOpcode(), decoder.getOpcode());
+        Assert.assertEquals(payload.length, decoder.getLength());
+        Assert.assertArrayEquals(payload, Arrays.copyOf(decoder.getPayload(), decoder.getLength()));
+    }
+
+    @Test
+    public void testDecodePipelinedFrames() throws IOException {
+        ByteBuffer input = ByteBuffer.allocate(64);
+        input.put(FrameCodec.encode(Command.QUIT.getOpcode(), new byte[0]));
+        input.put(FrameCodec.encode(Command.WHO.getOpcode(), new byte[]{'A'}));
+        input.flip();
+        FrameCodec decoder = new FrameCodec(16);
+        Assert.assertTrue(decoder.decode(input));
+        Assert.assertEquals(Command.QUIT.getOpcode(), decoder.getOpcode());
+        Assert.assertEquals(0, decoder.getLength());
+        Assert.assertTrue(decoder.decode(input));
+        Assert.assertEquals(Command.WHO.getOpcode(), decoder.getOpcode());
+        Assert.assertEquals('A', decoder.getPayload()[0]);
+        Assert.assertFalse(input.hasRemaining());
+    }
+
+    @Test
+    public void testTooLongFrameIsSkipped() throws IOException {
+        ByteBuffer input = ByteBuffer.allocate(64);
+        input.put(FrameCodec.encode(Command.ALL.getOpcode(), new byte[20]));
+        input.put(FrameCodec.encode(Command.HELP.getOpcode(), new byte[0]));
+        input.flip();
+        FrameCodec decoder = new FrameCodec(8);
+        Assert.assertTrue(decoder.decode(input));
+        Assert.assertTrue(decoder.isTooLong());
+        Assert.assertTrue(decoder.decode(input));
+        Assert.assertFalse(decoder.isTooLong());
+        Assert.assertEquals(Command.HELP.getOpcode(), decoder.getOpcode());
+    }
+
+    @Test(expected = IOException.class)
+    public void testMalformedLength() throws IOException {
+        byte[] frame = {(byte) Command.ALL.getOpcode(), (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF};
+        new FrameCodec(8).decode(ByteBuffer.wrap(frame));
+    }
+}
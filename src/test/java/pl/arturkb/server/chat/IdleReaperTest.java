@@ -0,0 +1,78 @@
+package pl.arturkb.server.chat;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Junit test class for eviction of inactive sessions.
+ */
+public class IdleReaperTest {
+
+    private static final long TIMEOUT_MILLIS = 300;
+
+    private IdleReaper reaper;
+
+    @Before
+    public void setUp() {
+        reaper = new IdleReaper(TIMEOUT_MILLIS, 20);
+    }
+
+    @After
+    public void tearDown() {
+        reaper.stop();
+    }
+
+    @Test
+    public void testInactiveSessionIsEvictedOnce() throws InterruptedException {
+        StubSession idle = new StubSession();
+        StubSession active = new StubSession();
+        reaper.register(idle);
+        IdleReaper.Timer activeTimer = reaper.register(active);
+
+        long end = System.currentTimeMillis() + 3 * TIMEOUT_MILLIS;
+        while (System.currentTimeMillis() < end) {
+            activeTimer.touch();
+            Thread.sleep(20);
+        }
+        Assert.assertEquals(1, idle.evictions.get());
+        Assert.assertEquals(0, active.evictions.get());
+
+        Assert.assertTrue(active.evicted.await(10 * TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        Assert.assertEquals(1, active.evictions.get());
+    }
+
+    @Test
+    public void testCancelledSessionIsNotEvicted() throws InterruptedException {
+        StubSession closed = new StubSession();
+        StubSession idle = new StubSession();
+        reaper.register(closed).cancel();
+        reaper.register(idle);
+
+        Assert.assertTrue(idle.evicted.await(10 * TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        Thread.sleep(TIMEOUT_MILLIS);
+        Assert.assertEquals(0, closed.evictions.get());
+    }
+
+    /**
+     * The session that counts evictions.
+     */
+    private static class StubSession implements IdleSession {
+
+        private final AtomicInteger evictions = new AtomicInteger();
+
+        private final CountDownLatch evicted = new CountDownLatch(1);
+
+        @Override
+        public void evictIdle(long inactiveSeconds) {
+            evictions.incrementAndGet();
+            evicted.countDown();
+        }
+    }
+
+}
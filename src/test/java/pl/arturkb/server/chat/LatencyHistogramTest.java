@@ -0,0 +1,40 @@
+package pl.arturkb.server.chat;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Junit test class for the latency histogram.
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void testBucketsCoverAllValues() {
+        for (long value : new long[]{0, 1, 127, 128, 129, 255, 256, 1000, 123456789, Long.MAX_VALUE}) {
+            int index = LatencyHistogram.bucketIndex(value);
+            Assert.assertTrue(value <= LatencyHistogram.highestValueOfBucket(index));
+            Assert.assertTrue(index == 0 || value > LatencyHistogram.highestValueOfBucket(index - 1));
+        }
+    }
+
+    @Test
+    public void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Assert.assertEquals(0, histogram.getValueAtPercentile(50));
+        for (long value = 1; value <= 100000; value++) {
+            histogram.record(value * 1000);
+        }
+        Assert.assertEquals(100000, histogram.getCount());
+        Assert.assertEquals(100000000, histogram.getMax());
+        Assert.assertEquals(50000500.0, histogram.getMean(), 0.1);
+        assertWithinRelativeError(50000000, histogram.getValueAtPercentile(50));
+        assertWithinRelativeError(99000000, histogram.getValueAtPercentile(99));
+        assertWithinRelativeError(99990000, histogram.getValueAtPercentile(99.99));
+        Assert.assertEquals(100000000, histogram.getValueAtPercentile(100));
+    }
+
+    private static void assertWithinRelativeError(long expected, long actual) {
+        Assert.assertTrue(actual + " is not close to " + expected, Math.abs(actual - expected) <= expected / 64);
+    }
+
+}
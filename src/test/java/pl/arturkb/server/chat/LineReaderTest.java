@@ -0,0 +1,60 @@
+package pl.arturkb.server.chat;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Junit test class for reading lines of bounded length.
+ */
+public class LineReaderTest {
+
+    private final BufferPool pool = new BufferPool(4, 2);
+
+    private LineReader reader(String input, int maxLineLength) {
+        InputStream in = new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8));
+        return new LineReader(in, pool, maxLineLength, StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testLineEnds() throws IOException {
+        LineReader reader = reader("one\ntwo\r\nthree\rfour\r\n\nlast", 16);
+        Assert.assertEquals("one", reader.readLine());
+        Assert.assertEquals("two", reader.readLine());
+        Assert.assertEquals("three", reader.readLine());
+        Assert.assertEquals("four", reader.readLine());
+        Assert.assertEquals("", reader.readLine());
+        Assert.assertEquals("last", reader.readLine());
+        Assert.assertNull(reader.readLine());
+        Assert.assertNull(reader.readLine());
+    }
+
+    @Test
+    public void testLineTooLongIsSkipped() throws IOException {
+        LineReader reader = reader("short\nthis line is too long\nok\n", 8);
+        Assert.assertEquals("short", reader.readLine());
+        try {
+            reader.readLine();
+            Assert.fail("The line is longer than 8 bytes");
+        } catch (LineTooLongException e) {
+            Assert.assertEquals(8, e.getMaxLineLength());
+        }
+        Assert.assertEquals("ok", reader.readLine());
+        Assert.assertNull(reader.readLine());
+    }
+
+    @Test
+    public void testCloseGivesBufferBack() throws IOException {
+        LineReader reader = reader("line\n", 8);
+        Assert.assertEquals(0, pool.getFreeCount());
+        reader.close();
+        Assert.assertEquals(1, pool.getFreeCount());
+        reader.close();
+        Assert.assertEquals(1, pool.getFreeCount());
+    }
+
+}
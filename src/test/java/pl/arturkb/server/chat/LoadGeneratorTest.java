@@ -0,0 +1,49 @@
+package pl.arturkb.server.chat;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.Properties;
+
+/**
+ * Junit test class, runs a short load against the blocking server over loopback.
+ */
+public class LoadGeneratorTest {
+
+    private ChatServer server;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new MultiThreadChatServerSync(0, new ServerContext(new ServerSettings(new Properties())));
+        server.bind();
+        Thread acceptor = new Thread(server::serve);
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.close();
+    }
+
+    @Test
+    public void testLoad() throws InterruptedException {
+        Properties properties = new Properties();
+        properties.setProperty(ServerConstants.LOAD_CLIENTS_PROPERTY, "5");
+        properties.setProperty(ServerConstants.LOAD_RATE_PROPERTY, "200");
+        properties.setProperty(ServerConstants.LOAD_DURATION_SECONDS_PROPERTY, "1");
+        LoadGenerator generator = new LoadGenerator(new LoadSettings(properties), InetAddress.getLoopbackAddress(), server.getLocalPort());
+        generator.run();
+
+        Assert.assertEquals(0, generator.getFailedLogins());
+        Assert.assertEquals(0, generator.getLostSessions());
+        Assert.assertTrue(generator.getSent() > 100);
+        Assert.assertEquals(0, generator.getUndelivered());
+        Assert.assertTrue(generator.getDeliveryLatency().getCount() > 0);
+    }
+
+}
@@ -0,0 +1,99 @@
+package pl.arturkb.server.chat;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Junit test class for the ring buffer of messages.
+ */
+public class MessageHistoryTest {
+
+    @Test
+    public void testReplaysLastMessagesInOrder() {
+        MessageHistory history = new MessageHistory(6);
+        Assert.assertEquals(8, history.getCapacity());
+        List<OutboundMessage> appended = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            OutboundMessage message = OutboundMessage.of("message " + i);
+            appended.add(message);
+            history.append(message);
+        }
+
+        RecordingSession session = new RecordingSession();
+        Assert.assertEquals(3, history.replay(3, session));
+        Assert.assertEquals(appended.subList(17, 20), new ArrayList<>(session.received));
+
+        session = new RecordingSession();
+        Assert.assertEquals(8, history.replay(100, session));
+        // The same instances are queued, nothing is copied.
+        Assert.assertSame(appended.get(12), session.received.peek());
+    }
+
+    @Test
+    public void testEmptyHistory() {
+        Assert.assertEquals(0, new MessageHistory(4).replay(10, new RecordingSession()));
+    }
+
+    @Test
+    public void testConcurrentAppendsAndReplays() throws InterruptedException {
+        MessageHistory history = new MessageHistory(16);
+        int writers = 4;
+        int rounds = 20000;
+        CountDownLatch done = new CountDownLatch(writers);
+        for (int w = 0; w < writers; w++) {
+            int writer = w;
+            new Thread(() -> {
+                for (int i = 0; i < rounds; i++) {
+                    history.append(OutboundMessage.of(writer + ":" + i));
+                }
+                done.countDown();
+            }).start();
+        }
+        while (done.getCount() > 0) {
+            RecordingSession session = new RecordingSession();
+            history.replay(16, session);
+            assertOrderedPerWriter(session, writers);
+        }
+        RecordingSession session = new RecordingSession();
+        Assert.assertEquals(16, history.replay(16, session));
+        assertOrderedPerWriter(session, writers);
+    }
+
+    private static void assertOrderedPerWriter(RecordingSession session, int writers) {
+        int[] last = new int[writers];
+        Arrays.fill(last, -1);
+        for (OutboundMessage message : session.received) {
+            String[] parts = new String(message.bytes(), OutboundMessage.CHARSET).trim().split(":");
+            int writer = Integer.parseInt(parts[0]);
+            int index = Integer.parseInt(parts[1]);
+            Assert.assertTrue(index > last[writer]);
+            last[writer] = index;
+        }
+    }
+
+    /**
+     * Session that records the messages it gets.
+     */
+    private static class RecordingSession implements ChatSession {
+
+        private final ConcurrentLinkedQueue<OutboundMessage> received = new ConcurrentLinkedQueue<>();
+
+        public String getUserName() {
+            return "recorder";
+        }
+
+        public String getClientName() {
+            return "@recorder";
+        }
+
+        public void sendMessage(OutboundMessage message) {
+            received.add(message);
+        }
+    }
+}
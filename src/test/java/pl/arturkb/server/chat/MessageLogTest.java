@@ -0,0 +1,198 @@
+package pl.arturkb.server.chat;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Junit test class
+ */
+public class MessageLogTest {
+
+    private static final int SEGMENT_SIZE = 1024;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path directory;
+    private MessageLog log;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = folder.getRoot().toPath();
+        log = open(Long.MAX_VALUE);
+    }
+
+    @After
+    public void tearDown() {
+        log.close();
+    }
+
+    @Test
+    public void testAppendAndRead() {
+        log.append(MessageLog.BROADCAST, ServerConstants.EMPTY, OutboundMessage.of("<Artur> hello"));
+        log.append(MessageLog.PRIVATE, "@Carol", OutboundMessage.of("<Artur> psst"));
+        log.append(MessageLog.ROOM, "#java", OutboundMessage.of("#java <Artur> hi"));
+        waitForOffset(3);
+
+        List<String> records = read(log, 0, 10);
+        Assert.assertEquals(3, records.size());
+        Assert.assertEquals("0 1  <Artur> hello", records.get(0));
+        Assert.assertEquals("1 2 @Carol <Artur> psst", records.get(1));
+        Assert.assertEquals("2 3 #java #java <Artur> hi", records.get(2));
+        Assert.assertEquals(1, read(log, 2, 10).size());
+        Assert.assertEquals(2, read(log, 0, 2).size());
+    }
+
+    @Test
+    public void testSegmentsRollAndAreFoundByOffset() {
+        for (int i = 0; i < 200; i++) {
+            log.append(MessageLog.BROADCAST, ServerConstants.EMPTY, OutboundMessage.of("message " + i));
+        }
+        waitForOffset(200);
+
+        Assert.assertTrue(segmentCount() > 1);
+        List<String> records = read(log, 150, 1);
+        Assert.assertEquals("150 1  message 150", records.get(0));
+        Assert.assertEquals(200, read(log, 0, 1000).size());
+    }
+
+    @Test
+    public void testReplayLastMessagesOfTarget() {
+        for (int i = 0; i < 100; i++) {
+            log.append(MessageLog.ROOM, i % 2 == 0 ? "#java" : "#go", OutboundMessage.of("message " + i));
+        }
+        waitForOffset(100);
+
+        List<String> received = new ArrayList<>();
+        ChatSession session = new ChatSession() {
+            @Override
+            public String getUserName() {
+                return "Artur";
+            }
+
+            @Override
+            public String getClientName() {
+                return "@Artur";
+            }
+
+            @Override
+            public void sendMessage(OutboundMessage message) {
+                received.add(new String(message.bytes(), OutboundMessage.CHARSET).trim());
+            }
+        };
+        List<OutboundMessage> last = log.readLast(MessageLog.ROOM, "#go", 3).join();
+        for (OutboundMessage message : last) {
+            // Views of the mapped segment, not copies.
+            Assert.assertTrue(message.buffer().isDirect());
+            session.sendMessage(message);
+        }
+        Assert.assertEquals(Arrays.asList("message 95", "message 97", "message 99"), received);
+        Assert.assertTrue(log.readLast(MessageLog.BROADCAST, ServerConstants.EMPTY, 3).join().isEmpty());
+
+        // The registry keeps 2 messages, a longer history comes from the log.
+        ClientRegistry registry = new ClientRegistry(10, 0, 2);
+        registry.setMessageLog(log);
+        for (int i = 0; i < 5; i++) {
+            registry.broadcastMessage("hello " + i, session);
+        }
+        waitForOffset(105);
+        received.clear();
+        Assert.assertEquals(4, (int) registry.sendHistory(ServerConstants.EMPTY, "4", session, Runnable::run).join());
+        Assert.assertEquals(Arrays.asList("hello 1", "hello 2", "hello 3", "hello 4"), received);
+        received.clear();
+        Assert.assertEquals(2, (int) registry.sendHistory(ServerConstants.EMPTY, "2", session, Runnable::run).join());
+    }
+
+    @Test
+    public void testRecoveryContinuesAfterLastCompleteRecord() throws IOException {
+        for (int i = 0; i < 50; i++) {
+            log.append(MessageLog.BROADCAST, ServerConstants.EMPTY, OutboundMessage.of("message " + i));
+        }
+        waitForOffset(50);
+        log.close();
+
+        // A torn record after the last complete one.
+        Path last;
+        try (Stream<Path> files = Files.list(directory)) {
+            last = files.max(Path::compareTo).orElseThrow(AssertionError::new);
+        }
+        try (FileChannel channel = FileChannel.open(last, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer length = ByteBuffer.allocate(4);
+            int end = 0;
+            while (channel.read(length, end) == 4 && length.getInt(0) != 0) {
+                end += length.getInt(0);
+                length.clear();
+            }
+            channel.write(ByteBuffer.wrap(new byte[]{0, 0, 0, 100, 1, 2, 3}), end);
+        }
+
+        log = open(Long.MAX_VALUE);
+        Assert.assertEquals(50, log.getNextOffset());
+        Assert.assertEquals(50, read(log, 0, 1000).size());
+        log.append(MessageLog.BROADCAST, ServerConstants.EMPTY, OutboundMessage.of("after restart"));
+        waitForOffset(51);
+        Assert.assertEquals("50 1  after restart", read(log, 50, 1).get(0));
+    }
+
+    @Test
+    public void testRetentionDeletesOldestSegments() throws IOException {
+        log.close();
+        log = open(3 * SEGMENT_SIZE);
+        for (int i = 0; i < 200; i++) {
+            log.append(MessageLog.BROADCAST, ServerConstants.EMPTY, OutboundMessage.of("message " + i));
+        }
+        waitForOffset(200);
+
+        Assert.assertTrue(segmentCount() <= 3);
+        Assert.assertTrue(log.getStartOffset() > 0);
+        Assert.assertEquals(200 - log.getStartOffset(), read(log, 0, 1000).size());
+    }
+
+    private MessageLog open(long retentionBytes) throws IOException {
+        MessageLog messageLog = new MessageLog(directory, SEGMENT_SIZE, retentionBytes, TimeUnit.DAYS.toMillis(1), 10);
+        messageLog.open();
+        return messageLog;
+    }
+
+    private long segmentCount() {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.count();
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private void waitForOffset(long offset) {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (log.getNextOffset() < offset) {
+            Assert.assertTrue("Timed out", System.currentTimeMillis() < deadline);
+            Thread.yield();
+        }
+    }
+
+    private static List<String> read(MessageLog log, long fromOffset, int maxRecords) {
+        List<String> records = new ArrayList<>();
+        log.read(fromOffset, maxRecords, (offset, timestamp, type, target, message) -> {
+            byte[] bytes = new byte[message.remaining() - OutboundMessage.LINE_SEPARATOR.length()];
+            message.get(bytes);
+            records.add(offset + " " + type + " " + target + " " + new String(bytes, OutboundMessage.CHARSET));
+        });
+        return records;
+    }
+}
@@ -0,0 +1,377 @@
+package pl.arturkb.server.chat;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Set;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Junit test class, talks to the non-blocking server over loopback.
+ */
+public class NioChatServerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ServerContext context;
+
+    private NioChatServer server;
+
+    @Before
+    public void setUp() throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty(ServerConstants.REACTORS_PROPERTY, "2");
+        properties.setProperty(ServerConstants.MAX_CLIENTS_PROPERTY, "2");
+        properties.setProperty(ServerConstants.FLUSH_DELAY_MILLISECONDS_PROPERTY, "1");
+        startServer(properties);
+    }
+
+    private void startServer(Properties properties) throws IOException {
+        context = new ServerContext(new ServerSettings(properties));
+        server = new NioChatServer(0, context);
+        server.bind();
+        Thread acceptor = new Thread(server::serve);
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.close();
+    }
+
+    @Test
+    public void testNameHandshake() throws IOException {
+        try (Client artur = new Client()) {
+            Assert.assertEquals(OutputTexts.ENTER_YOUR_NAME, artur.readLine());
+            artur.println("Artur@Home");
+            Assert.assertEquals(OutputTexts.getTheNameShouldNotContain(ServerConstants.CHAR_THAT_NAME_CAN_NOT_CONTAIN), artur.readLine());
+            Assert.assertEquals(OutputTexts.ENTER_YOUR_NAME, artur.readLine());
+            artur.println(" Artur ");
+            Assert.assertEquals("Welcome Artur to our chat room.", artur.readLine());
+            Assert.assertEquals("To leave enter /quit in a new line.", artur.readLine());
+
+            try (Client carol = new Client()) {
+                Assert.assertEquals(OutputTexts.ENTER_YOUR_NAME, carol.readLine());
+                carol.println("Artur");
+                Assert.assertEquals(OutputTexts.userNameIsAlreadyUsed("Artur"), carol.readLine());
+            }
+        }
+    }
+
+    @Test
+    public void testPublicAndPrivateMessages() throws IOException {
+        try (Client artur = new Client(); Client carol = new Client()) {
+            artur.login("Artur");
+            carol.login("Carol");
+            Assert.assertEquals(OutputTexts.newUserEnteredChatMessage("Carol"), artur.readLine());
+
+            carol.println("/all hello");
+            Assert.assertEquals("<Carol> hello", artur.readLine());
+            artur.println("/history 2");
+            Assert.assertEquals(OutputTexts.newUserEnteredChatMessage("Carol"), artur.readLine());
+            Assert.assertEquals("<Carol> hello", artur.readLine());
+
+            artur.println("@Carol psst");
+            Assert.assertEquals("<Artur> psst", carol.readLine());
+            Assert.assertEquals("<Artur> psst", artur.readLine());
+
+            carol.println("/quit");
+            Assert.assertEquals(OutputTexts.userIsLeavingTheChat("Carol"), artur.readLine());
+            Assert.assertNull(carol.readLine());
+        }
+    }
+
+    @Test
+    public void testRooms() throws IOException {
+        try (Client artur = new Client(); Client carol = new Client()) {
+            artur.login("Artur");
+            carol.login("Carol");
+            Assert.assertEquals(OutputTexts.newUserEnteredChatMessage("Carol"), artur.readLine());
+
+            artur.println("/join #java");
+            Assert.assertEquals(OutputTexts.YOU_JOINED_THE_ROOM_RESPONSE.format("#java"), artur.readLine());
+            carol.println("#java hello");
+            Assert.assertEquals(OutputTexts.YOU_ARE_NOT_IN_THE_ROOM_RESPONSE.format("#java"), carol.readLine());
+            carol.println("/join #java");
+            Assert.assertEquals(OutputTexts.YOU_JOINED_THE_ROOM_RESPONSE.format("#java"), carol.readLine());
+            Assert.assertEquals(OutputTexts.USER_JOINED_THE_ROOM_RESPONSE.format("#java", "Carol"), artur.readLine());
+
+            carol.println("#java hello");
+            Assert.assertEquals("#java <Carol> hello", artur.readLine());
+            carol.println("/history #java 2");
+            Assert.assertEquals(OutputTexts.USER_JOINED_THE_ROOM_RESPONSE.format("#java", "Carol"), carol.readLine());
+            Assert.assertEquals("#java <Carol> hello", carol.readLine());
+            artur.println("/rooms");
+            Assert.assertEquals("#java (2)", artur.readLine());
+            Assert.assertEquals(ServerConstants.EMPTY, artur.readLine());
+            artur.println("/leave #java");
+            Assert.assertEquals(OutputTexts.YOU_LEFT_THE_ROOM_RESPONSE.format("#java"), artur.readLine());
+            Assert.assertEquals(OutputTexts.USER_LEFT_THE_ROOM_RESPONSE.format("#java", "Artur"), carol.readLine());
+        }
+    }
+
+    @Test
+    public void testBurstIsDeliveredInOrder() throws IOException {
+        try (Client artur = new Client(); Client carol = new Client()) {
+            artur.login("Artur");
+            carol.login("Carol");
+            Assert.assertEquals(OutputTexts.newUserEnteredChatMessage("Carol"), artur.readLine());
+
+            StringBuilder burst = new StringBuilder();
+            for (int i = 0; i < 1000; i++) {
+                burst.append("/all message ").append(i).append('\n');
+            }
+            carol.print(burst.toString());
+            for (int i = 0; i < 1000; i++) {
+                Assert.assertEquals("<Carol> message " + i, artur.readLine());
+            }
+        }
+    }
+
+    @Test
+    public void testStats() throws IOException {
+        try (Client artur = new Client(); Client carol = new Client()) {
+            artur.login("Artur");
+            carol.login("Carol");
+            Assert.assertEquals(OutputTexts.newUserEnteredChatMessage("Carol"), artur.readLine());
+            carol.println("/all hello");
+            Assert.assertEquals("<Carol> hello", artur.readLine());
+
+            artur.println("/stats");
+            Set<String> lines = new HashSet<>();
+            String line;
+            do {
+                line = artur.readLine();
+                lines.add(line);
+            } while (!line.startsWith("outbound queue depth"));
+            Assert.assertTrue(lines.contains("active sessions 2"));
+            Assert.assertTrue(lines.contains("accepted connections 2"));
+            Assert.assertTrue(lines.contains("messages in all 1"));
+            Assert.assertTrue(lines.contains("messages in stats 1"));
+        }
+    }
+
+    @Test
+    public void testMetricsAreRegistered() throws JMException {
+        ObjectName pattern = new ObjectName(ServerConstants.METRICS_OBJECT_NAME + "*");
+        Assert.assertFalse(ManagementFactory.getPlatformMBeanServer().queryNames(pattern, null).isEmpty());
+    }
+
+    @Test
+    public void testQuitThenEndOfStreamLeavesOnce() throws IOException {
+        server.close();
+        Properties properties = new Properties();
+        properties.setProperty(ServerConstants.MAX_CLIENTS_PROPERTY, "3");
+        properties.setProperty(ServerConstants.SEND_BUFFER_SIZE_PROPERTY, "4096");
+        startServer(properties);
+
+        try (Client artur = new Client(); Client carol = new Client(4096)) {
+            artur.login("Artur");
+            carol.login("Carol");
+            Assert.assertEquals(OutputTexts.newUserEnteredChatMessage("Carol"), artur.readLine());
+
+            // More than the socket buffers hold, Carol does not read, so her session can't flush after /quit.
+            char[] text = new char[1000];
+            Arrays.fill(text, 'x');
+            for (int i = 0; i < 300; i++) {
+                artur.println("/all " + new String(text));
+            }
+            artur.println(ServerConstants.WHO + " Art");
+            Assert.assertEquals("Artur", artur.readLine());
+            Assert.assertEquals("", artur.readLine());
+
+            // The end of stream right behind /quit, while the session still waits for the flush.
+            carol.print(ServerConstants.QUIT + "\n");
+            carol.shutdownOutput();
+            while (carol.readLine() != null) {
+                // The server closes the connection after the messages and the notice are sent.
+            }
+
+            try (Client bob = new Client()) {
+                bob.login("Bob");
+                Assert.assertEquals(OutputTexts.userIsLeavingTheChat("Carol"), artur.readLine());
+                Assert.assertEquals(OutputTexts.newUserEnteredChatMessage("Bob"), artur.readLine());
+            }
+        }
+    }
+
+    @Test
+    public void testServerFull() throws IOException {
+        try (Client artur = new Client(); Client carol = new Client()) {
+            artur.login("Artur");
+            carol.login("Carol");
+            try (Client rejected = new Client()) {
+                Assert.assertEquals(OutputTexts.serverIsFull(ServerConstants.DEFAULT_RETRY_AFTER_SECONDS), rejected.readLine());
+                Assert.assertNull(rejected.readLine());
+            }
+        }
+    }
+
+    @Test
+    public void testLineTooLong() throws IOException {
+        try (Client artur = new Client()) {
+            artur.login("Artur");
+            char[] line = new char[ServerConstants.DEFAULT_MAX_LINE_LENGTH + 1];
+            Arrays.fill(line, 'x');
+            artur.println(new String(line));
+            Assert.assertEquals(OutputTexts.lineTooLong(ServerConstants.DEFAULT_MAX_LINE_LENGTH), artur.readLine());
+            artur.println("/who");
+            Assert.assertEquals("Artur", artur.readLine());
+        }
+    }
+
+    @Test
+    public void testRateLimitDrop() throws IOException {
+        server.close();
+        Properties properties = new Properties();
+        properties.setProperty(ServerConstants.MESSAGES_PER_SECOND_PROPERTY, "1");
+        properties.setProperty(ServerConstants.RATE_LIMIT_POLICY_PROPERTY, "drop");
+        startServer(properties);
+
+        try (Client artur = new Client(); Client carol = new Client()) {
+            artur.login("Artur");
+            carol.login("Carol");
+            Assert.assertEquals(OutputTexts.newUserEnteredChatMessage("Carol"), artur.readLine());
+            carol.println("/all one");
+            carol.println("/all two");
+            carol.println("/all three");
+            carol.println("/all four");
+            Assert.assertEquals(OutputTexts.RATE_LIMIT_DROP, carol.readLine());
+            Assert.assertEquals("<Carol> one", artur.readLine());
+            Assert.assertEquals("<Carol> two", artur.readLine());
+            carol.println("/quit");
+            Assert.assertEquals(OutputTexts.userIsLeavingTheChat("Carol"), artur.readLine());
+        }
+    }
+
+    @Test
+    public void testThrottledSessionRespondsAndQuits() throws IOException {
+        server.close();
+        // The default flush delay, replies are flushed by tasks the throttled session queues on its reactor.
+        Properties properties = new Properties();
+        properties.setProperty(ServerConstants.MESSAGES_PER_SECOND_PROPERTY, "1");
+        startServer(properties);
+
+        try (Client artur = new Client()) {
+            artur.login("Artur");
+            artur.print("/rooms\n/rooms\n/rooms\n/quit\n");
+            for (int i = 0; i < 3; i++) {
+                Assert.assertEquals(OutputTexts.NO_ROOMS, artur.readLine());
+            }
+            // Closed when /quit is handled after the throttle, not by the idle reaper; reading times out otherwise.
+            Assert.assertNull(artur.readLine());
+        }
+    }
+
+    @Test
+    public void testHistoryFromMessageLog() throws IOException {
+        server.close();
+        Properties properties = new Properties();
+        properties.setProperty(ServerConstants.HISTORY_SIZE_PROPERTY, "2");
+        properties.setProperty(ServerConstants.LOG_DIRECTORY_PROPERTY, folder.getRoot().getPath());
+        properties.setProperty(ServerConstants.LOG_SEGMENT_MEGABYTES_PROPERTY, "1");
+        startServer(properties);
+
+        try (Client artur = new Client()) {
+            artur.login("Artur");
+            for (int i = 0; i < 5; i++) {
+                artur.println("/all hello " + i);
+            }
+            // The notice about Artur and the messages are logged by the writer thread.
+            long deadline = System.currentTimeMillis() + 5000;
+            while (context.getMessageLog().getNextOffset() < 6) {
+                Assert.assertTrue("Timed out", System.currentTimeMillis() < deadline);
+                Thread.yield();
+            }
+
+            // The command after /history is answered after the history read from the log.
+            artur.print("/history 4\n/rooms\n");
+            for (int i = 1; i < 5; i++) {
+                Assert.assertEquals("<Artur> hello " + i, artur.readLine());
+            }
+            Assert.assertEquals(OutputTexts.NO_ROOMS, artur.readLine());
+        }
+    }
+
+    @Test
+    public void testShutdownDrainsSessions() throws IOException {
+        try (Client artur = new Client()) {
+            artur.login("Artur");
+            server.shutdown(2000);
+            Assert.assertTrue(artur.readLine().startsWith("The server is restarting, reconnect in "));
+            Assert.assertNull(artur.readLine());
+        }
+    }
+
+    /**
+     * The line based chat client.
+     */
+    private class Client implements AutoCloseable {
+
+        private final Socket socket;
+        private final BufferedReader reader;
+        private final PrintStream printStream;
+
+        Client() throws IOException {
+            this(0);
+        }
+
+        Client(int receiveBufferSize) throws IOException {
+            socket = new Socket();
+            if (receiveBufferSize > 0) {
+                socket.setReceiveBufferSize(receiveBufferSize);
+            }
+            socket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getLocalPort()));
+            socket.setSoTimeout(5000);
+            reader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+            printStream = new PrintStream(socket.getOutputStream(), true);
+        }
+
+        void login(String userName) throws IOException {
+            Assert.assertEquals(OutputTexts.ENTER_YOUR_NAME, readLine());
+            println(userName);
+            readLine();
+            readLine();
+        }
+
+        String readLine() throws IOException {
+            return reader.readLine();
+        }
+
+        void println(String line) {
+            printStream.println(line);
+        }
+
+        void print(String text) {
+            printStream.print(text);
+            printStream.flush();
+        }
+
+        void shutdownOutput() throws IOException {
+            socket.shutdownOutput();
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package pl.arturkb.server.chat;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Junit test class for the rate limits of a session.
+ */
+public class RateLimiterTest {
+
+    private final StubSession session = new StubSession();
+
+    @Test
+    public void testRejectedLineTakesNoTokens() {
+        TokenBucket sessionMessages = new TokenBucket(1, 2);
+        TokenBucket addressMessages = new TokenBucket(1, 1);
+        RateLimiter limiter = new RateLimiter(RateLimitPolicy.DROP, sessionMessages, null, addressMessages, null);
+
+        Assert.assertEquals(0, limiter.admit(10, session));
+        Assert.assertEquals(RateLimiter.REJECTED, limiter.admit(10, session));
+        Assert.assertEquals(RateLimiter.REJECTED, limiter.admit(10, session));
+        // Only the admitted line is charged to the session.
+        Assert.assertTrue(sessionMessages.tryAcquire(1));
+        Assert.assertEquals(1, session.received.size());
+    }
+
+    @Test
+    public void testMaxLengthLinePassesLowByteRate() {
+        Properties properties = new Properties();
+        properties.setProperty(ServerConstants.BYTES_PER_SECOND_PROPERTY, "100");
+        properties.setProperty(ServerConstants.RATE_LIMIT_POLICY_PROPERTY, RateLimitPolicy.DROP.name().toLowerCase());
+        RateLimiter limiter = new RateLimits(new ServerSettings(properties)).newLimiter(null);
+
+        Assert.assertEquals(0, limiter.admit(ServerConstants.DEFAULT_MAX_LINE_LENGTH, session));
+        Assert.assertEquals(RateLimiter.REJECTED, limiter.admit(1, session));
+    }
+
+    /**
+     * The session that keeps received messages.
+     */
+    private static class StubSession implements ChatSession {
+
+        private final List<OutboundMessage> received = new ArrayList<>();
+
+        @Override
+        public String getUserName() {
+            return "Artur";
+        }
+
+        @Override
+        public String getClientName() {
+            return ServerConstants.CHAR_THAT_NAME_CAN_NOT_CONTAIN + getUserName();
+        }
+
+        @Override
+        public void sendMessage(OutboundMessage message) {
+            received.add(message);
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package pl.arturkb.server.chat;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Junit test class for the precomputed responses.
+ */
+public class ResponseTemplateTest {
+
+    private static String decode(OutboundMessage message) {
+        return new String(message.bytes(), OutboundMessage.CHARSET);
+    }
+
+    @Test
+    public void testConstantResponseIsShared() {
+        ResponseTemplate template = ResponseTemplate.compile("Enter your name.");
+        Assert.assertSame(template.render(), template.render());
+        Assert.assertEquals("Enter your name." + OutboundMessage.LINE_SEPARATOR, decode(template.render()));
+    }
+
+    @Test
+    public void testRenderMatchesFormat() {
+        ResponseTemplate template = ResponseTemplate.compile("*** The user {1} joined the room {0} ***");
+        String[] names = {"Artur", "Zo\u00eb", "\u0410\u0440\u0442\u0443\u0440", "\u6f22\u5b57", "\ud83d\ude00", "bad\ud83d"};
+        for (String name : names) {
+            String expected = template.format("#room", name);
+            Assert.assertEquals("*** The user " + name + " joined the room #room ***", expected);
+            Assert.assertEquals(OutboundMessage.of(expected).length(), template.render("#room", name).length());
+            Assert.assertEquals(decode(OutboundMessage.of(expected)), decode(template.render("#room", name)));
+        }
+    }
+
+    @Test
+    public void testOutputTextsUseTemplates() {
+        Assert.assertEquals("*** A new user Carol entered the chat room !!! ***", OutputTexts.newUserEnteredChatMessage("Carol"));
+        Assert.assertEquals(OutputTexts.printUsage() + OutboundMessage.LINE_SEPARATOR, decode(OutputTexts.USAGE_RESPONSE.render()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWrongParameterCount() {
+        ResponseTemplate.compile("Welcome {0}.").render();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWrongPlaceholder() {
+        ResponseTemplate.compile("Welcome {2}.");
+    }
+
+}
@@ -0,0 +1,83 @@
+package pl.arturkb.server.chat;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+/**
+ * Junit test class for the pages of the list of users.
+ */
+public class RosterTest {
+
+    private static final int PAGE_SIZE = 4;
+
+    @Test
+    public void testPagesFollowJoinsAndLeaves() {
+        Roster roster = new Roster(PAGE_SIZE);
+        TreeSet<String> expected = new TreeSet<>();
+        Random random = new Random(7);
+        ChatSession session = new StubSession();
+        for (int i = 0; i < 3000; i++) {
+            String clientName = ServerConstants.CHAR_THAT_NAME_CAN_NOT_CONTAIN + "user-" + random.nextInt(60);
+            if (random.nextInt(5) < 3) {
+                roster.add(clientName, session);
+                expected.add(clientName.substring(1));
+            } else {
+                roster.remove(clientName, session);
+                expected.remove(clientName.substring(1));
+            }
+            if (i % 10 == 0) {
+                Assert.assertEquals(new ArrayList<>(expected), allPages(roster));
+            }
+        }
+        Assert.assertEquals(new ArrayList<>(expected), allPages(roster));
+        Assert.assertEquals(expected.size(), roster.size());
+    }
+
+    @Test
+    public void testEmptyList() {
+        Roster roster = new Roster(PAGE_SIZE);
+        ChatSession session = new StubSession();
+        roster.add("@Artur", session);
+        roster.remove("@Artur", session);
+        Assert.assertEquals(OutputTexts.NO_USERS, new String(roster.page(1).bytes(), OutboundMessage.CHARSET).trim());
+    }
+
+    private static List<String> allPages(Roster roster) {
+        List<String> names = new ArrayList<>();
+        int pageCount = (roster.size() + PAGE_SIZE - 1) / PAGE_SIZE;
+        for (int page = 1; page <= pageCount; page++) {
+            for (String line : new String(roster.page(page).bytes(), OutboundMessage.CHARSET).split("\n")) {
+                if (pageCount == 1 || !line.equals(OutputTexts.userPage(page, pageCount))) {
+                    names.add(line);
+                }
+            }
+            Assert.assertTrue(names.size() <= page * PAGE_SIZE);
+        }
+        return names;
+    }
+
+    /**
+     * The session that ignores messages.
+     */
+    private static class StubSession implements ChatSession {
+
+        @Override
+        public String getUserName() {
+            return "stub";
+        }
+
+        @Override
+        public String getClientName() {
+            return "@stub";
+        }
+
+        @Override
+        public void sendMessage(OutboundMessage message) {
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package pl.arturkb.server.chat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManagerFactory;
+
+/**
+ * A key store with a self-signed certificate for localhost, generated with the keytool of the running JDK. For
+ * tests and benchmarks of the TLS listener, clients trust the certificate through {@link #newClientContext()}; kept
+ * with the tests, the benchmarks get it from the test output.
+ */
+public class SelfSignedKeyStore {
+
+    // The alias of the key.
+    private static final String ALIAS = "chat-server";
+
+    // Max time keytool is given to generate the key.
+    private static final int KEYTOOL_TIMEOUT_SECONDS = 60;
+
+    // The key store file.
+    private final Path file;
+
+    // The password of the key store and of the key.
+    private final String password;
+
+    /**
+     * The constructor
+     *
+     * @param file     the key store file.
+     * @param password the password of the key store and of the key.
+     */
+    private SelfSignedKeyStore(Path file, String password) {
+        this.file = file;
+        this.password = password;
+    }
+
+    /**
+     * Generate a PKCS12 key store with an EC key and a self-signed certificate for localhost and 127.0.0.1.
+     *
+     * @param file     the key store file, must not exist.
+     * @param password the password of the key store and of the key, at least 6 characters.
+     * @return the generated key store.
+     * @throws IOException If keytool fails
+     */
+    public static SelfSignedKeyStore generate(Path file, String password) throws IOException {
+        String keytool = System.getProperty("java.home") + File.separator + "bin" + File.separator + "keytool";
+        Process process = new ProcessBuilder(keytool, "-genkeypair", "-alias", ALIAS, "-keyalg", "EC", "-keysize", "256",
+                "-dname", "CN=localhost", "-ext", "SAN=dns:localhost,ip:127.0.0.1", "-validity", "365",
+                "-storetype", ServerConstants.DEFAULT_TLS_KEY_STORE_TYPE, "-keystore", file.toString(),
+                "-storepass", password, "-keypass", password)
+                .redirectErrorStream(true)
+                .start();
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (InputStream in = process.getInputStream()) {
+            byte[] buffer = new byte[1024];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                output.write(buffer, 0, read);
+            }
+        }
+        try {
+            if (!process.waitFor(KEYTOOL_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                process.destroyForcibly();
+                throw new IOException("keytool did not finish in " + KEYTOOL_TIMEOUT_SECONDS + " s");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for keytool", e);
+        }
+        if (process.exitValue() != 0) {
+            throw new IOException("keytool failed with exit code " + process.exitValue() + " " + output.toString().trim());
+        }
+        return new SelfSignedKeyStore(file, password);
+    }
+
+    /**
+     * Set the server properties that make the server speak TLS with this key store.
+     *
+     * @param properties the server properties.
+     */
+    public void configure(Properties properties) {
+        properties.setProperty(ServerConstants.TLS_KEY_STORE_PROPERTY, file.toString());
+        properties.setProperty(ServerConstants.TLS_KEY_STORE_PASSWORD_PROPERTY, password);
+    }
+
+    /**
+     * Create the SSL context of a client that trusts the certificate. Sockets created by one context resume the
+     * sessions of each other.
+     *
+     * @return the client context.
+     * @throws IOException If the key store can't be read
+     */
+    public SSLContext newClientContext() throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            KeyStore keyStore = KeyStore.getInstance(ServerConstants.DEFAULT_TLS_KEY_STORE_TYPE);
+            keyStore.load(in, password.toCharArray());
+            TrustManagerFactory trustManagerFactory = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+            trustManagerFactory.init(keyStore);
+            SSLContext sslContext = SSLContext.getInstance("TLS");
+            sslContext.init(null, trustManagerFactory.getTrustManagers(), null);
+            return sslContext;
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Can't load the key store " + file + " " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Getter for file
+     *
+     * @return the key store file.
+     */
+    public Path getFile() {
+        return file;
+    }
+
+}
@@ -0,0 +1,183 @@
+package pl.arturkb.server.chat;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.util.Arrays;
+import java.util.Properties;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocket;
+
+/**
+ * Junit test class, talks to both servers over TLS on loopback.
+ */
+public class TlsTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private SelfSignedKeyStore keyStore;
+
+    private SSLContext clientContext;
+
+    private ChatServer server;
+
+    private int port;
+
+    @Before
+    public void setUp() throws IOException {
+        keyStore = SelfSignedKeyStore.generate(folder.getRoot().toPath().resolve("server.p12"), "secret");
+        clientContext = keyStore.newClientContext();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    @Test
+    public void testBlockingServer() throws IOException {
+        MultiThreadChatServerSync blocking = new MultiThreadChatServerSync(0, new ServerContext(new ServerSettings(tlsProperties())));
+        start(blocking);
+        port = blocking.getLocalPort();
+        testChat();
+    }
+
+    @Test
+    public void testBlockingServerShutdown() throws IOException {
+        MultiThreadChatServerSync blocking = new MultiThreadChatServerSync(0, new ServerContext(new ServerSettings(tlsProperties())));
+        start(blocking);
+        port = blocking.getLocalPort();
+        try (Client artur = new Client()) {
+            artur.login("Artur");
+            server.shutdown(2000);
+            server = null;
+            Assert.assertTrue(artur.readLine().startsWith("The server is restarting, reconnect in "));
+            Assert.assertNull(artur.readLine());
+        }
+    }
+
+    @Test
+    public void testNioServer() throws IOException {
+        Properties properties = tlsProperties();
+        properties.setProperty(ServerConstants.REACTORS_PROPERTY, "2");
+        NioChatServer nio = new NioChatServer(0, new ServerContext(new ServerSettings(properties)));
+        start(nio);
+        port = nio.getLocalPort();
+        testChat();
+    }
+
+    @Test
+    public void testNioServerLongLinesAndBursts() throws IOException {
+        NioChatServer nio = new NioChatServer(0, new ServerContext(new ServerSettings(tlsProperties())));
+        start(nio);
+        port = nio.getLocalPort();
+        char[] text = new char[3000];
+        Arrays.fill(text, 'x');
+        try (Client artur = new Client(); Client carol = new Client()) {
+            artur.login("Artur");
+            carol.login("Carol");
+            Assert.assertEquals(OutputTexts.newUserEnteredChatMessage("Carol"), artur.readLine());
+            for (int i = 0; i < 200; i++) {
+                carol.println("/all " + i + new String(text));
+            }
+            for (int i = 0; i < 200; i++) {
+                Assert.assertEquals("<Carol> " + i + new String(text), artur.readLine());
+            }
+        }
+    }
+
+    private void testChat() throws IOException {
+        try (Client artur = new Client()) {
+            artur.login("Artur");
+            try (Client carol = new Client()) {
+                carol.login("Carol");
+                Assert.assertEquals(OutputTexts.newUserEnteredChatMessage("Carol"), artur.readLine());
+                carol.println("/all hello");
+                Assert.assertEquals("<Carol> hello", artur.readLine());
+                artur.println("@Carol psst");
+                Assert.assertEquals("<Artur> psst", carol.readLine());
+                Assert.assertEquals("<Artur> psst", artur.readLine());
+                carol.println("/quit");
+                Assert.assertEquals(OutputTexts.userIsLeavingTheChat("Carol"), artur.readLine());
+            }
+        }
+
+        // A resumed TLS 1.2 session keeps its id, the TLS 1.3 tickets do not tell.
+        byte[] sessionId;
+        try (Client carol = new Client("TLSv1.2")) {
+            carol.login("Carol");
+            sessionId = carol.socket.getSession().getId();
+        }
+        try (Client carol = new Client("TLSv1.2")) {
+            Assert.assertEquals(OutputTexts.ENTER_YOUR_NAME, carol.readLine());
+            Assert.assertArrayEquals("The session is resumed", sessionId, carol.socket.getSession().getId());
+        }
+    }
+
+    private Properties tlsProperties() {
+        Properties properties = new Properties();
+        keyStore.configure(properties);
+        properties.setProperty(ServerConstants.TLS_HANDSHAKE_THREADS_PROPERTY, "2");
+        return properties;
+    }
+
+    private void start(ChatServer chatServer) throws IOException {
+        server = chatServer;
+        server.bind();
+        Thread acceptor = new Thread(server::serve);
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /**
+     * The line based chat client over TLS.
+     */
+    private class Client implements AutoCloseable {
+
+        private final SSLSocket socket;
+        private final BufferedReader reader;
+        private final PrintStream printStream;
+
+        Client(String... protocols) throws IOException {
+            socket = (SSLSocket) clientContext.getSocketFactory().createSocket(InetAddress.getLoopbackAddress(), port);
+            if (protocols.length > 0) {
+                socket.setEnabledProtocols(protocols);
+            }
+            socket.setSoTimeout(5000);
+            reader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+            printStream = new PrintStream(socket.getOutputStream(), true);
+        }
+
+        void login(String userName) throws IOException {
+            Assert.assertEquals(OutputTexts.ENTER_YOUR_NAME, readLine());
+            println(userName);
+            Assert.assertEquals("Welcome " + userName + " to our chat room.", readLine());
+            readLine();
+        }
+
+        String readLine() throws IOException {
+            return reader.readLine();
+        }
+
+        void println(String line) {
+            printStream.println(line);
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package pl.arturkb.server.chat;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Junit test class for the token bucket.
+ */
+public class TokenBucketTest {
+
+    @Test
+    public void testBurstThenEmpty() {
+        TokenBucket bucket = new TokenBucket(1, 2);
+        Assert.assertTrue(bucket.tryAcquire(1));
+        Assert.assertTrue(bucket.tryAcquire(1));
+        Assert.assertFalse(bucket.tryAcquire(1));
+        Assert.assertFalse(bucket.tryAcquire(1));
+    }
+
+    @Test
+    public void testAcquireGoesIntoDebt() {
+        TokenBucket bucket = new TokenBucket(10, 1);
+        Assert.assertEquals(0, bucket.acquire(10));
+        long wait = bucket.acquire(5);
+        Assert.assertTrue(wait > TimeUnit.MILLISECONDS.toNanos(400));
+        Assert.assertTrue(wait <= TimeUnit.MILLISECONDS.toNanos(500));
+        Assert.assertFalse(bucket.tryAcquire(1));
+    }
+
+    @Test
+    public void testMinBurst() {
+        TokenBucket bucket = new TokenBucket(100, 2, 1000);
+        Assert.assertTrue(bucket.tryAcquire(1000));
+        Assert.assertFalse(bucket.tryAcquire(1));
+    }
+
+    @Test
+    public void testRelease() {
+        TokenBucket bucket = new TokenBucket(1, 2);
+        Assert.assertTrue(bucket.tryAcquire(2));
+        bucket.release(1);
+        Assert.assertTrue(bucket.tryAcquire(1));
+        Assert.assertFalse(bucket.tryAcquire(1));
+    }
+
+    @Test
+    public void testRefill() throws InterruptedException {
+        TokenBucket bucket = new TokenBucket(100, 1);
+        Assert.assertTrue(bucket.tryAcquire(100));
+        Assert.assertFalse(bucket.tryAcquire(10));
+        Thread.sleep(150);
+        Assert.assertTrue(bucket.tryAcquire(10));
+    }
+
+}